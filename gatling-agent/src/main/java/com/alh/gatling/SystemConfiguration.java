@@ -19,14 +19,15 @@
 package com.alh.gatling;
 
 import com.alh.gatling.commons.AgentConfig;
+import com.alh.gatling.commons.ArtifactCache;
 import com.alh.gatling.commons.HostUtils;
-import com.alh.gatling.commons.MasterClientActor;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
 
+import java.io.File;
 import java.util.List;
 
 import akka.actor.ActorRef;
@@ -72,27 +73,41 @@ public class SystemConfiguration {
        jobInfo.setPath(env.getProperty("job.path"));
        jobInfo.setLogDirectory(env.getProperty("job.logDirectory"));
        jobInfo.setJobDirectory(env.getProperty("job.jobDirectory"));
+       jobInfo.setCacheDirectory(env.getProperty("job.cacheDirectory"));
+       jobInfo.setCacheMaxBytes(env.getProperty("job.cacheMaxBytes", Long.class, jobInfo.getCacheMaxBytes()));
+       jobInfo.setStartBarrierTimeout(env.getProperty("job.startBarrierTimeout", Long.class, jobInfo.getStartBarrierTimeout()));
+       jobInfo.setPreAggregateResults(env.getProperty("job.preAggregateResults", Boolean.class, jobInfo.isPreAggregateResults()));
        jobInfo.setExitValues(new int[]{0,2,1});
        agentConfig.setJob(jobInfo);
 
        AgentConfig.LogServer logServer = new AgentConfig.LogServer();
        logServer.setHostName(HostUtils.lookupIp());
        logServer.setPort(clientPort);
+       logServer.setMaxTransfers(env.getProperty("server.maxTransfers", Integer.class, logServer.getMaxTransfers()));
        agentConfig.setLogServer(logServer);
        agentConfig.setContactPoint( contactPoints);
 
        return agentConfig;
    }
 
+    /**
+     * One cache per agent, shared by all the workers running on the host and served to the other agents
+     */
+    @Bean
+    public ArtifactCache createArtifactCache(AgentConfig agentConfig){
+        return new ArtifactCache(new File(agentConfig.getJob().getCacheDirectory()), agentConfig.getJob().getCacheMaxBytes());
+    }
+
     /**
      * Bean factory that creates the actor system with workers and joins the cluster/master
      * using the contact-point property value
      * @param agentConfig
+     * @param artifactCache
      * @return
      */
     @Bean
-    public ActorSystem createActorSystemWithAgent(AgentConfig agentConfig){
-        return WorkerFactory.startWorkersWithExecutors(agentConfig);
+    public ActorSystem createActorSystemWithAgent(AgentConfig agentConfig, ArtifactCache artifactCache){
+        return WorkerFactory.startWorkersWithExecutors(agentConfig, artifactCache);
     }
 
 }
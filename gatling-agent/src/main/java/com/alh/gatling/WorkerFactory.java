@@ -32,7 +32,7 @@ import java.util.stream.IntStream;
 
 public class WorkerFactory {
 
-    public static ActorSystem startWorkersWithExecutors(AgentConfig agent) {
+    public static ActorSystem startWorkersWithExecutors(AgentConfig agent, ArtifactCache artifactCache) {
         Config conf = ConfigFactory.parseString("akka.cluster.roles=[" + agent.getActor().getRole() + "]")
                 .withFallback(ConfigFactory.parseString("akka.remote.netty.tcp.port=" + agent.getActor().getPort()))
                 .withFallback(ConfigFactory.parseString("akka.remote.netty.tcp.hostname=" + HostUtils.lookupIp()))
@@ -47,18 +47,21 @@ public class WorkerFactory {
         ClusterClientSettings settings =  ClusterClientSettings.create(system).withInitialContacts(initialContacts);
         final ActorRef clusterClient = system.actorOf(ClusterClient.props(settings), "clusterClient");
 
-        IntStream.range(1,agent.getActor().getNumberOfActors()+1).forEach(i->
+        //no explicit slot count: one slot per core, the master still checks the advertised capacity
+        int slots = agent.getActor().getNumberOfActors() > 0 ? agent.getActor().getNumberOfActors() : Runtime.getRuntime().availableProcessors();
+        IntStream.range(1,slots+1).forEach(i->
             system.actorOf(Worker.props(clusterClient,
-                            createWorkExecutor(agent),
-                            agent.getActor().getRole()),
+                            createWorkExecutor(agent, artifactCache),
+                            agent.getActor().getRole(),
+                            agent.getPeerUrl()),
                             agent.getActor().getRole()+i)
         );
         return system;
 
     }
 
-    private static Props createWorkExecutor(AgentConfig agentConfig){
-       return Props.create(JarExecutor.class, agentConfig);
+    private static Props createWorkExecutor(AgentConfig agentConfig, ArtifactCache artifactCache){
+       return Props.create(JarExecutor.class, agentConfig, artifactCache);
     }
 
 }
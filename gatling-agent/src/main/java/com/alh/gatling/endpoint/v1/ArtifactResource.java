@@ -0,0 +1,111 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *  
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.endpoint.v1;
+
+
+import com.alh.gatling.commons.ArtifactCache;
+import com.alh.gatling.commons.HttpRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Singleton;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
+/**
+ *
+ * This jersey controller serves the artifacts held in the cache of the agent to the other agents,
+ * the master points the agents at their peers so that an artifact fans out through a download tree
+ * instead of being served by the master to every agent.
+ * Artifacts are addressed by their SHA-256, so they are immutable: the hash is a strong ETag,
+ * single byte ranges are honoured for resumed downloads and an artifact still being downloaded by
+ * this agent is served once it completes. Transfers share the cap of the log end points.
+ */
+@Singleton
+@Path("/artifact/")
+public class ArtifactResource {
+
+    private final Logger log = LoggerFactory.getLogger(ArtifactResource.class);
+    //below the read timeout of the downloading peer
+    private static final long AWAIT_MILLIS = TimeUnit.SECONDS.toMillis(45);
+
+    private final ArtifactCache artifactCache;
+    private final FileTransfers transfers;
+
+    @Autowired
+    public ArtifactResource(ArtifactCache artifactCache, FileTransfers transfers){
+        this.artifactCache = artifactCache;
+        this.transfers = transfers;
+    }
+
+    @GET
+    @Path("file")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public Response getFile(@QueryParam("sha256") String sha256, @Context Request request, @Context HttpHeaders headers) {
+        if (sha256 == null || !sha256.matches("[0-9a-f]{64}")) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        EntityTag etag = new EntityTag(sha256);
+        CacheControl cacheControl = CacheControl.valueOf("public, max-age=31536000, immutable");
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(etag);
+        if (notModified != null) {
+            return notModified.tag(etag).cacheControl(cacheControl).build();
+        }
+        //taken before waiting for an in flight download, so that the waiting peers hold at most the capped threads
+        if (!transfers.tryAcquire()) {
+            return transfers.busy().build();
+        }
+        File file = artifactCache.await(sha256, AWAIT_MILLIS);
+        if (file == null) {
+            transfers.release();
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        long length = file.length();
+        String ifRange = headers.getHeaderString("If-Range");
+        HttpRange range = ifRange == null || ifRange.equals(etag.toString())
+                ? HttpRange.parse(headers.getHeaderString("Range"), length) : null;
+        if (range != null && !range.isSatisfiable()) {
+            transfers.release();
+            return Response.status(416).header("Content-Range", "bytes */" + length).build();
+        }
+        log.info("Serving {} to a peer", sha256);
+        Response.ResponseBuilder response;
+        if (range != null) {
+            response = Response.status(206).entity(transfers.send(file, range.start, range.end))
+                    .header("Content-Range", range.toContentRange())
+                    .header("Content-Length", range.length());
+        } else {
+            response = Response.ok(transfers.send(file, 0, length - 1)).header("Content-Length", length);
+        }
+        return response.tag(etag).cacheControl(cacheControl).header("Accept-Ranges", "bytes").build();
+    }
+}
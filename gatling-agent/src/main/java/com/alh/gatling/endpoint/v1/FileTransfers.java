@@ -0,0 +1,92 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *  
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.endpoint.v1;
+
+import com.alh.gatling.commons.AgentConfig;
+import com.alh.gatling.commons.FileTransfer;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Caps the number of files the agent sends at the same time, logs and artifacts alike.
+ * A transfer takes a permit with {@link #tryAcquire()}, the response then releases it once it has been written.
+ */
+@Component
+public class FileTransfers {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Semaphore transfers;
+
+    @Autowired
+    public FileTransfers(AgentConfig agentConfig) {
+        this.transfers = new Semaphore(agentConfig.getLogServer().getMaxTransfers());
+    }
+
+    /**
+     * @return false when the cap is reached, the request should then be answered with {@link #busy()}
+     */
+    public boolean tryAcquire() {
+        return transfers.tryAcquire();
+    }
+
+    /**
+     * Gives the permit back when the request is answered without sending the file
+     */
+    public void release() {
+        transfers.release();
+    }
+
+    public Response.ResponseBuilder busy() {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE).header("Retry-After", 1);
+    }
+
+    /**
+     * Sends the bytes from start to end, inclusive, and releases the permit
+     */
+    public StreamingOutput send(File file, long start, long end) {
+        return output -> {
+            try {
+                FileTransfer.transfer(file, start, end, output);
+            } finally {
+                transfers.release();
+            }
+        };
+    }
+
+    /**
+     * Sends the first length bytes gzipped and releases the permit
+     */
+    public StreamingOutput compress(File file, long length) {
+        return output -> {
+            try (GZIPOutputStream gzip = new GZIPOutputStream(new CloseShieldOutputStream(output), BUFFER_SIZE)) {
+                FileTransfer.transfer(file, 0, length - 1, gzip);
+            } finally {
+                transfers.release();
+            }
+        };
+    }
+}
@@ -19,97 +19,156 @@
 package com.alh.gatling.endpoint.v1;
 
 
+import com.alh.gatling.commons.HttpRange;
+import com.alh.gatling.commons.ReportStats;
+import org.apache.commons.io.FilenameUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-
-import javax.inject.Inject;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.inject.Singleton;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
-import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
-import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 /**
  *
  * This jersey controller exposes http end points for user to view log files ,
- * master also uses this end points to pull simulation log files that are collected to generate reports
+ * master also uses this end points to pull simulation log files that are collected to generate reports.
+ * Files are sent with FileChannel.transferTo, text logs are gzipped on the fly when the client accepts it,
+ * single byte ranges and conditional requests (ETag/Last-Modified) are honoured and the number of
+ * concurrent transfers is capped by {@link FileTransfers}, extra requests are answered 503 with a Retry-After.
  */
+@Singleton
 @Path("/log/")
 @Produces(MediaType.APPLICATION_JSON)
 @Consumes(MediaType.APPLICATION_JSON)
 public class LogResource {
 
     private final Logger log = LoggerFactory.getLogger(LogResource.class);
+    private static final Set<String> COMPRESSIBLE = new HashSet<>(Arrays.asList("log", "txt", "csv", "json", "html"));
+    private static final long GZIP_MIN_LENGTH = 1024;
     @Context
     UriInfo uriInfo;
 
+    private final FileTransfers transfers;
 
-    @Inject
-    public LogResource(){
-
+    @Autowired
+    public LogResource(FileTransfers transfers){
+        this.transfers = transfers;
     }
 
 
     @GET
     @Path("file")
     @Produces(MediaType.APPLICATION_OCTET_STREAM)
-    public Response getFile(@QueryParam("filePath") String filePath) {
-
-        try {
-            File logFile = new File(filePath);
-            return Response.ok(logFile, MediaType.APPLICATION_OCTET_STREAM)
-                    .header("Content-Disposition", "attachment; filename=\"" + logFile.getName() + "\"" ) //optional
-                    .build();
-        } catch (Exception e) {
-            return Response.status(Response.Status.NOT_FOUND).build();
-        }
-
+    public Response getFile(@QueryParam("filePath") String filePath, @Context Request request, @Context HttpHeaders headers) {
+        return serve(filePath, MediaType.APPLICATION_OCTET_STREAM_TYPE, true, request, headers).build();
     }
 
     @GET
     @Path("stream")
     @Produces("text/plain")
-    public Response getStream(@QueryParam("filePath") String filePath) {
+    public Response getStream(@QueryParam("filePath") String filePath, @Context Request request, @Context HttpHeaders headers) {
+        log.info("File: {}",filePath);
+        return serve(filePath, MediaType.TEXT_PLAIN_TYPE, false, request, headers).build();
+    }
 
-        try {
-            File f = new File(filePath);
-            log.info("File: {}",filePath);
-            final FileInputStream fStream = new FileInputStream(f);
-            StreamingOutput stream = output -> {
-                try {
-                    pipe(fStream, output);
-                } catch (Exception e) {
-                    throw new WebApplicationException(e);
-                }
-            };
-            return Response.ok(stream).build();
-        } catch (Exception e) {
-            return Response.status(Response.Status.CONFLICT).build();
+    private Response.ResponseBuilder serve(String filePath, MediaType type, boolean attachment, Request request, HttpHeaders headers) {
+        File file = filePath == null ? null : new File(filePath);
+        if (file == null || !file.isFile()) {
+            return Response.status(Response.Status.NOT_FOUND);
         }
-
+        //snapshot, a log being written keeps growing during the transfer
+        long length = file.length();
+        Date lastModified = new Date(file.lastModified());
+        String identity = length + "-" + file.lastModified();
+        boolean gzip = isCompressible(file, length) && acceptsGzip(headers.getHeaderString(HttpHeaders.ACCEPT_ENCODING));
+        EntityTag etag = new EntityTag(gzip ? identity + "-gzip" : identity);
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(lastModified, etag);
+        if (notModified != null) {
+            return vary(notModified.tag(etag).lastModified(lastModified), file, length);
+        }
+        HttpRange range = ifRange(headers.getHeaderString("If-Range"), identity, lastModified)
+                ? HttpRange.parse(headers.getHeaderString("Range"), length) : null;
+        if (range != null && !range.isSatisfiable()) {
+            return Response.status(416).header("Content-Range", "bytes */" + length);
+        }
+        if (!transfers.tryAcquire()) {
+            return transfers.busy();
+        }
+        Response.ResponseBuilder response;
+        if (range != null) {
+            //ranges address the identity encoding
+            response = Response.status(206).entity(transfers.send(file, range.start, range.end))
+                    .header("Content-Range", range.toContentRange())
+                    .header("Content-Length", range.length())
+                    .tag(new EntityTag(identity));
+        } else if (gzip) {
+            response = Response.ok(transfers.compress(file, length)).header("Content-Encoding", "gzip").tag(etag);
+        } else {
+            response = Response.ok(transfers.send(file, 0, length - 1)).header("Content-Length", length).tag(etag);
+        }
+        if (attachment) {
+            response.header("Content-Disposition", "attachment; filename=\"" + file.getName() + "\"" ); //optional
+        }
+        return vary(response.type(type).header("Accept-Ranges", "bytes").lastModified(lastModified), file, length);
     }
 
-    public void pipe(InputStream is, OutputStream os) throws IOException {
-        int n;
-        byte[] buffer = new byte[1024];
-        while ((n = is.read(buffer)) > -1) {
-            os.write(buffer, 0, n);   // Don't allow any extra bytes to creep in, final write
+    /**
+     * A range is only honoured if the If-Range validator, when present, still matches the file
+     */
+    private static boolean ifRange(String validator, String identity, Date lastModified) {
+        if (validator == null) {
+            return true;
+        }
+        if (validator.startsWith("\"")) {
+            return validator.equals("\"" + identity + "\"");
+        }
+        try {
+            return ZonedDateTime.parse(validator, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond() == lastModified.getTime() / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
         }
-        os.close();
     }
 
+    private static Response.ResponseBuilder vary(Response.ResponseBuilder response, File file, long length) {
+        return isCompressible(file, length) ? response.header("Vary", HttpHeaders.ACCEPT_ENCODING) : response;
+    }
 
+    private static boolean isCompressible(File file, long length) {
+        return length >= GZIP_MIN_LENGTH && !ReportStats.FILE_NAME.equals(file.getName())
+               && COMPRESSIBLE.contains(FilenameUtils.getExtension(file.getName()).toLowerCase());
+    }
 
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if ("gzip".equalsIgnoreCase(parts[0].trim())) {
+                return parts.length < 2 || !parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
 }
@@ -0,0 +1,102 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.endpoint.v1;
+
+import com.alh.gatling.commons.AgentConfig;
+import org.apache.commons.io.FileUtils;
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ *
+ */
+public class LogResourceTest {
+
+    private File file;
+    private ApplicationHandler handler;
+    private ByteArrayOutputStream body;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("task", ".log").toFile();
+        FileUtils.writeStringToFile(file, "0123456789", StandardCharsets.UTF_8);
+        AgentConfig agentConfig = new AgentConfig();
+        agentConfig.setLogServer(new AgentConfig.LogServer());
+        //the resource is built here, the jersey spring bridge only needs a context to look at
+        handler = new ApplicationHandler(new ResourceConfig().register(new LogResource(new FileTransfers(agentConfig)))
+                                                              .property("contextConfig", new AnnotationConfigApplicationContext()));
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(file);
+    }
+
+    private ContainerResponse get(String... headers) throws Exception {
+        URI uri = URI.create("http://localhost/log/file?filePath=" + URLEncoder.encode(file.getAbsolutePath(), "UTF-8"));
+        ContainerRequest request = new ContainerRequest(URI.create("http://localhost/"), uri, "GET", null, new MapPropertiesDelegate());
+        for (int i = 0; i < headers.length; i += 2) {
+            request.header(headers[i], headers[i + 1]);
+        }
+        body = new ByteArrayOutputStream();
+        return handler.apply(request, body).get();
+    }
+
+    @Test
+    public void testRangesAreServedPartially() throws Exception {
+        ContainerResponse response = get("Range", "bytes=2-5");
+        Assert.assertEquals(206, response.getStatus());
+        Assert.assertEquals("bytes 2-5/10", response.getHeaderString("Content-Range"));
+        Assert.assertEquals("2345", body.toString("UTF-8"));
+    }
+
+    @Test
+    public void testUnchangedFilesAreNotSentAgain() throws Exception {
+        ContainerResponse response = get();
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals("0123456789", body.toString("UTF-8"));
+
+        ContainerResponse notModified = get("If-None-Match", response.getEntityTag().toString());
+        Assert.assertEquals(304, notModified.getStatus());
+        Assert.assertEquals(0, body.size());
+    }
+
+    @Test
+    public void testRangesPastTheEndAreRejected() throws Exception {
+        ContainerResponse response = get("Range", "bytes=50-60");
+        Assert.assertEquals(416, response.getStatus());
+        Assert.assertEquals("bytes */10", response.getHeaderString("Content-Range"));
+    }
+}
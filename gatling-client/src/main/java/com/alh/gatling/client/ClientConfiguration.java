@@ -73,6 +73,14 @@ public class ClientConfiguration {
     clientConfig.setUserName(env.getProperty("client.userName"));
     clientConfig.setHost(HostUtils.lookupHost());
     clientConfig.setRemoteArtifact(Boolean.parseBoolean(env.getProperty("client.remoteArtifact")));
+    clientConfig.setPartitionFeeds(Boolean.parseBoolean(env.getProperty("client.partitionFeeds")));
+    clientConfig.setTotalUsers(env.getProperty("client.totalUsers", Long.class));
+    clientConfig.setTotalRps(env.getProperty("client.totalRps", Long.class));
+    clientConfig.setSplitStrategy(env.getProperty("client.splitStrategy"));
+    clientConfig.setTaskWeights(env.getProperty("client.taskWeights"));
+    clientConfig.setSynchronizedStart(Boolean.parseBoolean(env.getProperty("client.synchronizedStart")));
+    clientConfig.setTaskCpus(env.getProperty("client.taskCpus", Double.class));
+    clientConfig.setTaskMemoryMb(env.getProperty("client.taskMemoryMb", Long.class));
 
     return clientConfig;
   }
@@ -18,29 +18,127 @@
 
 package com.alh.gatling.client;
 
+import com.alh.gatling.commons.ArtifactCache;
 import com.alh.gatling.commons.HostUtils;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.entity.mime.HttpMultipartMode;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
 
 /**
  *  on 5/16/17.
  */
 public class UploadUtils {
     protected static final Log logger = LogFactory.getLog(UploadUtils.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final long CHUNK_SIZE = 8L * 1024 * 1024;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_DELAY_MILLIS = 1000;
 
-    public static String uploadFile(String server, String path,String basicToken)
+    /**
+     * Uploads the file in chunks under its SHA-256: content the server already holds is not sent again
+     * and a broken transfer resumes from the bytes the server received.
+     * Servers without the chunked upload api get the whole file in one multipart request.
+     * @return path of the file on the server
+     */
+    public static String uploadFile(String server, String path, String basicToken) throws IOException {
+        File file = new File(path);
+        String sha256 = ArtifactCache.sha256(file);
+        try (CloseableHttpClient client = HttpClientBuilder.create().build()) {
+            JsonNode upload = status(client, server, file, sha256, basicToken);
+            if (upload == null) {
+                logger.info("Chunked upload not available on " + server + ", uploading " + path + " at once");
+                return uploadWholeFile(server, path, basicToken);
+            }
+            if (upload.path("complete").asBoolean()) {
+                logger.info(path + " already on the server as " + sha256);
+            }
+            int failures = 0;
+            while (!upload.path("complete").asBoolean()) {
+                try {
+                    upload = putChunk(client, server, file, sha256, upload.path("offset").asLong(), basicToken);
+                    failures = 0;
+                } catch (IOException e) {
+                    if (++failures >= MAX_ATTEMPTS) {
+                        throw e;
+                    }
+                    logger.warn("Upload of " + path + " interrupted, resuming: " + e);
+                    sleep(RETRY_DELAY_MILLIS * failures);
+                    upload = status(client, server, file, sha256, basicToken);
+                }
+            }
+            logger.info(upload);
+            return upload.path("path").asText();
+        }
+    }
+
+    /**
+     * @return the state of the upload, null when the server has no chunked upload api
+     */
+    private static JsonNode status(CloseableHttpClient client, String server, File file, String sha256, String basicToken) throws IOException {
+        HttpGet get = new HttpGet(server + "/uploads/" + sha256 + "?name=" + URLEncoder.encode(file.getName(), "UTF-8"));
+        get.setHeader("Authorization", basicToken);
+        try (CloseableHttpResponse response = client.execute(get)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode == 404 || statusCode == 405) {
+                return null;
+            }
+            if (statusCode != 200) {
+                throw new IOException("Upload status of " + file + " failed with status " + statusCode);
+            }
+            return mapper.readTree(response.getEntity().getContent());
+        }
+    }
+
+    private static JsonNode putChunk(CloseableHttpClient client, String server, File file, String sha256, long offset, String basicToken) throws IOException {
+        long length = Math.min(CHUNK_SIZE, file.length() - offset);
+        HttpPut put = new HttpPut(server + "/uploads/" + sha256 + "?name=" + URLEncoder.encode(file.getName(), "UTF-8")
+                                  + "&size=" + file.length() + "&offset=" + offset);
+        put.setHeader("Authorization", basicToken);
+        try (InputStream input = new FileInputStream(file)) {
+            IOUtils.skipFully(input, offset);
+            put.setEntity(new InputStreamEntity(new BoundedInputStream(input, length), length, ContentType.APPLICATION_OCTET_STREAM));
+            try (CloseableHttpResponse response = client.execute(put)) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                // a conflict carries the state the server stands at, the next chunk starts from there
+                if (statusCode != 200 && statusCode != 409) {
+                    throw new IOException("Upload of " + file + " failed with status " + statusCode);
+                }
+                return mapper.readTree(response.getEntity().getContent());
+            }
+        }
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private static String uploadWholeFile(String server, String path,String basicToken)
         throws IOException {
         CloseableHttpClient client = HttpClientBuilder.create()
                 .build();
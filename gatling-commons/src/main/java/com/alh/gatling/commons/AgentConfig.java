@@ -42,6 +42,7 @@ public class AgentConfig {
     private Job job;
     private LogServer logServer;
     private String contactPoint;
+    private String schedulingPolicy;
 
     public Stream<String> getContactPoint() {
         String[] contacts = contactPoint.split(",") ;
@@ -53,6 +54,19 @@ public class AgentConfig {
         this.contactPoint = contactPoint;
     }
 
+    /**
+     * How the master places tasks on the agent hosts, spread (default) or binpack
+     */
+    public String getSchedulingPolicy() {
+        if (schedulingPolicy == null || schedulingPolicy.isEmpty())
+            return CapacityScheduler.SPREAD;
+        return schedulingPolicy;
+    }
+
+    public void setSchedulingPolicy(String schedulingPolicy) {
+        this.schedulingPolicy = schedulingPolicy;
+    }
+
     public LogServer getLogServer() {
         return logServer;
     }
@@ -89,6 +103,13 @@ public class AgentConfig {
         return getGenericUrl("gatling/server/abort","trackingId",StringUtils.EMPTY);
     }
 
+    /**
+     * End point serving the cached artifacts of this agent to its peers, the hash is appended
+     */
+    public String getPeerUrl() {
+        return getGenericUrl("api/artifact/file","sha256",StringUtils.EMPTY);
+    }
+
     public String getGenericUrl(String path,String queryStringKey,String queryStringValue) {
         String host = logServer.getHostName();
         if (StringUtils.isEmpty(logServer.getHostName())) {
@@ -117,6 +138,7 @@ public class AgentConfig {
     public static class LogServer {
         private int port;
         private String hostName;
+        private int maxTransfers = 8;
 
         public String getHostName() {
             return hostName;
@@ -134,6 +156,17 @@ public class AgentConfig {
             this.port = port;
         }
 
+        /**
+         * Maximum number of log files sent at the same time, further requests are asked to retry later
+         */
+        public int getMaxTransfers() {
+            return maxTransfers;
+        }
+
+        public void setMaxTransfers(int maxTransfers) {
+            this.maxTransfers = maxTransfers;
+        }
+
     }
 
     @XmlRootElement
@@ -186,6 +219,18 @@ public class AgentConfig {
         private String cpOrJar;
         private int[] exitValues;
         private String jobDirectory;
+        private String cacheDirectory;
+        private long cacheMaxBytes = 10L * 1024 * 1024 * 1024;
+        private long startBarrierTimeout = 300;
+        private String reportEngine;
+        private boolean preAggregateResults = true;
+        private int collectConcurrency = 16;
+        private int collectPerHost = 2;
+        private long reportCacheMaxBytes = 2L * 1024 * 1024 * 1024;
+        private int reportConcurrency;
+        private int partialReportInterval = 30;
+        private int peerSeeds = 2;
+        private int peerFanOut = 4;
 
         public String getJobDirectory(String taskId,String postFix, String filePath) {
             return jobDirectory + taskId + "/" + postFix + "/" + filePath;
@@ -199,6 +244,137 @@ public class AgentConfig {
             this.jobDirectory = jobDirectory;
         }
 
+        /**
+         * Defaults to a sub directory of the job directory so that tasks can hard link cached artifacts
+         */
+        public String getCacheDirectory() {
+            if (cacheDirectory == null || cacheDirectory.isEmpty())
+                return jobDirectory + ".cache/";
+            return cacheDirectory;
+        }
+
+        public void setCacheDirectory(String cacheDirectory) {
+            this.cacheDirectory = cacheDirectory;
+        }
+
+        public long getCacheMaxBytes() {
+            return cacheMaxBytes;
+        }
+
+        public void setCacheMaxBytes(long cacheMaxBytes) {
+            this.cacheMaxBytes = cacheMaxBytes;
+        }
+
+        /**
+         * Seconds a prepared task of a synchronized simulation waits for the start signal before failing
+         */
+        public long getStartBarrierTimeout() {
+            return startBarrierTimeout;
+        }
+
+        public void setStartBarrierTimeout(long startBarrierTimeout) {
+            this.startBarrierTimeout = startBarrierTimeout;
+        }
+
+        /**
+         * Engine building the reports from the simulation logs, {@link ReportExecutor#NATIVE} unless set to {@link ReportExecutor#GATLING}
+         */
+        public String getReportEngine() {
+            return reportEngine == null || reportEngine.isEmpty() ? ReportExecutor.NATIVE : reportEngine;
+        }
+
+        public void setReportEngine(String reportEngine) {
+            this.reportEngine = reportEngine;
+        }
+
+        /**
+         * Whether the tasks report their results as a {@link ReportStats} file instead of the raw simulation log
+         */
+        public boolean isPreAggregateResults() {
+            return preAggregateResults;
+        }
+
+        public void setPreAggregateResults(boolean preAggregateResults) {
+            this.preAggregateResults = preAggregateResults;
+        }
+
+        /**
+         * Maximum number of task results the master downloads at the same time to build a report
+         */
+        public int getCollectConcurrency() {
+            return collectConcurrency;
+        }
+
+        public void setCollectConcurrency(int collectConcurrency) {
+            this.collectConcurrency = collectConcurrency;
+        }
+
+        /**
+         * Maximum number of task results downloaded at the same time from one agent
+         */
+        public int getCollectPerHost() {
+            return collectPerHost;
+        }
+
+        public void setCollectPerHost(int collectPerHost) {
+            this.collectPerHost = collectPerHost;
+        }
+
+        /**
+         * Disk quota of the generated reports, least recently served reports are deleted first
+         */
+        public long getReportCacheMaxBytes() {
+            return reportCacheMaxBytes;
+        }
+
+        public void setReportCacheMaxBytes(long reportCacheMaxBytes) {
+            this.reportCacheMaxBytes = reportCacheMaxBytes;
+        }
+
+        /**
+         * Agents downloading an artifact straight from the master, the others fetch it from an agent holding it, 0 disables the peer downloads
+         */
+        public int getPeerSeeds() {
+            return peerSeeds;
+        }
+
+        public void setPeerSeeds(int peerSeeds) {
+            this.peerSeeds = peerSeeds;
+        }
+
+        /**
+         * Maximum number of agents fetching an artifact from the same agent
+         */
+        public int getPeerFanOut() {
+            return peerFanOut;
+        }
+
+        public void setPeerFanOut(int peerFanOut) {
+            this.peerFanOut = peerFanOut;
+        }
+
+        /**
+         * Maximum number of reports generated at the same time, derived from the cores and heap of the master unless set
+         */
+        public int getReportConcurrency() {
+            return reportConcurrency > 0 ? reportConcurrency : ReportExecutor.defaultConcurrency();
+        }
+
+        public void setReportConcurrency(int reportConcurrency) {
+            this.reportConcurrency = reportConcurrency;
+        }
+
+        /**
+         * Seconds between two refreshes of the partial report of a running simulation, 0 disables partial reports
+         */
+        public int getPartialReportInterval() {
+            return partialReportInterval;
+        }
+
+        public void setPartialReportInterval(int partialReportInterval) {
+            this.partialReportInterval = partialReportInterval;
+        }
+
         public String getLogDirectory() {
             return logDirectory;
         }
@@ -0,0 +1,464 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+/**
+ * Agent wide cache of downloaded artifacts (simulation jars and resource feeds).
+ * Files are stored under their SHA-256 so every artifact is fetched once per host,
+ * concurrent requests for the same artifact share a single download and the
+ * per task directories are populated with hard links into the cache.
+ * Least recently used artifacts are evicted once the cache grows over its quota, except those being linked or extracted.
+ * Zip feeds are also kept extracted, one directory per feed name, so a new version of a feed
+ * only rewrites the entries that changed.
+ * Artifacts with a known hash are fetched from the peers the master designates before the master itself,
+ * and the cache serves its own artifacts to the peers, see {@link #await(String, long)}.
+ */
+public class ArtifactCache {
+    private static final Logger log = LoggerFactory.getLogger(ArtifactCache.class);
+    private static final String INCOMING = ".incoming";
+    private static final String EXTRACTED = ".extracted";
+    private static final long INCOMING_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final int PIN_ATTEMPTS = 3;
+
+    private final File root;
+    private final File incoming;
+    private final File extracted;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // artifacts being linked or extracted, eviction skips them until they are unpinned
+    private final Map<String, Integer> pins = new HashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<File>> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Object> extractLocks = new ConcurrentHashMap<>();
+    private long totalBytes;
+
+    public ArtifactCache(File root, long maxBytes) {
+        this.root = root;
+        this.incoming = new File(root, INCOMING);
+        this.extracted = new File(root, EXTRACTED);
+        this.maxBytes = maxBytes;
+        incoming.mkdirs();
+        purgeIncoming();
+        load();
+    }
+
+    /**
+     * Makes the artifact available at the target path, downloading it into the cache first if needed
+     * @param url remote location of the artifact
+     * @param sha256 expected content hash, null when unknown
+     * @param target per task path to populate
+     * @return the target file
+     * @throws IOException if the artifact could not be fetched or linked
+     */
+    public File link(String url, String sha256, File target) throws IOException {
+        return link(url, sha256, Collections.emptyList(), target);
+    }
+
+    /**
+     * @param peers base urls of the agents to try before the url, the hash is appended to them
+     */
+    public File link(String url, String sha256, List<String> peers, File target) throws IOException {
+        File cached = fetchPinned(url, sha256, peers);
+        try {
+            FileUtils.deleteQuietly(target);
+            FileUtils.forceMkdir(target.getParentFile());
+            try {
+                Files.createLink(target.toPath(), cached.toPath());
+            } catch (IOException | UnsupportedOperationException e) {
+                log.debug("Hard link not possible for {}, copying instead: {}", target, e.toString());
+                Files.copy(cached.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            unpin(cached.getName());
+        }
+        return target;
+    }
+
+    /**
+     * Extracts a zip artifact and links its content into the target directory.
+     * On a cache miss the archive is extracted while it downloads and the bytes are kept in the cache,
+     * the next tasks extract from the cached archive and skip the entries that did not change.
+     * @param url remote location of the archive
+     * @param sha256 expected content hash, null when unknown
+     * @param name feed name, identifies the persistent extraction directory
+     * @param target per task directory to populate
+     * @throws IOException if the archive could not be fetched, extracted or linked
+     */
+    public void extract(String url, String sha256, String name, File target) throws IOException {
+        extract(url, sha256, Collections.emptyList(), name, target);
+    }
+
+    /**
+     * @param peers base urls of the agents to try before the url, the archive is then fetched whole from them
+     */
+    public void extract(String url, String sha256, List<String> peers, String name, File target) throws IOException {
+        File feedDir = new File(extracted, FilenameUtils.getName(name));
+        synchronized (extractLocks.computeIfAbsent(feedDir.getName(), key -> new Object())) {
+            File cached = pin(sha256);
+            if (cached == null && sha256 != null && peers != null && !peers.isEmpty()) {
+                cached = fetchPinned(url, sha256, peers);
+            }
+            if (cached == null) {
+                try {
+                    streamAndExtract(url, sha256, feedDir);
+                } catch (IOException e) {
+                    log.warn("Streaming extraction of {} failed ({}), downloading the archive first", url, e.toString());
+                    cached = fetchPinned(url, sha256, Collections.emptyList());
+                }
+            }
+            if (cached != null) {
+                try (InputStream input = new BufferedInputStream(new FileInputStream(cached))) {
+                    ZipStreamExtractor.extract(input, feedDir, true);
+                } finally {
+                    unpin(cached.getName());
+                }
+            }
+            linkTree(feedDir, target);
+        }
+    }
+
+    /**
+     * Returns the cached copy of the artifact, at most one download per key runs at any time
+     * @param url remote location of the artifact
+     * @param sha256 expected content hash, null when unknown
+     * @return the file in the cache
+     * @throws IOException if the download fails or does not match the expected hash
+     */
+    public File fetch(String url, String sha256) throws IOException {
+        return fetch(url, sha256, Collections.emptyList());
+    }
+
+    /**
+     * @param peers base urls of the agents to try before the url
+     */
+    public File fetch(String url, String sha256, List<String> peers) throws IOException {
+        File hit = lookup(sha256);
+        if (hit != null) {
+            return hit;
+        }
+        String key = sha256 != null ? sha256 : url;
+        CompletableFuture<File> flight = new CompletableFuture<>();
+        CompletableFuture<File> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            log.info("Waiting for in flight download of {}", url);
+            return await(existing);
+        }
+        try {
+            File file = lookup(sha256);
+            if (file == null) {
+                file = download(url, sha256, peers);
+            }
+            flight.complete(file);
+            return file;
+        } catch (IOException | RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Fetches the artifact and pins it, a concurrent download may evict it before it's pinned, it is fetched again then
+     * @return the file in the cache, to unpin once read
+     */
+    private File fetchPinned(String url, String sha256, List<String> peers) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            File cached = fetch(url, sha256, peers);
+            if (pin(cached.getName()) != null) {
+                return cached;
+            }
+            if (attempt == PIN_ATTEMPTS) {
+                throw new IOException("Artifact " + url + " was evicted from the cache before it could be used");
+            }
+            log.info("Artifact {} was evicted before it could be used, fetching it again", url);
+        }
+    }
+
+    /**
+     * The cached artifact, protected from eviction until it is unpinned
+     * @return the file in the cache, null when the cache doesn't hold it
+     */
+    synchronized File pin(String sha256) {
+        File file = lookup(sha256);
+        if (file != null) {
+            pins.merge(sha256, 1, Integer::sum);
+        }
+        return file;
+    }
+
+    synchronized void unpin(String sha256) {
+        if (pins.computeIfPresent(sha256, (key, count) -> count > 1 ? count - 1 : null) == null) {
+            evict(null);
+        }
+    }
+
+    public synchronized File lookup(String sha256) {
+        if (sha256 == null || !entries.containsKey(sha256)) {
+            return null;
+        }
+        File file = new File(root, sha256);
+        if (!file.exists()) {
+            totalBytes -= entries.remove(sha256);
+            return null;
+        }
+        touch(sha256);
+        return file;
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * The cached artifact, waiting for its download when one is in flight, for the peers fetching it from this agent
+     * @param sha256 hash of the artifact
+     * @param timeoutMillis longest wait for an in flight download
+     * @return the cached file, null if the artifact is neither cached nor being downloaded in time
+     */
+    public File await(String sha256, long timeoutMillis) {
+        File hit = lookup(sha256);
+        CompletableFuture<File> flight = inFlight.get(sha256);
+        if (hit != null || flight == null) {
+            return hit;
+        }
+        try {
+            return flight.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
+
+    private File download(String url, String sha256, List<String> peers) throws IOException {
+        // stable name per artifact, a failed download is resumed by the next task asking for it
+        File tmp = new File(incoming, incomingName(url, sha256));
+        if (sha256 != null && peers != null) {
+            // the content is verified against its hash, so any peer holding it is as good as the master
+            // and a transfer broken by one peer resumes from the next one
+            for (String peer : peers) {
+                try {
+                    String actual = DownloadFile.download(peer + sha256, tmp, sha256, 1);
+                    log.info("Cached {} from peer {} ({} bytes)", sha256, peer, tmp.length());
+                    return put(actual, tmp);
+                } catch (IOException e) {
+                    log.info("Peer {} could not serve {} ({}), trying the next source", peer, sha256, e.toString());
+                }
+            }
+        }
+        String actual = DownloadFile.download(url, tmp, sha256);
+        log.info("Cached {} as {} ({} bytes)", url, actual, tmp.length());
+        return put(actual, tmp);
+    }
+
+    private void streamAndExtract(String url, String sha256, File feedDir) throws IOException {
+        File tmp = new File(incoming, incomingName(url, sha256) + ".stream");
+        MessageDigest digest = newDigest();
+        try (OutputStream copy = new FileOutputStream(tmp);
+             InputStream input = new DigestInputStream(new TeeInputStream(DownloadFile.openStream(url), copy), digest)) {
+            ZipStreamExtractor.extract(input, feedDir, true);
+            // the central directory follows the last entry, the cached archive must be complete
+            IOUtils.copy(input, new NullOutputStream());
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(tmp);
+            ZipStreamExtractor.clear(feedDir);
+            throw e;
+        }
+        String actual = toHex(digest.digest());
+        if (sha256 != null && !sha256.equalsIgnoreCase(actual)) {
+            FileUtils.deleteQuietly(tmp);
+            ZipStreamExtractor.clear(feedDir);
+            throw new IOException("Checksum mismatch for " + url + ", expected " + sha256 + " but was " + actual);
+        }
+        log.info("Cached {} as {} ({} bytes) while extracting it", url, actual, tmp.length());
+        put(actual, tmp);
+    }
+
+    private static void linkTree(File source, File target) throws IOException {
+        Path from = source.toPath();
+        try (Stream<Path> files = Files.walk(from)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                Path link = target.toPath().resolve(from.relativize(file).toString());
+                Files.createDirectories(link.getParent());
+                Files.deleteIfExists(link);
+                try {
+                    Files.createLink(link, file);
+                } catch (IOException | UnsupportedOperationException e) {
+                    Files.copy(file, link, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    private static String incomingName(String url, String sha256) {
+        return sha256 != null ? sha256 : toHex(newDigest().digest(url.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private synchronized File put(String sha256, File tmp) throws IOException {
+        File file = new File(root, sha256);
+        if (!entries.containsKey(sha256) || !file.exists()) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Long previous = entries.put(sha256, file.length());
+            totalBytes += file.length() - (previous == null ? 0 : previous);
+        }
+        FileUtils.deleteQuietly(tmp);
+        touch(sha256);
+        evict(sha256);
+        return file;
+    }
+
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            if (entry.getKey().equals(keep) || pins.containsKey(entry.getKey())) {
+                continue;
+            }
+            // tasks already linked to the artifact keep their own hard link
+            FileUtils.deleteQuietly(new File(root, entry.getKey()));
+            totalBytes -= entry.getValue();
+            eldest.remove();
+            log.info("Evicted {} from artifact cache, {} bytes in use", entry.getKey(), totalBytes);
+        }
+    }
+
+    private void touch(String sha256) {
+        entries.get(sha256);
+        new File(root, sha256).setLastModified(System.currentTimeMillis());
+    }
+
+    private void purgeIncoming() {
+        File[] partials = incoming.listFiles();
+        if (partials != null) {
+            long expiry = System.currentTimeMillis() - INCOMING_RETENTION_MILLIS;
+            Arrays.stream(partials).filter(f -> f.lastModified() < expiry).forEach(FileUtils::deleteQuietly);
+        }
+    }
+
+    private synchronized void load() {
+        File[] files = root.listFiles(f -> f.isFile() && f.getName().matches("[0-9a-f]{64}"));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            entries.put(file.getName(), file.length());
+            totalBytes += file.length();
+        }
+        log.info("Artifact cache {} loaded with {} entries, {} bytes", root, entries.size(), totalBytes);
+        evict(null);
+    }
+
+    private static File await(CompletableFuture<File> flight) throws IOException {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Hash of a local file, used by the master to publish the expected hash of uploaded artifacts
+     * @param path local path
+     * @return hex encoded SHA-256 or null if the path is not a readable local file
+     */
+    public static String hashOf(String path) {
+        if (path == null || path.isEmpty() || !new File(path).isFile()) {
+            return null;
+        }
+        try {
+            return sha256(new File(path));
+        } catch (IOException e) {
+            log.warn("Unable to hash {}: {}", path, e.toString());
+            return null;
+        }
+    }
+
+    public static String sha256(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream input = new FileInputStream(file)) {
+            int n;
+            while ((n = input.read(buffer)) > -1) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,513 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Content addressed store of the artifacts uploaded to the master (simulation jars and resource feeds).
+ * Uploads stream in chunks straight into a partial file named after the SHA-256 announced by the client,
+ * so an interrupted upload resumes from the bytes already received, and the content is verified before it is published
+ * as {@code <root>/<sha256>/<name>}, a hard link to the content kept once per hash. Content the store already holds
+ * is never transferred again.
+ * The store is kept under its quota by evicting the least recently used artifacts, except those retained by
+ * a running simulation and those used within the minimum idle time.
+ */
+public class ArtifactStore {
+    private static final Logger log = LoggerFactory.getLogger(ArtifactStore.class);
+    private static final String INCOMING = ".incoming";
+    private static final long INCOMING_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final String CONTENT = ".content";
+    private static final Pattern SHA256 = Pattern.compile("[0-9a-f]{64}");
+    private static final int LOCK_STRIPES = 64;
+
+    private final File root;
+    private final File incoming;
+    private final long maxBytes;
+    private final long minIdleMillis;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Integer> references = new HashMap<>();
+    private long totalBytes;
+    // running digest of the partial uploads, rebuilt from the partial file when it is out of step
+    private final ConcurrentHashMap<String, Partial> partials = new ConcurrentHashMap<>();
+    // striped, a lock per hash ever seen would grow without bound. Never nested, eviction runs outside of them
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /**
+     * @param root directory of the store
+     * @param maxBytes quota of the stored content
+     * @param minIdleMillis time an artifact is kept after its last use whatever the quota
+     */
+    public ArtifactStore(File root, long maxBytes, long minIdleMillis) {
+        this.root = root;
+        this.incoming = new File(root, INCOMING);
+        this.maxBytes = maxBytes;
+        this.minIdleMillis = minIdleMillis;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        incoming.mkdirs();
+        purgeIncoming();
+        load();
+    }
+
+    /**
+     * @param sha256 hash of the whole content
+     * @param name file name the artifact is published under
+     * @return the stored artifact, or how many bytes of it were received so far
+     * @throws IOException if an existing copy can't be published under the name
+     */
+    public Upload status(String sha256, String name) throws IOException {
+        String hash = checkHash(sha256);
+        String fileName = checkName(name);
+        synchronized (lock(hash)) {
+            File stored = stored(hash, fileName);
+            return stored != null ? new Upload(hash, fileName, stored.length(), stored.getPath()) : new Upload(hash, fileName, part(hash).length(), null);
+        }
+    }
+
+    /**
+     * Appends a chunk to the upload, the artifact is verified and published once size bytes were received
+     * @param size length of the whole content
+     * @param offset position of the chunk, must be the number of bytes already received
+     * @param chunk bytes to append, read until its end
+     * @return the state of the upload after the chunk
+     * @throws IllegalStateException if offset is not where the upload stands, nothing is written then
+     * @throws IOException if the chunk can't be written, or the content goes past size or doesn't match its hash
+     */
+    public Upload append(String sha256, String name, long size, long offset, InputStream chunk) throws IOException {
+        String hash = checkHash(sha256);
+        String fileName = checkName(name);
+        Upload upload;
+        synchronized (lock(hash)) {
+            File stored = stored(hash, fileName);
+            if (stored != null) {
+                return new Upload(hash, fileName, stored.length(), stored.getPath());
+            }
+            File part = part(hash);
+            if (offset != part.length()) {
+                throw new IllegalStateException("Upload of " + hash + " stands at " + part.length() + ", not at " + offset);
+            }
+            Partial partial = partials.get(hash);
+            if (partial == null || partial.length != part.length()) {
+                partial = Partial.of(part);
+                partials.put(hash, partial);
+            }
+            byte[] buffer = new byte[64 * 1024];
+            try (OutputStream output = new FileOutputStream(part, true)) {
+                int n;
+                while ((n = chunk.read(buffer)) > -1) {
+                    if (partial.length + n > size) {
+                        discard(hash);
+                        throw new IOException("Upload of " + hash + " is longer than the announced " + size + " bytes");
+                    }
+                    output.write(buffer, 0, n);
+                    partial.digest.update(buffer, 0, n);
+                    partial.length += n;
+                }
+            } catch (IOException e) {
+                // what reached the disk is kept for the resume, the digest is rebuilt from it
+                partials.remove(hash);
+                throw e;
+            }
+            if (partial.length < size) {
+                return new Upload(hash, fileName, partial.length, null);
+            }
+            String actual = ArtifactCache.toHex(partial.digest.digest());
+            if (!hash.equals(actual)) {
+                discard(hash);
+                throw new IOException("Checksum mismatch for " + fileName + ", expected " + hash + " but was " + actual);
+            }
+            partials.remove(hash);
+            File content = content(hash);
+            FileUtils.forceMkdir(content.getParentFile());
+            Files.move(part.toPath(), content.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            log.info("Stored {} as {} ({} bytes)", fileName, hash, content.length());
+            File target = stored(hash, fileName);
+            upload = new Upload(hash, fileName, target.length(), target.getPath());
+        }
+        // outside of the lock of the artifact, eviction takes the locks of its victims
+        evict(hash);
+        return upload;
+    }
+
+    /**
+     * Stores a whole artifact in one go, for the clients that can't announce its hash
+     * @param name file name the artifact is published under
+     * @param input content, read until its end
+     * @return the stored artifact
+     * @throws IOException if the content can't be written
+     */
+    public Upload store(String name, InputStream input) throws IOException {
+        String fileName = checkName(name);
+        File tmp = new File(incoming, UUID.randomUUID().toString() + ".tmp");
+        MessageDigest digest = ArtifactCache.newDigest();
+        try {
+            try (OutputStream output = new DigestOutputStream(new FileOutputStream(tmp), digest)) {
+                IOUtils.copyLarge(input, output, new byte[64 * 1024]);
+            }
+            String hash = ArtifactCache.toHex(digest.digest());
+            Upload upload;
+            boolean added = false;
+            synchronized (lock(hash)) {
+                File stored = stored(hash, fileName);
+                if (stored == null) {
+                    File content = content(hash);
+                    FileUtils.forceMkdir(content.getParentFile());
+                    Files.move(tmp.toPath(), content.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    log.info("Stored {} as {} ({} bytes)", fileName, hash, content.length());
+                    stored = stored(hash, fileName);
+                    added = true;
+                }
+                upload = new Upload(hash, fileName, stored.length(), stored.getPath());
+            }
+            if (added) {
+                evict(hash);
+            }
+            return upload;
+        } finally {
+            FileUtils.deleteQuietly(tmp);
+        }
+    }
+
+    /**
+     * Hash of a stored artifact, read from its location instead of its content
+     * @param file published path of an artifact
+     * @return the hash, null if the file is not the content of an artifact of this store
+     */
+    public String hashOf(File file) {
+        String hash = directoryHash(file);
+        if (hash == null) {
+            return null;
+        }
+        try {
+            // the files derived from the artifact and kept next to it, like feed slices, are other contents
+            return Files.isSameFile(file.toPath(), content(hash).toPath()) ? hash : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Accounts for files written next to a stored artifact, like feed slices, they count toward the quota
+     * and are evicted with the artifact
+     * @param files files derived from the artifact, those outside of the store are ignored
+     */
+    public void derived(List<File> files) {
+        String hash = files.stream().map(this::directoryHash).filter(h -> h != null).findFirst().orElse(null);
+        if (hash == null) {
+            return;
+        }
+        synchronized (lock(hash)) {
+            if (!content(hash).isFile()) {
+                return;
+            }
+            long size = size(hash);
+            synchronized (this) {
+                Long previous = entries.put(hash, size);
+                totalBytes += size - (previous == null ? 0 : previous);
+            }
+        }
+        evict(hash);
+    }
+
+    /**
+     * Protects the artifact, and what is derived from it, from eviction until it is released
+     * @param path path of a file of the store
+     * @return the hash to release, null if the path is not in the store
+     */
+    public synchronized String retain(String path) {
+        String hash = path == null ? null : directoryHash(new File(path));
+        if (hash != null) {
+            references.merge(hash, 1, Integer::sum);
+            touch(hash);
+        }
+        return hash;
+    }
+
+    public void release(String hash) {
+        synchronized (this) {
+            if (hash == null || references.computeIfPresent(hash, (key, count) -> count > 1 ? count - 1 : null) != null) {
+                return;
+            }
+        }
+        evict(null);
+    }
+
+    /**
+     * Marks the artifact as used, it becomes the last one to be evicted
+     */
+    public synchronized void touch(String hash) {
+        if (entries.get(hash) != null) {
+            content(hash).setLastModified(System.currentTimeMillis());
+        }
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * The stored content under the name, null when the store doesn't hold it
+     */
+    private File stored(String hash, String fileName) throws IOException {
+        File content = content(hash);
+        if (!content.isFile()) {
+            return null;
+        }
+        File target = new File(content.getParentFile(), fileName);
+        if (!target.isFile()) {
+            try {
+                Files.createLink(target.toPath(), content.toPath());
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(content.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        long size = size(hash);
+        synchronized (this) {
+            Long previous = entries.put(hash, size);
+            totalBytes += size - (previous == null ? 0 : previous);
+            touch(hash);
+        }
+        return target;
+    }
+
+    /**
+     * Bytes held by the directory of an artifact: the content once, whatever the names it is published under,
+     * and the files derived from it
+     */
+    private long size(String hash) {
+        File content = content(hash);
+        long size = content.length();
+        File[] files = content.getParentFile().listFiles(File::isFile);
+        if (files != null) {
+            for (File file : files) {
+                try {
+                    if (!Files.isSameFile(file.toPath(), content.toPath())) {
+                        size += file.length();
+                    }
+                } catch (IOException e) {
+                    // deleted in between, nothing to count
+                }
+            }
+        }
+        return size;
+    }
+
+    private File content(String hash) {
+        return new File(new File(root, hash), CONTENT);
+    }
+
+    private String directoryHash(File file) {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir == null || !SHA256.matcher(dir.getName()).matches() || !root.getAbsoluteFile().equals(dir.getParentFile())) {
+            return null;
+        }
+        return dir.getName();
+    }
+
+    /**
+     * Removes the least recently used artifacts while the store is over its quota.
+     * The victims are picked under the store lock and deleted under their own lock, the one uploads and lookups take,
+     * so an artifact asked for in between is kept.
+     */
+    private void evict(String keep) {
+        List<String> victims = new ArrayList<>();
+        synchronized (this) {
+            long idleSince = System.currentTimeMillis() - minIdleMillis;
+            Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, Long> entry = eldest.next();
+                String hash = entry.getKey();
+                if (hash.equals(keep) || references.containsKey(hash) || content(hash).lastModified() > idleSince) {
+                    continue;
+                }
+                totalBytes -= entry.getValue();
+                eldest.remove();
+                victims.add(hash);
+            }
+        }
+        for (String hash : victims) {
+            synchronized (lock(hash)) {
+                synchronized (this) {
+                    if (entries.containsKey(hash)) {
+                        continue;
+                    }
+                }
+                FileUtils.deleteQuietly(new File(root, hash));
+                log.info("Evicted {} from the artifact store, {} bytes in use", hash, getTotalBytes());
+            }
+        }
+    }
+
+    private void load() {
+        File[] dirs = root.listFiles(f -> f.isDirectory() && SHA256.matcher(f.getName()).matches() && new File(f, CONTENT).isFile());
+        if (dirs == null) {
+            return;
+        }
+        Arrays.sort(dirs, Comparator.comparingLong(dir -> new File(dir, CONTENT).lastModified()));
+        synchronized (this) {
+            for (File dir : dirs) {
+                long length = size(dir.getName());
+                entries.put(dir.getName(), length);
+                totalBytes += length;
+            }
+        }
+        log.info("Artifact store {} loaded with {} artifacts, {} bytes", root, entries.size(), getTotalBytes());
+        evict(null);
+    }
+
+    private File part(String hash) {
+        return new File(incoming, hash + ".part");
+    }
+
+    private void discard(String hash) {
+        partials.remove(hash);
+        FileUtils.deleteQuietly(part(hash));
+    }
+
+    private Object lock(String hash) {
+        return locks[Math.floorMod(hash.hashCode(), LOCK_STRIPES)];
+    }
+
+    private static String checkHash(String sha256) {
+        String hash = sha256 == null ? "" : sha256.toLowerCase();
+        if (!SHA256.matcher(hash).matches()) {
+            throw new IllegalArgumentException("Not a hex encoded SHA-256: " + sha256);
+        }
+        return hash;
+    }
+
+    private static String checkName(String name) {
+        String fileName = FilenameUtils.getName(name);
+        if (fileName == null || fileName.isEmpty() || fileName.startsWith(".")) {
+            throw new IllegalArgumentException("Invalid artifact name: " + name);
+        }
+        return fileName;
+    }
+
+    private void purgeIncoming() {
+        File[] parts = incoming.listFiles();
+        if (parts != null) {
+            long expiry = System.currentTimeMillis() - INCOMING_RETENTION_MILLIS;
+            Arrays.stream(parts).filter(f -> f.lastModified() < expiry).forEach(FileUtils::deleteQuietly);
+        }
+    }
+
+    private static final class Partial {
+        final MessageDigest digest = ArtifactCache.newDigest();
+        long length;
+
+        static Partial of(File part) throws IOException {
+            Partial partial = new Partial();
+            if (part.isFile()) {
+                byte[] buffer = new byte[64 * 1024];
+                try (InputStream input = new FileInputStream(part)) {
+                    int n;
+                    while ((n = input.read(buffer)) > -1) {
+                        partial.digest.update(buffer, 0, n);
+                        partial.length += n;
+                    }
+                }
+            }
+            return partial;
+        }
+    }
+
+    /**
+     * State of an upload, path is set once the artifact is stored
+     */
+    public static final class Upload {
+        private final String sha256;
+        private final String name;
+        private final long offset;
+        private final String path;
+
+        public Upload(String sha256, String name, long offset, String path) {
+            this.sha256 = sha256;
+            this.name = name;
+            this.offset = offset;
+            this.path = path;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Bytes received so far, the length of the artifact once it is stored
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public boolean isComplete() {
+            return path != null;
+        }
+
+        @Override
+        public String toString() {
+            return "Upload{" +
+                   "sha256='" + sha256 + '\'' +
+                   ", name='" + name + '\'' +
+                   ", offset=" + offset +
+                   ", path='" + path + '\'' +
+                   '}';
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides where the agents fetch the artifacts of their tasks from, so that the master doesn't serve every agent of a large run.
+ * The master seeds the first agents asking for an artifact, every later agent is pointed at an agent that asked before it
+ * and still has room for children, in the order they asked, which builds a download tree of the given fan out:
+ * distribution time grows with the logarithm of the number of agents. A peer that can't serve the artifact in time
+ * is skipped by the agent, the master stays the last source.
+ */
+public class ArtifactSwarm {
+    private static final int MAX_ARTIFACTS = 100;
+
+    private final int seeds;
+    private final int fanOut;
+    // hash -> peer -> children, in the order the peers joined
+    private final LinkedHashMap<String, Swarm> swarms = new LinkedHashMap<String, Swarm>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Swarm> eldest) {
+            return size() > MAX_ARTIFACTS;
+        }
+    };
+
+    /**
+     * @param seeds agents fetching straight from the master
+     * @param fanOut agents each peer serves at most
+     */
+    public ArtifactSwarm(int seeds, int fanOut) {
+        this.seeds = seeds;
+        this.fanOut = fanOut;
+    }
+
+    /**
+     * Peers the agent should fetch the artifact from before the master, the agent then joins the peers of the artifact
+     * @param sha256 hash of the artifact, null when unknown
+     * @param peerUrl artifact end point of the agent, null when it doesn't serve its peers
+     * @return the peers, the parent first then a backup, empty to fetch from the master
+     */
+    public List<String> sources(String sha256, String peerUrl) {
+        //sent to the worker, a plain ArrayList keeps to the registered classes
+        List<String> sources = new ArrayList<>(2);
+        if (sha256 == null || peerUrl == null) {
+            return sources;
+        }
+        Swarm swarm = swarms.computeIfAbsent(sha256, key -> new Swarm());
+        if (swarm.children.containsKey(peerUrl)) {
+            //the agent already holds it or is fetching it
+            return sources;
+        }
+        if (swarm.seeded < seeds) {
+            swarm.seeded++;
+        } else {
+            for (Map.Entry<String, Integer> peer : swarm.children.entrySet()) {
+                if (sources.isEmpty() && peer.getValue() < fanOut) {
+                    peer.setValue(peer.getValue() + 1);
+                    sources.add(peer.getKey());
+                } else if (!sources.isEmpty()) {
+                    sources.add(peer.getKey());
+                    break;
+                }
+            }
+            if (sources.isEmpty()) {
+                //every peer is busy, the master serves it as one more seed
+                swarm.seeded++;
+            }
+        }
+        swarm.children.put(peerUrl, 0);
+        return sources;
+    }
+
+    /**
+     * Forgets an agent that left, it is no longer handed out as a source
+     */
+    public void remove(String peerUrl) {
+        if (peerUrl == null) {
+            return;
+        }
+        Iterator<Swarm> iterator = swarms.values().iterator();
+        while (iterator.hasNext()) {
+            iterator.next().children.remove(peerUrl);
+        }
+    }
+
+    private static final class Swarm {
+        private final LinkedHashMap<String, Integer> children = new LinkedHashMap<>();
+        private int seeded;
+    }
+}
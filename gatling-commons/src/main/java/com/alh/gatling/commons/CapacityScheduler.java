@@ -0,0 +1,137 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *  
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Picks the idle workers that run the next tasks from the capacity advertised by their hosts.
+ * SPREAD favours the host with the most spare cores so that the load generators don't compete with each other,
+ * BINPACK fills the busiest host that still fits before using another one.
+ * Hosts that did not advertise their capacity are assumed to fit.
+ */
+public class CapacityScheduler {
+    public static final String SPREAD = "spread";
+    public static final String BINPACK = "binpack";
+
+    public static final class Host {
+        public final String name;
+        public final HostCapacity capacity;
+        private final LinkedList<String> idleWorkers = new LinkedList<>();
+        private double usedCpus;
+        private long usedMemory;
+        private long placedMemory;
+        private int busy;
+        private int placed;
+
+        public Host(String name, HostCapacity capacity) {
+            this.name = name;
+            this.capacity = capacity;
+        }
+
+        public void addIdleWorker(String workerId) {
+            idleWorkers.add(workerId);
+        }
+
+        /**
+         * Accounts for a task the master already gave to a worker of the host
+         */
+        public void addRunningTask(double cpus, long memory) {
+            usedCpus += cpus;
+            usedMemory += memory;
+            busy++;
+        }
+
+        /**
+         * The heartbeat may lag behind the tasks the master just handed out
+         */
+        int runningTasks() {
+            return (capacity == null ? busy : Math.max(busy, capacity.runningTasks)) + placed;
+        }
+
+        double availableCpus() {
+            if (capacity == null) {
+                return 0;
+            }
+            return capacity.cores - Math.max(usedCpus, capacity.loadAverage);
+        }
+
+        long availableMemory() {
+            if (capacity == null) {
+                return 0;
+            }
+            return Math.min(capacity.freeMemory - placedMemory, capacity.totalMemory - usedMemory);
+        }
+
+        boolean fits(double cpus, long memory) {
+            if (idleWorkers.isEmpty()) {
+                return false;
+            }
+            return capacity == null || ((cpus <= 0 || availableCpus() >= cpus) && (memory <= 0 || availableMemory() >= memory));
+        }
+
+        private String place(double cpus, long memory) {
+            usedCpus += cpus;
+            usedMemory += memory;
+            placedMemory += memory;
+            placed++;
+            return idleWorkers.removeFirst();
+        }
+
+        @Override
+        public String toString() {
+            return "Host{" +
+                   "name='" + name + '\'' +
+                   ", capacity=" + capacity +
+                   ", idleWorkers=" + idleWorkers.size() +
+                   ", usedCpus=" + usedCpus +
+                   ", usedMemory=" + usedMemory +
+                   '}';
+        }
+    }
+
+    /**
+     * @param policy SPREAD or BINPACK, null means SPREAD
+     * @param hosts hosts with their idle workers and the tasks already running on them, updated with the placed tasks
+     * @param cpus cores needed by one task, 0 when not declared
+     * @param memory bytes needed by one task, 0 when not declared
+     * @param tasks number of tasks to place, all of them or none
+     * @return the worker of every task or an empty list when they don't all fit
+     */
+    public static List<String> place(String policy, Collection<Host> hosts, double cpus, long memory, int tasks) {
+        Comparator<Host> order = BINPACK.equalsIgnoreCase(policy)
+            ? Comparator.comparingDouble(Host::availableCpus).thenComparingInt(h -> -h.runningTasks())
+            : Comparator.comparingDouble((Host h) -> -h.availableCpus()).thenComparingInt(Host::runningTasks).thenComparingLong(h -> -h.availableMemory());
+        List<String> workers = new ArrayList<>(tasks);
+        for (int i = 0; i < tasks; i++) {
+            Optional<Host> host = hosts.stream().filter(h -> h.fits(cpus, memory)).min(order);
+            if (!host.isPresent()) {
+                return Collections.emptyList();
+            }
+            workers.add(host.get().place(cpus, memory));
+        }
+        return workers;
+    }
+}
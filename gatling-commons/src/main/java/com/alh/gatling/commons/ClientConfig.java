@@ -45,6 +45,14 @@ public class ClientConfig implements Serializable {
     private boolean remoteArtifact;
     private String resourcesFeedFileName;
     private String jarFileName;
+    private boolean partitionFeeds;
+    private Long totalUsers;
+    private Long totalRps;
+    private String splitStrategy;
+    private String taskWeights;
+    private boolean synchronizedStart;
+    private Double taskCpus;
+    private Long taskMemoryMb;
 
     public String getResourcesFeedFileName() {
 		return resourcesFeedFileName;
@@ -183,4 +191,68 @@ public class ClientConfig implements Serializable {
     public String getJarFileName() {
         return jarFileName;
     }
+
+    public boolean isPartitionFeeds() {
+        return partitionFeeds;
+    }
+
+    public void setPartitionFeeds(boolean partitionFeeds) {
+        this.partitionFeeds = partitionFeeds;
+    }
+
+    public Long getTotalUsers() {
+        return totalUsers;
+    }
+
+    public void setTotalUsers(Long totalUsers) {
+        this.totalUsers = totalUsers;
+    }
+
+    public Long getTotalRps() {
+        return totalRps;
+    }
+
+    public void setTotalRps(Long totalRps) {
+        this.totalRps = totalRps;
+    }
+
+    public String getSplitStrategy() {
+        return splitStrategy;
+    }
+
+    public void setSplitStrategy(String splitStrategy) {
+        this.splitStrategy = splitStrategy;
+    }
+
+    public String getTaskWeights() {
+        return taskWeights;
+    }
+
+    public void setTaskWeights(String taskWeights) {
+        this.taskWeights = taskWeights;
+    }
+
+    public boolean isSynchronizedStart() {
+        return synchronizedStart;
+    }
+
+    public void setSynchronizedStart(boolean synchronizedStart) {
+        this.synchronizedStart = synchronizedStart;
+    }
+
+    public Double getTaskCpus() {
+        return taskCpus;
+    }
+
+    public void setTaskCpus(Double taskCpus) {
+        this.taskCpus = taskCpus;
+    }
+
+    public Long getTaskMemoryMb() {
+        return taskMemoryMb;
+    }
+
+    public void setTaskMemoryMb(Long taskMemoryMb) {
+        this.taskMemoryMb = taskMemoryMb;
+    }
 }
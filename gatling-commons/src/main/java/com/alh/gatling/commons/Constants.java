@@ -20,4 +20,5 @@ package com.alh.gatling.commons;
 
 public interface  Constants {
     String PerformanceSystem ="PerformanceSystem";
+    String MetricRegistryName ="gatling";
 }
\ No newline at end of file
@@ -1,7 +1,7 @@
 /*
  *
  *   Copyright 2016 alh Technology
- *  
+ *
  *   Licensed under the Apache License, Version 2.0 (the "License");
  *   you may not use this file except in compliance with the License.
  *   You may obtain a copy of the License at
@@ -19,59 +19,460 @@
 package com.alh.gatling.commons;
 
 
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import net.lingala.zip4j.core.ZipFile;
-import net.lingala.zip4j.exception.ZipException;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
 
 
 /**
- *  on 3/28/16.
+ * Download engine used by the agents to pull artifacts and by the master to pull simulation logs.
+ * When the server honours Range requests the file is fetched as fixed size chunks in parallel,
+ * each chunk is retried with exponential backoff from the last byte written and the completed
+ * chunks are recorded in a side file so an interrupted download resumes where it stopped.
+ * Servers without Range support get a single stream, retried from scratch.
+ * The content is verified against the expected SHA-256 when the master supplies one.
  */
 public class DownloadFile {
+    private static final Logger log = LoggerFactory.getLogger(DownloadFile.class);
     private static final int READ_TIMEOUT = 1000 * 60;
     private static final int CONNECTION_TIMEOUT = 1000 * 5;
+    private static final long CHUNK_SIZE = 8L * 1024 * 1024;
+    private static final int CHUNKS_IN_FLIGHT = 4;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 15000;
+    private static final String STATE_SUFFIX = ".state";
+
+    private static final ExecutorService chunkPool = Executors.newFixedThreadPool(8, runnable -> {
+        Thread thread = new Thread(runnable, "download-chunk");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final MetricRegistry metrics = SharedMetricRegistries.getOrCreate(Constants.MetricRegistryName);
+    private static final Meter bytesMeter = metrics.meter("download.bytes");
+    private static final Meter retryMeter = metrics.meter("download.retries");
+    private static final Meter failureMeter = metrics.meter("download.failures");
+    private static final Timer downloadTimer = metrics.timer("download.time");
+
+    public static void download(String path, File dest) throws IOException {
+        download(path, dest, null);
+    }
+
+    /**
+     * Downloads the url into dest, resuming a previous partial download of the same file if any
+     * @param path url of the artifact
+     * @param dest local file
+     * @param sha256 expected hex encoded SHA-256, null to skip verification
+     * @return the SHA-256 of the downloaded content
+     * @throws IOException when the download fails after all retries or the checksum does not match
+     */
+    public static String download(String path, File dest, String sha256) throws IOException {
+        return download(path, dest, sha256, MAX_ATTEMPTS);
+    }
 
-    public static boolean downloadFile(String path,String destPath){
+    /**
+     * Same as {@link #download(String, File, String)} with the number of attempts of every request,
+     * a single attempt gives up at the first failure so that the caller can turn to another source,
+     * the partial file is then resumed from there
+     */
+    public static String download(String path, File dest, String sha256, int attempts) throws IOException {
+        Timer.Context time = downloadTimer.time();
+        long start = System.currentTimeMillis();
         try {
-            FileUtils.copyURLToFile(new URL(path),new File(destPath),CONNECTION_TIMEOUT,READ_TIMEOUT);
-            return true;
+            URL url = new URL(path);
+            FileUtils.forceMkdir(dest.getAbsoluteFile().getParentFile());
+            boolean http = url.getProtocol().startsWith("http");
+            String actual = http ? downloadHttp(url, dest, attempts) : downloadStream(url, dest, attempts);
+            if (sha256 != null && !sha256.equalsIgnoreCase(actual)) {
+                FileUtils.deleteQuietly(dest);
+                throw new IOException("Checksum mismatch for " + path + ", expected " + sha256 + " but was " + actual);
+            }
+            long millis = Math.max(1, System.currentTimeMillis() - start);
+            log.info("Downloaded {} to {}, {} bytes in {} ms ({} KB/s)", path, dest, dest.length(), millis, dest.length() / millis);
+            return actual;
         } catch (IOException e) {
-            e.printStackTrace();
+            failureMeter.mark();
+            throw e;
+        } finally {
+            time.stop();
         }
-        return false;
     }
-    
 
-    public static boolean downloadFileAndUnzip(String path,String destPath){
-    	try {
-            FileUtils.copyURLToFile(new URL(path),new File(destPath),CONNECTION_TIMEOUT,READ_TIMEOUT);
-            
-            int index = destPath.lastIndexOf("/");
-            String basePath = destPath.substring(0, index);
-            
-            try {
-                 ZipFile zipFile = new ZipFile(new File(destPath));
-                 zipFile.extractAll(basePath);
-            } catch (ZipException e) {
-                e.printStackTrace();
+    /**
+     * Downloads the url into dest as a single stream, asking the server to gzip it on the fly.
+     * Meant for text files like simulation logs that compress well, the whole file is fetched again on retry.
+     * @param path url of the file
+     * @param dest local file, written decompressed
+     * @return number of bytes received on the wire
+     * @throws IOException when the download fails after all retries
+     */
+    public static long downloadCompressed(String path, File dest) throws IOException {
+        Timer.Context time = downloadTimer.time();
+        try {
+            URL url = new URL(path);
+            FileUtils.forceMkdir(dest.getAbsoluteFile().getParentFile());
+            if (!url.getProtocol().startsWith("http")) {
+                downloadStream(url, dest, MAX_ATTEMPTS);
+                return dest.length();
             }
-            
-            return true;
+            return withRetries(url, () -> {
+                HttpURLConnection connection = open(url);
+                try {
+                    connection.setRequestProperty("Accept-Encoding", "gzip");
+                    int status = connection.getResponseCode();
+                    if (status >= 400) {
+                        throw new IOException("Server returned " + status + " for " + url);
+                    }
+                    AtomicLong received = new AtomicLong();
+                    InputStream wire = new ProxyInputStream(connection.getInputStream()) {
+                        @Override
+                        protected void afterRead(int n) {
+                            if (n > 0) {
+                                received.addAndGet(n);
+                                bytesMeter.mark(n);
+                            }
+                        }
+                    };
+                    boolean gzip = "gzip".equalsIgnoreCase(connection.getHeaderField("Content-Encoding"));
+                    try (InputStream input = gzip ? new GZIPInputStream(wire, 64 * 1024) : wire;
+                         OutputStream output = new FileOutputStream(dest)) {
+                        IOUtils.copyLarge(input, output, new byte[64 * 1024]);
+                    }
+                    return received.get();
+                } finally {
+                    connection.disconnect();
+                }
+            });
         } catch (IOException e) {
-            e.printStackTrace();
+            failureMeter.mark();
+            throw e;
+        } finally {
+            time.stop();
         }
-        return false;
     }
-    
-    
 
+    /**
+     * Downloads the bytes of the url from offset to its current end, used to follow a file that is still growing.
+     * @param path url of the file
+     * @param offset first byte to fetch
+     * @param dest local file, overwritten with the bytes after offset
+     * @return number of bytes written to dest, 0 when the file did not grow past offset
+     * @throws IOException when the download fails after all retries
+     */
+    public static long downloadFrom(String path, long offset, File dest) throws IOException {
+        URL url = new URL(path);
+        FileUtils.forceMkdir(dest.getAbsoluteFile().getParentFile());
+        if (!url.getProtocol().startsWith("http")) {
+            try (InputStream input = url.openStream(); OutputStream output = new FileOutputStream(dest)) {
+                IOUtils.skipFully(input, Math.min(offset, Math.max(0, new File(url.getPath()).length())));
+                return IOUtils.copyLarge(input, output, new byte[64 * 1024]);
+            }
+        }
+        return withRetries(url, () -> {
+            HttpURLConnection connection = open(url);
+            try {
+                connection.setRequestProperty("Range", "bytes=" + offset + "-");
+                int status = connection.getResponseCode();
+                if (status == 416) {
+                    FileUtils.write(dest, "", StandardCharsets.UTF_8);
+                    return 0L;
+                }
+                if (status >= 400) {
+                    throw new IOException("Server returned " + status + " for " + url);
+                }
+                try (InputStream input = connection.getInputStream(); OutputStream output = new FileOutputStream(dest)) {
+                    if (status != 206) {
+                        //the server ignored the range
+                        IOUtils.skipFully(input, offset);
+                    }
+                    long copied = IOUtils.copyLarge(input, output, new byte[64 * 1024]);
+                    bytesMeter.mark(copied);
+                    return copied;
+                }
+            } finally {
+                connection.disconnect();
+            }
+        });
+    }
 
-}
+    /**
+     * Streams the archive straight into the target directory, entries are extracted as the bytes arrive
+     * @param path url of the zip file
+     * @param targetDir directory to extract into
+     * @param sha256 expected hex encoded SHA-256 of the archive, null to skip verification
+     * @throws IOException when the download fails after all retries or the checksum does not match
+     */
+    public static void downloadAndExtract(String path, File targetDir, String sha256) throws IOException {
+        URL url = new URL(path);
+        withRetries(url, () -> {
+            MessageDigest digest = ArtifactCache.newDigest();
+            try (InputStream input = new DigestInputStream(openStream(path), digest)) {
+                ZipStreamExtractor.extract(input, targetDir, false);
+                IOUtils.copy(input, new NullOutputStream());
+            }
+            String actual = ArtifactCache.toHex(digest.digest());
+            if (sha256 != null && !sha256.equalsIgnoreCase(actual)) {
+                throw new IOException("Checksum mismatch for " + path + ", expected " + sha256 + " but was " + actual);
+            }
+            return actual;
+        });
+    }
+
+    /**
+     * Plain stream of the url with the engine timeouts, bytes read are reported in the download metrics
+     */
+    public static InputStream openStream(String path) throws IOException {
+        URLConnection connection = new URL(path).openConnection();
+        connection.setConnectTimeout(CONNECTION_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        return new ProxyInputStream(connection.getInputStream()) {
+            @Override
+            protected void afterRead(int n) {
+                if (n > 0) {
+                    bytesMeter.mark(n);
+                }
+            }
+        };
+    }
+
+    private static String downloadHttp(URL url, File dest, int attempts) throws IOException {
+        File stateFile = new File(dest.getPath() + STATE_SUFFIX);
+        // a one byte probe tells whether ranges are honoured, the full length and the validator of the entity
+        AtomicReference<String> validator = new AtomicReference<>();
+        HttpRange entity = withRetries(url, attempts, () -> {
+            HttpURLConnection probe = open(url);
+            try {
+                probe.setRequestProperty("Range", "bytes=0-0");
+                int status = probe.getResponseCode();
+                if (status == HttpURLConnection.HTTP_PARTIAL) {
+                    String etag = probe.getHeaderField("ETag");
+                    validator.set(etag != null && !etag.startsWith("W/") ? etag : probe.getHeaderField("Last-Modified"));
+                    HttpRange range = HttpRange.fromContentRange(probe.getHeaderField("Content-Range"));
+                    if (range != null && range.total > -1) {
+                        return new HttpRange(0, range.total - 1, range.total);
+                    }
+                } else if (status == 416) {
+                    return new HttpRange(0, -1, 0);
+                } else if (status >= 400) {
+                    throw new IOException("Server returned " + status + " for " + url);
+                }
+                return null;
+            } finally {
+                probe.disconnect();
+            }
+        });
+        if (entity == null) {
+            log.debug("{} does not support ranges, falling back to a single stream", url);
+            FileUtils.deleteQuietly(stateFile);
+            return downloadStream(url, dest, attempts);
+        }
+        ChunkState state = ChunkState.load(stateFile, dest, entity.total, validator.get());
+        try (FileChannel channel = FileChannel.open(dest.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            int chunks = (int) ((entity.total + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            AtomicInteger next = new AtomicInteger();
+            List<Future<Void>> workers = new ArrayList<>();
+            for (int i = 0; i < Math.min(CHUNKS_IN_FLIGHT, chunks); i++) {
+                workers.add(chunkPool.submit(() -> {
+                    for (int chunk = next.getAndIncrement(); chunk < chunks; chunk = next.getAndIncrement()) {
+                        if (!state.isDone(chunk)) {
+                            long start = chunk * CHUNK_SIZE;
+                            fetchRange(url, channel, start, Math.min(start + CHUNK_SIZE, entity.total) - 1, validator.get(), attempts);
+                            state.markDone(chunk);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            awaitAll(workers);
+            channel.truncate(entity.total);
+            channel.force(false);
+        }
+        FileUtils.deleteQuietly(stateFile);
+        return ArtifactCache.sha256(dest);
+    }
+
+    private static void fetchRange(URL url, FileChannel channel, long start, long end, String validator, int attempts) throws IOException {
+        AtomicLong position = new AtomicLong(start);
+        withRetries(url, attempts, () -> {
+            HttpURLConnection connection = open(url);
+            try {
+                connection.setRequestProperty("Range", "bytes=" + position.get() + "-" + end);
+                if (validator != null) {
+                    connection.setRequestProperty("If-Range", validator);
+                }
+                int status = connection.getResponseCode();
+                if (status != HttpURLConnection.HTTP_PARTIAL) {
+                    throw new IOException("Expected a partial response for " + url + " but got " + status);
+                }
+                byte[] buffer = new byte[64 * 1024];
+                try (InputStream input = connection.getInputStream()) {
+                    int n;
+                    while (position.get() <= end && (n = input.read(buffer)) > -1) {
+                        int length = (int) Math.min(n, end - position.get() + 1);
+                        ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, length);
+                        while (bytes.hasRemaining()) {
+                            channel.write(bytes, position.get() + bytes.position());
+                        }
+                        position.addAndGet(length);
+                        bytesMeter.mark(length);
+                    }
+                }
+                if (position.get() <= end) {
+                    throw new EOFException("Range " + start + "-" + end + " of " + url + " ended at " + position.get());
+                }
+                return null;
+            } finally {
+                connection.disconnect();
+            }
+        });
+    }
+
+    private static String downloadStream(URL url, File dest, int attempts) throws IOException {
+        return withRetries(url, attempts, () -> {
+            URLConnection connection = url.openConnection();
+            connection.setConnectTimeout(CONNECTION_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            MessageDigest digest = ArtifactCache.newDigest();
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream input = connection.getInputStream(); OutputStream output = new FileOutputStream(dest)) {
+                int n;
+                while ((n = input.read(buffer)) > -1) {
+                    output.write(buffer, 0, n);
+                    digest.update(buffer, 0, n);
+                    bytesMeter.mark(n);
+                }
+            }
+            return ArtifactCache.toHex(digest.digest());
+        });
+    }
+
+    private static HttpURLConnection open(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(CONNECTION_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        return connection;
+    }
 
+    private static <T> T withRetries(URL url, IOCall<T> call) throws IOException {
+        return withRetries(url, MAX_ATTEMPTS, call);
+    }
 
+    private static <T> T withRetries(URL url, int attempts, IOCall<T> call) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.call();
+            } catch (IOException e) {
+                if (attempt >= attempts) {
+                    throw e;
+                }
+                long backoff = Math.min(MAX_BACKOFF_MILLIS, BACKOFF_MILLIS << (attempt - 1));
+                backoff += ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                log.warn("Attempt {} for {} failed ({}), retrying in {} ms", attempt, url, e.toString(), backoff);
+                retryMeter.mark();
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while downloading " + url, interrupted);
+                }
+            }
+        }
+    }
 
+    private static void awaitAll(List<Future<Void>> workers) throws IOException {
+        try {
+            for (Future<Void> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            workers.forEach(worker -> worker.cancel(true));
+        }
+    }
+
+    private interface IOCall<T> {
+        T call() throws IOException;
+    }
+
+    /**
+     * Completed chunks of a partial download, the first line of the side file identifies the
+     * remote entity (length and validator), the following lines are the completed chunk indexes
+     */
+    private static final class ChunkState {
+        private final File file;
+        private final BitSet done = new BitSet();
+
+        private ChunkState(File file) {
+            this.file = file;
+        }
+
+        static ChunkState load(File file, File dest, long total, String validator) throws IOException {
+            ChunkState state = new ChunkState(file);
+            String header = total + " " + validator;
+            if (file.exists() && dest.exists()) {
+                List<String> lines = FileUtils.readLines(file, StandardCharsets.UTF_8);
+                if (!lines.isEmpty() && lines.get(0).equals(header)) {
+                    lines.stream().skip(1).filter(line -> !line.isEmpty()).forEach(line -> state.done.set(Integer.parseInt(line)));
+                    log.info("Resuming download of {}, {} chunks already present", dest, state.done.cardinality());
+                    return state;
+                }
+            }
+            FileUtils.deleteQuietly(dest);
+            FileUtils.writeStringToFile(file, header + "\n", StandardCharsets.UTF_8);
+            return state;
+        }
+
+        synchronized boolean isDone(int chunk) {
+            return done.get(chunk);
+        }
+
+        synchronized void markDone(int chunk) throws IOException {
+            done.set(chunk);
+            FileUtils.writeStringToFile(file, chunk + "\n", StandardCharsets.UTF_8, true);
+        }
+    }
+}
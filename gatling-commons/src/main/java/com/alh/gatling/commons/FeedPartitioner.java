@@ -0,0 +1,258 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Splits a resources zip into disjoint slices, one per task, so that every generator only downloads
+ * and iterates its own share of the feed records.
+ * CSV files keep their header in every slice, JSON files holding a top level array are split by element,
+ * records are dealt round robin. Any other entry (bodies, templates...) is copied to every slice.
+ * Slices are named after their content hash and only appear once complete, so concurrent submissions of
+ * the same feed share identical slices and never rewrite a slice an agent may be downloading.
+ */
+public class FeedPartitioner {
+    private static final Logger log = LoggerFactory.getLogger(FeedPartitioner.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * @param zip resources archive uploaded by the user
+     * @param partitions number of slices, usually the task count
+     * @return the slices, written next to the archive, or the archive itself when there is nothing to split
+     * @throws IOException if the archive can't be read or the slices can't be written
+     */
+    public static List<File> partition(File zip, int partitions) throws IOException {
+        List<File> slices = new ArrayList<>(partitions);
+        if (partitions <= 1) {
+            slices.add(zip);
+            return slices;
+        }
+        String base = FilenameUtils.removeExtension(zip.getName());
+        List<File> temps = new ArrayList<>(partitions);
+        List<MessageDigest> digests = new ArrayList<>(partitions);
+        List<ZipOutputStream> outputs = new ArrayList<>(partitions);
+        boolean success = false;
+        try (ZipInputStream input = new ZipInputStream(new BufferedInputStream(new FileInputStream(zip)))) {
+            for (int i = 0; i < partitions; i++) {
+                File temp = File.createTempFile(base + ".part" + (i + 1), ".tmp", zip.getParentFile());
+                temps.add(temp);
+                MessageDigest digest = ArtifactCache.newDigest();
+                digests.add(digest);
+                outputs.add(new ZipOutputStream(new BufferedOutputStream(new DigestOutputStream(new FileOutputStream(temp), digest))));
+            }
+            ZipEntry entry;
+            while ((entry = input.getNextEntry()) != null) {
+                for (ZipOutputStream output : outputs) {
+                    ZipEntry slice = new ZipEntry(entry.getName());
+                    // the time of the source entry, not the current one, so that the same feed gives the same slices
+                    slice.setTime(entry.getTime() == -1 ? 0 : entry.getTime());
+                    output.putNextEntry(slice);
+                }
+                String name = entry.getName().toLowerCase();
+                if (entry.isDirectory()) {
+                    // nothing to write
+                } else if (name.endsWith(".csv")) {
+                    int records = splitCsv(input, outputs);
+                    log.info("Partitioned {} records of {} into {} slices", records, entry.getName(), partitions);
+                } else if (name.endsWith(".json")) {
+                    int records = splitJson(input, outputs);
+                    log.info("Partitioned {} records of {} into {} slices", records, entry.getName(), partitions);
+                } else {
+                    copyToAll(input, outputs);
+                }
+                for (ZipOutputStream output : outputs) {
+                    output.closeEntry();
+                }
+            }
+            for (ZipOutputStream output : outputs) {
+                output.close();
+            }
+            for (int i = 0; i < partitions; i++) {
+                String hash = ArtifactCache.toHex(digests.get(i).digest());
+                File slice = new File(zip.getParentFile(), base + ".part" + (i + 1) + "of" + partitions + "." + hash + ".zip");
+                if (slice.isFile()) {
+                    // an earlier submission produced the same slice, it is left untouched
+                    FileUtils.deleteQuietly(temps.get(i));
+                } else {
+                    Files.move(temps.get(i).toPath(), slice.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                }
+                slices.add(slice);
+            }
+            success = true;
+        } finally {
+            outputs.forEach(IOUtils::closeQuietly);
+            if (!success) {
+                temps.forEach(FileUtils::deleteQuietly);
+            }
+        }
+        return slices;
+    }
+
+    private static int splitCsv(InputStream input, List<ZipOutputStream> outputs) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new CloseShieldInputStream(input), StandardCharsets.UTF_8));
+        List<Writer> writers = new ArrayList<>(outputs.size());
+        for (ZipOutputStream output : outputs) {
+            writers.add(new OutputStreamWriter(new CloseShieldOutputStream(output), StandardCharsets.UTF_8));
+        }
+        String header = readRecord(reader);
+        if (header != null) {
+            for (Writer writer : writers) {
+                writer.write(header);
+                writer.write('\n');
+            }
+        }
+        int records = 0;
+        String record;
+        while ((record = readRecord(reader)) != null) {
+            if (record.isEmpty()) {
+                continue;
+            }
+            Writer writer = writers.get(records++ % writers.size());
+            writer.write(record);
+            writer.write('\n');
+        }
+        for (Writer writer : writers) {
+            writer.flush();
+        }
+        warnIfShort(records, outputs.size());
+        return records;
+    }
+
+    /**
+     * Reads one csv record, quoted fields may span several lines
+     */
+    private static String readRecord(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            return null;
+        }
+        StringBuilder record = new StringBuilder(line);
+        int quotes = count(line);
+        while (quotes % 2 == 1 && (line = reader.readLine()) != null) {
+            record.append('\n').append(line);
+            quotes += count(line);
+        }
+        return record.toString();
+    }
+
+    private static int count(String line) {
+        int quotes = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '"') {
+                quotes++;
+            }
+        }
+        return quotes;
+    }
+
+    private static int splitJson(InputStream input, List<ZipOutputStream> outputs) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(new CloseShieldInputStream(input));
+        if (!startsWithArray(buffered)) {
+            // objects and scalars can't be split, every slice gets the whole file
+            copyToAll(buffered, outputs);
+            return 0;
+        }
+        List<JsonGenerator> generators = new ArrayList<>(outputs.size());
+        for (ZipOutputStream output : outputs) {
+            JsonGenerator generator = mapper.getFactory().createGenerator(new CloseShieldOutputStream(output));
+            generator.writeStartArray();
+            generators.add(generator);
+        }
+        int records = 0;
+        try (JsonParser parser = mapper.getFactory().createParser(buffered)) {
+            parser.nextToken();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                JsonNode node = mapper.readTree(parser);
+                generators.get(records++ % generators.size()).writeTree(node);
+            }
+        }
+        for (JsonGenerator generator : generators) {
+            generator.writeEndArray();
+            generator.close();
+        }
+        warnIfShort(records, outputs.size());
+        return records;
+    }
+
+    private static boolean startsWithArray(BufferedInputStream input) throws IOException {
+        input.mark(64 * 1024);
+        try {
+            int b;
+            while ((b = input.read()) > -1) {
+                if (!Character.isWhitespace(b) && b != 0xEF && b != 0xBB && b != 0xBF) {
+                    return b == '[';
+                }
+            }
+            return false;
+        } finally {
+            input.reset();
+        }
+    }
+
+    private static void copyToAll(InputStream input, List<? extends OutputStream> outputs) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        int n;
+        while ((n = input.read(buffer)) > -1) {
+            for (OutputStream output : outputs) {
+                output.write(buffer, 0, n);
+            }
+        }
+    }
+
+    private static void warnIfShort(int records, int partitions) {
+        if (records < partitions) {
+            log.warn("Only {} records for {} slices, some tasks will get an empty feed", records, partitions);
+        }
+    }
+}
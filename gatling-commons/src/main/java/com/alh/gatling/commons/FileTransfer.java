@@ -0,0 +1,54 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Sends files to http responses with FileChannel.transferTo, the kernel copies the bytes without going through the heap.
+ */
+public class FileTransfer {
+
+    /**
+     * Sends the bytes from start to end, inclusive, stops early when the file is shorter than expected
+     * (truncated or replaced since its length was read) instead of waiting for bytes that never come
+     * @return the number of bytes sent
+     * @throws IOException if the file can't be read or the client went away
+     */
+    public static long transfer(File file, long start, long end, OutputStream output) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(output);
+            long position = start;
+            while (position <= end) {
+                long sent = channel.transferTo(position, end - position + 1, target);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+            }
+            return position - start;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *  
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resources of an agent host advertised to the master with the registration and the heartbeats of its workers.
+ */
+public final class HostCapacity implements Serializable {
+    //simulations running on this host, shared by all the workers of the agent
+    private static final AtomicInteger running = new AtomicInteger();
+
+    public final int cores;
+    public final long totalMemory;
+    public final long freeMemory;
+    public final double loadAverage;//negative when the platform doesn't expose it
+    public final int runningTasks;
+
+    public HostCapacity(int cores, long totalMemory, long freeMemory, double loadAverage, int runningTasks) {
+        this.cores = cores;
+        this.totalMemory = totalMemory;
+        this.freeMemory = freeMemory;
+        this.loadAverage = loadAverage;
+        this.runningTasks = runningTasks;
+    }
+
+    public static void taskStarted() {
+        running.incrementAndGet();
+    }
+
+    public static void taskEnded() {
+        running.decrementAndGet();
+    }
+
+    /**
+     * Physical memory when the JVM exposes it, the JVM heap limits otherwise
+     */
+    public static HostCapacity snapshot() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        long total = Runtime.getRuntime().maxMemory();
+        long free = total - Runtime.getRuntime().totalMemory() + Runtime.getRuntime().freeMemory();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            com.sun.management.OperatingSystemMXBean sun = (com.sun.management.OperatingSystemMXBean) os;
+            total = sun.getTotalPhysicalMemorySize();
+            free = sun.getFreePhysicalMemorySize();
+        }
+        return new HostCapacity(os.getAvailableProcessors(), total, free, os.getSystemLoadAverage(), running.get());
+    }
+
+    @Override
+    public String toString() {
+        return "HostCapacity{" +
+               "cores=" + cores +
+               ", totalMemory=" + totalMemory +
+               ", freeMemory=" + freeMemory +
+               ", loadAverage=" + loadAverage +
+               ", runningTasks=" + runningTasks +
+               '}';
+    }
+}
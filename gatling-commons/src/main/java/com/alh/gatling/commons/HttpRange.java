@@ -0,0 +1,116 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+/**
+ * Single byte range of an http Range/Content-Range header, bounds are inclusive.
+ * Multi range requests are not supported, they are answered with the full entity.
+ */
+public final class HttpRange {
+    public static final HttpRange UNSATISFIABLE = new HttpRange(-1, -1, -1);
+
+    public final long start;
+    public final long end;
+    public final long total;
+
+    public HttpRange(long start, long end, long total) {
+        this.start = start;
+        this.end = end;
+        this.total = total;
+    }
+
+    /**
+     * Resolves a request Range header against the entity length
+     * @param header value of the Range header, may be null
+     * @param length entity length
+     * @return the range to serve, null to serve the full entity or UNSATISFIABLE
+     */
+    public static HttpRange parse(String header, long length) {
+        if (header == null || !header.startsWith("bytes=") || header.indexOf(',') > -1) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start, end;
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return UNSATISFIABLE;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+            }
+            if (start >= length || end < start) {
+                return UNSATISFIABLE;
+            }
+            return new HttpRange(start, end, length);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses a response Content-Range header, "bytes start-end/total"
+     * @return the range or null if the header is missing or malformed
+     */
+    public static HttpRange fromContentRange(String header) {
+        if (header == null || !header.startsWith("bytes ")) {
+            return null;
+        }
+        try {
+            String spec = header.substring("bytes ".length()).trim();
+            int slash = spec.indexOf('/');
+            long total = "*".equals(spec.substring(slash + 1)) ? -1 : Long.parseLong(spec.substring(slash + 1));
+            String bounds = spec.substring(0, slash);
+            if ("*".equals(bounds)) {
+                return new HttpRange(-1, -1, total);
+            }
+            int dash = bounds.indexOf('-');
+            return new HttpRange(Long.parseLong(bounds.substring(0, dash)), Long.parseLong(bounds.substring(dash + 1)), total);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    public boolean isSatisfiable() {
+        return this != UNSATISFIABLE;
+    }
+
+    public long length() {
+        return end - start + 1;
+    }
+
+    public String toContentRange() {
+        return "bytes " + start + "-" + end + "/" + total;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpRange{" + "start=" + start + ", end=" + end + ", total=" + total + '}';
+    }
+}
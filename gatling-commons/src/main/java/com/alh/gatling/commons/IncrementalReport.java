@@ -0,0 +1,215 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Aggregation state of a run that is still going, fed with the bytes every task appended to its simulation.log
+ * since the previous cycle. The stats and the offset reached in every log are saved after each cycle, so the state
+ * survives a restart of the master and the final report only has to read the last bytes of every log.
+ */
+public class IncrementalReport {
+    private static final Logger log = LoggerFactory.getLogger(IncrementalReport.class);
+    public static final String DIRECTORY = "partial";
+    static final String TASKS_FILE = "tasks.properties";
+    private static final String STATE = "state";
+    private static final String URL = ".url";
+    private static final String OFFSET = ".offset";
+
+    private final File dir;
+    private final ReportStats stats;
+    private final SimulationLogParser parser;
+    //work id to log url and offset of the first byte not yet aggregated
+    private final Map<String, String> logs = new HashMap<>();
+    private final Map<String, Long> offsets = new HashMap<>();
+    private long version;
+    private long lastCycle;
+    private boolean cycleRunning;
+
+    private IncrementalReport(File dir, ReportStats stats) {
+        this.dir = dir;
+        this.stats = stats;
+        this.parser = new SimulationLogParser(stats);
+    }
+
+    /**
+     * @param reportDirectory report directory of the run, the state is kept in its {@link #DIRECTORY} sub directory
+     * @return the saved state of the run, or an empty one
+     */
+    public static IncrementalReport open(File reportDirectory) {
+        File dir = new File(reportDirectory, DIRECTORY);
+        File tasks = new File(dir, TASKS_FILE);
+        if (tasks.isFile()) {
+            try (InputStream input = new FileInputStream(tasks)) {
+                Properties properties = new Properties();
+                properties.load(input);
+                IncrementalReport report = new IncrementalReport(dir, ReportStats.read(new File(dir, properties.getProperty(STATE))));
+                report.version = Long.parseLong(properties.getProperty(STATE).replaceAll("\\D", ""));
+                for (String key : properties.stringPropertyNames()) {
+                    if (key.endsWith(URL)) {
+                        String workId = key.substring(0, key.length() - URL.length());
+                        report.logs.put(workId, properties.getProperty(key));
+                        report.offsets.put(workId, Long.parseLong(properties.getProperty(workId + OFFSET, "0")));
+                    }
+                }
+                log.info("Resumed the partial report of {} tasks from {}", report.logs.size(), dir);
+                return report;
+            } catch (IOException | RuntimeException e) {
+                log.warn("Discarding the partial report state in {}: {}", dir, e.toString());
+            }
+        }
+        return new IncrementalReport(dir, new ReportStats());
+    }
+
+    public static boolean exists(File reportDirectory) {
+        return new File(new File(reportDirectory, DIRECTORY), TASKS_FILE).isFile();
+    }
+
+    /**
+     * Follows the log of a task from now on, a task already followed keeps its offset
+     */
+    public synchronized void track(String workId, String logUrl) {
+        logs.put(workId, logUrl);
+        offsets.putIfAbsent(workId, 0L);
+    }
+
+    public synchronized boolean isTracked(String workId) {
+        return logs.containsKey(workId);
+    }
+
+    /**
+     * Claims the next cycle, at most one runs at a time and cycles start at least interval millis apart
+     */
+    public synchronized boolean startCycle(long now, long interval) {
+        if (cycleRunning || now - lastCycle < interval) {
+            return false;
+        }
+        cycleRunning = true;
+        lastCycle = now;
+        return true;
+    }
+
+    public synchronized void endCycle() {
+        cycleRunning = false;
+    }
+
+    /**
+     * Aggregates the complete lines every task logged since the previous cycle, saves the state and writes the partial report.
+     * A task whose log can't be fetched is retried on the next cycle.
+     * @return number of bytes aggregated
+     * @throws IOException if the state or the report can't be written
+     */
+    public synchronized long update() throws IOException {
+        File chunk = new File(dir, "chunk.log");
+        long total = 0;
+        for (Map.Entry<String, String> task : logs.entrySet()) {
+            try {
+                if (DownloadFile.downloadFrom(task.getValue(), offsets.get(task.getKey()), chunk) > 0) {
+                    long consumed = parser.parseCompleteLines(chunk);
+                    offsets.merge(task.getKey(), consumed, Long::sum);
+                    total += consumed;
+                }
+            } catch (IOException e) {
+                log.warn("Could not follow {}: {}", task.getValue(), e.toString());
+            }
+        }
+        FileUtils.deleteQuietly(chunk);
+        save();
+        ReportWriter.write(stats, dir);
+        return total;
+    }
+
+    /**
+     * Aggregates the end of the logs of completed tasks, the logs are complete so their last line is read as well
+     * @param workIds completed tasks, the untracked ones are ignored
+     * @return a copy of the stats of the run
+     * @throws IOException if the end of a log can't be fetched, the state is then left untouched for that task
+     */
+    public synchronized ReportStats finish(Collection<String> workIds) throws IOException {
+        File chunk = new File(dir, "chunk.log");
+        try {
+            for (String workId : workIds) {
+                String url = logs.get(workId);
+                if (url != null) {
+                    long fetched = DownloadFile.downloadFrom(url, offsets.get(workId), chunk);
+                    if (fetched > 0) {
+                        parser.parse(chunk);
+                        offsets.merge(workId, fetched, Long::sum);
+                    }
+                }
+            }
+        } finally {
+            FileUtils.deleteQuietly(chunk);
+            save();
+        }
+        ReportStats copy = new ReportStats();
+        copy.merge(stats);
+        return copy;
+    }
+
+    /**
+     * Writes a new version of the stats then commits it by replacing the task file that references it,
+     * so the stats and the offsets always match
+     */
+    private void save() throws IOException {
+        FileUtils.forceMkdir(dir);
+        String previous = "partial-" + version + ".stats";
+        String current = "partial-" + (++version) + ".stats";
+        stats.write(new File(dir, current));
+        Properties properties = new Properties();
+        properties.setProperty(STATE, current);
+        logs.forEach((workId, url) -> {
+            properties.setProperty(workId + URL, url);
+            properties.setProperty(workId + OFFSET, String.valueOf(offsets.get(workId)));
+        });
+        File tasks = new File(dir, TASKS_FILE + ".tmp");
+        try (OutputStream output = new FileOutputStream(tasks)) {
+            properties.store(output, null);
+        }
+        Files.move(tasks.toPath(), new File(dir, TASKS_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FileUtils.deleteQuietly(new File(dir, previous));
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Location of the partial report, served like the final one
+     */
+    public static String getHtml(String trackingId) {
+        return "/resources/" + trackingId + "/" + DIRECTORY + "/" + ReportWriter.INDEX;
+    }
+}
@@ -31,6 +31,7 @@ import org.apache.commons.exec.PumpStreamHandler;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.filefilter.IOFileFilter;
+import org.apache.commons.lang3.StringUtils;
 import scala.concurrent.ExecutionContextExecutorService;
 import scala.concurrent.Future;
 import scala.concurrent.duration.Duration;
@@ -42,9 +43,12 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -58,6 +62,8 @@ public class JarExecutor extends WorkExecutor {
 
     public static final String SIMULATION = "simulation";
     public static final String RESOURCES = "resources";
+    //how often the simulation log is tailed to publish live metrics, aligned on the worker heartbeat
+    private static final long METRICS_INTERVAL_SECONDS = 5;
     
     IOFileFilter logFilter = new IOFileFilter() {
         @Override
@@ -71,9 +77,13 @@ public class JarExecutor extends WorkExecutor {
         }
     };
     private AgentConfig agentConfig;
+    private ArtifactCache artifactCache;
+    //start signals of the synchronized tasks waiting on their barrier, completed with the start instant
+    private final Map<String, CompletableFuture<Long>> releases = new ConcurrentHashMap<>();
 
-    public JarExecutor(AgentConfig agentConfig) {
+    public JarExecutor(AgentConfig agentConfig, ArtifactCache artifactCache) {
         this.agentConfig = agentConfig;
+        this.artifactCache = artifactCache;
     }
 
     @Override
@@ -81,6 +91,8 @@ public class JarExecutor extends WorkExecutor {
         return receiveBuilder()
                 .match(Master.Job.class, cmd -> onJob(cmd))
                 .match(Master.FileJob.class, cmd -> onFileJob(cmd))
+                .match(MasterWorkerProtocol.StartWork.class, cmd -> onStartWork(cmd))
+                .match(MasterWorkerProtocol.AbortWork.class, cmd -> onAbortWork(cmd))
                 .build();
     }
 
@@ -102,20 +114,47 @@ public class JarExecutor extends WorkExecutor {
         }
     }
 
+    private void onStartWork(MasterWorkerProtocol.StartWork cmd) {
+        CompletableFuture<Long> release = releases.get(cmd.workId);
+        if (release != null) {
+            release.complete(cmd.startAt);
+        }
+    }
+
+    private void onAbortWork(MasterWorkerProtocol.AbortWork cmd) {
+        CompletableFuture<Long> release = releases.get(cmd.workId);
+        if (release != null) {
+            release.completeExceptionally(new IllegalStateException("Synchronized start of " + cmd.workId + " aborted by the master"));
+        }
+    }
+
     private void onJob(final Master.Job job) {
         Cancellable abortLoop = getContext().system().scheduler().schedule(Duration.Zero(), Duration.create(60, TimeUnit.SECONDS),
                 () -> {
                     runCancelJob(job);
                 }, getContext().system().dispatcher());
         ActorRef sender = getSender();
+        if (((TaskEvent) job.taskEvent).getJobInfo().synchronizedStart) {
+            releases.put(job.jobId, new CompletableFuture<>());
+        }
+        SimulationLogTailer tailer = new SimulationLogTailer(new File(agentConfig.getJob().getResultPath(job.roleId, job.jobId)));
+        Cancellable metricsLoop = getContext().system().scheduler().schedule(Duration.create(METRICS_INTERVAL_SECONDS, TimeUnit.SECONDS),
+                Duration.create(METRICS_INTERVAL_SECONDS, TimeUnit.SECONDS),
+                () -> {
+                    publishMetrics(tailer, sender);
+                }, getContext().system().dispatcher());
         ExecutorService pool = Executors.newFixedThreadPool(1);
         ExecutionContextExecutorService ctx = ExecutionContexts.fromExecutorService(pool);
-        Future<Object> f = future(() -> runJob(job), ctx);
+        Future<Object> f = future(() -> runJob(job, sender), ctx);
         f.onSuccess(new OnSuccess<Object>() {
             @Override
             public void onSuccess(Object result) throws Throwable {
                 log.info("Notify Worker job status {}", result);
-                sender.tell(result, getSelf());
+                metricsLoop.cancel();
+                synchronized (tailer) {
+                    publishMetrics(tailer, sender);
+                    sender.tell(result, getSelf());
+                }
                 abortLoop.cancel();
             }
         }, ctx);
@@ -124,12 +163,34 @@ public class JarExecutor extends WorkExecutor {
             public void onFailure(Throwable throwable) throws Throwable {
                 log.error(throwable.toString());
                 abortLoop.cancel();
-                sender.tell(new Worker.WorkFailed(null), getSelf());
+                metricsLoop.cancel();
+                synchronized (tailer) {
+                    publishMetrics(tailer, sender);
+                    sender.tell(new Worker.WorkFailed(null), getSelf());
+                }
                 unhandled(job);
             }
         }, ctx);
     }
 
+    /**
+     * Sends the requests logged since the last call to the worker, which forwards them to the master.
+     * Synchronized on the tailer so that a late periodic delta can't overtake the job result.
+     */
+    private void publishMetrics(SimulationLogTailer tailer, ActorRef worker) {
+        synchronized (tailer) {
+            try {
+                MetricsDelta delta = tailer.poll();
+                if (delta != null) {
+                    //the log url lets the master follow the run with partial reports
+                    worker.tell(new Worker.MetricsUpdate(delta, agentConfig.getUrl(tailer.getLog().getAbsolutePath())), getSelf());
+                }
+            } catch (IOException e) {
+                log.warning("Could not read the simulation log: {}", e.getMessage());
+            }
+        }
+    }
+
     private boolean getAbortStatus(String abortUrl, String trackingId) {
         log.info("Getting abort status: {}{}", abortUrl, trackingId);
         URL url = null;
@@ -171,10 +232,31 @@ public class JarExecutor extends WorkExecutor {
         }
     }
 
-    private Object runJob(Master.Job message) {
+    /**
+     * Two phase start of a synchronized task: report ready once the artifacts are in place,
+     * then wait for the start signal of the master and the start instant shared by the whole gang.
+     */
+    private void awaitStart(Master.Job job, ActorRef worker) throws Exception {
+        CompletableFuture<Long> release = releases.get(job.jobId);
+        if (release == null) {
+            return;
+        }
+        try {
+            worker.tell(new Worker.WorkPrepared(job.jobId), getSelf());
+            long startAt = release.get(agentConfig.getJob().getStartBarrierTimeout(), TimeUnit.SECONDS);
+            long delay = startAt - System.currentTimeMillis();
+            log.info("Job {} released, starting in {} ms", job.jobId, delay);
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+        } finally {
+            releases.remove(job.jobId);
+        }
+    }
+
+    private Object runJob(Master.Job message, ActorRef worker) {
         Master.Job job = message;
         TaskEvent taskEvent = (TaskEvent) job.taskEvent;
-        CommandLine cmdLine =  job.isJarSimulation ? getJarCommand(job, taskEvent): getScriptCommand(job, taskEvent);
         log.info("Verified Script worker received task: {}", message);
 
         DefaultExecutor executor = new DefaultExecutor();
@@ -191,6 +273,8 @@ public class JarExecutor extends WorkExecutor {
             //create the std and err files
             outFile = FileUtils.openOutputStream(new File(outPath));
             errorFile = FileUtils.openOutputStream(new File(errPath));
+            CommandLine cmdLine =  job.isJarSimulation ? getJarCommand(job, taskEvent): getScriptCommand(job, taskEvent);
+            awaitStart(job, worker);
 
             PumpStreamHandler psh = new PumpStreamHandler(new ExecLogHandler(outFile), new ExecLogHandler(errorFile));
             executor.setStreamHandler(psh);
@@ -199,16 +283,19 @@ public class JarExecutor extends WorkExecutor {
             if (taskEvent.getJobInfo().parameterString != null && !taskEvent.getJobInfo().parameterString.isEmpty()){
                 envOptions.put("JAVA_OPTS" , taskEvent.getJobInfo().parameterString);
             }
+            //the task share of the load comes last so it overrides the user supplied values
+            if (!job.isJarSimulation && !taskEvent.getTaskParameters().isEmpty()) {
+                envOptions.merge("JAVA_OPTS", String.join(" ", taskEvent.getTaskParameters()), (user, task) -> user + " " + task);
+            }
             log.info("command: {} and env options {}", cmdLine,envOptions);
             int exitResult = executor.execute(cmdLine,envOptions);
             Worker.Result result = new Worker.Result(exitResult, agentConfig.getUrl(errPath), agentConfig.getUrl(outPath), null, job);
             log.info("Exit code: {}", exitResult);
-            FileUtils.deleteQuietly(FileUtils.getFile(agentConfig.getJob().getJobDirectory(job.jobId, "")));
             if (executor.isFailure(exitResult) || exitResult == 1) {
                 log.info("Jar Executor Failed, job: " + job.jobId);
                 return new Worker.WorkFailed(result);
             } else {
-                result = new Worker.Result(exitResult, agentConfig.getUrl(errPath), agentConfig.getUrl(outPath), agentConfig.getUrl(getMetricsPath(job)), job);
+                result = new Worker.Result(exitResult, agentConfig.getUrl(errPath), agentConfig.getUrl(outPath), agentConfig.getUrl(getResultsPath(job)), job);
                 log.info("Jar Executor Completed, job: " + result);
                 return new Worker.WorkComplete(result);
             }
@@ -221,10 +308,12 @@ public class JarExecutor extends WorkExecutor {
         } finally {
             IOUtils.closeQuietly(outFile);
             IOUtils.closeQuietly(errorFile);
+            //only drops the task links, cached artifacts stay for the next tasks
+            FileUtils.deleteQuietly(FileUtils.getFile(agentConfig.getJob().getJobDirectory(job.jobId, "")));
         }
     }
 
-    private CommandLine getScriptCommand(Master.Job job,TaskEvent taskEvent) {
+    private CommandLine getScriptCommand(Master.Job job,TaskEvent taskEvent) throws IOException {
         CommandLine cmdLine = new CommandLine(agentConfig.getJob().getCommand());
         Map<String, Object> map = new HashMap<>();
 
@@ -235,7 +324,7 @@ public class JarExecutor extends WorkExecutor {
             cmdLine.addArgument(pair);
         }
         //download the simulation or jar file
-        DownloadFile.downloadFile(job.jobFileUrl,agentConfig.getJob().getJobDirectory(job.jobId, SIMULATION, taskEvent.getJobInfo().getFileNameFromPackageName()));
+        artifactCache.link(job.jobFileUrl, job.jobFileHash, job.jobFileSources, new File(agentConfig.getJob().getJobDirectory(job.jobId, SIMULATION, taskEvent.getJobInfo().getFileNameFromPackageName())));
 
         //job simulation artifact path
         cmdLine.addArgument("-sf").addArgument(agentConfig.getJob().getJobDirectory(job.jobId, SIMULATION));
@@ -243,7 +332,7 @@ public class JarExecutor extends WorkExecutor {
         
         //download the resources feed
         if(taskEvent.getJobInfo().hasResourcesFeed) {
-            DownloadFile.downloadFileAndUnzip(job.resourcesFileUrl, agentConfig.getJob().getJobDirectory(job.jobId, RESOURCES ,taskEvent.getJobInfo().resourcesFileName));
+            artifactCache.extract(job.resourcesFileUrl, job.resourcesFileHash, job.resourcesFileSources, getFeedName(taskEvent), new File(agentConfig.getJob().getJobDirectory(job.jobId, RESOURCES)));
             //job resources feed  path
             cmdLine.addArgument("-rsf").addArgument(agentConfig.getJob().getJobDirectory(job.jobId, RESOURCES));
         }
@@ -256,13 +345,13 @@ public class JarExecutor extends WorkExecutor {
         return cmdLine;
     }
 
-    private CommandLine getJarCommand(Master.Job job, TaskEvent taskEvent) {
+    private CommandLine getJarCommand(Master.Job job, TaskEvent taskEvent) throws IOException {
         CommandLine cmdLine = new CommandLine("java");
         cmdLine.addArgument("-jar");
 
         //download the resources feed
         if(taskEvent.getJobInfo().hasResourcesFeed) {
-            DownloadFile.downloadFileAndUnzip(job.resourcesFileUrl, agentConfig.getJob().getJobDirectory(job.jobId, RESOURCES));
+            artifactCache.extract(job.resourcesFileUrl, job.resourcesFileHash, job.resourcesFileSources, getFeedName(taskEvent), new File(agentConfig.getJob().getJobDirectory(job.jobId, "")));
             //job resources feed  path
             //cmdLine.addArgument("-rsf").addArgument(agentConfig.getJob().getJobDirectory(job.jobId, RESOURCES,taskEvent.getJobInfo().resourcesFileName));
         }
@@ -274,14 +363,44 @@ public class JarExecutor extends WorkExecutor {
         for (String pair : taskEvent.getParameters()) {
             cmdLine.addArgument(pair);
         }
+        for (String pair : taskEvent.getTaskParameters()) {
+            cmdLine.addArgument(pair);
+        }
         log.info("Downloading jar to {} ",agentConfig.getJob().getJobDirectory(job.jobId, SIMULATION, taskEvent.getJobInfo().jarFileName));
         //download the simulation or jar file
-        DownloadFile.downloadFile(job.jobFileUrl,agentConfig.getJob().getJobDirectory(job.jobId, SIMULATION, taskEvent.getJobInfo().jarFileName));//.jar
+        artifactCache.link(job.jobFileUrl, job.jobFileHash, job.jobFileSources, new File(agentConfig.getJob().getJobDirectory(job.jobId, SIMULATION, taskEvent.getJobInfo().jarFileName)));//.jar
 
         cmdLine.addArgument(agentConfig.getJob().getJobDirectory(job.jobId, SIMULATION, taskEvent.getJobInfo().jarFileName));//.jar
         return cmdLine;
     }
 
+    private String getFeedName(TaskEvent taskEvent) {
+        String name = StringUtils.defaultIfEmpty(taskEvent.getJobInfo().resourcesFileName, RESOURCES);
+        //partitioned feeds differ per task, keep one extraction per slice
+        return taskEvent.getJobInfo().partitionFeeds ? name + ".part" + taskEvent.getTaskIndex() : name;
+    }
+
+    /**
+     * Pre-aggregates the simulation log into a small mergeable stats file, so that the master doesn't have to
+     * collect the raw log to build the report. Falls back to the raw log when disabled or when the log can't be read.
+     */
+    private String getResultsPath(Master.Job job) {
+        String logPath = getMetricsPath(job);
+        if (!agentConfig.getJob().isPreAggregateResults()) {
+            return logPath;
+        }
+        File logFile = new File(logPath);
+        File stats = new File(logFile.getParentFile(), ReportStats.FILE_NAME);
+        try {
+            SimulationLogParser.parse(Collections.singletonList(logFile)).write(stats);
+            log.info("Aggregated {} ({} bytes) into {} ({} bytes)", logFile, logFile.length(), stats, stats.length());
+            return stats.getAbsolutePath();
+        } catch (IOException e) {
+            log.warning("Could not aggregate {}, the raw log is reported instead: {}", logFile, e.getMessage());
+            return logPath;
+        }
+    }
+
     /**
      * Assumes there will only be one file in the directory
      */
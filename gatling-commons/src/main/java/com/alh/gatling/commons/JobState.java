@@ -44,6 +44,8 @@ public final class JobState {
     private final ConcurrentLinkedQueue<Worker.Result> failedJobs;
     private final ConcurrentLinkedQueue<Worker.Result> completedJobs;
     private HashMap<String,JobSummary> jobSummary ;
+    //shared by the successive states like the summaries it indexes
+    private final JobSummaryIndex summaryIndex;
 
     public JobState() {
         jobsInProgress = new HashMap<>();
@@ -53,6 +55,7 @@ public final class JobState {
         failedJobs = new ConcurrentLinkedQueue<>();
         completedJobs = new ConcurrentLinkedQueue<>();
         jobSummary = new HashMap<>();
+        summaryIndex = new JobSummaryIndex();
         pendingJobsKubernetes = new ConcurrentHashMap<>();
     }
     private JobState(JobState jobState, JobAccepted workAccepted) {
@@ -70,6 +73,7 @@ public final class JobState {
         failedJobs = new ConcurrentLinkedQueue<>(jobState.failedJobs);
         completedJobs = new ConcurrentLinkedQueue<>(jobState.completedJobs);
         jobSummary = new HashMap<>(jobState.jobSummary);
+        summaryIndex = jobState.summaryIndex;
         //job summary
         JobSummary summary = jobSummary.get(workAccepted.job.trackingId);
         TaskEvent taskInfo = (TaskEvent) workAccepted.job.taskEvent;
@@ -81,6 +85,7 @@ public final class JobState {
         taskInfo.setTaskJobId(workAccepted.job.jobId);
         taskInfo.setStatus(JobStatusString.PENDING);
         summary.addTask(taskInfo);
+        summaryIndex.update(summary);
     }
 
 
@@ -89,7 +94,8 @@ public final class JobState {
         ConcurrentHashMap<String, Master.Job> tmp_pendingJobKubernetes = new ConcurrentHashMap<>(jobState.pendingJobsKubernetes);
         Map<String, Master.Job> tmp_workInProgress = new HashMap<>(jobState.jobsInProgress);
 
-        tmp_pendingJob.removeFirst();
+        //gang scheduling starts jobs that are not at the head of the queue
+        tmp_pendingJob.removeIf(p -> p.jobId.equals(workStarted.workId));
         Master.Job job = tmp_pendingJobKubernetes.get(workStarted.workId);
         tmp_pendingJobKubernetes.remove(workStarted.workId);
 
@@ -106,6 +112,7 @@ public final class JobState {
         failedJobs = new ConcurrentLinkedQueue<>(jobState.failedJobs);
         completedJobs = new ConcurrentLinkedQueue<>(jobState.completedJobs);
         jobSummary = new HashMap<>(jobState.jobSummary);
+        summaryIndex = jobState.summaryIndex;
         //job summary
         JobSummary summary = jobSummary.get(job.trackingId);
         Optional<TaskEvent> task = summary.getByWork(job.jobId);
@@ -113,6 +120,7 @@ public final class JobState {
             task.get().setStatus(JobStatusString.STARTED);
             task.get().setWorkerId(workStarted.workerId);
         }
+        summaryIndex.update(summary);
     }
 
 
@@ -134,6 +142,7 @@ public final class JobState {
         tmp_completed.add(result);
         completedJobs = new ConcurrentLinkedQueue<>(tmp_completed);
         jobSummary = new HashMap<>(jobState.jobSummary);
+        summaryIndex = jobState.summaryIndex;
         //job summary
         JobSummary summary = jobSummary.get(result.job.trackingId);
         Optional<TaskEvent> task = summary.getByWork(result.job.jobId);
@@ -143,6 +152,7 @@ public final class JobState {
             task.get().setErrorLogPath(result.errPath);
             task.get().setStdLogPath(result.stdPath);
         }
+        summaryIndex.update(summary);
     }
 
     public JobState(JobState jobState, JobFailed jobFailed) {
@@ -166,6 +176,7 @@ public final class JobState {
         tmp_Failed.add(result);
         failedJobs = new ConcurrentLinkedQueue<>(tmp_Failed);
         jobSummary = new HashMap<>(jobState.jobSummary);
+        summaryIndex = jobState.summaryIndex;
         //job summary
         JobSummary summary = jobSummary.get(result.job.trackingId);
         Optional<TaskEvent> task = summary.getByWork(result.job.jobId);
@@ -175,6 +186,7 @@ public final class JobState {
             task.get().setErrorLogPath(result.errPath);
             task.get().setStdLogPath(result.stdPath);
         }
+        summaryIndex.update(summary);
     }
 
     public JobState(JobState jobState, JobTimedOut jobTimedOut) {
@@ -191,6 +203,7 @@ public final class JobState {
         failedJobs = new ConcurrentLinkedQueue<>(jobState.failedJobs);
         completedJobs = new ConcurrentLinkedQueue<>(jobState.completedJobs);
         jobSummary = new HashMap<>(jobState.jobSummary);
+        summaryIndex = jobState.summaryIndex;
         //job summary
         Optional<JobSummary> summary = jobSummary.values().stream().filter(s -> s.containsWork(jobTimedOut.workId)).findFirst();
         if(summary.isPresent()) {
@@ -198,6 +211,7 @@ public final class JobState {
             if (task.isPresent()) {
                 task.get().setStatus(JobStatusString.TIMEDOUT);
             }
+            summaryIndex.update(summary.get());
         }
     }
 
@@ -214,6 +228,7 @@ public final class JobState {
         failedJobs = new ConcurrentLinkedQueue<>(jobState.failedJobs);
         completedJobs = new ConcurrentLinkedQueue<>(jobState.completedJobs);
         jobSummary = new HashMap<>(jobState.jobSummary);
+        summaryIndex = jobState.summaryIndex;
         //job summary
         Optional<JobSummary> summary = jobSummary.values().stream().filter(s -> s.containsWork(jobPostponed.workId)).findFirst();
         if(summary.isPresent()) {
@@ -221,6 +236,7 @@ public final class JobState {
             if (task.isPresent()) {
                 task.get().setStatus(JobStatusString.POSTPONED);
             }
+            summaryIndex.update(summary.get());
         }
     }
 
@@ -228,6 +244,10 @@ public final class JobState {
         return jobSummary;
     }
 
+    public JobSummaryIndex getSummaryIndex() {
+        return summaryIndex;
+    }
+
     public int getPendingJobsCount() {
         return pendingJobs.size();
     }
@@ -255,10 +275,34 @@ public final class JobState {
         return "" + acceptedJobIds.size();
     }
 
+    /**
+     * Work an event changes, null for the events that don't change a single task
+     */
+    static String workIdOf(JobDomainEvent event) {
+        if (event instanceof JobAccepted) {
+            return ((JobAccepted) event).job.jobId;
+        } else if (event instanceof JobStarted) {
+            return ((JobStarted) event).workId;
+        } else if (event instanceof JobCompleted) {
+            return ((JobCompleted) event).workId;
+        } else if (event instanceof JobFailed) {
+            return ((JobFailed) event).workId;
+        } else if (event instanceof JobTimedOut) {
+            return ((JobTimedOut) event).workId;
+        } else if (event instanceof JobPostponed) {
+            return ((JobPostponed) event).workId;
+        }
+        return null;
+    }
+
     public Master.Job nextJob() {
         return pendingJobs.getFirst();
     }
 
+    public List<Master.Job> getPendingJobs(String trackingId) {
+        return pendingJobs.stream().filter(p -> p.trackingId.equals(trackingId)).collect(Collectors.toList());
+    }
+
     public Master.Job hasJob(String jobId){
         return pendingJobsKubernetes.get(jobId);
     }
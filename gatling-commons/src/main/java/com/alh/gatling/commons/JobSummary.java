@@ -138,6 +138,13 @@ public class JobSummary implements Serializable {
         public String dataFileName;
         public String resourcesFileName;
         public String jarFileName;
+        public boolean partitionFeeds;//each task gets its own slice of the resources feed
+        public long totalUsers;//aggregate load split across the tasks, 0 when not set
+        public long totalRps;
+        public String splitStrategy;
+        public boolean synchronizedStart;//all the tasks are scheduled together and released at the same instant
+        public double taskCpus;//resources needed by each task, 0 when not declared
+        public long taskMemoryMb;
 
         public String getFileNameFromPackageName(){
             return fileFullName.replace('.', '/') + ".scala";
@@ -172,6 +179,13 @@ public class JobSummary implements Serializable {
             this.parameterString = builder.parameterString;
             this.resourcesFileName = builder.resourcesFileName;
             this.jarFileName = builder.jarFileName;
+            this.partitionFeeds = builder.partitionFeeds;
+            this.totalUsers = builder.totalUsers;
+            this.totalRps = builder.totalRps;
+            this.splitStrategy = builder.splitStrategy;
+            this.synchronizedStart = builder.synchronizedStart;
+            this.taskCpus = builder.taskCpus;
+            this.taskMemoryMb = builder.taskMemoryMb;
         }
 
         public static Builder newBuilder() {
@@ -190,6 +204,13 @@ public class JobSummary implements Serializable {
             private String parameterString;
             public String resourcesFileName;
             public String jarFileName;
+            private boolean partitionFeeds;
+            private long totalUsers;
+            private long totalRps;
+            private String splitStrategy;
+            private boolean synchronizedStart;
+            private double taskCpus;
+            private long taskMemoryMb;
 
             private Builder() {
             }
@@ -251,6 +272,41 @@ public class JobSummary implements Serializable {
                 this.jarFileName = jarFileName;
                 return this;
             }
+
+            public Builder withPartitionFeeds(boolean partitionFeeds) {
+                this.partitionFeeds = partitionFeeds;
+                return this;
+            }
+
+            public Builder withTotalUsers(Long totalUsers) {
+                this.totalUsers = totalUsers == null ? 0 : totalUsers;
+                return this;
+            }
+
+            public Builder withTotalRps(Long totalRps) {
+                this.totalRps = totalRps == null ? 0 : totalRps;
+                return this;
+            }
+
+            public Builder withSplitStrategy(String splitStrategy) {
+                this.splitStrategy = splitStrategy;
+                return this;
+            }
+
+            public Builder withSynchronizedStart(boolean synchronizedStart) {
+                this.synchronizedStart = synchronizedStart;
+                return this;
+            }
+
+            public Builder withTaskCpus(Double taskCpus) {
+                this.taskCpus = taskCpus == null ? 0 : taskCpus;
+                return this;
+            }
+
+            public Builder withTaskMemoryMb(Long taskMemoryMb) {
+                this.taskMemoryMb = taskMemoryMb == null ? 0 : taskMemoryMb;
+                return this;
+            }
         }
     }
 
@@ -0,0 +1,210 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Sorted read model of the job summaries, kept up to date as the job events are applied.
+ * The job lists are filtered, sorted and paged in the master, only the requested page leaves it.
+ * Summaries are indexed by start time, globally and per status, user and partition, and by end time.
+ */
+public class JobSummaryIndex {
+    private static final Set<String> RUNNING = new HashSet<>(Arrays.asList(
+            JobState.JobStatusString.STARTED, JobState.JobStatusString.ACCEPTED, JobState.JobStatusString.PENDING));
+    private static final Comparator<Entry> BY_START = Comparator.comparingLong((Entry e) -> e.startTime).thenComparing(e -> e.trackingId);
+    private static final Comparator<Entry> BY_END = Comparator.comparingLong((Entry e) -> e.endTime).thenComparing(e -> e.trackingId);
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final TreeSet<Entry> byStart = new TreeSet<>(BY_START);
+    private final TreeSet<Entry> byEnd = new TreeSet<>(BY_END);
+    private final Map<String, TreeSet<Entry>> byStatus = new HashMap<>();
+    private final Map<String, TreeSet<Entry>> byUser = new HashMap<>();
+    private final Map<String, TreeSet<Entry>> byPartition = new HashMap<>();
+
+    /**
+     * Indexes the summary again with its current start time, end time and status
+     */
+    public void update(JobSummary summary) {
+        String trackingId = summary.getJobInfo().trackingId;
+        Entry previous = entries.remove(trackingId);
+        if (previous != null) {
+            byStart.remove(previous);
+            byEnd.remove(previous);
+            remove(byStatus, previous.status, previous);
+            remove(byUser, previous.user, previous);
+            remove(byPartition, previous.partition, previous);
+        }
+        Entry entry = new Entry(summary);
+        entries.put(trackingId, entry);
+        byStart.add(entry);
+        byEnd.add(entry);
+        byStatus.computeIfAbsent(entry.status, k -> new TreeSet<>(BY_START)).add(entry);
+        byUser.computeIfAbsent(entry.user, k -> new TreeSet<>(BY_START)).add(entry);
+        byPartition.computeIfAbsent(entry.partition, k -> new TreeSet<>(BY_START)).add(entry);
+    }
+
+    /**
+     * @return the requested page of the matching summaries and the number of matching summaries
+     */
+    public Master.JobSummaryPage query(Master.JobSummaryQuery query) {
+        if (query.trackingId != null) {
+            Entry entry = entries.get(query.trackingId);
+            if (entry == null) {
+                entry = entries.values().stream().filter(e -> e.trackingId.equalsIgnoreCase(query.trackingId)).findFirst().orElse(null);
+            }
+            List<JobSummary> content = entry == null ? Collections.emptyList() : Collections.singletonList(entry.summary);
+            return new Master.JobSummaryPage(content, content.size(), 0, 1);
+        }
+        if (query.from >= query.to) {
+            return new Master.JobSummaryPage(Collections.emptyList(), 0, query.page, query.size);
+        }
+        Set<String> statuses = statuses(query.status);
+        NavigableSet<Entry> candidates = candidates(query, statuses);
+        if (query.descending) {
+            candidates = candidates.descendingSet();
+        }
+        long offset = (long) query.page * query.size;
+        List<JobSummary> content = new ArrayList<>(query.size);
+        long total = 0;
+        for (Entry entry : candidates) {
+            if (!entry.matches(query, statuses)) {
+                continue;
+            }
+            if (total >= offset && content.size() < query.size) {
+                content.add(entry.summary);
+            }
+            total++;
+        }
+        return new Master.JobSummaryPage(content, total, query.page, query.size);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Smallest index able to answer the query in the requested order, bounded by the time range when sorted by start time
+     */
+    private NavigableSet<Entry> candidates(Master.JobSummaryQuery query, Set<String> statuses) {
+        if (Master.JobSummaryQuery.END_TIME.equals(query.sort)) {
+            return byEnd;
+        }
+        NavigableSet<Entry> smallest = byStart;
+        if (statuses != null && statuses.size() == 1) {
+            smallest = smaller(smallest, byStatus.get(statuses.iterator().next()));
+        }
+        if (query.user != null) {
+            smallest = smaller(smallest, byUser.get(query.user));
+        }
+        if (query.partition != null) {
+            smallest = smaller(smallest, byPartition.get(query.partition));
+        }
+        return smallest.subSet(Entry.probe(query.from), true, Entry.probe(query.to), false);
+    }
+
+    private static NavigableSet<Entry> smaller(NavigableSet<Entry> current, TreeSet<Entry> index) {
+        if (index == null) {
+            return Collections.emptyNavigableSet();
+        }
+        return index.size() < current.size() ? index : current;
+    }
+
+    /**
+     * The status strings a status filter stands for, null when any status matches
+     */
+    private static Set<String> statuses(String status) {
+        if (status == null || status.isEmpty()) {
+            return null;
+        }
+        if (Master.JobSummaryQuery.RUNNING.equalsIgnoreCase(status)) {
+            return RUNNING;
+        }
+        if (Master.JobSummaryQuery.FINISHED.equalsIgnoreCase(status)) {
+            Set<String> finished = new HashSet<>(Arrays.asList(JobState.JobStatusString.COMPLETED, JobState.JobStatusString.FAILED,
+                                                               JobState.JobStatusString.TIMEDOUT, JobState.JobStatusString.POSTPONED));
+            return finished;
+        }
+        return Collections.singleton(status.toUpperCase());
+    }
+
+    private static void remove(Map<String, TreeSet<Entry>> index, String key, Entry entry) {
+        TreeSet<Entry> entries = index.get(key);
+        if (entries != null) {
+            entries.remove(entry);
+            if (entries.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final JobSummary summary;
+        private final String trackingId;
+        private final long startTime;
+        private final long endTime;
+        private final String status;
+        private final String user;
+        private final String partition;
+
+        private Entry(JobSummary summary) {
+            this.summary = summary;
+            this.trackingId = summary.getJobInfo().trackingId;
+            this.startTime = summary.getStartTime();
+            this.endTime = summary.getEndTime();
+            this.status = summary.getStatus();
+            this.user = String.valueOf(summary.getJobInfo().user);
+            this.partition = String.valueOf(summary.getJobInfo().partitionName);
+        }
+
+        private Entry(long startTime) {
+            this.summary = null;
+            this.trackingId = "";
+            this.startTime = startTime;
+            this.endTime = startTime;
+            this.status = null;
+            this.user = null;
+            this.partition = null;
+        }
+
+        /**
+         * Sorts before every summary started at the same time
+         */
+        private static Entry probe(long startTime) {
+            return new Entry(startTime);
+        }
+
+        private boolean matches(Master.JobSummaryQuery query, Set<String> statuses) {
+            return (statuses == null || statuses.contains(status))
+                   && (query.user == null || query.user.equals(user))
+                   && (query.partition == null || query.partition.equals(partition))
+                   && startTime >= query.from && startTime < query.to;
+        }
+    }
+}
@@ -1,4 +1,4 @@
-package com.walmart.gatling.commons;
+package com.alh.gatling.commons;
 
 import io.kubernetes.client.ApiClient;
 import io.kubernetes.client.ApiException;
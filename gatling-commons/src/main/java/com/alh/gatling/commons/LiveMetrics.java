@@ -0,0 +1,242 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *  
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package com.alh.gatling.commons;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Rolling cluster wide view of a running simulation, merged by the master from the metrics deltas of the tasks.
+ * The most recent seconds keep a full histogram since the heartbeats of the tasks arrive at different times,
+ * older seconds are collapsed into a few percentiles and only a bounded history of them is kept,
+ * so the memory used by a run doesn't depend on its duration or on its request volume.
+ */
+public class LiveMetrics {
+    public static final int OPEN_SECONDS = 30;
+    public static final int HISTORY_SECONDS = 600;
+
+    private final String trackingId;
+    private final Histogram total = MetricsDelta.newHistogram();
+    private final TreeMap<Long, Bucket> open = new TreeMap<>();
+    private final Deque<Point> history = new ArrayDeque<>();
+    private long ok;
+    private long ko;
+    private long firstSecond = Long.MAX_VALUE;
+    private long lastSecond = Long.MIN_VALUE;
+
+    public LiveMetrics(String trackingId) {
+        this.trackingId = trackingId;
+    }
+
+    private static final class Bucket {
+        private final Histogram histogram = MetricsDelta.newHistogram();
+        private long ok;
+        private long ko;
+
+        private Point toPoint(long second) {
+            return new Point(second, ok + ko, ko, histogram);
+        }
+    }
+
+    public void merge(MetricsDelta delta) {
+        for (MetricsDelta.Second second : delta.seconds) {
+            Histogram histogram = second.decode();
+            total.add(histogram);
+            ok += second.ok;
+            ko += second.ko;
+            firstSecond = Math.min(firstSecond, second.epochSecond);
+            lastSecond = Math.max(lastSecond, second.epochSecond);
+            if (second.epochSecond > lastSecond - OPEN_SECONDS) {
+                Bucket bucket = open.computeIfAbsent(second.epochSecond, s -> new Bucket());
+                bucket.histogram.add(histogram);
+                bucket.ok += second.ok;
+                bucket.ko += second.ko;
+            }
+        }
+        //late seconds only count in the totals
+        while (!open.isEmpty() && open.firstKey() <= lastSecond - OPEN_SECONDS) {
+            Map.Entry<Long, Bucket> closed = open.pollFirstEntry();
+            history.addLast(closed.getValue().toPoint(closed.getKey()));
+        }
+        while (!history.isEmpty() && history.peekFirst().second <= lastSecond - HISTORY_SECONDS) {
+            history.removeFirst();
+        }
+    }
+
+    public View view() {
+        List<Point> series = new ArrayList<>(history.size() + open.size());
+        series.addAll(history);
+        open.forEach((second, bucket) -> series.add(bucket.toPoint(second)));
+        //the last second is usually still incomplete
+        long currentRps = series.stream().filter(p -> p.second == lastSecond - 1).mapToLong(p -> p.requests).findFirst().orElse(0);
+        long seconds = ok + ko == 0 ? 1 : lastSecond - firstSecond + 1;
+        return new View(trackingId, ok + ko, ko, (double) (ok + ko) / seconds, currentRps, total, series);
+    }
+
+    public static final class Point implements Serializable {
+        private final long second;
+        private final long requests;
+        private final long ko;
+        private final long p50;
+        private final long p95;
+        private final long p99;
+        private final long max;
+
+        private Point(long second, long requests, long ko, Histogram histogram) {
+            this.second = second;
+            this.requests = requests;
+            this.ko = ko;
+            this.p50 = histogram.getValueAtPercentile(50);
+            this.p95 = histogram.getValueAtPercentile(95);
+            this.p99 = histogram.getValueAtPercentile(99);
+            this.max = histogram.getMaxValue();
+        }
+
+        public long getSecond() {
+            return second;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getKo() {
+            return ko;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP95() {
+            return p95;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+    }
+
+    public static final class View implements Serializable {
+        private final String trackingId;
+        private final long requests;
+        private final long ko;
+        private final double meanRps;
+        private final long currentRps;
+        private final double mean;
+        private final long p50;
+        private final long p75;
+        private final long p95;
+        private final long p99;
+        private final long max;
+        private final List<Point> series;
+
+        private View(String trackingId, long requests, long ko, double meanRps, long currentRps, Histogram total, List<Point> series) {
+            this.trackingId = trackingId;
+            this.requests = requests;
+            this.ko = ko;
+            this.meanRps = meanRps;
+            this.currentRps = currentRps;
+            this.mean = total.getMean();
+            this.p50 = total.getValueAtPercentile(50);
+            this.p75 = total.getValueAtPercentile(75);
+            this.p95 = total.getValueAtPercentile(95);
+            this.p99 = total.getValueAtPercentile(99);
+            this.max = total.getMaxValue();
+            this.series = series;
+        }
+
+        public static View empty(String trackingId) {
+            return new LiveMetrics(trackingId).view();
+        }
+
+        public String getTrackingId() {
+            return trackingId;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getKo() {
+            return ko;
+        }
+
+        public double getErrorRate() {
+            return requests == 0 ? 0 : (double) ko / requests;
+        }
+
+        public double getMeanRps() {
+            return meanRps;
+        }
+
+        public long getCurrentRps() {
+            return currentRps;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP75() {
+            return p75;
+        }
+
+        public long getP95() {
+            return p95;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public List<Point> getSeries() {
+            return series;
+        }
+
+        @Override
+        public String toString() {
+            return "View{" +
+                   "trackingId='" + trackingId + '\'' +
+                   ", requests=" + requests +
+                   ", ko=" + ko +
+                   ", currentRps=" + currentRps +
+                   ", p95=" + p95 +
+                   '}';
+        }
+    }
+}
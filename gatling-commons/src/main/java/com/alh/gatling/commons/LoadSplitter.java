@@ -0,0 +1,117 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Splits the aggregate load of a simulation (users or requests per second) across its parallel tasks.
+ * Shares are computed with the largest remainder method so that they always add up to the requested total,
+ * either evenly or in proportion to the weight (slot capacity) declared for each task.
+ * The shares are handed to the simulation as system properties.
+ */
+public class LoadSplitter {
+    public static final String EVEN = "even";
+    public static final String WEIGHTED = "weighted";
+    public static final String USERS_PROPERTY = "users";
+    public static final String RPS_PROPERTY = "rps";
+
+    /**
+     * @param total aggregate load
+     * @param tasks number of parallel tasks
+     * @param strategy EVEN or WEIGHTED, null means EVEN
+     * @param weights comma separated weight per task, only used by the WEIGHTED strategy
+     * @return the share of every task, summing to total
+     */
+    public static long[] split(long total, int tasks, String strategy, String weights) {
+        if (tasks <= 0) {
+            throw new IllegalArgumentException("At least one task is needed to split the load");
+        }
+        if (total < 0) {
+            throw new IllegalArgumentException("The total load can't be negative: " + total);
+        }
+        double[] factors = new double[tasks];
+        if (WEIGHTED.equalsIgnoreCase(strategy)) {
+            double[] declared = parseWeights(weights);
+            if (declared.length != tasks) {
+                throw new IllegalArgumentException("Expected " + tasks + " weights but got " + declared.length + ": " + weights);
+            }
+            factors = declared;
+        } else if (strategy == null || strategy.isEmpty() || EVEN.equalsIgnoreCase(strategy)) {
+            Arrays.fill(factors, 1);
+        } else {
+            throw new IllegalArgumentException("Unknown split strategy " + strategy + ", expected " + EVEN + " or " + WEIGHTED);
+        }
+        double sum = Arrays.stream(factors).sum();
+        long[] shares = new long[tasks];
+        double[] remainders = new double[tasks];
+        long assigned = 0;
+        for (int i = 0; i < tasks; i++) {
+            double exact = total * factors[i] / sum;
+            shares[i] = (long) Math.floor(exact);
+            remainders[i] = exact - shares[i];
+            assigned += shares[i];
+        }
+        // hand the units lost to rounding to the tasks with the largest remainders, lowest index first on ties
+        Integer[] order = IntStream.range(0, tasks).boxed().toArray(Integer[]::new);
+        Arrays.sort(order, Comparator.comparingDouble((Integer i) -> -remainders[i]).thenComparingInt(i -> i));
+        for (int i = 0; assigned < total; i++, assigned++) {
+            shares[order[i % tasks]]++;
+        }
+        return shares;
+    }
+
+    /**
+     * System properties of one task, empty when no aggregate target was given
+     */
+    public static List<String> taskParameters(int taskIndex, int tasks, long[] users, long[] rps) {
+        List<String> parameters = new ArrayList<>();
+        if (users == null && rps == null) {
+            return parameters;
+        }
+        parameters.add("-DtaskIndex=" + taskIndex);
+        parameters.add("-DtaskCount=" + tasks);
+        if (users != null) {
+            parameters.add("-D" + USERS_PROPERTY + "=" + users[taskIndex]);
+        }
+        if (rps != null) {
+            parameters.add("-D" + RPS_PROPERTY + "=" + rps[taskIndex]);
+        }
+        return parameters;
+    }
+
+    private static double[] parseWeights(String weights) {
+        if (weights == null || weights.trim().isEmpty()) {
+            return new double[0];
+        }
+        try {
+            double[] parsed = Arrays.stream(weights.split(",")).map(String::trim).mapToDouble(Double::parseDouble).toArray();
+            if (Arrays.stream(parsed).anyMatch(w -> w < 0) || Arrays.stream(parsed).sum() <= 0) {
+                throw new IllegalArgumentException("Weights must be positive: " + weights);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid weights " + weights, e);
+        }
+    }
+}
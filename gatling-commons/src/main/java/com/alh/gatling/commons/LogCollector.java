@@ -0,0 +1,179 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *  
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.alh.gatling.commons;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects the results of the tasks of a simulation from the agents before the report is built.
+ * Downloads run on a dedicated pool, at most {@code concurrency} at a time and at most {@code perHost}
+ * against the same agent, in the order of the results. Transfers are gzipped and retried by {@link DownloadFile}.
+ * Result i is always written to {@code i.log} so the outcome doesn't depend on the completion order.
+ */
+public class LogCollector {
+    private static final Logger log = LoggerFactory.getLogger(LogCollector.class);
+
+    private final int concurrency;
+    private final int perHost;
+    private final ExecutorService pool;
+
+    /**
+     * Notified after every completed download, from the collector threads
+     */
+    public interface Progress {
+        void onProgress(int done, int total, long bytes);
+    }
+
+    public LogCollector(int concurrency, int perHost) {
+        this.concurrency = Math.max(1, concurrency);
+        this.perHost = Math.max(1, perHost);
+        AtomicInteger threads = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(this.concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "log-collector-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param urls result urls, one per task
+     * @param dir local directory receiving the files
+     * @return the local files in the order of the urls, failed as soon as one download fails for good
+     */
+    public CompletableFuture<List<File>> collect(List<String> urls, File dir, Progress progress) {
+        return new Collection(urls, dir, progress).start();
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private static String host(String url) {
+        try {
+            return new URL(url).getAuthority();
+        } catch (MalformedURLException e) {
+            return url;
+        }
+    }
+
+    /**
+     * Dispatch state of one collection, guarded by its own monitor
+     */
+    private final class Collection {
+        private final File[] files;
+        private final Queue<Integer> pending = new ArrayDeque<>();
+        private final Map<String, Integer> runningPerHost = new HashMap<>();
+        private final List<String> urls;
+        private final Progress progress;
+        private final CompletableFuture<List<File>> result = new CompletableFuture<>();
+        private int running;
+        private int done;
+        private long bytes;
+
+        Collection(List<String> urls, File dir, Progress progress) {
+            this.urls = new ArrayList<>(urls);
+            this.progress = progress;
+            this.files = new File[urls.size()];
+            for (int i = 0; i < files.length; i++) {
+                files[i] = new File(dir, (i + 1) + ".log");
+                pending.add(i);
+            }
+        }
+
+        CompletableFuture<List<File>> start() {
+            if (files.length == 0) {
+                result.complete(new ArrayList<>());
+            } else {
+                dispatch();
+            }
+            return result;
+        }
+
+        /**
+         * Starts the next pending downloads whose host is below its cap, without blocking a thread on a busy host
+         */
+        private synchronized void dispatch() {
+            Iterator<Integer> iterator = pending.iterator();
+            while (running < concurrency && iterator.hasNext() && !result.isDone()) {
+                int index = iterator.next();
+                String host = host(urls.get(index));
+                if (runningPerHost.getOrDefault(host, 0) >= perHost) {
+                    continue;
+                }
+                iterator.remove();
+                running++;
+                runningPerHost.merge(host, 1, Integer::sum);
+                pool.execute(() -> download(index, host));
+            }
+        }
+
+        private void download(int index, String host) {
+            try {
+                long received = DownloadFile.downloadCompressed(urls.get(index), files[index]);
+                completed(host, received, null);
+            } catch (IOException | RuntimeException e) {
+                completed(host, 0, new IOException("Could not collect " + urls.get(index), e));
+            }
+        }
+
+        private void completed(String host, long received, IOException failure) {
+            int doneNow;
+            long bytesNow;
+            synchronized (this) {
+                running--;
+                runningPerHost.merge(host, -1, Integer::sum);
+                if (failure != null) {
+                    pending.clear();
+                    result.completeExceptionally(failure);
+                    return;
+                }
+                doneNow = ++done;
+                bytesNow = bytes += received;
+            }
+            if (progress != null) {
+                progress.onProgress(doneNow, files.length, bytesNow);
+            }
+            if (doneNow == files.length) {
+                log.info("Collected {} results, {} bytes transferred", files.length, bytesNow);
+                result.complete(Arrays.asList(files));
+            } else {
+                dispatch();
+            }
+        }
+    }
+}
@@ -23,6 +23,7 @@ import com.sun.corba.se.spi.orbutil.threadpool.Work;
 import akka.actor.ActorRef;
 import akka.actor.Cancellable;
 import akka.actor.Props;
+import akka.actor.Terminated;
 import akka.cluster.Cluster;
 import akka.cluster.client.ClusterClientReceptionist;
 import akka.event.Logging;
@@ -30,6 +31,7 @@ import akka.event.LoggingAdapter;
 import akka.pattern.AskTimeoutException;
 import akka.persistence.AbstractPersistentActor;
 import akka.persistence.Recovery;
+import jersey.repackaged.com.google.common.cache.Cache;
 import jersey.repackaged.com.google.common.cache.CacheBuilder;
 import jersey.repackaged.com.google.common.cache.CacheLoader;
 import jersey.repackaged.com.google.common.cache.LoadingCache;
@@ -47,6 +49,7 @@ import java.io.Serializable;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -69,16 +72,37 @@ public class Master extends AbstractPersistentActor {
             return "CleanupTick";
         }
     };
+    private static final Object PublishDashboard = new Object() {
+        @Override
+        public String toString() {
+            return "PublishDashboard";
+        }
+    };
+    /**
+     * Minimum delay between two dashboard pushes, a burst of worker changes is coalesced into one snapshot
+     */
+    private static final FiniteDuration DASHBOARD_PUSH_INTERVAL = FiniteDuration.create(1, TimeUnit.SECONDS);
+    /**
+     * Delay between the release of a gang and its start instant, absorbs the delivery time of the start signals
+     */
+    private static final long START_LEAD_MILLIS = 2000;
+    private static final int MAX_LIVE_RUNS = 20;
+    private static final int MAX_REPORTS = 100;
+    private static final int MAX_REPORT_JOBS = 1000;
     private final ActorRef reportExecutor;
     private final FiniteDuration workTimeout;
     private final LoggingAdapter log = Logging.getLogger(getContext().system(), this);
     private final Cancellable cleanupTask;
     private final AgentConfig agentConfig;
     private HashMap<String, WorkerState> workers = new HashMap<>();
+    // only changed through putWorker and removeWorker
+    private final WorkerCounts workerCounts = new WorkerCounts(System.currentTimeMillis());
     private Set<String> fileTracker = new HashSet<>();
     private JobState jobDatabase = new JobState();
     private Map<String, UploadFile> fileDatabase = new HashMap<>();
     private Set<String> cancelRequests = new HashSet<>();
+    private Map<String, Gang> gangs = new HashMap<>();//workId -> gang waiting on its start barrier
+    private final ArtifactSwarm swarm;//null when the agents only download from the master
 
 
     private LoadingCache<String, List<WorkerState>> workersPerTrakingIdCache = CacheBuilder.newBuilder()
@@ -89,16 +113,31 @@ public class Master extends AbstractPersistentActor {
             }
         });
 
-    private LoadingCache<String, ReportExecutor.ReportResult> reportPerTrackingIdCache = CacheBuilder.newBuilder()
-        .build(new CacheLoader<String, ReportExecutor.ReportResult>() {
-            @Override
-            public ReportExecutor.ReportResult load(final String s) throws Exception {
-                return null;
-            }
-        });
+    //reports built when a kubernetes run completes, older ones are rebuilt or served from the report cache on disk
+    private Cache<String, ReportExecutor.ReportResult> reportPerTrackingIdCache = CacheBuilder.newBuilder()
+        .maximumSize(MAX_REPORTS)
+        .expireAfterAccess(1, TimeUnit.HOURS)
+        .build();
+
+
+    //asynchronous report jobs, kept for a day so that their status can be polled
+    private Cache<String, ReportJob> reportJobs = CacheBuilder.newBuilder()
+        .maximumSize(MAX_REPORT_JOBS)
+        .expireAfterWrite(1, TimeUnit.DAYS)
+        .build();
 
+    //rolling latency/throughput view of the recent runs, fed by the worker heartbeats
+    private Cache<String, LiveMetrics> liveMetrics = CacheBuilder.newBuilder()
+        .maximumSize(MAX_LIVE_RUNS)
+        .expireAfterAccess(1, TimeUnit.HOURS)
+        .build();
 
     private Map<String, List<String>> jobsPerTrackingID = new ConcurrentHashMap<>();
+    private final Map<String, Set<ActorRef>> trackingSubscribers = new HashMap<>();
+    private final Set<ActorRef> dashboardSubscribers = new HashSet<>();
+    private final Map<String, String> publishedLogUrls = new HashMap<>();//workId -> last log url pushed
+    private long publishedDashboard = -1;
+    private boolean dashboardPushScheduled;
     private final boolean isRunningOnKubernetes;
 
     public Master(FiniteDuration workTimeout, AgentConfig agentConfig, boolean isRunningOnKubernetes) {
@@ -108,6 +147,8 @@ public class Master extends AbstractPersistentActor {
         ClusterClientReceptionist.get(getContext().system()).registerService(getSelf());
         this.cleanupTask = getContext().system().scheduler().schedule(workTimeout.div(2), workTimeout.div(2), getSelf(), CleanupTick, getContext().dispatcher(), getSelf());
         this.isRunningOnKubernetes = isRunningOnKubernetes;
+        AgentConfig.Job jobConfig = agentConfig.getJob();
+        this.swarm = jobConfig != null && jobConfig.getPeerSeeds() > 0 ? new ArtifactSwarm(jobConfig.getPeerSeeds(), jobConfig.getPeerFanOut()) : null;
     }
 
     public static Props props(FiniteDuration workTimeout, AgentConfig agentConfig, boolean isRunningOnKubernetes) {
@@ -178,17 +219,31 @@ public class Master extends AbstractPersistentActor {
             .match(MasterWorkerProtocol.WorkerRequestsWork.class, cmd -> onWorkerRequestsWork(cmd))
             .match(Worker.FileUploadComplete.class, cmd -> onFileUploadComplete(cmd))
             .match(MasterWorkerProtocol.WorkInProgress.class, cmd -> onWorkInProgress(cmd))
+            .match(MasterWorkerProtocol.WorkerReady.class, cmd -> onWorkerReady(cmd))
             .match(MasterWorkerProtocol.WorkIsDone.class, cmd -> onWorkIsDone(cmd))
             .match(MasterWorkerProtocol.WorkFailed.class, cmd -> onWorkFailed(cmd))
             .match(UploadInfo.class, cmd -> onUploadInfo(cmd))
             .match(ServerInfo.class, cmd -> onServerInfo(cmd))
+            .match(DashboardInfo.class, cmd -> getSender().tell(workerCounts.snapshot(), getSelf()))
             .match(TrackingInfo.class, cmd -> onTrackingInfo(cmd))
+            .match(LiveMetricsInfo.class, cmd -> onLiveMetricsInfo(cmd))
             .match(Report.class, cmd -> onReport(cmd))
+            .match(SubmitReport.class, cmd -> onSubmitReport(cmd))
+            .match(ReportJobInfo.class, cmd -> onReportJobInfo(cmd))
+            .match(ReportExecutor.ReportProgress.class, cmd -> onReportProgress(cmd))
+            .match(ReportQueueInfo.class, cmd -> reportExecutor.forward(cmd, getContext()))
+            .match(HistoryQuery.class, cmd -> reportExecutor.forward(cmd, getContext()))
             .match(UploadFile.class, cmd -> onUploadFile(cmd))
             .match(Job.class, cmd -> onJob(cmd))
             .match(MasterClientProtocol.CommandLineJob.class, cmd -> processCmdLineJob(cmd))
             .match(JobSummaryInfo.class, cmd -> onJobSummary())
+            .match(JobSummaryQuery.class, cmd -> getSender().tell(jobDatabase.getSummaryIndex().query(cmd), getSelf()))
+            .match(TaskInfo.class, cmd -> onTaskInfo(cmd))
             .match(ReportExecutor.ReportResult.class, cmd -> storeReportResult(cmd))
+            .match(Subscribe.class, cmd -> onSubscribe(cmd))
+            .match(Unsubscribe.class, cmd -> unsubscribe(getSender(), cmd.trackingId))
+            .match(Terminated.class, cmd -> isSubscriber(cmd.getActor()), cmd -> unsubscribeAll(cmd.getActor()))
+            .matchEquals(PublishDashboard, cmd -> onPublishDashboard())
             .matchEquals(CleanupTick, cmd -> onCleanupTick())
             .matchAny(cmd -> unhandled(cmd))
             .build();
@@ -211,7 +266,7 @@ public class Master extends AbstractPersistentActor {
         for(String job : jobsPerTrackingID.get(trackingId)){
             kube.deleteDeployment(job);
             log.info("Destroyed pod for worker: gatling-worker.{}", job);
-            workers.remove(("gatling-worker." + job));
+            removeWorker(("gatling-worker." + job));
         }
         workersPerTrakingIdCache.asMap().remove(trackingId);
         jobsPerTrackingID.remove(trackingId);
@@ -221,6 +276,15 @@ public class Master extends AbstractPersistentActor {
         getSender().tell(ImmutableList.copyOf(jobDatabase.getJobSummary().values()), getSelf());
     }
 
+    /**
+     * Replies with the task event of one task, or an Ack of the task id when it is unknown
+     */
+    private void onTaskInfo(TaskInfo cmd) {
+        JobSummary summary = jobDatabase.getJobSummary().get(cmd.trackingId);
+        Optional<TaskEvent> task = summary == null ? Optional.empty() : summary.getByWork(cmd.taskJobId);
+        getSender().tell(task.isPresent() ? task.get() : new Ack(cmd.taskJobId), getSelf());
+    }
+
     private void onCleanupTick() {
         Iterator<Map.Entry<String, WorkerState>> iterator = workers.entrySet().iterator();
         Set<String> tobeRemoved = new HashSet<>();
@@ -234,7 +298,7 @@ public class Master extends AbstractPersistentActor {
                     tobeRemoved.add(workerId);
                     persist(new JobState.JobTimedOut(state.status.getWorkId()), event -> {
                         // remove from in progress to pending
-                        jobDatabase = jobDatabase.updated(event);
+                        apply(event);
                         notifyWorkers();
                     });
                 }
@@ -246,8 +310,11 @@ public class Master extends AbstractPersistentActor {
             }
         }
         for (String workerId : tobeRemoved) {
-            workers.remove(workerId);
+            removeWorker(workerId);
         }
+        new HashSet<>(gangs.values()).stream()
+            .filter(gang -> gang.deadline.isOverdue())
+            .forEach(gang -> abortGang(gang, "start barrier timed out"));
 
     }
 
@@ -269,21 +336,39 @@ public class Master extends AbstractPersistentActor {
             .withFileFullName(clientConfig.getJarFileName())//class name is not fileName
             .withResourcesFileName((clientConfig.getResourcesFeedFileName()))
             .withJarFileName(clientConfig.getJarFileName())
+            .withPartitionFeeds(hasResourcesFeed && clientConfig.isPartitionFeeds())
+            .withTotalUsers(clientConfig.getTotalUsers())
+            .withTotalRps(clientConfig.getTotalRps())
+            .withSplitStrategy(clientConfig.getSplitStrategy())
+            .withSynchronizedStart(clientConfig.isSynchronizedStart())
+            .withTaskCpus(clientConfig.getTaskCpus())
+            .withTaskMemoryMb(clientConfig.getTaskMemoryMb())
             .build();
+        long[] users = split(clientConfig.getTotalUsers(), clientConfig);
+        long[] rps = split(clientConfig.getTotalRps(), clientConfig);
+        String jobFileHash = ArtifactCache.hashOf(clientConfig.getJarPath());
+        List<String> resourcesFiles = getResourcesFiles(clientConfig, jobinfo);
+        // every slice is hashed once, not once per task
+        List<String> resourcesFileHashes = resourcesFiles.stream().map(ArtifactCache::hashOf).collect(Collectors.toList());
         for (int i = 0; i < clientConfig.getParallelism(); i++) {
             TaskEvent taskEvent = new TaskEvent();
             taskEvent.setJobName("gatling"); //the gatling.sh script is the gateway for simulation files
             taskEvent.setJobInfo(jobinfo);
             taskEvent.setParameters(new ArrayList<>(parameters));
+            taskEvent.setTaskIndex(i);
+            taskEvent.setTaskParameters(LoadSplitter.taskParameters(i, clientConfig.getParallelism(), users, rps));
+            String resourcesFile = resourcesFiles.get(i % resourcesFiles.size());
             Job job = new Job(clientConfig.getPartitionName(), taskEvent, trackingId,
                               agentConfig.getAbortUrl(),
                               agentConfig.getJobFileUrl(clientConfig.getJarPath()),
-                              agentConfig.getJobFileUrl(clientConfig.getResourcesFeedPath()),
+                              agentConfig.getJobFileUrl(resourcesFile),
                               true);
+            job.jobFileHash = jobFileHash;
+            job.resourcesFileHash = resourcesFileHashes.get(i % resourcesFileHashes.size());
             persist(new JobState.JobAccepted(job), event -> {
                 // Ack back to original sender
                 getSender().tell(new MasterClientProtocol.CommandLineJobAccepted(job), getSelf());
-                jobDatabase = jobDatabase.updated(event);
+                apply(event);
                 notifyWorkers();
             });
 
@@ -292,6 +377,38 @@ public class Master extends AbstractPersistentActor {
         return Optional.of(trackingId);
     }
 
+    /**
+     * Share of the aggregate load of every task, an invalid weighted profile falls back to an even split
+     */
+    private long[] split(Long total, ClientConfig clientConfig) {
+        if (total == null) {
+            return null;
+        }
+        try {
+            return LoadSplitter.split(total, clientConfig.getParallelism(), clientConfig.getSplitStrategy(), clientConfig.getTaskWeights());
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid load profile ({}), splitting {} evenly", e.getMessage(), total);
+            return LoadSplitter.split(total, clientConfig.getParallelism(), LoadSplitter.EVEN, null);
+        }
+    }
+
+    /**
+     * The resources feed of every task, one slice per task when feed partitioning was requested,
+     * the whole feed is used if it can't be partitioned
+     */
+    private List<String> getResourcesFiles(ClientConfig clientConfig, JobSummary.JobInfo jobinfo) {
+        if (jobinfo.partitionFeeds) {
+            try {
+                return FeedPartitioner.partition(new File(clientConfig.getResourcesFeedPath()), clientConfig.getParallelism())
+                    .stream().map(File::getAbsolutePath).collect(Collectors.toList());
+            } catch (IOException e) {
+                log.error(e, "Unable to partition {}, every task gets the whole feed", clientConfig.getResourcesFeedPath());
+                jobinfo.partitionFeeds = false;
+            }
+        }
+        return Collections.singletonList(clientConfig.getResourcesFeedPath());
+    }
+
     private void onJob(Job cmd) {
         final String workId = cmd.jobId;
         // idempotent
@@ -302,7 +419,7 @@ public class Master extends AbstractPersistentActor {
             persist(new JobState.JobAccepted(cmd), event -> {
                 // Ack back to original sender
                 getSender().tell(new Ack(event.job.jobId), getSelf());
-                jobDatabase = jobDatabase.updated(event);
+                apply(event);
 
                 if(this.isRunningOnKubernetes){
                     KubernetesService kubernetesService = new KubernetesService();
@@ -339,20 +456,48 @@ public class Master extends AbstractPersistentActor {
 
     private void onReport(Object cmd) {
         log.info("Accepted report request: {}", cmd);
-        if(this.isRunningOnKubernetes) {
-            String trackingId = ((Report) cmd).trackingId;
-
-            try {
-                getSender().tell(reportPerTrackingIdCache.get(trackingId), getSelf());
+        String trackingId = ((Report) cmd).trackingId;
+        ReportExecutor.ReportResult report = this.isRunningOnKubernetes ? reportPerTrackingIdCache.getIfPresent(trackingId) : null;
+        if (report != null) {
+            getSender().tell(report, getSelf());
+        } else {
+            List<Worker.Result> result = jobDatabase.getCompletedResults(trackingId);
+            reportExecutor.forward(new GenerateReport((Report) cmd, result), getContext());
+        }
+    }
 
-            } catch (ExecutionException e) {
+    /**
+     * Registers a report job and hands it to the report executor, the requester gets the queued job right away
+     */
+    private void onSubmitReport(SubmitReport cmd) {
+        log.info("Accepted report job: {}", cmd);
+        long now = System.currentTimeMillis();
+        Report report = new Report(cmd.trackingId, cmd.taskEvent);
+        ReportJob job = new ReportJob(UUID.randomUUID().toString(), cmd.trackingId, ReportJob.QUEUED, report.getHtml(), now, now);
+        reportJobs.put(job.reportId, job);
+        ReportExecutor.ReportResult built = this.isRunningOnKubernetes ? reportPerTrackingIdCache.getIfPresent(cmd.trackingId) : null;
+        if (built != null) {
+            onReportProgress(new ReportExecutor.ReportProgress(job.reportId, built.success ? ReportJob.COMPLETED : ReportJob.FAILED));
+        } else {
+            List<Worker.Result> result = jobDatabase.getCompletedResults(cmd.trackingId);
+            reportExecutor.tell(new GenerateReport(report, result, job.reportId), getSelf());
+        }
+        getSender().tell(reportJobs.asMap().getOrDefault(job.reportId, job), getSelf());
+    }
 
-            }
+    /**
+     * Replies with the report job, or an Ack of the report id when it is unknown
+     */
+    private void onReportJobInfo(ReportJobInfo cmd) {
+        ReportJob job = reportJobs.getIfPresent(cmd.reportId);
+        getSender().tell(job != null ? job : new Ack(cmd.reportId), getSelf());
+    }
 
-        }
-        else {
-            List<Worker.Result> result = jobDatabase.getCompletedResults(((Report) cmd).trackingId);
-            reportExecutor.forward(new GenerateReport((Report) cmd, result), getContext());
+    private void onReportProgress(ReportExecutor.ReportProgress cmd) {
+        ReportJob job = reportJobs.getIfPresent(cmd.reportId);
+        if (job != null && !job.isDone()) {
+            log.info("Report job {} of {} is {}", cmd.reportId, job.trackingId, cmd.status);
+            reportJobs.put(cmd.reportId, new ReportJob(job.reportId, job.trackingId, cmd.status, job.report, job.submitted, System.currentTimeMillis()));
         }
     }
 
@@ -368,6 +513,129 @@ public class Master extends AbstractPersistentActor {
         getSender().tell(result, getSelf());
     }
 
+    private void onLiveMetricsInfo(LiveMetricsInfo cmd) {
+        LiveMetrics metrics = liveMetrics.getIfPresent(cmd.trackingId);
+        getSender().tell(metrics == null ? LiveMetrics.View.empty(cmd.trackingId) : metrics.view(), getSelf());
+    }
+
+    private void putWorker(String workerId, WorkerState state) {
+        workerCounts.change(workers.put(workerId, state), state);
+        scheduleDashboardPush();
+    }
+
+    private void removeWorker(String workerId) {
+        WorkerState removed = workers.remove(workerId);
+        if (removed != null) {
+            workerCounts.change(removed, null);
+            if (swarm != null) {
+                swarm.remove(removed.peerUrl);
+            }
+            scheduleDashboardPush();
+        }
+    }
+
+    /**
+     * Applies a persisted event and pushes the task it changed to the subscribers of its tracking id
+     */
+    private void apply(JobDomainEvent event) {
+        jobDatabase = jobDatabase.updated(event);
+        String workId = JobState.workIdOf(event);
+        if (workId == null || trackingSubscribers.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, Set<ActorRef>> entry : trackingSubscribers.entrySet()) {
+            JobSummary summary = jobDatabase.getJobSummary().get(entry.getKey());
+            Optional<TaskEvent> task = summary == null ? Optional.empty() : summary.getByWork(workId);
+            if (task.isPresent()) {
+                publish(entry.getValue(), new TaskDelta(entry.getKey(), task.get(), null));
+                return;
+            }
+        }
+    }
+
+    private void publishLogUrl(String trackingId, String workId, String logUrl) {
+        Set<ActorRef> subscribers = trackingSubscribers.get(trackingId);
+        if (subscribers == null || logUrl.equals(publishedLogUrls.put(workId, logUrl))) {
+            return;
+        }
+        JobSummary summary = jobDatabase.getJobSummary().get(trackingId);
+        Optional<TaskEvent> task = summary == null ? Optional.empty() : summary.getByWork(workId);
+        task.ifPresent(t -> publish(subscribers, new TaskDelta(trackingId, t, logUrl)));
+    }
+
+    private void publish(Set<ActorRef> subscribers, Object delta) {
+        for (ActorRef subscriber : subscribers) {
+            subscriber.tell(delta, getSelf());
+        }
+    }
+
+    /**
+     * Subscribers renew their subscription periodically, so a master taking over after a handover learns them again.
+     * Only a new subscriber is sent the current state
+     */
+    private void onSubscribe(Subscribe cmd) {
+        ActorRef subscriber = getSender();
+        getContext().watch(subscriber);
+        if (cmd.trackingId == null) {
+            if (dashboardSubscribers.add(subscriber)) {
+                subscriber.tell(workerCounts.snapshot(), getSelf());
+            }
+            return;
+        }
+        if (!trackingSubscribers.computeIfAbsent(cmd.trackingId, k -> new HashSet<>()).add(subscriber)) {
+            return;
+        }
+        JobSummary summary = jobDatabase.getJobSummary().get(cmd.trackingId);
+        if (summary != null) {
+            for (TaskEvent task : summary.getTaskInfoList()) {
+                subscriber.tell(new TaskDelta(cmd.trackingId, task, publishedLogUrls.get(task.getTaskJobId())), getSelf());
+            }
+        }
+    }
+
+    private void unsubscribe(ActorRef subscriber, String trackingId) {
+        if (trackingId == null) {
+            dashboardSubscribers.remove(subscriber);
+        } else {
+            Set<ActorRef> subscribers = trackingSubscribers.get(trackingId);
+            if (subscribers != null && subscribers.remove(subscriber) && subscribers.isEmpty()) {
+                trackingSubscribers.remove(trackingId);
+                JobSummary summary = jobDatabase.getJobSummary().get(trackingId);
+                if (summary != null) {
+                    summary.getTaskInfoList().forEach(task -> publishedLogUrls.remove(task.getTaskJobId()));
+                }
+            }
+        }
+        if (!isSubscriber(subscriber)) {
+            getContext().unwatch(subscriber);
+        }
+    }
+
+    private void unsubscribeAll(ActorRef subscriber) {
+        dashboardSubscribers.remove(subscriber);
+        new ArrayList<>(trackingSubscribers.keySet()).forEach(trackingId -> unsubscribe(subscriber, trackingId));
+    }
+
+    private boolean isSubscriber(ActorRef actor) {
+        return dashboardSubscribers.contains(actor) || trackingSubscribers.values().stream().anyMatch(s -> s.contains(actor));
+    }
+
+    private void scheduleDashboardPush() {
+        if (!dashboardPushScheduled && !dashboardSubscribers.isEmpty() && workerCounts.getVersion() != publishedDashboard) {
+            dashboardPushScheduled = true;
+            getContext().system().scheduler().scheduleOnce(DASHBOARD_PUSH_INTERVAL, getSelf(), PublishDashboard, getContext().dispatcher(), getSelf());
+        }
+    }
+
+    private void onPublishDashboard() {
+        dashboardPushScheduled = false;
+        if (workerCounts.getVersion() != publishedDashboard) {
+            Dashboard snapshot = workerCounts.snapshot();
+            publishedDashboard = snapshot.version;
+            publish(dashboardSubscribers, snapshot);
+        }
+    }
+
     private void onServerInfo(Object cmd) {
         log.info("Accepted Server info request: {}", cmd);
         getSender().tell(new ServerInfo(workers), getSelf());
@@ -384,10 +652,14 @@ public class Master extends AbstractPersistentActor {
         final String workId = cmd.workId;
         final String workerId = cmd.workerId;
         log.info("Work {} failed by worker {}", workId, workerId);
+        Gang gang = gangs.get(workId);
+        if (gang != null) {
+            abortGang(gang, "work " + workId + " failed");
+        }
         if (jobDatabase.isInProgress(workId)) {
             changeWorkerToIdle(workerId);
             persist(new JobState.JobFailed(workId, cmd.result), event -> {
-                jobDatabase = jobDatabase.updated(event);
+                apply(event);
                 notifyWorkers();
             });
         }
@@ -410,7 +682,7 @@ public class Master extends AbstractPersistentActor {
             log.info("Work {} is done by worker {}", workId, workerId);
             changeWorkerToIdle(workerId);
             persist(new JobState.JobCompleted(workId, cmd.result), event -> {
-                jobDatabase = jobDatabase.updated(event);
+                apply(event);
 
                 if (this.isRunningOnKubernetes){
                     getSender().tell(new AckKubernetes(event.workId), getSelf());
@@ -442,7 +714,20 @@ public class Master extends AbstractPersistentActor {
         final WorkerState state = workers.get(workerId);
         if (jobDatabase.isInProgress(workId)) {
             if (state != null && state.status.isBusy()) {
-                workers.put(workerId, state.copyWithStatus(new Busy(state.status.getWorkId(), workTimeout.fromNow())));
+                putWorker(workerId, state.copyWithStatus(new Busy(state.status.getWorkId(), workTimeout.fromNow())).copyWithCapacity(cmd.capacity));
+            }
+            if (cmd.logUrl != null) {
+                String trackingId = jobDatabase.getJobInProgress(workId).trackingId;
+                reportExecutor.tell(new PartialReport(trackingId, workId, cmd.logUrl), getSelf());
+                publishLogUrl(trackingId, workId, cmd.logUrl);
+            }
+            if (cmd.metrics != null) {
+                String trackingId = jobDatabase.getJobInProgress(workId).trackingId;
+                try {
+                    liveMetrics.get(trackingId, () -> new LiveMetrics(trackingId)).merge(cmd.metrics);
+                } catch (ExecutionException e) {
+                    log.error("Could not merge the live metrics of {}: {}", workId, e);
+                }
             }
         } else {
             log.info("Work {} not in progress, reported as in progress by worker {}", workId, workerId);
@@ -464,10 +749,10 @@ public class Master extends AbstractPersistentActor {
             final Job job = jobDatabase.hasJob(workerId.split("\\.")[1]);
 
             persist(new JobState.JobStarted(job.jobId, workerId), event -> {
-                jobDatabase = jobDatabase.updated(event);
+                apply(event);
                 log.info("Giving worker {} some taskEvent {}", workerId, event.workId);
-                workers.put(workerId, state.copyWithStatus(new Busy(event.workId, workTimeout.fromNow())));
-                getSender().tell(job, getSelf());
+                putWorker(workerId, state.copyWithStatus(new Busy(event.workId, workTimeout.fromNow())));
+                getSender().tell(withSources(job, workerId), getSelf());
             });
         } else {
             if (jobDatabase.hasJob()) {
@@ -477,16 +762,33 @@ public class Master extends AbstractPersistentActor {
                     final Job job = jobDatabase.nextJob();//nextJob for the partition/role
                     boolean jobWorkerRoleMatched = workReqMsg.role.equalsIgnoreCase(job.roleId);
 
-                    if (jobWorkerRoleMatched) {
-                        persist(new JobState.JobStarted(job.jobId, workerId), event -> {
-                            jobDatabase = jobDatabase.updated(event);
-                            log.info("Giving worker {} some taskEvent {}", workerId, event.workId);
-                            workers.put(workerId, state.copyWithStatus(new Busy(event.workId, workTimeout.fromNow())));
-                            getSender().tell(job, getSelf());
+                    if (jobWorkerRoleMatched && ((TaskEvent) job.taskEvent).getJobInfo().synchronizedStart) {
+                        allocateGang(job, workerId);
+                    } else if (jobWorkerRoleMatched) {
+                        List<String> placement = place(job, workerId, 1);
+                        if (placement.isEmpty()) {
+                            log.info("No host has the capacity for {}, postponing", job.jobId);
+                            persist(new JobState.JobPostponed(job.jobId), event -> {
+                                apply(event);
+                            });
+                            extendIdleExpiryTime(workerId);
+                            return;
+                        }
+                        //the requesting worker may not sit on the host picked by the scheduling policy
+                        final String chosen = placement.get(0);
+                        final ActorRef ref = chosen.equals(workerId) ? getSender() : workers.get(chosen).ref;
+                        if (!chosen.equals(workerId)) {
+                            extendIdleExpiryTime(workerId);
+                        }
+                        persist(new JobState.JobStarted(job.jobId, chosen), event -> {
+                            apply(event);
+                            log.info("Giving worker {} some taskEvent {}", chosen, event.workId);
+                            putWorker(chosen, workers.get(chosen).copyWithStatus(new Busy(event.workId, workTimeout.fromNow())));
+                            ref.tell(withSources(job, chosen), getSelf());
                         });
                     } else {
                         persist(new JobState.JobPostponed(job.jobId), event -> {
-                            jobDatabase = jobDatabase.updated(event);
+                            apply(event);
                             log.info("Postponing work: {}", workerId);
                         });
                         extendIdleExpiryTime(workerId);
@@ -498,9 +800,132 @@ public class Master extends AbstractPersistentActor {
         }
     }
 
+    /**
+     * Points the worker at the agents it should fetch the artifacts of the job from before the master
+     */
+    private Job withSources(Job job, String workerId) {
+        WorkerState state = workers.get(workerId);
+        if (swarm == null || state == null) {
+            return job;
+        }
+        // a copy, the job is held by the persisted events and the state built from them
+        return job.withSources(swarm.sources(job.jobFileHash, state.peerUrl), swarm.sources(job.resourcesFileHash, state.peerUrl));
+    }
+
+    /**
+     * All or nothing: the pending tasks of the simulation only start when there is an idle worker of the role
+     * for each of them, otherwise they stay pending and no slot is tied up waiting for the others.
+     * The tasks are submitted one at a time, the gang is only formed once every task of the simulation was accepted.
+     */
+    private void allocateGang(Job job, String workerId) {
+        JobSummary summary = jobDatabase.getJobSummary().get(job.trackingId);
+        int expected = ((TaskEvent) job.taskEvent).getJobInfo().count;
+        if (summary == null || summary.getTaskInfoList().size() < expected) {
+            log.info("Waiting for the {} tasks of {} to be submitted, postponing", expected, job.trackingId);
+            persist(new JobState.JobPostponed(job.jobId), event -> {
+                apply(event);
+            });
+            extendIdleExpiryTime(workerId);
+            return;
+        }
+        List<Job> members = jobDatabase.getPendingJobs(job.trackingId);
+        List<String> slots = place(job, workerId, members.size());
+        if (slots.isEmpty()) {
+            log.info("Not enough idle capacity for the {} tasks of {}, postponing", members.size(), job.trackingId);
+            persist(new JobState.JobPostponed(job.jobId), event -> {
+                apply(event);
+            });
+            extendIdleExpiryTime(workerId);
+            return;
+        }
+        Gang gang = new Gang(workTimeout.fromNow());
+        List<JobState.JobStarted> events = new ArrayList<>(members.size());
+        for (int i = 0; i < members.size(); i++) {
+            events.add(new JobState.JobStarted(members.get(i).jobId, slots.get(i)));
+            gang.members.put(members.get(i).jobId, slots.get(i));
+            gangs.put(members.get(i).jobId, gang);
+        }
+        log.info("Gang of {} workers allocated to {}", members.size(), job.trackingId);
+        persistAll(events, event -> {
+            apply(event);
+            WorkerState state = workers.get(event.workerId);
+            log.info("Giving worker {} some taskEvent {}", event.workerId, event.workId);
+            putWorker(event.workerId, state.copyWithStatus(new Busy(event.workId, workTimeout.fromNow())));
+            state.ref.tell(withSources(jobDatabase.getJobInProgress(event.workId), event.workerId), getSelf());
+        });
+    }
+
+    /**
+     * Picks idle workers of the role of the job for the given number of tasks with the scheduling policy,
+     * hosts are charged with the declared needs of the tasks already running on them.
+     * @param requesterId the worker asking for work, eligible even when it registered without a role
+     * @return the workers, empty when the tasks don't all fit
+     */
+    private List<String> place(Job job, String requesterId, int tasks) {
+        JobSummary.JobInfo info = ((TaskEvent) job.taskEvent).getJobInfo();
+        Map<String, HostCapacity> capacities = new HashMap<>();
+        workers.values().stream()
+            .filter(state -> state.host != null && state.capacity != null)
+            .forEach(state -> capacities.put(state.host, state.capacity));
+        Map<String, CapacityScheduler.Host> hosts = new HashMap<>();
+        for (Map.Entry<String, WorkerState> entry : workers.entrySet()) {
+            WorkerState state = entry.getValue();
+            //workers that didn't tell their host are considered alone on theirs
+            String name = state.host != null ? state.host : entry.getKey();
+            CapacityScheduler.Host host = hosts.computeIfAbsent(name, h -> new CapacityScheduler.Host(h, capacities.get(h)));
+            if (state.status.isIdle()) {
+                if (entry.getKey().equals(requesterId) || job.roleId.equalsIgnoreCase(state.role)) {
+                    host.addIdleWorker(entry.getKey());
+                }
+            } else {
+                Job running = jobDatabase.getJobInProgress(state.status.getWorkId());
+                if (running != null) {
+                    JobSummary.JobInfo runningInfo = ((TaskEvent) running.taskEvent).getJobInfo();
+                    host.addRunningTask(runningInfo.taskCpus, runningInfo.taskMemoryMb * 1024 * 1024);
+                }
+            }
+        }
+        return CapacityScheduler.place(agentConfig.getSchedulingPolicy(), hosts.values(), info.taskCpus, info.taskMemoryMb * 1024 * 1024, tasks);
+    }
+
+    private void onWorkerReady(MasterWorkerProtocol.WorkerReady cmd) {
+        Gang gang = gangs.get(cmd.workId);
+        if (gang == null) {
+            if (jobDatabase.isInProgress(cmd.workId)) {
+                //the barrier was lost with a master fail over, don't keep the task waiting
+                log.warning("No start barrier for work {}, starting it now", cmd.workId);
+                getSender().tell(new MasterWorkerProtocol.StartWork(cmd.workId, System.currentTimeMillis()), getSelf());
+            }
+            return;
+        }
+        gang.ready.add(cmd.workId);
+        log.info("Work {} is ready, {} of {}", cmd.workId, gang.ready.size(), gang.members.size());
+        if (gang.ready.size() == gang.members.size()) {
+            long startAt = System.currentTimeMillis() + START_LEAD_MILLIS;
+            gang.members.forEach((workId, workerId) -> {
+                gangs.remove(workId);
+                WorkerState state = workers.get(workerId);
+                if (state != null) {
+                    state.ref.tell(new MasterWorkerProtocol.StartWork(workId, startAt), getSelf());
+                }
+            });
+        }
+    }
+
+    private void abortGang(Gang gang, String reason) {
+        log.warning("Aborting the gang {}: {}", gang.members.keySet(), reason);
+        gang.members.forEach((workId, workerId) -> {
+            gangs.remove(workId);
+            WorkerState state = workers.get(workerId);
+            if (state != null) {
+                state.ref.tell(new MasterWorkerProtocol.AbortWork(workId), getSelf());
+            }
+        });
+    }
+
     private void extendIdleExpiryTime(String workerId) {
         if(workers.get(workerId).status.isIdle()) {
-            workers.put(workerId, workers.get(workerId).copyWithStatus(new Idle(workTimeout.fromNow())));
+            putWorker(workerId, workers.get(workerId).copyWithStatus(new Idle(workTimeout.fromNow())));
         }
     }
 
@@ -524,11 +949,11 @@ public class Master extends AbstractPersistentActor {
     private void onRegisterWorker(MasterWorkerProtocol.RegisterWorker cmd) {
         String workerId = cmd.workerId;
         if (workers.containsKey(workerId)) {
-            workers.put(workerId, workers.get(workerId).copyWithRef(getSender()));
+            putWorker(workerId, workers.get(workerId).copyWithRef(getSender()).copyWithCapacity(cmd.capacity));
         } else {
             log.info("Worker registered: {}", workerId);
-            WorkerState workerState = new WorkerState(getSender(), new Idle(workTimeout.fromNow()));
-            workers.put(workerId, workerState );
+            WorkerState workerState = new WorkerState(getSender(), cmd.role, cmd.host, cmd.capacity, new Idle(workTimeout.fromNow()), cmd.peerUrl);
+            putWorker(workerId, workerState );
             if (this.isRunningOnKubernetes){
                 String jobId = workerId.split("\\.")[1];
 //                String trackingId = jobsPerTrackingID.keySet().stream().filter(key -> jobsPerTrackingID.get(key).contains(jobId)).collect(Collectors.toList()).get(0);
@@ -561,7 +986,7 @@ public class Master extends AbstractPersistentActor {
 
     private void changeWorkerToIdle(String workerId) {
         if (workers.get(workerId).status.isBusy()) {
-            workers.put(workerId, workers.get(workerId).copyWithStatus(new Idle(workTimeout.fromNow())));
+            putWorker(workerId, workers.get(workerId).copyWithStatus(new Idle(workTimeout.fromNow())));
         }
     }
 
@@ -637,19 +1062,34 @@ public class Master extends AbstractPersistentActor {
 
     public static final class WorkerState {
         public final ActorRef ref;
+        public final String role;
+        public final String host;
+        public final HostCapacity capacity;//last advertised, null until the worker reports it
         public final WorkerStatus status;
+        public final String peerUrl;//artifact end point of the agent, null when it doesn't serve its peers
 
-        private WorkerState(ActorRef ref, WorkerStatus status) {
+        private WorkerState(ActorRef ref, String role, String host, HostCapacity capacity, WorkerStatus status, String peerUrl) {
             this.ref = ref;
+            this.role = role;
+            this.host = host;
+            this.capacity = capacity;
             this.status = status;
+            this.peerUrl = peerUrl;
         }
 
         private WorkerState copyWithRef(ActorRef ref) {
-            return new WorkerState(ref, this.status);
+            return new WorkerState(ref, this.role, this.host, this.capacity, this.status, this.peerUrl);
         }
 
         private WorkerState copyWithStatus(WorkerStatus status) {
-            return new WorkerState(this.ref, status);
+            return new WorkerState(this.ref, this.role, this.host, this.capacity, status, this.peerUrl);
+        }
+
+        private WorkerState copyWithCapacity(HostCapacity capacity) {
+            if (capacity == null) {
+                return this;
+            }
+            return new WorkerState(this.ref, this.role, this.host, capacity, this.status, this.peerUrl);
         }
 
         @Override
@@ -674,7 +1114,20 @@ public class Master extends AbstractPersistentActor {
 
         @Override
         public String toString() {
-            return "WorkerState{" + "ref=" + ref + ", status=" + status + '}';
+            return "WorkerState{" + "ref=" + ref + ", role=" + role + ", host=" + host + ", capacity=" + capacity + ", status=" + status + '}';
+        }
+    }
+
+    /**
+     * Tasks of a synchronized simulation allocated together, they start once every member reported ready
+     */
+    private static final class Gang {
+        private final Map<String, String> members = new HashMap<>();//workId -> workerId
+        private final Set<String> ready = new HashSet<>();
+        private final Deadline deadline;
+
+        private Gang(Deadline deadline) {
+            this.deadline = deadline;
         }
     }
 
@@ -687,6 +1140,12 @@ public class Master extends AbstractPersistentActor {
         public String abortUrl;
         public String jobFileUrl;
         public String resourcesFileUrl;
+        // SHA-256 of the artifacts behind the urls, null when unknown
+        public String jobFileHash;
+        public String resourcesFileHash;
+        // agents to fetch the artifacts from before the urls, set when the job is handed to a worker
+        public List<String> jobFileSources;
+        public List<String> resourcesFileSources;
 
 
         public int expectedWorkers;
@@ -708,6 +1167,32 @@ public class Master extends AbstractPersistentActor {
             this.expectedWorkers = expectedWorkers;
         }
 
+        private Job(Job job) {
+            this.jobId = job.jobId;
+            this.roleId = job.roleId;
+            this.taskEvent = job.taskEvent;
+            this.trackingId = job.trackingId;
+            this.abortUrl = job.abortUrl;
+            this.jobFileUrl = job.jobFileUrl;
+            this.resourcesFileUrl = job.resourcesFileUrl;
+            this.isJarSimulation = job.isJarSimulation;
+            this.jobFileHash = job.jobFileHash;
+            this.resourcesFileHash = job.resourcesFileHash;
+            this.jobFileSources = job.jobFileSources;
+            this.resourcesFileSources = job.resourcesFileSources;
+            this.expectedWorkers = job.expectedWorkers;
+        }
+
+        /**
+         * @return a copy of the job, with the same id, pointing at the given agents for its artifacts
+         */
+        public Job withSources(List<String> jobFileSources, List<String> resourcesFileSources) {
+            Job job = new Job(this);
+            job.jobFileSources = jobFileSources;
+            job.resourcesFileSources = resourcesFileSources;
+            return job;
+        }
+
         @Override
         public String toString() {
             return "Job{" +
@@ -719,6 +1204,10 @@ public class Master extends AbstractPersistentActor {
                    ", abortUrl='" + abortUrl + '\'' +
                    ", jobFileUrl='" + jobFileUrl + '\'' +
                    ", resourcesFileUrl='" + resourcesFileUrl + '\'' +
+                   ", jobFileHash='" + jobFileHash + '\'' +
+                   ", resourcesFileHash='" + resourcesFileHash + '\'' +
+                   ", jobFileSources=" + jobFileSources +
+                   ", resourcesFileSources=" + resourcesFileSources +
                    '}';
         }
     }
@@ -801,21 +1290,188 @@ public class Master extends AbstractPersistentActor {
     public static final class GenerateReport implements Serializable {
         public final Report reportJob;
         public final List<Worker.Result> results;
+        // asynchronous report job to notify of the progress, null when the requester waits for the ReportResult
+        public final String reportId;
 
         public GenerateReport(Report repotJob, List<Worker.Result> results) {
+            this(repotJob, results, null);
+        }
+
+        public GenerateReport(Report repotJob, List<Worker.Result> results, String reportId) {
             this.reportJob = repotJob;
             this.results = results;
+            this.reportId = reportId;
         }
 
         @Override
         public String toString() {
             return "GenerateReport{" +
                    "reportJob=" + reportJob +
+                   ", reportId='" + reportId + '\'' +
                    ", results=" + results +
                    '}';
         }
     }
 
+    /**
+     * Tells the report executor where a running task logs, to follow the simulation with partial reports
+     */
+    public static final class PartialReport implements Serializable {
+        public final String trackingId;
+        public final String workId;
+        public final String logUrl;
+
+        public PartialReport(String trackingId, String workId, String logUrl) {
+            this.trackingId = trackingId;
+            this.workId = workId;
+            this.logUrl = logUrl;
+        }
+
+        @Override
+        public String toString() {
+            return "PartialReport{" +
+                   "trackingId='" + trackingId + '\'' +
+                   ", workId='" + workId + '\'' +
+                   '}';
+        }
+    }
+
+    public static final class SubmitReport implements Serializable {
+        public final String trackingId;
+        public final TaskEvent taskEvent;
+
+        public SubmitReport(String trackingId, TaskEvent taskEvent) {
+            this.trackingId = trackingId;
+            this.taskEvent = taskEvent;
+        }
+
+        @Override
+        public String toString() {
+            return "SubmitReport{" +
+                   "trackingId='" + trackingId + '\'' +
+                   '}';
+        }
+    }
+
+    public static final class ReportJobInfo implements Serializable {
+        public final String reportId;
+
+        public ReportJobInfo(String reportId) {
+            this.reportId = reportId;
+        }
+
+        @Override
+        public String toString() {
+            return "ReportJobInfo{" +
+                   "reportId='" + reportId + '\'' +
+                   '}';
+        }
+    }
+
+    /**
+     * Snapshot of an asynchronous report job, the report location is only valid once the job is COMPLETED
+     */
+    public static final class ReportJob implements Serializable {
+        public static final String QUEUED = "QUEUED";
+        public static final String COLLECTING = "COLLECTING";
+        public static final String GENERATING = "GENERATING";
+        public static final String COMPLETED = "COMPLETED";
+        public static final String FAILED = "FAILED";
+
+        public final String reportId;
+        public final String trackingId;
+        public final String status;
+        public final String report;
+        public final long submitted;
+        public final long updated;
+
+        public ReportJob(String reportId, String trackingId, String status, String report, long submitted, long updated) {
+            this.reportId = reportId;
+            this.trackingId = trackingId;
+            this.status = status;
+            this.report = report;
+            this.submitted = submitted;
+            this.updated = updated;
+        }
+
+        public boolean isDone() {
+            return COMPLETED.equals(status) || FAILED.equals(status);
+        }
+
+        @Override
+        public String toString() {
+            return "ReportJob{" +
+                   "reportId='" + reportId + '\'' +
+                   ", trackingId='" + trackingId + '\'' +
+                   ", status='" + status + '\'' +
+                   '}';
+        }
+    }
+
+    /**
+     * Trend of a request name across the reported runs, answered with a {@link RunHistory.Result}
+     */
+    public static final class HistoryQuery implements Serializable {
+        public final String request;
+        public final String simulation;
+        public final long from;
+        public final long to;
+        public final int limit;
+        public final long bucketMillis;
+
+        public HistoryQuery(String request, String simulation, long from, long to, int limit, long bucketMillis) {
+            this.request = request;
+            this.simulation = simulation;
+            this.from = from;
+            this.to = to;
+            this.limit = limit;
+            this.bucketMillis = bucketMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "HistoryQuery{" +
+                   "request='" + request + '\'' +
+                   ", simulation='" + simulation + '\'' +
+                   ", from=" + from +
+                   ", to=" + to +
+                   ", limit=" + limit +
+                   ", bucketMillis=" + bucketMillis +
+                   '}';
+        }
+    }
+
+    public static final class ReportQueueInfo implements Serializable {
+        @Override
+        public String toString() {
+            return "ReportQueueInfo";
+        }
+    }
+
+    /**
+     * Load of the report executor: builds collecting their results, waiting for a generation slot and generating
+     */
+    public static final class ReportQueue implements Serializable {
+        public final int collecting;
+        public final int queued;
+        public final int generating;
+
+        public ReportQueue(int collecting, int queued, int generating) {
+            this.collecting = collecting;
+            this.queued = queued;
+            this.generating = generating;
+        }
+
+        @Override
+        public String toString() {
+            return "ReportQueue{" +
+                   "collecting=" + collecting +
+                   ", queued=" + queued +
+                   ", generating=" + generating +
+                   '}';
+        }
+    }
+
     public static final class TrackingInfo implements Serializable {
         public final String trackingId;
         public final boolean cancel;
@@ -839,6 +1495,39 @@ public class Master extends AbstractPersistentActor {
         }
     }
 
+    public static final class TaskInfo implements Serializable {
+        public final String trackingId;
+        public final String taskJobId;
+
+        public TaskInfo(String trackingId, String taskJobId) {
+            this.trackingId = trackingId;
+            this.taskJobId = taskJobId;
+        }
+
+        @Override
+        public String toString() {
+            return "TaskInfo{" +
+                   "trackingId='" + trackingId + '\'' +
+                   ", taskJobId='" + taskJobId + '\'' +
+                   '}';
+        }
+    }
+
+    public static final class LiveMetricsInfo implements Serializable {
+        public final String trackingId;
+
+        public LiveMetricsInfo(String trackingId) {
+            this.trackingId = trackingId;
+        }
+
+        @Override
+        public String toString() {
+            return "LiveMetricsInfo{" +
+                   "trackingId='" + trackingId + '\'' +
+                   '}';
+        }
+    }
+
     public static final class UploadInfo implements Serializable {
         public final String trackingId;
         public List<String> hosts;
@@ -863,6 +1552,211 @@ public class Master extends AbstractPersistentActor {
     public static final class JobSummaryInfo implements Serializable {
     }
 
+    /**
+     * One page of the job summaries, filtered and sorted by the master, answered with a {@link JobSummaryPage}
+     */
+    public static final class JobSummaryQuery implements Serializable {
+        public static final String RUNNING = "running";
+        public static final String FINISHED = "finished";
+        public static final String START_TIME = "startTime";
+        public static final String END_TIME = "endTime";
+
+        public final String trackingId;
+        public final String status;
+        public final String user;
+        public final String partition;
+        public final long from;
+        public final long to;
+        public final String sort;
+        public final boolean descending;
+        public final int page;
+        public final int size;
+
+        /**
+         * @param trackingId only this job, every other criteria is ignored
+         * @param status RUNNING, FINISHED or a task status, null for any status
+         * @param user null for any user
+         * @param partition null for any partition
+         * @param from earliest start time in epoch seconds
+         * @param to latest start time in epoch seconds, exclusive
+         * @param sort START_TIME or END_TIME
+         * @param descending most recent first
+         * @param page zero based page number
+         * @param size page size
+         */
+        public JobSummaryQuery(String trackingId, String status, String user, String partition, long from, long to,
+                               String sort, boolean descending, int page, int size) {
+            this.trackingId = trackingId;
+            this.status = status;
+            this.user = user;
+            this.partition = partition;
+            this.from = from;
+            this.to = to;
+            this.sort = sort;
+            this.descending = descending;
+            this.page = page;
+            this.size = size;
+        }
+
+        public static JobSummaryQuery byTrackingId(String trackingId) {
+            return new JobSummaryQuery(trackingId, null, null, null, 0, Long.MAX_VALUE, START_TIME, true, 0, 1);
+        }
+
+        @Override
+        public String toString() {
+            return "JobSummaryQuery{" +
+                   "trackingId='" + trackingId + '\'' +
+                   ", status='" + status + '\'' +
+                   ", user='" + user + '\'' +
+                   ", partition='" + partition + '\'' +
+                   ", from=" + from +
+                   ", to=" + to +
+                   ", sort='" + sort + '\'' +
+                   ", descending=" + descending +
+                   ", page=" + page +
+                   ", size=" + size +
+                   '}';
+        }
+    }
+
+    public static final class JobSummaryPage implements Serializable {
+        public final List<JobSummary> content;
+        public final long total;
+        public final int page;
+        public final int size;
+
+        public JobSummaryPage(List<JobSummary> content, long total, int page, int size) {
+            this.content = content;
+            this.total = total;
+            this.page = page;
+            this.size = size;
+        }
+
+        @Override
+        public String toString() {
+            return "JobSummaryPage{" +
+                   "content=" + content.size() +
+                   ", total=" + total +
+                   ", page=" + page +
+                   ", size=" + size +
+                   '}';
+        }
+    }
+
+    public static final class DashboardInfo implements Serializable {
+    }
+
+    /**
+     * Worker counts grouped by status, partition, host and partition:status, version identifies them
+     */
+    public static final class Dashboard implements Serializable {
+        public final long epoch;
+        public final long version;
+        public final Map<String, Long> status;
+        public final Map<String, Long> partition;
+        public final Map<String, Long> host;
+        public final Map<String, Long> partitionStatus;
+
+        public Dashboard(long epoch, long version, Map<String, Long> status, Map<String, Long> partition,
+                         Map<String, Long> host, Map<String, Long> partitionStatus) {
+            this.epoch = epoch;
+            this.version = version;
+            this.status = status;
+            this.partition = partition;
+            this.host = host;
+            this.partitionStatus = partitionStatus;
+        }
+
+        public static Dashboard empty() {
+            return new Dashboard(0, 0, new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>());
+        }
+
+        /**
+         * Entity tag of the counts, changes whenever a count changes or the master restarts
+         */
+        public String getTag() {
+            return Long.toHexString(epoch) + "-" + version;
+        }
+
+        @Override
+        public String toString() {
+            return "Dashboard{" +
+                   "version=" + getTag() +
+                   ", status=" + status +
+                   ", partition=" + partition +
+                   '}';
+        }
+    }
+
+    /**
+     * Asks the master to push the changes of a tracking id to the sender, as TaskDelta, or the dashboard counts
+     * when trackingId is null. The current state is sent first, the pushes stop on Unsubscribe or when the sender stops.
+     */
+    public static final class Subscribe implements Serializable {
+        public final String trackingId;
+
+        public Subscribe(String trackingId) {
+            this.trackingId = trackingId;
+        }
+
+        @Override
+        public String toString() {
+            return "Subscribe{" +
+                   "trackingId='" + trackingId + '\'' +
+                   '}';
+        }
+    }
+
+    public static final class Unsubscribe implements Serializable {
+        public final String trackingId;
+
+        public Unsubscribe(String trackingId) {
+            this.trackingId = trackingId;
+        }
+
+        @Override
+        public String toString() {
+            return "Unsubscribe{" +
+                   "trackingId='" + trackingId + '\'' +
+                   '}';
+        }
+    }
+
+    /**
+     * State of one task after a transition, logUrl is set when the worker published a new live log
+     */
+    public static final class TaskDelta implements Serializable {
+        public final String trackingId;
+        public final String taskJobId;
+        public final String status;
+        public final String workerId;
+        public final String stdLogPath;
+        public final String errorLogPath;
+        public final String logUrl;
+        public final long timestamp;
+
+        public TaskDelta(String trackingId, TaskEvent task, String logUrl) {
+            this.trackingId = trackingId;
+            this.taskJobId = task.getTaskJobId();
+            this.status = task.getStatus();
+            this.workerId = task.getWorkerId();
+            this.stdLogPath = task.getStdLogPath();
+            this.errorLogPath = task.getErrorLogPath();
+            this.logUrl = logUrl;
+            this.timestamp = System.currentTimeMillis();
+        }
+
+        @Override
+        public String toString() {
+            return "TaskDelta{" +
+                   "taskJobId='" + taskJobId + '\'' +
+                   ", status='" + status + '\'' +
+                   ", workerId='" + workerId + '\'' +
+                   ", logUrl='" + logUrl + '\'' +
+                   '}';
+        }
+    }
+
     public static final class ServerInfo implements Serializable {
 
         private ImmutableMap<String, WorkerState> workers;
@@ -26,15 +26,39 @@ public abstract class MasterWorkerProtocol {
 
     public static final class RegisterWorker implements Serializable {
         public final String workerId;
+        public final String role;
+        public final String host;
+        public final HostCapacity capacity;
+        public final String peerUrl;
 
         public RegisterWorker(String workerId) {
+            this(workerId, null);
+        }
+
+        public RegisterWorker(String workerId, String role) {
+            this(workerId, role, null, null);
+        }
+
+        public RegisterWorker(String workerId, String role, String host, HostCapacity capacity) {
+            this(workerId, role, host, capacity, null);
+        }
+
+        public RegisterWorker(String workerId, String role, String host, HostCapacity capacity, String peerUrl) {
             this.workerId = workerId;
+            this.role = role;
+            this.host = host;
+            this.capacity = capacity;
+            this.peerUrl = peerUrl;
         }
 
         @Override
         public String toString() {
             return "RegisterWorker{" +
                     "workerId='" + workerId + '\'' +
+                    ", role='" + role + '\'' +
+                    ", host='" + host + '\'' +
+                    ", capacity=" + capacity +
+                    ", peerUrl='" + peerUrl + '\'' +
                     '}';
         }
     }
@@ -123,10 +147,24 @@ public abstract class MasterWorkerProtocol {
     public static final class WorkInProgress implements Serializable {
         public final String workerId;
         public final String workId;
+        public final HostCapacity capacity;
+        public final MetricsDelta metrics;//requests that ended since the previous heartbeat, null when none
+        public final String logUrl;//simulation.log of the running task, null until it's created
 
         public WorkInProgress(String workerId, String workId) {
+            this(workerId, workId, null);
+        }
+
+        public WorkInProgress(String workerId, String workId, HostCapacity capacity) {
+            this(workerId, workId, capacity, null, null);
+        }
+
+        public WorkInProgress(String workerId, String workId, HostCapacity capacity, MetricsDelta metrics, String logUrl) {
             this.workerId = workerId;
             this.workId = workId;
+            this.capacity = capacity;
+            this.metrics = metrics;
+            this.logUrl = logUrl;
         }
 
         @Override
@@ -134,11 +172,74 @@ public abstract class MasterWorkerProtocol {
             return "WorkInProgress{" +
                     "workerId='" + workerId + '\'' +
                     ", jobId='" + workId + '\'' +
+                    ", capacity=" + capacity +
+                    ", metrics=" + metrics +
+                    ", logUrl='" + logUrl + '\'' +
                     '}';
         }
     }
+    /**
+     * The task of a gang is prepared and waits for the start signal of the master
+     */
+    public static final class WorkerReady implements Serializable {
+        public final String workerId;
+        public final String workId;
+
+        public WorkerReady(String workerId, String workId) {
+            this.workerId = workerId;
+            this.workId = workId;
+        }
+
+        @Override
+        public String toString() {
+            return "WorkerReady{" +
+                    "workerId='" + workerId + '\'' +
+                    ", workId='" + workId + '\'' +
+                    '}';
+        }
+    }
+
     // Messages to Workers
 
+    /**
+     * Releases a prepared task, every task of the gang gets the same start instant (epoch millis)
+     */
+    public static final class StartWork implements Serializable {
+        public final String workId;
+        public final long startAt;
+
+        public StartWork(String workId, long startAt) {
+            this.workId = workId;
+            this.startAt = startAt;
+        }
+
+        @Override
+        public String toString() {
+            return "StartWork{" +
+                    "workId='" + workId + '\'' +
+                    ", startAt=" + startAt +
+                    '}';
+        }
+    }
+
+    /**
+     * The gang of the task can't start, a member failed or the barrier timed out
+     */
+    public static final class AbortWork implements Serializable {
+        public final String workId;
+
+        public AbortWork(String workId) {
+            this.workId = workId;
+        }
+
+        @Override
+        public String toString() {
+            return "AbortWork{" +
+                    "workId='" + workId + '\'' +
+                    '}';
+        }
+    }
+
     public static final class WorkIsReady implements Serializable {
         private static final WorkIsReady instance = new WorkIsReady();
 
@@ -0,0 +1,128 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *  
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package com.alh.gatling.commons;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response times and counters of the requests that ended since the last heartbeat of a task, one entry per second.
+ * Histograms travel compressed and merge losslessly, so the master can add up the deltas of every task.
+ */
+public final class MetricsDelta implements Serializable {
+    /**
+     * Longer response times are recorded as this value, it bounds the size of every histogram
+     */
+    public static final long HIGHEST_TRACKABLE = TimeUnit.MINUTES.toMillis(10);
+    public static final int SIGNIFICANT_DIGITS = 2;
+
+    public final List<Second> seconds;
+
+    public MetricsDelta(List<Second> seconds) {
+        this.seconds = Collections.unmodifiableList(seconds);
+    }
+
+    public boolean isEmpty() {
+        return seconds.isEmpty();
+    }
+
+    public static Histogram newHistogram() {
+        return new Histogram(HIGHEST_TRACKABLE, SIGNIFICANT_DIGITS);
+    }
+
+    public static final class Second implements Serializable {
+        public final long epochSecond;
+        public final long ok;
+        public final long ko;
+        public final byte[] histogram;
+
+        public Second(long epochSecond, long ok, long ko, byte[] histogram) {
+            this.epochSecond = epochSecond;
+            this.ok = ok;
+            this.ko = ko;
+            this.histogram = histogram;
+        }
+
+        public Histogram decode() {
+            try {
+                return Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(histogram), HIGHEST_TRACKABLE);
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Corrupted histogram for second " + epochSecond, e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Second{" +
+                   "epochSecond=" + epochSecond +
+                   ", ok=" + ok +
+                   ", ko=" + ko +
+                   '}';
+        }
+    }
+
+    /**
+     * Accumulates requests by the second they ended in
+     */
+    public static final class Builder {
+        private final Map<Long, Histogram> histograms = new TreeMap<>();
+        private final Map<Long, long[]> counters = new TreeMap<>();
+
+        public void record(SimulationLog.Request request) {
+            long second = TimeUnit.MILLISECONDS.toSeconds(request.end);
+            histograms.computeIfAbsent(second, s -> newHistogram()).recordValue(Math.min(request.responseTime(), HIGHEST_TRACKABLE));
+            long[] counter = counters.computeIfAbsent(second, s -> new long[2]);
+            counter[request.ok ? 0 : 1]++;
+        }
+
+        public boolean isEmpty() {
+            return counters.isEmpty();
+        }
+
+        public MetricsDelta build() {
+            List<Second> seconds = new ArrayList<>(counters.size());
+            for (Map.Entry<Long, long[]> entry : counters.entrySet()) {
+                Histogram histogram = histograms.get(entry.getKey());
+                ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+                int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+                byte[] bytes = new byte[length];
+                buffer.flip();
+                buffer.get(bytes);
+                seconds.add(new Second(entry.getKey(), entry.getValue()[0], entry.getValue()[1], bytes));
+            }
+            histograms.clear();
+            counters.clear();
+            return new MetricsDelta(seconds);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsDelta{" +
+               "seconds=" + seconds.size() +
+               '}';
+    }
+}
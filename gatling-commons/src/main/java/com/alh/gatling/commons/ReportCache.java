@@ -0,0 +1,179 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the generated reports on disk, one directory per tracking id, so that a report is only built again
+ * when the results of its run changed. A report is valid when its key file holds the hash of the current result set.
+ * Least recently served reports are deleted once the reports grow over their quota, the index is rebuilt from the
+ * directories on startup.
+ */
+public class ReportCache {
+    private static final Logger log = LoggerFactory.getLogger(ReportCache.class);
+    static final String KEY_FILE = ".report-key";
+
+    private final File root;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> building = new HashSet<>();
+    private long totalBytes;
+
+    public ReportCache(File root, long maxBytes) {
+        this.root = root;
+        this.maxBytes = maxBytes;
+        root.mkdirs();
+        load();
+    }
+
+    /**
+     * Identifies a result set, independent of the order the results completed in
+     * @param results completed task results of the run
+     * @param engine report engine, a report built by another engine is not reused
+     * @return hex encoded SHA-256
+     */
+    public static String key(List<Worker.Result> results, String engine) {
+        MessageDigest digest = ArtifactCache.newDigest();
+        digest.update(String.valueOf(engine).getBytes(StandardCharsets.UTF_8));
+        results.stream()
+               .map(result -> (result.job == null ? "" : result.job.jobId) + '|' + result.result + '|' + result.metrics)
+               .sorted()
+               .forEach(line -> digest.update(('\n' + line).getBytes(StandardCharsets.UTF_8)));
+        return ArtifactCache.toHex(digest.digest());
+    }
+
+    public File getDirectory(String trackingId) {
+        return new File(root, trackingId);
+    }
+
+    /**
+     * @return true when the report of the tracking id was built from the result set identified by key
+     */
+    public synchronized boolean lookup(String trackingId, String key) {
+        File keyFile = new File(getDirectory(trackingId), KEY_FILE);
+        try {
+            // get, not containsKey, so that the hit moves the report to the most recently used end
+            if (entries.get(trackingId) != null && keyFile.isFile() && key.equals(FileUtils.readFileToString(keyFile, StandardCharsets.UTF_8))) {
+                keyFile.setLastModified(System.currentTimeMillis());
+                return true;
+            }
+        } catch (IOException e) {
+            log.warn("Unable to read the key of report {}: {}", trackingId, e.toString());
+        }
+        return false;
+    }
+
+    /**
+     * Marks the report as stale before it's built again, a failed build is never served from the cache
+     * and a report being built is never evicted
+     */
+    public synchronized void begin(String trackingId) {
+        building.add(trackingId);
+        FileUtils.deleteQuietly(new File(getDirectory(trackingId), KEY_FILE));
+    }
+
+    /**
+     * Releases a report whose build failed. A report already in the cache stays on disk until evicted, measured again
+     * since the build may have written to it, the partial output of a first build is deleted
+     */
+    public synchronized void abort(String trackingId) {
+        building.remove(trackingId);
+        File dir = getDirectory(trackingId);
+        Long previous = entries.get(trackingId);
+        if (previous == null) {
+            FileUtils.deleteQuietly(dir);
+            return;
+        }
+        long size = FileUtils.sizeOfDirectory(dir);
+        entries.put(trackingId, size);
+        totalBytes += size - previous;
+        evict(null);
+    }
+
+    /**
+     * Records a successfully built report and evicts the least recently used ones if needed
+     * @param trackingId run of the report
+     * @param key hash of the result set the report was built from
+     * @throws IOException if the key file can't be written
+     */
+    public synchronized void put(String trackingId, String key) throws IOException {
+        building.remove(trackingId);
+        File dir = getDirectory(trackingId);
+        FileUtils.writeStringToFile(new File(dir, KEY_FILE), key, StandardCharsets.UTF_8);
+        long size = FileUtils.sizeOfDirectory(dir);
+        Long previous = entries.put(trackingId, size);
+        totalBytes += size - (previous == null ? 0 : previous);
+        evict(trackingId);
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            if (entry.getKey().equals(keep) || building.contains(entry.getKey())) {
+                continue;
+            }
+            FileUtils.deleteQuietly(getDirectory(entry.getKey()));
+            totalBytes -= entry.getValue();
+            eldest.remove();
+            log.info("Evicted report {}, {} bytes in use", entry.getKey(), totalBytes);
+        }
+    }
+
+    private static long lastUsed(File dir) {
+        File keyFile = new File(dir, KEY_FILE);
+        return keyFile.isFile() ? keyFile.lastModified() : dir.lastModified();
+    }
+
+    private synchronized void load() {
+        File[] dirs = root.listFiles(File::isDirectory);
+        if (dirs == null) {
+            return;
+        }
+        // reports without a key (failed or older builds) are never hit, they go first
+        Arrays.sort(dirs, Comparator.comparing((File dir) -> new File(dir, KEY_FILE).isFile()).thenComparingLong(ReportCache::lastUsed));
+        for (File dir : dirs) {
+            long size = FileUtils.sizeOfDirectory(dir);
+            entries.put(dir.getName(), size);
+            totalBytes += size;
+        }
+        log.info("Report cache {} loaded with {} reports, {} bytes", root, entries.size(), totalBytes);
+        evict(null);
+    }
+}
@@ -18,7 +18,6 @@
 
 package com.alh.gatling.commons;
 
-import akka.japi.pf.FI;
 import org.apache.commons.exec.CommandLine;
 import org.apache.commons.exec.DefaultExecutor;
 import org.apache.commons.exec.ExecuteWatchdog;
@@ -31,35 +30,340 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+import akka.actor.ActorRef;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
 //import javafx.util.Pair;
 
+import static akka.pattern.PatternsCS.pipe;
+
 /**
  *  on 8/17/15.
  */
 public class ReportExecutor extends WorkExecutor {
+    public static final String NATIVE = "native";
+    public static final String GATLING = "gatling";
     private AgentConfig agentConfig;
+    //created when the actor starts, before any report can use them, the master may run without job settings
+    private LogCollector collector;
+    private ReportCache cache;
+    private RunHistory history;
+    //report being built per tracking id, requests for the same result set share it
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+    //running simulations followed by partial reports, their state is also saved on disk
+    private final Map<String, IncrementalReport> partials = new ConcurrentHashMap<>();
+    //bounded pool generating the reports once their results are collected
+    private ThreadPoolExecutor generation;
+    //heap a report generation is expected to need, bounds the default concurrency
+    private static final long REPORT_HEAP = 256L * 1024 * 1024;
 
     public ReportExecutor(AgentConfig agentConfig){
         this.agentConfig = agentConfig;
     }
 
+    /**
+     * One generation per core, as long as each of them can get {@link #REPORT_HEAP} of heap
+     */
+    public static int defaultConcurrency() {
+        long byMemory = Runtime.getRuntime().maxMemory() / REPORT_HEAP;
+        return (int) Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), byMemory));
+    }
+
     @Override
     public Receive createReceive() {
         return receiveBuilder()
                 .match(Master.GenerateReport.class, cmd -> runJob(cmd))
+                .match(Master.ReportQueueInfo.class, cmd -> onQueueInfo())
+                .match(Master.PartialReport.class, cmd -> onPartialReport(cmd))
+                .match(Master.HistoryQuery.class, cmd -> onHistoryQuery(cmd))
                 .matchAny(cmd  -> unhandled(cmd))
                 .build();
     }
 
+    /**
+     * The pools and the cache are shared by the builds running on the pool threads, they are created once here
+     * instead of lazily from those threads
+     */
+    @Override
+    public void preStart() {
+        if (agentConfig.getJob() == null) {
+            return;
+        }
+        collector = new LogCollector(agentConfig.getJob().getCollectConcurrency(), agentConfig.getJob().getCollectPerHost());
+        int threads = agentConfig.getJob().getReportConcurrency();
+        AtomicInteger count = new AtomicInteger();
+        generation = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "report-generation-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Generating up to {} reports at the same time", threads);
+        cache = new ReportCache(new File(agentConfig.getJob().getLogDirectory() + "reports/"), agentConfig.getJob().getReportCacheMaxBytes());
+    }
+
+    @Override
+    public void postStop() {
+        if (collector != null) {
+            collector.shutdown();
+        }
+        if (generation != null) {
+            generation.shutdownNow();
+        }
+    }
+
+    private synchronized RunHistory history() throws IOException {
+        if (history == null) {
+            history = new RunHistory(new File(agentConfig.getJob().getLogDirectory() + "history/"));
+        }
+        return history;
+    }
+
+    /**
+     * Answered in place, queries only scan the in memory columns of the history
+     */
+    private void onHistoryQuery(Master.HistoryQuery cmd) {
+        try {
+            getSender().tell(history().query(cmd.request, cmd.simulation, cmd.from, cmd.to, cmd.limit, cmd.bucketMillis), getSelf());
+        } catch (IOException e) {
+            log.error(e, "History query {} failed", cmd);
+            getSender().tell(new RunHistory.Result(cmd.request, Collections.emptyList()), getSelf());
+        }
+    }
+
+    private File reportDirectory(String trackingId) {
+        return new File(agentConfig.getJob().getLogDirectory() + "reports/" + trackingId);
+    }
+
+    /**
+     * Follows the log of a running task and, at most once per interval, aggregates what every task of the simulation
+     * logged since the previous cycle into its partial report
+     */
+    private void onPartialReport(Master.PartialReport cmd) {
+        long interval = TimeUnit.SECONDS.toMillis(agentConfig.getJob().getPartialReportInterval());
+        if (interval <= 0) {
+            return;
+        }
+        IncrementalReport partial = partials.computeIfAbsent(cmd.trackingId, id -> IncrementalReport.open(reportDirectory(id)));
+        partial.track(cmd.workId, cmd.logUrl);
+        if (!partial.startCycle(System.currentTimeMillis(), interval)) {
+            return;
+        }
+        CompletableFuture.runAsync(() -> {
+            try {
+                long bytes = partial.update();
+                log.info("Partial report of {} updated with {} bytes", cmd.trackingId, bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, generation).whenComplete((ignored, e) -> {
+            partial.endCycle();
+            if (e != null) {
+                log.warning("Partial report of {} failed: {}", cmd.trackingId, e.toString());
+            }
+        });
+    }
+
+    /**
+     * @return the partial report state of the run, from memory or disk, null if the run was not followed
+     */
+    private IncrementalReport partial(String trackingId) {
+        IncrementalReport partial = partials.get(trackingId);
+        if (partial == null && IncrementalReport.exists(reportDirectory(trackingId))) {
+            partial = partials.computeIfAbsent(trackingId, id -> IncrementalReport.open(reportDirectory(id)));
+        }
+        return partial;
+    }
+
+    private void onQueueInfo() {
+        Map<String, Long> statuses = inFlight.values().stream().collect(Collectors.groupingBy(flight -> flight.status, Collectors.counting()));
+        getSender().tell(new Master.ReportQueue(statuses.getOrDefault(Master.ReportJob.COLLECTING, 0L).intValue(),
+                                                statuses.getOrDefault(Master.ReportJob.QUEUED, 0L).intValue(),
+                                                statuses.getOrDefault(Master.ReportJob.GENERATING, 0L).intValue()), getSelf());
+    }
+
+    /**
+     * Serves the report from the disk cache when the result set did not change, otherwise builds it once:
+     * a request for a report already being built waits for that build, a build for a newer result set
+     * of the same run starts after it
+     */
     private void runJob(Master.GenerateReport job) {
+        String trackingId = job.reportJob.trackingId;
+        String key = ReportCache.key(job.results, agentConfig.getJob().getReportEngine());
+        ActorRef requester = getSender();
+        if (cache.lookup(trackingId, key)) {
+            log.info("Report of {} served from the cache", trackingId);
+            reply(job, CompletableFuture.completedFuture(new ReportResult(job.reportJob.getHtml(), job.reportJob, true)), requester);
+            return;
+        }
+        Flight running = inFlight.get(trackingId);
+        if (running != null && running.key.equals(key)) {
+            log.info("Report of {} is already being built", trackingId);
+            running.listen(progress(job, requester));
+            reply(job, running.report, requester);
+            return;
+        }
+        CompletableFuture<?> previous = running == null ? CompletableFuture.completedFuture(null) : running.report;
+        Flight flight = new Flight(key);
+        flight.listen(progress(job, requester));
+        flight.report = previous.handle((result, e) -> null).thenCompose(ignored -> build(job, key, flight));
+        inFlight.put(trackingId, flight);
+        flight.report.whenComplete((result, e) -> inFlight.remove(trackingId, flight));
+        reply(job, flight.report, requester);
+    }
+
+    /**
+     * Asynchronous report jobs are told their progress and outcome, other requesters get the ReportResult
+     */
+    private void reply(Master.GenerateReport job, CompletableFuture<ReportResult> report, ActorRef requester) {
+        if (job.reportId == null) {
+            pipe(report, getContext().dispatcher()).to(requester, getSelf());
+        } else {
+            CompletableFuture<ReportProgress> outcome = report.thenApply(result ->
+                new ReportProgress(job.reportId, result.success ? Master.ReportJob.COMPLETED : Master.ReportJob.FAILED));
+            pipe(outcome, getContext().dispatcher()).to(requester, getSelf());
+        }
+    }
+
+    private Consumer<String> progress(Master.GenerateReport job, ActorRef requester) {
+        ActorRef self = getSelf();
+        return status -> {
+            if (job.reportId != null) {
+                requester.tell(new ReportProgress(job.reportId, status), self);
+            }
+        };
+    }
+
+    /**
+     * Collects the results on the collector pool and builds the report on the generation pool,
+     * the actor stays responsive and the outcome is piped back to the requester
+     */
+    private CompletableFuture<ReportResult> build(Master.GenerateReport job, String key, Flight flight) {
+        String dir = agentConfig.getJob().getLogDirectory()+ "reports/" + job.reportJob.trackingId + "/";
+        String trackingId = job.reportJob.trackingId;
+        //the logs of the tasks followed by partial reports only have to be read from where the last cycle stopped
+        IncrementalReport partial = NATIVE.equalsIgnoreCase(agentConfig.getJob().getReportEngine()) ? partial(trackingId) : null;
+        List<Worker.Result> followed = partial == null ? Collections.emptyList()
+            : job.results.stream().filter(result -> result.job != null && partial.isTracked(result.job.jobId)).collect(Collectors.toList());
+        List<String> urls = job.results.stream().filter(result -> !followed.contains(result))
+                                       .map(result -> result.metrics).filter(Objects::nonNull).collect(Collectors.toList());
+        int step = Math.max(1, urls.size() / 10);
+        log.info("Collecting {} results of {}", urls.size(), trackingId);
+        cache.begin(trackingId);
+        flight.update(Master.ReportJob.COLLECTING);
+        return collector.collect(urls, new File(dir), (done, total, bytes) -> {
+            if (done % step == 0 || done == total) {
+                log.info("Collected {}/{} results of {}, {} bytes", done, total, trackingId, bytes);
+            }
+        }).thenApply(files -> {
+            flight.update(Master.ReportJob.QUEUED);
+            return files;
+        }).thenApplyAsync(files -> {
+            flight.update(Master.ReportJob.GENERATING);
+            ReportResult result = generate(job, dir, files, partial, followed);
+            try {
+                if (result.success) {
+                    cache.put(trackingId, key);
+                    partials.remove(trackingId);
+                }
+            } catch (IOException e) {
+                log.warning("Report of {} won't be cached: {}", trackingId, e.toString());
+            }
+            return result;
+        }, generation).exceptionally(e -> {
+            log.error(e, "Report of {} failed", trackingId);
+            return new ReportResult(dir, job.reportJob, false);
+        }).whenComplete((result, e) -> {
+            if (result == null || !result.success) {
+                cache.abort(trackingId);
+            }
+        });
+    }
+
+    private ReportResult generate(Master.GenerateReport job, String dir, List<File> files, IncrementalReport partial, List<Worker.Result> followed) {
+        List<File> collected = new ArrayList<>(files);
+        try {
+            ReportStats base = null;
+            if (!followed.isEmpty()) {
+                try {
+                    base = partial.finish(followed.stream().map(result -> result.job.jobId).collect(Collectors.toList()));
+                    log.info("Report of {} resumed from the partial report of {} tasks", job.reportJob.trackingId, followed.size());
+                } catch (IOException e) {
+                    log.warning("Partial report of {} can't be completed, collecting every result: {}", job.reportJob.trackingId, e.toString());
+                    List<String> urls = followed.stream().map(result -> result.metrics).filter(Objects::nonNull).collect(Collectors.toList());
+                    collected.addAll(collector.collect(urls, new File(dir, IncrementalReport.DIRECTORY + "-fallback"), (done, total, bytes) -> { }).join());
+                }
+            }
+            List<String> resultFiles = collected.stream().map(File::getPath).collect(Collectors.toList());
+            if (GATLING.equalsIgnoreCase(agentConfig.getJob().getReportEngine()) && !hasStats(resultFiles)) {
+                return runGatling(job, dir);
+            }
+            return runNative(job, dir, resultFiles, base);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            collected.forEach(FileUtils::deleteQuietly);
+        }
+    }
+
+    /**
+     * Aggregates the downloaded results in this JVM, memory only grows with the number of request names.
+     * Stats pre-aggregated by the workers are merged, raw simulation logs are parsed.
+     * The stats of a partial report, when given, are completed instead of starting from scratch.
+     */
+    private ReportResult runNative(Master.GenerateReport job, String dir, List<String> resultFiles, ReportStats base) throws IOException {
+        long start = System.currentTimeMillis();
+        ReportStats stats = base != null ? base : new ReportStats();
+        SimulationLogParser parser = new SimulationLogParser(stats);
+        for (String resultFile : resultFiles) {
+            File file = new File(resultFile);
+            if (ReportStats.isStats(file)) {
+                stats.merge(ReportStats.read(file));
+            } else {
+                parser.parse(file);
+            }
+        }
+        ReportWriter.write(stats, new File(dir));
+        try {
+            history().record(job.reportJob.trackingId, stats);
+        } catch (IOException e) {
+            log.warning("Report of {} could not be added to the run history: {}", job.reportJob.trackingId, e.toString());
+        }
+        log.info("Report of {} built from {} logs and {} requests in {} ms", job.reportJob.trackingId, resultFiles.size(),
+                 stats.getGlobal().getCount(), System.currentTimeMillis() - start);
+        return new ReportResult(job.reportJob.getHtml(), job.reportJob, true);
+    }
+
+    private boolean hasStats(List<String> resultFiles) throws IOException {
+        for (String resultFile : resultFiles) {
+            if (ReportStats.isStats(new File(resultFile))) {
+                log.warning("Some workers pre-aggregated their results, gatling can't read them: using the native report engine");
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forks gatling in reports only mode on the downloaded logs
+     */
+    private ReportResult runGatling(Master.GenerateReport job, String dir) throws IOException {
         TaskEvent taskEvent = job.reportJob.taskEvent;
         CommandLine cmdLine = new CommandLine(agentConfig.getJob().getCommand());
         Map<String, Object> map = new HashMap<>();
@@ -71,7 +375,6 @@ public class ReportExecutor extends WorkExecutor {
         for (String pair : taskEvent.getParameters()) {
             cmdLine.addArgument(pair);
         }
-        String dir = agentConfig.getJob().getLogDirectory()+ "reports/" + job.reportJob.trackingId + "/";
         cmdLine.addArgument(dir);
 
         cmdLine.setSubstitutionMap(map);
@@ -83,20 +386,6 @@ public class ReportExecutor extends WorkExecutor {
         FileOutputStream outFile = null;
         FileOutputStream errorFile = null;
         try {
-            List<String> resultFiles = new ArrayList<>(job.results.size());
-            //download all files adn
-            /*int i=0;
-            for (Worker.Result result : job.results) {
-                String destFile = dir  + i++ + ".log";
-                resultFiles.add(destFile);
-                DownloadFile.downloadFile(result.metrics,destFile);
-            }*/
-            AtomicInteger index = new AtomicInteger();
-            job.results.parallelStream().forEach(result -> {
-                String destFile = dir  + index.incrementAndGet() + ".log";
-                resultFiles.add(destFile);
-                DownloadFile.downloadFile(result.metrics,destFile);
-            });
             String outPath = agentConfig.getJob().getOutPath(taskEvent.getJobName(), job.reportJob.trackingId);
             String errPath = agentConfig.getJob().getErrorPath(taskEvent.getJobName(), job.reportJob.trackingId);
             //create the std and err files
@@ -117,19 +406,11 @@ public class ReportExecutor extends WorkExecutor {
                 result = new ReportResult(job.reportJob.getHtml() ,job.reportJob, true);
                 log.info("Report Executor Completed, result: " +result.toString());
             }
-            for (String resultFile : resultFiles) {
-                FileUtils.deleteQuietly(new File(resultFile));
-            }
-            getSender().tell(result, getSelf());
-
-        } catch (IOException e) {
-            e.printStackTrace();
-            throw new RuntimeException(e);
-        }finally {
+            return result;
+        } finally {
             IOUtils.closeQuietly(outFile);
             IOUtils.closeQuietly(errorFile);
         }
-
     }
 
 
@@ -150,6 +431,48 @@ public class ReportExecutor extends WorkExecutor {
         }
     }
 
+    private static final class Flight {
+        final String key;
+        final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+        volatile String status = Master.ReportJob.QUEUED;
+        volatile CompletableFuture<ReportResult> report;
+
+        Flight(String key) {
+            this.key = key;
+        }
+
+        void listen(Consumer<String> listener) {
+            listeners.add(listener);
+            listener.accept(status);
+        }
+
+        void update(String status) {
+            this.status = status;
+            listeners.forEach(listener -> listener.accept(status));
+        }
+    }
+
+    /**
+     * Progress of an asynchronous report job, told to the master
+     */
+    public static final class ReportProgress implements Serializable {
+        public final String reportId;
+        public final String status;
+
+        public ReportProgress(String reportId, String status) {
+            this.reportId = reportId;
+            this.status = status;
+        }
+
+        @Override
+        public String toString() {
+            return "ReportProgress{" +
+                   "reportId='" + reportId + '\'' +
+                   ", status='" + status + '\'' +
+                   '}';
+        }
+    }
+
     public static final class ReportResult implements Serializable {
         public final Object result;
         public final Master.Report  report;
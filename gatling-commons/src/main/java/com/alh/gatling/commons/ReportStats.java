@@ -0,0 +1,333 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *  
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.alh.gatling.commons;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Aggregated results of a simulation: response time histograms per request name, requests per second
+ * and error messages. Memory only depends on the number of request names and on the run duration,
+ * not on the number of requests, and stats of several tasks can be merged.
+ * The workers write them as a compact gzipped file next to their simulation log so that the raw log
+ * doesn't have to be collected to build the report.
+ */
+public class ReportStats {
+    public static final String GLOBAL = "Global Information";
+    //gatling default bounds of the response time distribution
+    public static final long LOWER_BOUND = 800;
+    public static final long HIGHER_BOUND = 1200;
+    public static final String OTHER_ERRORS = "other errors";
+    public static final String FILE_NAME = "simulation.stats";
+    private static final int MAX_ERRORS = 100;
+    private static final int MAX_MESSAGE_LENGTH = 1024;
+    private static final int MAGIC = 0x44475354;
+    private static final int VERSION = 1;
+
+    private String simulation;
+    private long start = Long.MAX_VALUE;
+    private long end = Long.MIN_VALUE;
+    private long users;
+    private final RequestStats global = new RequestStats(GLOBAL);
+    private final Map<String, RequestStats> requests = new TreeMap<>();
+    //epoch second -> ok, ko, sum of the response times, max response time
+    private final TreeMap<Long, long[]> seconds = new TreeMap<>();
+    private final Map<String, Long> errors = new HashMap<>();
+
+    public RequestStats request(String name) {
+        return requests.computeIfAbsent(name, RequestStats::new);
+    }
+
+    /**
+     * @param message error message, only read for failed requests
+     */
+    public void record(RequestStats request, long start, long end, boolean ok, String message) {
+        long responseTime = Math.max(0, end - start);
+        request.record(responseTime, ok);
+        global.record(responseTime, ok);
+        this.start = Math.min(this.start, start);
+        this.end = Math.max(this.end, end);
+        long[] second = seconds.computeIfAbsent(TimeUnit.MILLISECONDS.toSeconds(end), s -> new long[4]);
+        second[ok ? 0 : 1]++;
+        second[2] += responseTime;
+        second[3] = Math.max(second[3], responseTime);
+        if (!ok) {
+            error(message == null || message.isEmpty() ? "KO" : message, 1);
+        }
+    }
+
+    public void run(String simulation, long start) {
+        if (this.simulation == null) {
+            this.simulation = simulation;
+        }
+        if (start > 0) {
+            this.start = Math.min(this.start, start);
+        }
+    }
+
+    public void userStarted() {
+        users++;
+    }
+
+    public void merge(ReportStats other) {
+        run(other.simulation, other.start);
+        end = Math.max(end, other.end);
+        users += other.users;
+        global.merge(other.global);
+        for (RequestStats request : other.requests.values()) {
+            request(request.name).merge(request);
+        }
+        for (Map.Entry<Long, long[]> entry : other.seconds.entrySet()) {
+            long[] second = seconds.computeIfAbsent(entry.getKey(), s -> new long[4]);
+            long[] merged = entry.getValue();
+            second[0] += merged[0];
+            second[1] += merged[1];
+            second[2] += merged[2];
+            second[3] = Math.max(second[3], merged[3]);
+        }
+        other.errors.forEach(this::error);
+    }
+
+    private void error(String message, long count) {
+        //bound the distinct messages, some of them embed ids or timestamps
+        if (message.length() > MAX_MESSAGE_LENGTH) {
+            message = message.substring(0, MAX_MESSAGE_LENGTH);
+        }
+        String key = errors.containsKey(message) || errors.size() < MAX_ERRORS ? message : OTHER_ERRORS;
+        errors.merge(key, count, Long::sum);
+    }
+
+    public void write(File file) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeUTF(simulation == null ? "" : simulation);
+            output.writeLong(start);
+            output.writeLong(end);
+            output.writeLong(users);
+            global.write(output);
+            output.writeInt(requests.size());
+            for (RequestStats request : requests.values()) {
+                request.write(output);
+            }
+            output.writeInt(seconds.size());
+            for (Map.Entry<Long, long[]> second : seconds.entrySet()) {
+                output.writeLong(second.getKey());
+                for (long value : second.getValue()) {
+                    output.writeLong(value);
+                }
+            }
+            output.writeInt(errors.size());
+            for (Map.Entry<String, Long> error : errors.entrySet()) {
+                output.writeUTF(error.getKey());
+                output.writeLong(error.getValue());
+            }
+        }
+    }
+
+    public static ReportStats read(File file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Unsupported stats file " + file);
+            }
+            ReportStats stats = new ReportStats();
+            String simulation = input.readUTF();
+            stats.simulation = simulation.isEmpty() ? null : simulation;
+            stats.start = input.readLong();
+            stats.end = input.readLong();
+            stats.users = input.readLong();
+            stats.global.merge(RequestStats.read(input));
+            for (int i = input.readInt(); i > 0; i--) {
+                RequestStats request = RequestStats.read(input);
+                stats.requests.put(request.name, request);
+            }
+            for (int i = input.readInt(); i > 0; i--) {
+                long second = input.readLong();
+                long[] values = new long[4];
+                for (int j = 0; j < values.length; j++) {
+                    values[j] = input.readLong();
+                }
+                stats.seconds.put(second, values);
+            }
+            for (int i = input.readInt(); i > 0; i--) {
+                stats.errors.put(input.readUTF(), input.readLong());
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * @return true if the file was written by {@link #write(File)}, false for a raw simulation log
+     */
+    public static boolean isStats(File file) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            return input.read() == (GZIPInputStream.GZIP_MAGIC & 0xff) && input.read() == (GZIPInputStream.GZIP_MAGIC >> 8);
+        }
+    }
+
+    public String getSimulation() {
+        return simulation;
+    }
+
+    /**
+     * @return epoch millis of the first request or of the run start, 0 when nothing was recorded
+     */
+    public long getStart() {
+        return start == Long.MAX_VALUE ? 0 : start;
+    }
+
+    public long getEnd() {
+        return end == Long.MIN_VALUE ? getStart() : end;
+    }
+
+    public long getUsers() {
+        return users;
+    }
+
+    public RequestStats getGlobal() {
+        return global;
+    }
+
+    public Collection<RequestStats> getRequests() {
+        return requests.values();
+    }
+
+    public TreeMap<Long, long[]> getSeconds() {
+        return seconds;
+    }
+
+    public Map<String, Long> getErrors() {
+        return errors;
+    }
+
+    public static final class RequestStats {
+        private final String name;
+        private final Histogram all = MetricsDelta.newHistogram();
+        private final Histogram ok = MetricsDelta.newHistogram();
+        //below LOWER_BOUND, between the bounds, above HIGHER_BOUND, failed
+        private final long[] groups = new long[4];
+
+        public RequestStats(String name) {
+            this.name = name;
+        }
+
+        void record(long responseTime, boolean success) {
+            long value = Math.min(responseTime, MetricsDelta.HIGHEST_TRACKABLE);
+            all.recordValue(value);
+            if (success) {
+                ok.recordValue(value);
+                groups[value < LOWER_BOUND ? 0 : value <= HIGHER_BOUND ? 1 : 2]++;
+            } else {
+                groups[3]++;
+            }
+        }
+
+        void merge(RequestStats other) {
+            all.add(other.all);
+            ok.add(other.ok);
+            for (int i = 0; i < groups.length; i++) {
+                groups[i] += other.groups[i];
+            }
+        }
+
+        void write(DataOutputStream output) throws IOException {
+            output.writeUTF(name);
+            writeHistogram(all, output);
+            writeHistogram(ok, output);
+            for (long group : groups) {
+                output.writeLong(group);
+            }
+        }
+
+        static RequestStats read(DataInputStream input) throws IOException {
+            RequestStats request = new RequestStats(input.readUTF());
+            readHistogram(request.all, input);
+            readHistogram(request.ok, input);
+            for (int i = 0; i < request.groups.length; i++) {
+                request.groups[i] = input.readLong();
+            }
+            return request;
+        }
+
+        private static void writeHistogram(Histogram histogram, DataOutputStream output) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+            int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+            output.writeInt(length);
+            output.write(buffer.array(), 0, length);
+        }
+
+        private static void readHistogram(Histogram into, DataInputStream input) throws IOException {
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            try {
+                into.add(Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(bytes), MetricsDelta.HIGHEST_TRACKABLE));
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupted response time histogram", e);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return all.getTotalCount();
+        }
+
+        public long getOkCount() {
+            return ok.getTotalCount();
+        }
+
+        public long getKoCount() {
+            return groups[3];
+        }
+
+        public Histogram getAll() {
+            return all;
+        }
+
+        public Histogram getOk() {
+            return ok;
+        }
+
+        public long[] getGroups() {
+            return groups;
+        }
+    }
+}
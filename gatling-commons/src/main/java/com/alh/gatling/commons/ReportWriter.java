@@ -0,0 +1,235 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *  
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.alh.gatling.commons;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.HdrHistogram.Histogram;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringEscapeUtils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a {@link ReportStats} as a report directory: js/stats.json for tooling and a self contained index.html.
+ */
+public class ReportWriter {
+    public static final String INDEX = "index.html";
+    public static final String STATS = "js/stats.json";
+    private static final int[] PERCENTILES = {50, 75, 95, 99};
+    private static final JsonFactory factory = new JsonFactory();
+
+    public static void write(ReportStats stats, File directory) throws IOException {
+        FileUtils.forceMkdir(new File(directory, "js"));
+        writeJson(stats, new File(directory, STATS));
+        writeHtml(stats, new File(directory, INDEX));
+    }
+
+    private static void writeJson(ReportStats stats, File file) throws IOException {
+        try (JsonGenerator json = factory.createGenerator(file, JsonEncoding.UTF8)) {
+            json.writeStartObject();
+            json.writeStringField("simulation", stats.getSimulation());
+            json.writeNumberField("start", stats.getStart());
+            json.writeNumberField("end", stats.getEnd());
+            json.writeNumberField("users", stats.getUsers());
+            json.writeFieldName("stats");
+            writeJson(json, stats.getGlobal(), duration(stats));
+            json.writeArrayFieldStart("requests");
+            for (ReportStats.RequestStats request : stats.getRequests()) {
+                writeJson(json, request, duration(stats));
+            }
+            json.writeEndArray();
+            json.writeArrayFieldStart("errors");
+            for (Map.Entry<String, Long> error : sortedErrors(stats)) {
+                json.writeStartObject();
+                json.writeStringField("message", error.getKey());
+                json.writeNumberField("count", error.getValue());
+                json.writeNumberField("percentage", percent(error.getValue(), stats.getGlobal().getKoCount()));
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            //epoch second, ok, ko, mean and max response time
+            json.writeArrayFieldStart("series");
+            for (Map.Entry<Long, long[]> second : stats.getSeconds().entrySet()) {
+                long[] values = second.getValue();
+                json.writeStartArray();
+                json.writeNumber(second.getKey());
+                json.writeNumber(values[0]);
+                json.writeNumber(values[1]);
+                json.writeNumber(values[2] / Math.max(1, values[0] + values[1]));
+                json.writeNumber(values[3]);
+                json.writeEndArray();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+    }
+
+    private static void writeJson(JsonGenerator json, ReportStats.RequestStats request, double seconds) throws IOException {
+        Histogram all = request.getAll();
+        Histogram ok = request.getOk();
+        json.writeStartObject();
+        json.writeStringField("name", request.getName());
+        json.writeObjectFieldStart("numberOfRequests");
+        json.writeNumberField("total", request.getCount());
+        json.writeNumberField("ok", request.getOkCount());
+        json.writeNumberField("ko", request.getKoCount());
+        json.writeEndObject();
+        writeJson(json, "minResponseTime", all.getTotalCount() == 0 ? 0 : all.getMinValue(), ok.getTotalCount() == 0 ? 0 : ok.getMinValue());
+        writeJson(json, "maxResponseTime", all.getMaxValue(), ok.getMaxValue());
+        writeJson(json, "meanResponseTime", Math.round(all.getMean()), Math.round(ok.getMean()));
+        writeJson(json, "standardDeviation", Math.round(all.getStdDeviation()), Math.round(ok.getStdDeviation()));
+        for (int percentile : PERCENTILES) {
+            writeJson(json, "percentile" + percentile, all.getValueAtPercentile(percentile), ok.getValueAtPercentile(percentile));
+        }
+        json.writeArrayFieldStart("groups");
+        String[] groups = groupNames();
+        for (int i = 0; i < groups.length; i++) {
+            json.writeStartObject();
+            json.writeStringField("name", groups[i]);
+            json.writeNumberField("count", request.getGroups()[i]);
+            json.writeNumberField("percentage", percent(request.getGroups()[i], request.getCount()));
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeNumberField("meanNumberOfRequestsPerSecond", round(request.getCount() / seconds));
+        json.writeEndObject();
+    }
+
+    private static void writeJson(JsonGenerator json, String name, long total, long ok) throws IOException {
+        json.writeObjectFieldStart(name);
+        json.writeNumberField("total", total);
+        json.writeNumberField("ok", ok);
+        json.writeEndObject();
+    }
+
+    private static void writeHtml(ReportStats stats, File file) throws IOException {
+        try (Writer html = new BufferedWriter(new OutputStreamWriter(FileUtils.openOutputStream(file), StandardCharsets.UTF_8))) {
+            String title = stats.getSimulation() == null ? "Simulation" : stats.getSimulation();
+            html.write("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n<title>" + escape(title) + "</title>\n");
+            html.write("<style>body{font-family:sans-serif;margin:2em}table{border-collapse:collapse;margin-bottom:2em}"
+                       + "th,td{border:1px solid #ccc;padding:4px 8px;text-align:right}th:first-child,td:first-child{text-align:left}"
+                       + ".ko{color:#c00}</style>\n</head>\n<body>\n");
+            html.write("<h1>" + escape(title) + "</h1>\n<p>" + new Date(stats.getStart()) + " - " + new Date(stats.getEnd())
+                       + ", " + stats.getUsers() + " users, <a href=\"" + STATS + "\">stats.json</a></p>\n");
+            writeSeries(stats, html);
+            html.write("<h2>Requests</h2>\n<table>\n<tr><th>Request</th><th>Total</th><th>OK</th><th>KO</th><th>% KO</th><th>Req/s</th>"
+                       + "<th>Min</th><th>p50</th><th>p75</th><th>p95</th><th>p99</th><th>Max</th><th>Mean</th><th>Std Dev</th></tr>\n");
+            writeRow(html, stats.getGlobal(), duration(stats));
+            for (ReportStats.RequestStats request : stats.getRequests()) {
+                writeRow(html, request, duration(stats));
+            }
+            html.write("</table>\n<h2>Response time distribution</h2>\n<table>\n<tr>");
+            for (String group : groupNames()) {
+                html.write("<th>" + escape(group) + "</th>");
+            }
+            html.write("</tr>\n<tr>");
+            for (long count : stats.getGlobal().getGroups()) {
+                html.write("<td>" + count + " (" + percent(count, stats.getGlobal().getCount()) + "%)</td>");
+            }
+            html.write("</tr>\n</table>\n");
+            List<Map.Entry<String, Long>> errors = sortedErrors(stats);
+            if (!errors.isEmpty()) {
+                html.write("<h2>Errors</h2>\n<table>\n<tr><th>Error</th><th>Count</th><th>%</th></tr>\n");
+                for (Map.Entry<String, Long> error : errors) {
+                    html.write("<tr><td class=\"ko\">" + escape(error.getKey()) + "</td><td>" + error.getValue() + "</td><td>"
+                               + percent(error.getValue(), stats.getGlobal().getKoCount()) + "</td></tr>\n");
+                }
+                html.write("</table>\n");
+            }
+            html.write("</body>\n</html>\n");
+        }
+    }
+
+    private static void writeRow(Writer html, ReportStats.RequestStats request, double seconds) throws IOException {
+        Histogram all = request.getAll();
+        html.write("<tr><td>" + escape(request.getName()) + "</td><td>" + request.getCount() + "</td><td>" + request.getOkCount()
+                   + "</td><td class=\"ko\">" + request.getKoCount() + "</td><td>" + percent(request.getKoCount(), request.getCount())
+                   + "</td><td>" + round(request.getCount() / seconds) + "</td><td>" + (all.getTotalCount() == 0 ? 0 : all.getMinValue()) + "</td>");
+        for (int percentile : PERCENTILES) {
+            html.write("<td>" + all.getValueAtPercentile(percentile) + "</td>");
+        }
+        html.write("<td>" + all.getMaxValue() + "</td><td>" + Math.round(all.getMean()) + "</td><td>" + Math.round(all.getStdDeviation()) + "</td></tr>\n");
+    }
+
+    /**
+     * Requests per second as an inline svg, failed requests in red
+     */
+    private static void writeSeries(ReportStats stats, Writer html) throws IOException {
+        if (stats.getSeconds().isEmpty()) {
+            return;
+        }
+        long first = stats.getSeconds().firstKey();
+        long width = Math.max(1, stats.getSeconds().lastKey() - first);
+        long height = 1;
+        for (long[] second : stats.getSeconds().values()) {
+            height = Math.max(height, second[0] + second[1]);
+        }
+        StringBuilder all = new StringBuilder();
+        StringBuilder ko = new StringBuilder();
+        for (Map.Entry<Long, long[]> second : stats.getSeconds().entrySet()) {
+            long x = second.getKey() - first;
+            all.append(x).append(',').append(height - second.getValue()[0] - second.getValue()[1]).append(' ');
+            ko.append(x).append(',').append(height - second.getValue()[1]).append(' ');
+        }
+        html.write("<h2>Requests per second (max " + height + ")</h2>\n<svg width=\"100%\" height=\"200\" viewBox=\"0 0 " + width + " " + height
+                   + "\" preserveAspectRatio=\"none\">\n<polyline fill=\"none\" stroke=\"#4572a7\" vector-effect=\"non-scaling-stroke\" points=\""
+                   + all + "\"/>\n<polyline fill=\"none\" stroke=\"#c00\" vector-effect=\"non-scaling-stroke\" points=\"" + ko + "\"/>\n</svg>\n");
+    }
+
+    private static List<Map.Entry<String, Long>> sortedErrors(ReportStats stats) {
+        List<Map.Entry<String, Long>> errors = new ArrayList<>(stats.getErrors().entrySet());
+        errors.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        return errors;
+    }
+
+    private static String[] groupNames() {
+        return new String[]{"t < " + ReportStats.LOWER_BOUND + " ms",
+                            ReportStats.LOWER_BOUND + " ms < t < " + ReportStats.HIGHER_BOUND + " ms",
+                            "t > " + ReportStats.HIGHER_BOUND + " ms",
+                            "failed"};
+    }
+
+    private static double duration(ReportStats stats) {
+        return Math.max(1, (stats.getEnd() - stats.getStart()) / 1000.0);
+    }
+
+    private static double percent(long count, long total) {
+        return total == 0 ? 0 : round(100.0 * count / total);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static String escape(String value) {
+        return StringEscapeUtils.escapeHtml4(value);
+    }
+}
@@ -0,0 +1,429 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import org.HdrHistogram.Histogram;
+import org.apache.commons.io.input.CountingInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+
+/**
+ * Embedded columnar store of the stats of every reported run, one row per run and request name, so that trends across
+ * runs are answered without reading any report or simulation log.
+ * Rows live in memory as one primitive array per column and queries scan the columns they filter on.
+ * On disk every run is appended as one block holding its rows column by column, the response time histograms
+ * are appended to a side file and only read back to merge the runs of a time bucket.
+ * A run reported again supersedes its previous rows.
+ */
+public class RunHistory {
+    private static final Logger log = LoggerFactory.getLogger(RunHistory.class);
+    static final String DATA_FILE = "history.dat";
+    static final String HISTOGRAM_FILE = "histograms.dat";
+    private static final int MAGIC = 0x52484953;
+    private static final int VERSION = 1;
+    private static final int PERCENTILES = 4;
+    private static final double[] PERCENTILE_VALUES = {50, 75, 95, 99};
+
+    private final File data;
+    private final File histograms;
+
+    //run columns
+    private final List<String> trackingIds = new ArrayList<>();
+    private final List<String> simulations = new ArrayList<>();
+    private long[] starts = new long[16];
+    private long[] ends = new long[16];
+    private final Map<String, Integer> latestRun = new HashMap<>();
+
+    //request name dictionary
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIds = new HashMap<>();
+
+    //row columns
+    private int rows;
+    private int[] runs = new int[256];
+    private int[] nameColumn = new int[256];
+    private long[] counts = new long[256];
+    private long[] kos = new long[256];
+    private double[] means = new double[256];
+    private long[][] percentiles = new long[PERCENTILES][256];
+    private long[] maxes = new long[256];
+    private long[] histogramOffsets = new long[256];
+    private int[] histogramLengths = new int[256];
+
+    public RunHistory(File directory) throws IOException {
+        directory.mkdirs();
+        this.data = new File(directory, DATA_FILE);
+        this.histograms = new File(directory, HISTOGRAM_FILE);
+        load();
+    }
+
+    /**
+     * Appends the stats of a run, a run recorded before is superseded
+     * @param trackingId run of the report
+     * @param stats aggregated results of the run
+     * @throws IOException if the run can't be persisted, it's not added either
+     */
+    public synchronized void record(String trackingId, ReportStats stats) throws IOException {
+        List<ReportStats.RequestStats> requests = new ArrayList<>();
+        requests.add(stats.getGlobal());
+        requests.addAll(stats.getRequests());
+        long[] offsets = new long[requests.size()];
+        int[] lengths = new int[requests.size()];
+        try (FileChannel channel = FileChannel.open(histograms.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long position = channel.size();
+            for (int i = 0; i < requests.size(); i++) {
+                Histogram histogram = requests.get(i).getAll();
+                ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+                lengths[i] = histogram.encodeIntoCompressedByteBuffer(buffer);
+                offsets[i] = position;
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            }
+        }
+        boolean header = !data.isFile() || data.length() == 0;
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(block)) {
+            if (header) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+            }
+            output.writeUTF(trackingId);
+            output.writeUTF(String.valueOf(stats.getSimulation()));
+            output.writeLong(stats.getStart());
+            output.writeLong(stats.getEnd());
+            output.writeInt(requests.size());
+            for (ReportStats.RequestStats request : requests) {
+                output.writeUTF(request == stats.getGlobal() ? ReportStats.GLOBAL : request.getName());
+            }
+            for (ReportStats.RequestStats request : requests) {
+                output.writeLong(request.getCount());
+            }
+            for (ReportStats.RequestStats request : requests) {
+                output.writeLong(request.getKoCount());
+            }
+            for (ReportStats.RequestStats request : requests) {
+                output.writeDouble(request.getAll().getMean());
+            }
+            for (double percentile : PERCENTILE_VALUES) {
+                for (ReportStats.RequestStats request : requests) {
+                    output.writeLong(request.getAll().getValueAtPercentile(percentile));
+                }
+            }
+            for (ReportStats.RequestStats request : requests) {
+                output.writeLong(request.getAll().getMaxValue());
+            }
+            for (long offset : offsets) {
+                output.writeLong(offset);
+            }
+            for (int length : lengths) {
+                output.writeInt(length);
+            }
+        }
+        try (FileOutputStream output = new FileOutputStream(data, true)) {
+            block.writeTo(output);
+        }
+        int skip = header ? 8 : 0;
+        add(new DataInputStream(new ByteArrayInputStream(block.toByteArray(), skip, block.size() - skip)));
+        log.info("Recorded {} requests of run {} in the history", requests.size(), trackingId);
+    }
+
+    /**
+     * Stats of one request name across the latest runs, or across time buckets when bucketMillis is positive.
+     * @param request request name, null for the whole run
+     * @param simulation only the runs of this simulation, null for all of them
+     * @param from earliest run start, inclusive
+     * @param to latest run start, exclusive
+     * @param limit maximum number of points, the most recent ones are kept
+     * @param bucketMillis width of the time buckets, 0 for one point per run
+     * @return the points, oldest first
+     * @throws IOException if the histograms of a bucket can't be read
+     */
+    public synchronized Result query(String request, String simulation, long from, long to, int limit, long bucketMillis) throws IOException {
+        String name = request == null || request.isEmpty() ? ReportStats.GLOBAL : request;
+        Integer nameId = nameIds.get(name);
+        List<Integer> matches = new ArrayList<>();
+        if (nameId != null) {
+            for (int i = 0; i < rows; i++) {
+                int run = runs[i];
+                if (nameColumn[i] == nameId && starts[run] >= from && starts[run] < to
+                    && latestRun.get(trackingIds.get(run)) == run
+                    && (simulation == null || simulation.isEmpty() || simulation.equals(simulations.get(run)))) {
+                    matches.add(i);
+                }
+            }
+        }
+        matches.sort((a, b) -> Long.compare(starts[runs[a]], starts[runs[b]]));
+        List<Point> points = bucketMillis > 0 ? buckets(matches, bucketMillis) : points(matches);
+        if (limit > 0 && points.size() > limit) {
+            points = new ArrayList<>(points.subList(points.size() - limit, points.size()));
+        }
+        return new Result(name, points);
+    }
+
+    public synchronized List<String> getRequestNames() {
+        return Collections.unmodifiableList(new ArrayList<>(names));
+    }
+
+    private List<Point> points(List<Integer> matches) {
+        List<Point> points = new ArrayList<>(matches.size());
+        for (int i : matches) {
+            int run = runs[i];
+            points.add(new Point(trackingIds.get(run), simulations.get(run), starts[run], ends[run], counts[i], kos[i], means[i],
+                                 percentiles[0][i], percentiles[1][i], percentiles[2][i], percentiles[3][i], maxes[i]));
+        }
+        return points;
+    }
+
+    /**
+     * Merges the histograms of the runs started in the same bucket, the percentiles of a bucket are exact
+     */
+    private List<Point> buckets(List<Integer> matches, long bucketMillis) throws IOException {
+        TreeMap<Long, List<Integer>> buckets = new TreeMap<>();
+        for (int i : matches) {
+            buckets.computeIfAbsent(starts[runs[i]] / bucketMillis * bucketMillis, b -> new ArrayList<>()).add(i);
+        }
+        List<Point> points = new ArrayList<>(buckets.size());
+        try (RandomAccessFile file = new RandomAccessFile(histograms, "r")) {
+            for (Map.Entry<Long, List<Integer>> bucket : buckets.entrySet()) {
+                Histogram merged = MetricsDelta.newHistogram();
+                long count = 0;
+                long ko = 0;
+                long end = 0;
+                for (int i : bucket.getValue()) {
+                    byte[] bytes = new byte[histogramLengths[i]];
+                    file.seek(histogramOffsets[i]);
+                    file.readFully(bytes);
+                    try {
+                        merged.add(Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(bytes), MetricsDelta.HIGHEST_TRACKABLE));
+                    } catch (DataFormatException e) {
+                        throw new IOException("Corrupted histogram in the run history", e);
+                    }
+                    count += counts[i];
+                    ko += kos[i];
+                    end = Math.max(end, ends[runs[i]]);
+                }
+                points.add(new Point(null, null, bucket.getKey(), end, count, ko, merged.getMean(),
+                                     merged.getValueAtPercentile(50), merged.getValueAtPercentile(75),
+                                     merged.getValueAtPercentile(95), merged.getValueAtPercentile(99), merged.getMaxValue()));
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Reads one run block into the columns
+     */
+    private void add(DataInputStream input) throws IOException {
+        String trackingId = input.readUTF();
+        String simulation = input.readUTF();
+        long start = input.readLong();
+        long end = input.readLong();
+        int count = input.readInt();
+        int run = trackingIds.size();
+        int first = rows;
+        ensureRunCapacity(run + 1);
+        ensureRowCapacity(first + count);
+        for (int i = first; i < first + count; i++) {
+            String name = input.readUTF();
+            Integer id = nameIds.get(name);
+            if (id == null) {
+                id = names.size();
+                names.add(name);
+                nameIds.put(name, id);
+            }
+            nameColumn[i] = id;
+            runs[i] = run;
+        }
+        for (int i = first; i < first + count; i++) {
+            counts[i] = input.readLong();
+        }
+        for (int i = first; i < first + count; i++) {
+            kos[i] = input.readLong();
+        }
+        for (int i = first; i < first + count; i++) {
+            means[i] = input.readDouble();
+        }
+        for (long[] percentile : percentiles) {
+            for (int i = first; i < first + count; i++) {
+                percentile[i] = input.readLong();
+            }
+        }
+        for (int i = first; i < first + count; i++) {
+            maxes[i] = input.readLong();
+        }
+        for (int i = first; i < first + count; i++) {
+            histogramOffsets[i] = input.readLong();
+        }
+        for (int i = first; i < first + count; i++) {
+            histogramLengths[i] = input.readInt();
+        }
+        //the run is only visible once its block was read completely
+        trackingIds.add(trackingId);
+        simulations.add(simulation);
+        starts[run] = start;
+        ends[run] = end;
+        latestRun.put(trackingId, run);
+        rows = first + count;
+    }
+
+    private void ensureRunCapacity(int capacity) {
+        if (capacity > starts.length) {
+            int size = Math.max(capacity, starts.length * 2);
+            starts = Arrays.copyOf(starts, size);
+            ends = Arrays.copyOf(ends, size);
+        }
+    }
+
+    private void ensureRowCapacity(int capacity) {
+        if (capacity > counts.length) {
+            int size = Math.max(capacity, counts.length * 2);
+            runs = Arrays.copyOf(runs, size);
+            nameColumn = Arrays.copyOf(nameColumn, size);
+            counts = Arrays.copyOf(counts, size);
+            kos = Arrays.copyOf(kos, size);
+            means = Arrays.copyOf(means, size);
+            for (int i = 0; i < percentiles.length; i++) {
+                percentiles[i] = Arrays.copyOf(percentiles[i], size);
+            }
+            maxes = Arrays.copyOf(maxes, size);
+            histogramOffsets = Arrays.copyOf(histogramOffsets, size);
+            histogramLengths = Arrays.copyOf(histogramLengths, size);
+        }
+    }
+
+    /**
+     * Loads every complete block, a block cut by a crash is truncated so that the next run is appended after the last good one
+     */
+    private void load() throws IOException {
+        if (!data.isFile() || data.length() == 0) {
+            return;
+        }
+        long good;
+        try (CountingInputStream counting = new CountingInputStream(new BufferedInputStream(new FileInputStream(data)));
+             DataInputStream input = new DataInputStream(counting)) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Not a run history file: " + data);
+            }
+            good = counting.getByteCount();
+            try {
+                while (true) {
+                    add(input);
+                    good = counting.getByteCount();
+                }
+            } catch (EOFException e) {
+                //end of the file, or a block cut by a crash
+            }
+        }
+        if (good < data.length()) {
+            log.warn("Truncating the incomplete last block of {} at {}", data, good);
+            try (FileChannel channel = FileChannel.open(data.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(good);
+            }
+        }
+        log.info("Run history {} loaded with {} runs and {} rows", data, trackingIds.size(), rows);
+    }
+
+    public static final class Result implements Serializable {
+        public final String request;
+        public final List<Point> points;
+
+        public Result(String request, List<Point> points) {
+            this.request = request;
+            this.points = points;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                   "request='" + request + '\'' +
+                   ", points=" + points.size() +
+                   '}';
+        }
+    }
+
+    /**
+     * Stats of a request name in one run, or in all the runs started in a time bucket (no tracking id then)
+     */
+    public static final class Point implements Serializable {
+        public final String trackingId;
+        public final String simulation;
+        public final long start;
+        public final long end;
+        public final long count;
+        public final long ko;
+        public final double mean;
+        public final long p50;
+        public final long p75;
+        public final long p95;
+        public final long p99;
+        public final long max;
+
+        public Point(String trackingId, String simulation, long start, long end, long count, long ko, double mean,
+                     long p50, long p75, long p95, long p99, long max) {
+            this.trackingId = trackingId;
+            this.simulation = simulation;
+            this.start = start;
+            this.end = end;
+            this.count = count;
+            this.ko = ko;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p75 = p75;
+            this.p95 = p95;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        @Override
+        public String toString() {
+            return "Point{" +
+                   "trackingId='" + trackingId + '\'' +
+                   ", start=" + start +
+                   ", count=" + count +
+                   ", p99=" + p99 +
+                   '}';
+        }
+    }
+}
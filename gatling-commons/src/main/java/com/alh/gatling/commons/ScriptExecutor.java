@@ -189,13 +189,10 @@ public class ScriptExecutor extends WorkExecutor {
         for (String pair : taskEvent.getParameters()) {
             cmdLine.addArgument(pair);
         }
-        //download the simulation or jar file
-        DownloadFile.downloadFile(job.jobFileUrl,agentConfig.getJob().getJobDirectory(job.jobId, SIMULATION, taskEvent.getJobInfo().fileFullName));
         //job simulation artifact path
         cmdLine.addArgument("-sf").addArgument(agentConfig.getJob().getJobDirectory(job.jobId, SIMULATION));
 
         if(taskEvent.getJobInfo().hasResourcesFeed) {
-            DownloadFile.downloadFileAndUnzip(job.resourcesFileUrl, agentConfig.getJob().getJobDirectory(job.jobId, RESOURCES,taskEvent.getJobInfo().resourcesFileName));
             //job bodies feed  path
             cmdLine.addArgument("-rsf").addArgument(agentConfig.getJob().getJobDirectory(job.jobId, RESOURCES));
         }
@@ -214,6 +211,11 @@ public class ScriptExecutor extends WorkExecutor {
         FileOutputStream errorFile = null;
         String outPath = "", errPath = "";
         try {
+            //download the simulation or jar file
+            DownloadFile.download(job.jobFileUrl, new File(agentConfig.getJob().getJobDirectory(job.jobId, SIMULATION, taskEvent.getJobInfo().fileFullName)), job.jobFileHash);
+            if(taskEvent.getJobInfo().hasResourcesFeed) {
+                DownloadFile.downloadAndExtract(job.resourcesFileUrl, new File(agentConfig.getJob().getJobDirectory(job.jobId, RESOURCES)), job.resourcesFileHash);
+            }
             outPath = agentConfig.getJob().getOutPath(taskEvent.getJobName(), job.jobId);
             errPath = agentConfig.getJob().getErrorPath(taskEvent.getJobName(), job.jobId);
             //create the std and err files
@@ -0,0 +1,73 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *  
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package com.alh.gatling.commons;
+
+/**
+ * Reads the records of the gatling simulation.log.
+ * Request records are tab separated, gatling 3 writes
+ * REQUEST, user id, groups, name, start, end, OK|KO, message
+ * and gatling 2 has an extra scenario column, the status column is used as the anchor so both are supported.
+ */
+public final class SimulationLog {
+    public static final String REQUEST = "REQUEST";
+
+    /**
+     * Mutable so that a single instance can be reused for every line
+     */
+    public static final class Request {
+        public String name;
+        public long start;
+        public long end;
+        public boolean ok;
+        public String message;
+
+        public long responseTime() {
+            return Math.max(0, end - start);
+        }
+    }
+
+    private SimulationLog() {
+    }
+
+    /**
+     * @return false when the line is not a complete request record, into is then left in an undefined state
+     */
+    public static boolean parseRequest(String line, Request into) {
+        if (!line.startsWith(REQUEST + "\t")) {
+            return false;
+        }
+        String[] fields = line.split("\t", -1);
+        for (int i = 4; i < fields.length; i++) {
+            boolean ok = "OK".equals(fields[i]);
+            if (!ok && !"KO".equals(fields[i])) {
+                continue;
+            }
+            try {
+                into.start = Long.parseLong(fields[i - 2]);
+                into.end = Long.parseLong(fields[i - 1]);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            into.name = fields[i - 3];
+            into.ok = ok;
+            into.message = i + 1 < fields.length ? fields[i + 1].trim() : "";
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *  
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.alh.gatling.commons;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/**
+ * Streams gatling simulation.log files into {@link ReportStats} without going through the gatling report engine.
+ * Files are memory mapped window by window and records are parsed in place: no String is allocated for a
+ * successful request, request names are looked up by their bytes and only materialized the first time they are seen.
+ * Like {@link SimulationLog} the request fields are located from the OK/KO status so that gatling 2 and 3 logs are supported.
+ */
+public class SimulationLogParser {
+    private static final int DEFAULT_WINDOW = 256 * 1024 * 1024;
+    private static final int MAX_FIELDS = 32;
+    private static final byte TAB = '\t';
+    private static final byte[] REQUEST = "REQUEST".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] USER = "USER".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RUN = "RUN".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] START = "START".getBytes(StandardCharsets.US_ASCII);
+
+    private final ReportStats stats;
+    private final int window;
+    //field boundaries of the current line, reused for every line
+    private final int[] fieldStart = new int[MAX_FIELDS];
+    private final int[] fieldEnd = new int[MAX_FIELDS];
+    private int fields;
+    //open addressing table from request name bytes to their stats
+    private byte[][] names = new byte[64][];
+    private int[] hashes = new int[64];
+    private ReportStats.RequestStats[] values = new ReportStats.RequestStats[64];
+    private int size;
+
+    public SimulationLogParser(ReportStats stats) {
+        this(stats, DEFAULT_WINDOW);
+    }
+
+    SimulationLogParser(ReportStats stats, int window) {
+        this.stats = stats;
+        this.window = window;
+    }
+
+    public static ReportStats parse(Collection<File> logs) throws IOException {
+        ReportStats stats = new ReportStats();
+        SimulationLogParser parser = new SimulationLogParser(stats);
+        for (File log : logs) {
+            parser.parse(log);
+        }
+        return stats;
+    }
+
+    public void parse(File log) throws IOException {
+        parse(log, true);
+    }
+
+    /**
+     * Parses a chunk of a log that is still being written, a trailing partial line is left out
+     * @return number of bytes consumed, the next chunk should start right after them
+     */
+    public long parseCompleteLines(File log) throws IOException {
+        return parse(log, false);
+    }
+
+    private long parse(File log, boolean toTheEnd) throws IOException {
+        try (FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long length = Math.min(window, size - position);
+                boolean last = position + length == size;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int consumed = parseLines(buffer, (int) length, last && toTheEnd);
+                if (consumed == 0 && last) {
+                    break;//the last line is still being written
+                }
+                //no line end in a whole window, a record can't be that long: skip it
+                position += consumed == 0 ? length : consumed;
+            }
+            return position;
+        }
+    }
+
+    /**
+     * @return number of bytes consumed, the trailing partial line is left for the next window unless last
+     */
+    private int parseLines(ByteBuffer buffer, int limit, boolean last) {
+        int start = 0;
+        for (int i = 0; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                parseLine(buffer, start, i);
+                start = i + 1;
+            }
+        }
+        if (last && start < limit) {
+            parseLine(buffer, start, limit);
+            start = limit;
+        }
+        return start;
+    }
+
+    private void parseLine(ByteBuffer buffer, int from, int to) {
+        if (to > from && buffer.get(to - 1) == '\r') {
+            to--;
+        }
+        fields = 0;
+        int start = from;
+        for (int i = from; i <= to && fields < MAX_FIELDS; i++) {
+            if (i == to || buffer.get(i) == TAB) {
+                fieldStart[fields] = start;
+                fieldEnd[fields++] = i;
+                start = i + 1;
+            }
+        }
+        if (fields == 0) {
+            return;
+        }
+        if (fieldEquals(buffer, 0, REQUEST)) {
+            parseRequest(buffer, to);
+        } else if (fieldEquals(buffer, 0, USER)) {
+            for (int i = 1; i < fields; i++) {
+                if (fieldEquals(buffer, i, START)) {
+                    stats.userStarted();
+                    break;
+                }
+            }
+        } else if (fieldEquals(buffer, 0, RUN) && fields > 3) {
+            stats.run(string(buffer, fieldStart[1], fieldEnd[1]), parseLong(buffer, 3));
+        }
+    }
+
+    private void parseRequest(ByteBuffer buffer, int lineEnd) {
+        for (int i = 4; i < fields; i++) {
+            if (fieldEnd[i] - fieldStart[i] != 2) {
+                continue;
+            }
+            byte first = buffer.get(fieldStart[i]);
+            byte second = buffer.get(fieldStart[i] + 1);
+            boolean ok = first == 'O' && second == 'K';
+            if (!ok && !(first == 'K' && second == 'O')) {
+                continue;
+            }
+            long start = parseLong(buffer, i - 2);
+            long end = parseLong(buffer, i - 1);
+            if (start < 0 || end < 0) {
+                continue;
+            }
+            String message = null;
+            if (!ok && i + 1 < fields) {
+                //the message is the rest of the line, it may hold tabs
+                message = string(buffer, fieldStart[i + 1], lineEnd).trim();
+            }
+            stats.record(lookup(buffer, fieldStart[i - 3], fieldEnd[i - 3]), start, end, ok, message);
+            return;
+        }
+    }
+
+    private ReportStats.RequestStats lookup(ByteBuffer buffer, int from, int to) {
+        int hash = 1;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        int mask = names.length - 1;
+        int slot = hash & mask;
+        while (names[slot] != null) {
+            if (hashes[slot] == hash && bytesEqual(buffer, from, to, names[slot])) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        byte[] name = new byte[to - from];
+        for (int i = from; i < to; i++) {
+            name[i - from] = buffer.get(i);
+        }
+        ReportStats.RequestStats request = stats.request(new String(name, StandardCharsets.UTF_8));
+        names[slot] = name;
+        hashes[slot] = hash;
+        values[slot] = request;
+        if (++size * 2 > names.length) {
+            grow();
+        }
+        return request;
+    }
+
+    private void grow() {
+        byte[][] oldNames = names;
+        int[] oldHashes = hashes;
+        ReportStats.RequestStats[] oldValues = values;
+        names = new byte[oldNames.length * 2][];
+        hashes = new int[names.length];
+        values = new ReportStats.RequestStats[names.length];
+        int mask = names.length - 1;
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] != null) {
+                int slot = oldHashes[i] & mask;
+                while (names[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                names[slot] = oldNames[i];
+                hashes[slot] = oldHashes[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * @return the numeric value of the field, -1 if it is not a positive number
+     */
+    private long parseLong(ByteBuffer buffer, int field) {
+        int from = fieldStart[field];
+        int to = fieldEnd[field];
+        if (from == to || to - from > 18) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    private boolean fieldEquals(ByteBuffer buffer, int field, byte[] expected) {
+        return bytesEqual(buffer, fieldStart[field], fieldEnd[field], expected);
+    }
+
+    private static boolean bytesEqual(ByteBuffer buffer, int from, int to, byte[] expected) {
+        if (to - from != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (buffer.get(from + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String string(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = from; i < to; i++) {
+            bytes[i - from] = buffer.get(i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
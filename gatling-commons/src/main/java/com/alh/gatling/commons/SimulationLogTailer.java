@@ -0,0 +1,105 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *  
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package com.alh.gatling.commons;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.NameFileFilter;
+import org.apache.commons.io.filefilter.TrueFileFilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/**
+ * Follows the simulation.log a running task writes in its results directory and turns
+ * the request records appended since the previous poll into a {@link MetricsDelta}.
+ * Only complete lines are consumed, a partially written record is read again on the next poll.
+ */
+public class SimulationLogTailer {
+    public static final String SIMULATION_LOG = "simulation.log";
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    private final File resultsDirectory;
+    private final SimulationLog.Request request = new SimulationLog.Request();
+    private File log;
+    private long offset;
+
+    public SimulationLogTailer(File resultsDirectory) {
+        this.resultsDirectory = resultsDirectory;
+    }
+
+    /**
+     * @return the requests that ended since the last poll, null when there are none
+     */
+    public synchronized MetricsDelta poll() throws IOException {
+        if (log == null) {
+            log = find();
+            if (log == null) {
+                return null;
+            }
+        }
+        MetricsDelta.Builder builder = new MetricsDelta.Builder();
+        try (FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+            while (offset < channel.size()) {
+                buffer.clear();
+                int read = channel.read(buffer, offset);
+                if (read <= 0) {
+                    break;
+                }
+                int end = read - 1;
+                while (end >= 0 && buffer.get(end) != '\n') {
+                    end--;
+                }
+                if (end < 0) {
+                    if (read < CHUNK_SIZE) {
+                        break;//the line is still being written
+                    }
+                    offset += read;//a record can't be that long, skip it
+                    continue;
+                }
+                for (String line : new String(buffer.array(), 0, end, StandardCharsets.UTF_8).split("\n")) {
+                    if (SimulationLog.parseRequest(line, request)) {
+                        builder.record(request);
+                    }
+                }
+                offset += end + 1;
+            }
+        }
+        return builder.isEmpty() ? null : builder.build();
+    }
+
+    /**
+     * @return the followed log, null until the simulation created it
+     */
+    public synchronized File getLog() {
+        return log;
+    }
+
+    private File find() {
+        if (!resultsDirectory.isDirectory()) {
+            return null;
+        }
+        Collection<File> logs = FileUtils.listFiles(resultsDirectory, new NameFileFilter(SIMULATION_LOG), TrueFileFilter.INSTANCE);
+        return logs.isEmpty() ? null : logs.iterator().next();
+    }
+}
@@ -41,9 +41,12 @@ public class TaskEvent implements Serializable {
     private String status;//Master.JobStatusString
     private String taskJobId;
     private JobSummary.JobInfo jobInfo;
+    private int taskIndex;//position of the task among the count tasks of the job
+    private List<String> taskParameters;//system properties specific to this task, i.e. its share of the load
 
     public TaskEvent() {
         parameters = new ArrayList<>();
+        taskParameters = new ArrayList<>();
     }
 
     public String getTaskJobId() {
@@ -54,6 +57,22 @@ public class TaskEvent implements Serializable {
         this.taskJobId = taskJobId;
     }
 
+    public int getTaskIndex() {
+        return taskIndex;
+    }
+
+    public void setTaskIndex(int taskIndex) {
+        this.taskIndex = taskIndex;
+    }
+
+    public List<String> getTaskParameters() {
+        return taskParameters;
+    }
+
+    public void setTaskParameters(List<String> taskParameters) {
+        this.taskParameters = taskParameters;
+    }
+
     public JobSummary.JobInfo getJobInfo() {
         return jobInfo;
     }
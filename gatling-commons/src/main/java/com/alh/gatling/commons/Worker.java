@@ -46,18 +46,21 @@ public class Worker extends AbstractActor {
 
     private final ActorRef clusterClient;
     private final String host;
+    private final String peerUrl;//where the agent serves its cached artifacts to the other agents, null if it doesn't
     private String workerRole;
     private final String workerId;
     private final ActorRef workExecutor;
     private final Cancellable registerTask;
     private LoggingAdapter log = Logging.getLogger(getContext().system(), this);
     private String currentJobId = null;
+    private boolean runningTask = false;
     private final Cancellable keepAliveTask;
 
     private final Procedure<Object> working = new Procedure<Object>() {
         public void apply(Object message) {
             //log.info("Work received. Result {}.", message);
             if (message instanceof WorkComplete) {
+                taskEnded();
                 Object result = ((WorkComplete) message).result;
                 //log.info("Work is complete. Result {}.", result);
                 sendToMaster(new MasterWorkerProtocol.WorkIsDone(workerId, jobId(), result));
@@ -74,6 +77,7 @@ public class Worker extends AbstractActor {
                                         .build());
             }
             else if (message instanceof WorkFailed) {
+                taskEnded();
                 Object result = ((WorkFailed) message).result;
                 log.info("Work is failed. Result {}.", result);
                 sendToMaster(new MasterWorkerProtocol.WorkFailed(workerId, jobId(),result));
@@ -84,10 +88,21 @@ public class Worker extends AbstractActor {
                 ///Procedure<Object> waitForWorkIsDoneAck = waitForWorkIsDoneAck(result);
                 //getContext().become(waitForWorkIsDoneAck);
             }
+            else if (message instanceof WorkPrepared) {
+                log.info("Work {} is prepared, waiting for the start signal", jobId());
+                sendToMaster(new MasterWorkerProtocol.WorkerReady(workerId, jobId()));
+            }
+            else if (message instanceof MetricsUpdate) {
+                sendToMaster(new MasterWorkerProtocol.WorkInProgress(workerId, jobId(), HostCapacity.snapshot(),
+                                                                  ((MetricsUpdate) message).metrics, ((MetricsUpdate) message).logUrl));
+            }
+            else if (message instanceof MasterWorkerProtocol.StartWork || message instanceof MasterWorkerProtocol.AbortWork) {
+                workExecutor.tell(message, getSelf());
+            }
             else if(message==KeepAliveTick){
                 log.info("Job is in progress. {}.", jobId());
                 if (currentJobId!=null){
-                    sendToMaster(new MasterWorkerProtocol.WorkInProgress(workerId, jobId()));
+                    sendToMaster(new MasterWorkerProtocol.WorkInProgress(workerId, jobId(), HostCapacity.snapshot()));
                 }
             }else if (message instanceof Job) {
                 log.info("Yikes. Master told me to do work, while I'm working.");
@@ -108,6 +123,8 @@ public class Worker extends AbstractActor {
                 Job job = (Job) message;
                 log.info("Got work: {}", job);
                 currentJobId = job.jobId;
+                runningTask = true;
+                HostCapacity.taskStarted();
                 workExecutor.tell(job, getSelf());
                 getContext().become(receiveBuilder()
                                         .matchAny(p->working.apply(p))
@@ -127,6 +144,13 @@ public class Worker extends AbstractActor {
         }
     };
 
+    public static final Object RegisterTick = new Object() {
+        @Override
+        public String toString() {
+            return "RegisterTick";
+        }
+    };
+
     public static final Object KeepAliveTick = new Object() {
         @Override
         public String toString() {
@@ -135,6 +159,11 @@ public class Worker extends AbstractActor {
     };
 
     public Worker(ActorRef clusterClient, Props workExecutorProps, FiniteDuration registerInterval, String workerRole) {
+        this(clusterClient, workExecutorProps, registerInterval, workerRole, null);
+    }
+
+    public Worker(ActorRef clusterClient, Props workExecutorProps, FiniteDuration registerInterval, String workerRole, String peerUrl) {
+        this.peerUrl = peerUrl;
         this.clusterClient = clusterClient;
         this.workerRole = workerRole;
         if (System.getenv("HOSTNAME") == null || !System.getenv("HOSTNAME").contains("-")){
@@ -148,8 +177,8 @@ public class Worker extends AbstractActor {
             (
                 Duration.Zero(),
                 registerInterval,
-                clusterClient,
-                new ClusterClient.SendToAll("/user/master/singleton", new MasterWorkerProtocol.RegisterWorker(workerId)),
+                getSelf(),
+                RegisterTick,
                 getContext().dispatcher(),
                 getSelf()
             );
@@ -165,6 +194,13 @@ public class Worker extends AbstractActor {
         return props(clusterClient, workExecutorProps, Duration.create(10, "seconds"),workerRole);
     }
 
+    /**
+     * @param peerUrl base url of the artifact end point of the agent, the master hands it to the other agents as a download source
+     */
+    public static Props props(ActorRef clusterClient, Props workExecutorProps, String workerRole, String peerUrl) {
+        return Props.create(Worker.class, clusterClient, workExecutorProps, Duration.create(10, "seconds"), workerRole, peerUrl);
+    }
+
     private String jobId() {
         if (currentJobId!=null)
             return currentJobId;
@@ -182,6 +218,7 @@ public class Worker extends AbstractActor {
                                          else if (t instanceof DeathPactException)
                                              return stop();
                                          else if (t instanceof RuntimeException) {
+                                             taskEnded();
                                              if (currentJobId!=null) {
                                                  log.info("RuntimeException, Work is failed for "+ currentJobId);
                                                  sendToMaster(new MasterWorkerProtocol.WorkFailed(workerId, jobId(),new Result(-1,"","","",null)));
@@ -192,6 +229,7 @@ public class Worker extends AbstractActor {
                                              return restart();
                                          }
                                          else if (t instanceof Exception) {
+                                             taskEnded();
                                              if (currentJobId!=null) {
                                                  log.info("Exception, Work is failed for "+ currentJobId);
                                                  sendToMaster(new MasterWorkerProtocol.WorkFailed(workerId, jobId(),new Result(-1,"","","",null)));
@@ -213,6 +251,14 @@ public class Worker extends AbstractActor {
     public void postStop() {
         registerTask.cancel();
         keepAliveTask.cancel();
+        taskEnded();
+    }
+
+    private void taskEnded() {
+        if (runningTask) {
+            runningTask = false;
+            HostCapacity.taskEnded();
+        }
     }
 
     @Override
@@ -257,6 +303,10 @@ public class Worker extends AbstractActor {
         if(message==KeepAliveTick){
             //do nothing
         }
+        else if (message == RegisterTick) {
+            //registered in every state, each registration advertises the current capacity of the host
+            sendToMaster(new MasterWorkerProtocol.RegisterWorker(workerId, workerRole, host, HostCapacity.snapshot(), peerUrl));
+        }
         else if (message instanceof Terminated && ((Terminated) message).getActor().equals(workExecutor)) {
             log.info("Received Terminated from exec.");
             getContext().stop(getSelf());
@@ -286,6 +336,45 @@ public class Worker extends AbstractActor {
         }
     }
 
+    /**
+     * Sent by the executor once the artifacts of a synchronized task are in place
+     */
+    public static final class WorkPrepared implements Serializable {
+        public final String jobId;
+
+        public WorkPrepared(String jobId) {
+            this.jobId = jobId;
+        }
+
+        @Override
+        public String toString() {
+            return "WorkPrepared{" +
+                   "jobId='" + jobId + '\'' +
+                   '}';
+        }
+    }
+
+    /**
+     * Sent by the executor with the requests the running simulation logged since the previous update
+     */
+    public static final class MetricsUpdate implements Serializable {
+        public final MetricsDelta metrics;
+        public final String logUrl;
+
+        public MetricsUpdate(MetricsDelta metrics, String logUrl) {
+            this.metrics = metrics;
+            this.logUrl = logUrl;
+        }
+
+        @Override
+        public String toString() {
+            return "MetricsUpdate{" +
+                   "metrics=" + metrics +
+                   ", logUrl='" + logUrl + '\'' +
+                   '}';
+        }
+    }
+
     public static final class FileUploadComplete implements Serializable {
         public final Master.UploadFile result;
         public final String host;
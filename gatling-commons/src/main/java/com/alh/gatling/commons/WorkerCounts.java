@@ -0,0 +1,109 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Worker counts of the dashboard, maintained as the workers register, change state and leave
+ * instead of being regrouped from the whole worker map on every poll.
+ * The version changes only when a count changes, with the epoch of the master it identifies a snapshot.
+ */
+public class WorkerCounts {
+    private final long epoch;
+    private long version;
+    private final Map<String, Long> status = new HashMap<>();
+    private final Map<String, Long> partition = new HashMap<>();
+    private final Map<String, Long> host = new HashMap<>();
+    private final Map<String, Long> partitionStatus = new HashMap<>();
+    private Master.Dashboard snapshot;
+
+    /**
+     * @param epoch start of this master incarnation, so that the versions of two incarnations never collide
+     */
+    public WorkerCounts(long epoch) {
+        this.epoch = epoch;
+    }
+
+    /**
+     * @param before state replaced, null for a new worker
+     * @param after new state, null for a removed worker
+     */
+    public void change(Master.WorkerState before, Master.WorkerState after) {
+        if (before != null && after != null && sameKeys(before, after)) {
+            return;
+        }
+        if (before != null) {
+            add(before, -1);
+        }
+        if (after != null) {
+            add(after, 1);
+        }
+        version++;
+        snapshot = null;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Immutable view of the counts, shared until the next change
+     */
+    public Master.Dashboard snapshot() {
+        if (snapshot == null) {
+            snapshot = new Master.Dashboard(epoch, version, new HashMap<>(status), new HashMap<>(partition),
+                                            new HashMap<>(host), new HashMap<>(partitionStatus));
+        }
+        return snapshot;
+    }
+
+    private void add(Master.WorkerState state, long delta) {
+        String statusKey = state.status.toString();
+        increment(status, statusKey, delta);
+        increment(partition, state.role, delta);
+        increment(host, hostOf(state), delta);
+        increment(partitionStatus, state.role + ":" + statusKey, delta);
+    }
+
+    private static boolean sameKeys(Master.WorkerState before, Master.WorkerState after) {
+        return before.status.toString().equals(after.status.toString())
+               && String.valueOf(before.role).equals(String.valueOf(after.role))
+               && hostOf(before).equals(hostOf(after));
+    }
+
+    private static void increment(Map<String, Long> counts, String key, long delta) {
+        counts.merge(String.valueOf(key), delta, (a, b) -> a + b == 0 ? null : a + b);
+    }
+
+    /**
+     * Host of the worker actor address, the way the dashboard has always grouped the workers
+     */
+    static String hostOf(Master.WorkerState state) {
+        try {
+            String actor = URLDecoder.decode(state.ref.path().name(), "UTF-8");
+            return actor.split("@")[1].split(":")[0];
+        } catch (UnsupportedEncodingException | RuntimeException e) {
+            return String.valueOf(state.host);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Extracts a zip archive while it is being read, so resource feeds are decompressed as the bytes
+ * arrive from the network instead of being written to disk and read back.
+ * With skipUnchanged the CRC and size of every extracted entry are remembered next to the target
+ * directory and entries identical to the previous extraction are not written again.
+ * Entries are written to a temporary file and renamed, files hard linked elsewhere keep their content.
+ */
+public class ZipStreamExtractor {
+    private static final Logger log = LoggerFactory.getLogger(ZipStreamExtractor.class);
+    private static final String MANIFEST_SUFFIX = ".crc";
+
+    /**
+     * @param input archive bytes, left open so the caller can drain what follows the last entry
+     * @param targetDir directory to extract into
+     * @param skipUnchanged keep entries whose CRC and size match the previous extraction
+     * @return number of entries written
+     * @throws IOException on read errors or entries escaping the target directory
+     */
+    public static int extract(InputStream input, File targetDir, boolean skipUnchanged) throws IOException {
+        FileUtils.forceMkdir(targetDir);
+        String root = targetDir.getCanonicalPath() + File.separator;
+        File manifestFile = new File(targetDir.getParentFile(), targetDir.getName() + MANIFEST_SUFFIX);
+        Map<String, String> previous = skipUnchanged ? readManifest(manifestFile) : new HashMap<>();
+        Map<String, String> current = new HashMap<>();
+        // the manifest is only valid once the extraction completed
+        FileUtils.deleteQuietly(manifestFile);
+
+        ZipInputStream zip = new ZipInputStream(input);
+        byte[] buffer = new byte[64 * 1024];
+        int written = 0, skipped = 0;
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            File file = new File(targetDir, entry.getName());
+            if (!file.getCanonicalPath().startsWith(root)) {
+                throw new IOException("Zip entry " + entry.getName() + " is outside of " + targetDir);
+            }
+            if (entry.isDirectory()) {
+                FileUtils.forceMkdir(file);
+                continue;
+            }
+            String known = previous.get(entry.getName());
+            if (known != null && entry.getCrc() != -1 && known.equals(signature(entry.getCrc(), entry.getSize()))
+                && file.isFile() && file.length() == entry.getSize()) {
+                current.put(entry.getName(), known);
+                skipped++;
+                continue;
+            }
+            FileUtils.forceMkdir(file.getParentFile());
+            File part = new File(file.getParentFile(), "." + file.getName() + ".part");
+            CRC32 crc = new CRC32();
+            long size = 0;
+            try (OutputStream output = new FileOutputStream(part)) {
+                int n;
+                while ((n = zip.read(buffer)) > -1) {
+                    output.write(buffer, 0, n);
+                    crc.update(buffer, 0, n);
+                    size += n;
+                }
+            }
+            String signature = signature(crc.getValue(), size);
+            current.put(entry.getName(), signature);
+            if (signature.equals(known) && file.isFile() && file.length() == size) {
+                // crc was only known after reading the entry (data descriptor), content did not change
+                FileUtils.deleteQuietly(part);
+                skipped++;
+            } else {
+                Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                written++;
+            }
+        }
+        for (String stale : previous.keySet()) {
+            if (!current.containsKey(stale)) {
+                FileUtils.deleteQuietly(new File(targetDir, stale));
+            }
+        }
+        if (skipUnchanged) {
+            writeManifest(manifestFile, current);
+        }
+        log.info("Extracted into {}: {} entries written, {} unchanged", targetDir, written, skipped);
+        return written;
+    }
+
+    /**
+     * Removes an extraction and its manifest, used when the archive turned out to be invalid
+     */
+    public static void clear(File targetDir) {
+        FileUtils.deleteQuietly(new File(targetDir.getParentFile(), targetDir.getName() + MANIFEST_SUFFIX));
+        FileUtils.deleteQuietly(targetDir);
+    }
+
+    private static String signature(long crc, long size) {
+        return Long.toHexString(crc) + " " + size;
+    }
+
+    private static Map<String, String> readManifest(File manifestFile) throws IOException {
+        Map<String, String> manifest = new HashMap<>();
+        if (manifestFile.isFile()) {
+            List<String> lines = FileUtils.readLines(manifestFile, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                String[] parts = line.split(" ", 3);
+                if (parts.length == 3) {
+                    manifest.put(parts[2], parts[0] + " " + parts[1]);
+                }
+            }
+        }
+        return manifest;
+    }
+
+    private static void writeManifest(File manifestFile, Map<String, String> manifest) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        manifest.forEach((name, signature) -> lines.append(signature).append(' ').append(name).append('\n'));
+        FileUtils.writeStringToFile(manifestFile, lines.toString(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *
+ */
+public class ArtifactCacheTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("artifact-cache").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    private File artifact(String name, int size) throws IOException {
+        File file = new File(dir, "origin/" + name);
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (name.hashCode() + i);
+        }
+        FileUtils.writeByteArrayToFile(file, content);
+        return file;
+    }
+
+    @Test
+    public void testLinkDownloadsOnceAndVerifiesHash() throws Exception {
+        File origin = artifact("simulation.jar", 1024);
+        String hash = ArtifactCache.sha256(origin);
+        ArtifactCache cache = new ArtifactCache(new File(dir, "cache"), 1024 * 1024);
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<File>> links = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            File target = new File(dir, "task" + i + "/simulation/simulation.jar");
+            links.add(pool.submit(() -> cache.link(origin.toURI().toString(), hash, target)));
+        }
+        for (Future<File> link : links) {
+            Assert.assertTrue(FileUtils.contentEquals(origin, link.get()));
+        }
+        pool.shutdown();
+        Assert.assertEquals(1024, cache.getTotalBytes());
+        Assert.assertNotNull(cache.lookup(hash));
+    }
+
+    @Test(expected = IOException.class)
+    public void testChecksumMismatchIsRejected() throws Exception {
+        File origin = artifact("simulation.jar", 128);
+        ArtifactCache cache = new ArtifactCache(new File(dir, "cache"), 1024 * 1024);
+        cache.fetch(origin.toURI().toString(), ArtifactCache.toHex(new byte[32]));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvictedAndLinksSurvive() throws Exception {
+        File first = artifact("first.jar", 600);
+        File second = artifact("second.jar", 600);
+        ArtifactCache cache = new ArtifactCache(new File(dir, "cache"), 1000);
+        File linked = cache.link(first.toURI().toString(), null, new File(dir, "task1/first.jar"));
+        cache.fetch(second.toURI().toString(), null);
+
+        Assert.assertNull(cache.lookup(ArtifactCache.sha256(first)));
+        Assert.assertNotNull(cache.lookup(ArtifactCache.sha256(second)));
+        Assert.assertEquals(600, cache.getTotalBytes());
+        Assert.assertTrue(FileUtils.contentEquals(first, linked));
+
+        //entries are recovered on restart
+        ArtifactCache restarted = new ArtifactCache(new File(dir, "cache"), 1000);
+        Assert.assertNotNull(restarted.lookup(ArtifactCache.sha256(second)));
+    }
+
+    @Test
+    public void testPinnedArtifactsAreNotEvicted() throws Exception {
+        File first = artifact("first.jar", 600);
+        File second = artifact("second.jar", 600);
+        ArtifactCache cache = new ArtifactCache(new File(dir, "cache"), 1000);
+        String hash = ArtifactCache.sha256(cache.fetch(first.toURI().toString(), null));
+        File pinned = cache.pin(hash);
+        cache.fetch(second.toURI().toString(), null);
+
+        //over quota while the first one is being read
+        Assert.assertTrue(pinned.isFile());
+        Assert.assertEquals(1200, cache.getTotalBytes());
+
+        cache.unpin(hash);
+        Assert.assertFalse(pinned.exists());
+        Assert.assertEquals(600, cache.getTotalBytes());
+    }
+}
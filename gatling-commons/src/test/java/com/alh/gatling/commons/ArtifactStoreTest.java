@@ -0,0 +1,180 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *
+ */
+public class ArtifactStoreTest {
+
+    private File dir;
+    private ArtifactStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("store").toFile();
+        store = new ArtifactStore(dir, Long.MAX_VALUE, 0);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    private static String sha256(byte[] content) {
+        return ArtifactCache.toHex(ArtifactCache.newDigest().digest(content));
+    }
+
+    private static ByteArrayInputStream chunk(byte[] content, int from, int to) {
+        return new ByteArrayInputStream(Arrays.copyOfRange(content, from, to));
+    }
+
+    @Test
+    public void testChunkedUploadResumesAndIsStoredOnce() throws Exception {
+        byte[] content = "simulation jar content".getBytes(StandardCharsets.UTF_8);
+        String hash = sha256(content);
+
+        ArtifactStore.Upload upload = store.append(hash, "sim.jar", content.length, 0, chunk(content, 0, 10));
+        Assert.assertFalse(upload.isComplete());
+        Assert.assertEquals(10, upload.getOffset());
+
+        //a new store, as after a restart, resumes from what reached the disk
+        store = new ArtifactStore(dir, Long.MAX_VALUE, 0);
+        Assert.assertEquals(10, store.status(hash, "sim.jar").getOffset());
+        upload = store.append(hash, "sim.jar", content.length, 10, chunk(content, 10, content.length));
+        Assert.assertTrue(upload.isComplete());
+        Assert.assertArrayEquals(content, FileUtils.readFileToByteArray(new File(upload.getPath())));
+
+        //the same content under another name is published without any transfer
+        ArtifactStore.Upload again = store.status(hash, "copy.jar");
+        Assert.assertTrue(again.isComplete());
+        Assert.assertEquals(new File(new File(dir, hash), "copy.jar").getPath(), again.getPath());
+
+        //so is a whole upload of the same content
+        ArtifactStore.Upload whole = store.store("whole.jar", new ByteArrayInputStream(content));
+        Assert.assertEquals(hash, whole.getSha256());
+        Assert.assertEquals(content.length, store.getTotalBytes());
+    }
+
+    private ArtifactStore.Upload upload(String content, String name) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return store.append(sha256(bytes), name, bytes.length, 0, chunk(bytes, 0, bytes.length));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedArtifactsAreEvictedUnlessRetained() throws Exception {
+        store = new ArtifactStore(dir, 20, 0);
+        ArtifactStore.Upload first = upload("first artifact", "a.jar");
+        ArtifactStore.Upload second = upload("second artifact", "b.jar");
+        Assert.assertFalse("over quota, the eldest goes", new File(first.getPath()).exists());
+        Assert.assertEquals(15, store.getTotalBytes());
+
+        String hash = store.retain(second.getPath());
+        Assert.assertEquals(second.getSha256(), hash);
+        Assert.assertEquals(hash, store.hashOf(new File(second.getPath())));
+        ArtifactStore.Upload third = upload("third artifact", "c.jar");
+        Assert.assertTrue("retained by a run", new File(second.getPath()).exists());
+        Assert.assertEquals(29, store.getTotalBytes());
+
+        store.release(hash);
+        Assert.assertFalse(new File(second.getPath()).exists());
+        Assert.assertTrue(new File(third.getPath()).exists());
+
+        //the store reloads what it holds
+        store = new ArtifactStore(dir, 20, 0);
+        Assert.assertEquals(14, store.getTotalBytes());
+        Assert.assertTrue(store.status(third.getSha256(), "c.jar").isComplete());
+    }
+
+    @Test
+    public void testDerivedFilesCountTowardTheQuota() throws Exception {
+        ArtifactStore.Upload feed = upload("feed content", "feed.zip");
+        Assert.assertEquals(12, store.getTotalBytes());
+        File slice = new File(new File(feed.getPath()).getParentFile(), "feed.part1of2.zip");
+        FileUtils.writeStringToFile(slice, "slice", StandardCharsets.UTF_8);
+        store.derived(Arrays.asList(slice, new File(dir.getParentFile(), "elsewhere.zip")));
+        Assert.assertEquals(17, store.getTotalBytes());
+
+        store = new ArtifactStore(dir, Long.MAX_VALUE, 0);
+        Assert.assertEquals(17, store.getTotalBytes());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testChunksMustFollowTheReceivedBytes() throws Exception {
+        byte[] content = "0123456789".getBytes(StandardCharsets.UTF_8);
+        store.append(sha256(content), "feed.zip", content.length, 5, chunk(content, 5, 10));
+    }
+
+    @Test
+    public void testContentMustMatchItsHash() throws Exception {
+        byte[] content = "0123456789".getBytes(StandardCharsets.UTF_8);
+        String hash = sha256("something else".getBytes(StandardCharsets.UTF_8));
+        try {
+            store.append(hash, "feed.zip", content.length, 0, chunk(content, 0, 10));
+            Assert.fail("corrupted upload stored");
+        } catch (IOException e) {
+            Assert.assertEquals(0, store.status(hash, "feed.zip").getOffset());
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testConcurrentUploadsEvictEachOtherWithoutBlocking() throws Exception {
+        //room for a single artifact, every upload evicts the others
+        store = new ArtifactStore(dir, 16, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<ArtifactStore.Upload>> uploads = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                byte[] content = ("artifact " + (i % 20)).getBytes(StandardCharsets.UTF_8);
+                String hash = sha256(content);
+                uploads.add(executor.submit(() -> store.append(hash, "a.jar", content.length, 0, new ByteArrayInputStream(content))));
+            }
+            for (Future<ArtifactStore.Upload> upload : uploads) {
+                try {
+                    upload.get();
+                } catch (ExecutionException e) {
+                    //an upload racing one of the same content may find it half way, it is resumed by the client
+                    Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertTrue(store.getTotalBytes() <= 16);
+    }
+}
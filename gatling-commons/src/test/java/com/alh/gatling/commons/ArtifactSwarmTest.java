@@ -0,0 +1,79 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ *
+ */
+public class ArtifactSwarmTest {
+    private static final String HASH = "a";
+
+    @Test
+    public void testSeedsFetchFromTheMasterAndTheOthersFromThePeers() {
+        ArtifactSwarm swarm = new ArtifactSwarm(2, 2);
+        Assert.assertEquals(Collections.emptyList(), swarm.sources(HASH, "p1"));
+        Assert.assertEquals(Collections.emptyList(), swarm.sources(HASH, "p2"));
+        Assert.assertEquals(Arrays.asList("p1", "p2"), swarm.sources(HASH, "p3"));
+        Assert.assertEquals(Arrays.asList("p1", "p2"), swarm.sources(HASH, "p4"));
+        //p1 is full, the tree grows below p2 then p3
+        Assert.assertEquals(Arrays.asList("p2", "p3"), swarm.sources(HASH, "p5"));
+        Assert.assertEquals(Arrays.asList("p2", "p3"), swarm.sources(HASH, "p6"));
+        Assert.assertEquals(Arrays.asList("p3", "p4"), swarm.sources(HASH, "p7"));
+        //already holding it
+        Assert.assertEquals(Collections.emptyList(), swarm.sources(HASH, "p3"));
+    }
+
+    @Test
+    public void testRemovedPeersAreNoLongerHandedOut() {
+        ArtifactSwarm swarm = new ArtifactSwarm(1, 4);
+        swarm.sources(HASH, "p1");
+        swarm.sources(HASH, "p2");
+        swarm.remove("p1");
+        Assert.assertEquals(Collections.singletonList("p2"), swarm.sources(HASH, "p3"));
+    }
+
+    @Test
+    public void testUnknownArtifactsAreFetchedFromTheMaster() {
+        ArtifactSwarm swarm = new ArtifactSwarm(1, 4);
+        swarm.sources(null, "p1");
+        Assert.assertEquals(Collections.emptyList(), swarm.sources(null, "p2"));
+        Assert.assertEquals(Collections.emptyList(), swarm.sources(HASH, null));
+    }
+
+    @Test
+    public void testSourcesAreHandedOutOnACopyOfTheJob() {
+        Master.Job job = new Master.Job("role", new TaskEvent(), "tracking", "", "jobFileUrl", "resourcesFileUrl", false, 2);
+        job.jobFileHash = HASH;
+        Master.Job sent = job.withSources(Arrays.asList("p1"), Arrays.asList("p2"));
+        Assert.assertEquals(job.jobId, sent.jobId);
+        Assert.assertEquals(HASH, sent.jobFileHash);
+        Assert.assertEquals(2, sent.expectedWorkers);
+        Assert.assertEquals(Arrays.asList("p1"), sent.jobFileSources);
+        Assert.assertEquals(Arrays.asList("p2"), sent.resourcesFileSources);
+        //the job held by the events is left untouched
+        Assert.assertNull(job.jobFileSources);
+        Assert.assertNull(job.resourcesFileSources);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *
+ */
+public class CapacitySchedulerTest {
+
+    private static final long GB = 1024L * 1024 * 1024;
+
+    private static CapacityScheduler.Host host(String name, int cores, double load, String... idleWorkers) {
+        CapacityScheduler.Host host = new CapacityScheduler.Host(name, new HostCapacity(cores, 16 * GB, 8 * GB, load, 0));
+        for (String worker : idleWorkers) {
+            host.addIdleWorker(worker);
+        }
+        return host;
+    }
+
+    @Test
+    public void testSpreadPrefersTheHostWithTheMostSpareCores() {
+        List<CapacityScheduler.Host> hosts = Arrays.asList(host("small", 2, 0, "s1", "s2"), host("big", 8, 1, "b1", "b2"));
+        Assert.assertEquals(Arrays.asList("b1", "b2", "s1"), CapacityScheduler.place(CapacityScheduler.SPREAD, hosts, 2, 0, 3));
+    }
+
+    @Test
+    public void testBinpackFillsTheBusiestHostThatFits() {
+        CapacityScheduler.Host busy = host("busy", 8, 0, "b1", "b2");
+        busy.addRunningTask(5, 0);
+        List<CapacityScheduler.Host> hosts = Arrays.asList(host("empty", 8, 0, "e1"), busy);
+        Assert.assertEquals(Arrays.asList("b1", "e1"), CapacityScheduler.place(CapacityScheduler.BINPACK, hosts, 2, 0, 2));
+    }
+
+    @Test
+    public void testTasksThatDontAllFitAreNotPlaced() {
+        Assert.assertTrue(CapacityScheduler.place(CapacityScheduler.SPREAD, Collections.singletonList(host("small", 4, 0, "s1", "s2")), 1, 6 * GB, 2).isEmpty());
+        Assert.assertEquals(Collections.singletonList("s1"), CapacityScheduler.place(CapacityScheduler.SPREAD, Collections.singletonList(host("small", 4, 0, "s1", "s2")), 1, 6 * GB, 1));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ */
+public class DownloadFileTest {
+
+    private File dir;
+    private HttpServer server;
+    private byte[] content;
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+    private volatile boolean dropFirstRange;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("download").toFile();
+        content = new byte[20 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(content);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/artifact", exchange -> {
+            HttpRange range = HttpRange.parse(exchange.getRequestHeaders().getFirst("Range"), content.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                if (range == null) {
+                    exchange.sendResponseHeaders(200, content.length);
+                    body.write(content);
+                    return;
+                }
+                exchange.getResponseHeaders().add("Content-Range", range.toContentRange());
+                exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(206, range.length());
+                int count = rangeRequests.incrementAndGet();
+                if (dropFirstRange && count == 2) {
+                    //first chunk request after the probe dies half way
+                    body.write(content, (int) range.start, (int) (range.length() / 2));
+                    throw new IOException("connection dropped");
+                }
+                body.write(content, (int) range.start, (int) range.length());
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        FileUtils.deleteQuietly(dir);
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/artifact";
+    }
+
+    @Test
+    public void testParallelRangesAreAssembledAndVerified() throws Exception {
+        File dest = new File(dir, "simulation.jar");
+        FileUtils.writeByteArrayToFile(new File(dir, "origin"), content);
+        String expected = ArtifactCache.sha256(new File(dir, "origin"));
+
+        String actual = DownloadFile.download(url(), dest, expected);
+
+        Assert.assertEquals(expected, actual);
+        Assert.assertArrayEquals(content, FileUtils.readFileToByteArray(dest));
+        //probe plus three chunks
+        Assert.assertEquals(4, rangeRequests.get());
+        Assert.assertFalse(new File(dir, "simulation.jar.state").exists());
+    }
+
+    @Test
+    public void testInterruptedRangeIsRetried() throws Exception {
+        dropFirstRange = true;
+        File dest = new File(dir, "simulation.jar");
+
+        DownloadFile.download(url(), dest, null);
+
+        Assert.assertArrayEquals(content, FileUtils.readFileToByteArray(dest));
+        Assert.assertEquals(5, rangeRequests.get());
+    }
+
+    @Test(expected = IOException.class)
+    public void testChecksumMismatchFails() throws Exception {
+        DownloadFile.download(url(), new File(dir, "simulation.jar"), ArtifactCache.toHex(new byte[32]));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ *
+ */
+public class FeedPartitionerTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("partition").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    private File zip(String... namesAndContents) throws IOException {
+        File file = new File(dir, "feeds.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                zip.putNextEntry(new ZipEntry(namesAndContents[i]));
+                zip.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    private static Map<String, String> entries(File zip) throws IOException {
+        Map<String, String> entries = new HashMap<>();
+        try (ZipInputStream input = new ZipInputStream(new FileInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = input.getNextEntry()) != null) {
+                entries.put(entry.getName(), IOUtils.toString(input, StandardCharsets.UTF_8));
+            }
+        }
+        return entries;
+    }
+
+    @Test
+    public void testRecordsAreDealtAcrossSlices() throws Exception {
+        File zip = zip("data/users.csv", "id,name\n1,a\n2,\"multi\nline\"\n3,c\n",
+                       "data/items.json", "[{\"id\":1},{\"id\":2},{\"id\":3},{\"id\":4}]",
+                       "bodies/template.txt", "hello");
+
+        List<File> slices = FeedPartitioner.partition(zip, 2);
+
+        Assert.assertEquals(2, slices.size());
+        Map<String, String> first = entries(slices.get(0));
+        Map<String, String> second = entries(slices.get(1));
+        Assert.assertEquals("id,name\n1,a\n3,c\n", first.get("data/users.csv"));
+        Assert.assertEquals("id,name\n2,\"multi\nline\"\n", second.get("data/users.csv"));
+        Assert.assertEquals("[{\"id\":1},{\"id\":3}]", first.get("data/items.json"));
+        Assert.assertEquals("[{\"id\":2},{\"id\":4}]", second.get("data/items.json"));
+        Assert.assertEquals("hello", first.get("bodies/template.txt"));
+        Assert.assertEquals("hello", second.get("bodies/template.txt"));
+    }
+
+    @Test
+    public void testSlicesOfTheSameFeedAreShared() throws Exception {
+        File zip = zip("data/users.csv", "id\n1\n2\n");
+        List<File> first = FeedPartitioner.partition(zip, 2);
+        long written = first.get(0).lastModified();
+        // past the 2 seconds resolution of the zip entry times
+        Thread.sleep(2100);
+        List<File> second = FeedPartitioner.partition(zip, 2);
+
+        Assert.assertEquals(first, second);
+        Assert.assertEquals(written, second.get(0).lastModified());
+        Assert.assertNotEquals(first.get(0), first.get(1));
+        Assert.assertEquals(3, dir.listFiles().length);
+    }
+
+    @Test
+    public void testSingleTaskKeepsTheOriginal() throws Exception {
+        File zip = zip("data/users.csv", "id\n1\n");
+        List<File> slices = FeedPartitioner.partition(zip, 1);
+        Assert.assertEquals(1, slices.size());
+        Assert.assertEquals(zip, slices.get(0));
+    }
+}
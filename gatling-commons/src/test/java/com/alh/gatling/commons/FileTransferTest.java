@@ -0,0 +1,65 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ *
+ */
+public class FileTransferTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("transfer", ".log").toFile();
+        FileUtils.writeStringToFile(file, "0123456789", StandardCharsets.UTF_8);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(file);
+    }
+
+    @Test
+    public void testRangesAreSent() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Assert.assertEquals(4, FileTransfer.transfer(file, 2, 5, output));
+        Assert.assertEquals("2345", output.toString("UTF-8"));
+    }
+
+    @Test(timeout = 5000)
+    public void testTruncatedFilesEndTheTransfer() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        //the length was read before the file was truncated
+        Assert.assertEquals(5, FileTransfer.transfer(file, 5, 19, output));
+        Assert.assertEquals("56789", output.toString("UTF-8"));
+    }
+}
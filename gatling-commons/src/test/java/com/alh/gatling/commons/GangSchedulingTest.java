@@ -0,0 +1,115 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import akka.testkit.javadsl.TestKit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class GangSchedulingTest extends MasterTest {
+
+    public static final String ROLE = "gang";
+
+    private Master.Job getGangJob() {
+        Master.Job job = new Master.Job(ROLE, taskEvent, jobinfo.trackingId, "", "simulationFilePath", "resourcesFilePath", false);
+        return job;
+    }
+
+    @Test
+    public void testGangIsAllocatedTogetherAndReleasedAtOnce() {
+        new TestKit(system) {
+            {
+                jobinfo.synchronizedStart = true;
+                jobinfo.count = 2;
+                Master.Job first = getGangJob();
+                Master.Job second = getGangJob();
+                master.tell(first, getRef());
+                expectMsgClass(Master.Ack.class);
+                master.tell(second, getRef());
+                expectMsgClass(Master.Ack.class);
+
+                TestKit worker1 = new TestKit(system);
+                TestKit worker2 = new TestKit(system);
+                master.tell(new MasterWorkerProtocol.RegisterWorker("gang-1", ROLE), worker1.getRef());
+                worker1.expectMsgEquals(MasterWorkerProtocol.WorkIsReady.getInstance());
+
+                //a single idle worker can't hold the gang, nothing starts
+                master.tell(new MasterWorkerProtocol.WorkerRequestsWork("gang-1", ROLE), worker1.getRef());
+                worker1.expectNoMsg();
+                master.tell(new Master.TrackingInfo(first.trackingId), getRef());
+                Assert.assertEquals(2, expectMsgClass(TrackingResult.class).getPendingCount());
+
+                master.tell(new MasterWorkerProtocol.RegisterWorker("gang-2", ROLE), worker2.getRef());
+                worker2.expectMsgEquals(MasterWorkerProtocol.WorkIsReady.getInstance());
+                master.tell(new MasterWorkerProtocol.WorkerRequestsWork("gang-2", ROLE), worker2.getRef());
+                Master.Job job1 = worker1.expectMsgClass(Master.Job.class);
+                Master.Job job2 = worker2.expectMsgClass(Master.Job.class);
+                Assert.assertNotEquals(job1.jobId, job2.jobId);
+
+                //the start signal waits for every member of the gang
+                master.tell(new MasterWorkerProtocol.WorkerReady("gang-1", job1.jobId), worker1.getRef());
+                worker1.expectNoMsg();
+                master.tell(new MasterWorkerProtocol.WorkerReady("gang-2", job2.jobId), worker2.getRef());
+                MasterWorkerProtocol.StartWork start1 = worker1.expectMsgClass(MasterWorkerProtocol.StartWork.class);
+                MasterWorkerProtocol.StartWork start2 = worker2.expectMsgClass(MasterWorkerProtocol.StartWork.class);
+                Assert.assertEquals(job1.jobId, start1.workId);
+                Assert.assertEquals(job2.jobId, start2.workId);
+                Assert.assertEquals(start1.startAt, start2.startAt);
+            }
+        };
+    }
+
+    @Test
+    public void testGangWaitsForEveryTaskToBeSubmitted() {
+        new TestKit(system) {
+            {
+                jobinfo.synchronizedStart = true;
+                jobinfo.count = 2;
+                TestKit worker1 = new TestKit(system);
+                TestKit worker2 = new TestKit(system);
+                master.tell(new MasterWorkerProtocol.RegisterWorker("late-1", ROLE), worker1.getRef());
+                master.tell(new MasterWorkerProtocol.RegisterWorker("late-2", ROLE), worker2.getRef());
+
+                //the idle workers ask for work as soon as the first task is accepted
+                Master.Job first = getGangJob();
+                master.tell(first, getRef());
+                expectMsgClass(Master.Ack.class);
+                worker1.expectMsgEquals(MasterWorkerProtocol.WorkIsReady.getInstance());
+                worker2.expectMsgEquals(MasterWorkerProtocol.WorkIsReady.getInstance());
+                master.tell(new MasterWorkerProtocol.WorkerRequestsWork("late-1", ROLE), worker1.getRef());
+                worker1.expectNoMsg();
+                worker2.expectNoMsg();
+
+                master.tell(getGangJob(), getRef());
+                expectMsgClass(Master.Ack.class);
+                worker1.expectMsgEquals(MasterWorkerProtocol.WorkIsReady.getInstance());
+                worker2.expectMsgEquals(MasterWorkerProtocol.WorkIsReady.getInstance());
+                master.tell(new MasterWorkerProtocol.WorkerRequestsWork("late-1", ROLE), worker1.getRef());
+                Master.Job job1 = worker1.expectMsgClass(Master.Job.class);
+                Master.Job job2 = worker2.expectMsgClass(Master.Job.class);
+                Assert.assertNotEquals(job1.jobId, job2.jobId);
+                master.tell(new Master.TrackingInfo(first.trackingId), getRef());
+                Assert.assertEquals(0, expectMsgClass(TrackingResult.class).getPendingCount());
+            }
+        };
+    }
+}
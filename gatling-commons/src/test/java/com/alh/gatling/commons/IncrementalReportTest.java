@@ -0,0 +1,82 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+/**
+ *
+ */
+public class IncrementalReportTest {
+
+    private File dir;
+    private File log;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("partial").toFile();
+        log = new File(dir, "simulation.log");
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    private void append(String lines) throws IOException {
+        FileUtils.writeStringToFile(log, lines, StandardCharsets.UTF_8, true);
+    }
+
+    @Test
+    public void testOnlyTheAppendedBytesAreAggregated() throws Exception {
+        File reports = new File(dir, "run");
+        IncrementalReport partial = IncrementalReport.open(reports);
+        partial.track("task-1", log.toURI().toString());
+        append("RUN\tcomputerdatabase.BasicSimulation\tbasicsimulation\t1000000\t \t3.0\n"
+               + "REQUEST\t\thome\t1000000\t1000100\tOK\t \n"
+               + "REQUEST\t\thome\t1000000\t1000");
+
+        partial.update();
+        Assert.assertTrue(new File(partial.getDirectory(), ReportWriter.INDEX).isFile());
+
+        //the partially written line is read again with the bytes that complete it
+        append("200\tOK\t \n");
+        partial.update();
+
+        //the state survives a restart, the end of the completed log is read once
+        append("REQUEST\t\tsearch\t1001000\t1002500\tKO\toops");
+        IncrementalReport resumed = IncrementalReport.open(reports);
+        Assert.assertTrue(resumed.isTracked("task-1"));
+        ReportStats stats = resumed.finish(Collections.singletonList("task-1"));
+
+        Assert.assertEquals(3, stats.getGlobal().getCount());
+        Assert.assertEquals(1, stats.getGlobal().getKoCount());
+        Assert.assertEquals(3, resumed.finish(Collections.singletonList("task-1")).getGlobal().getCount());
+    }
+}
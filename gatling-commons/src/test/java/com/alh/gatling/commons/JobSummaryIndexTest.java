@@ -0,0 +1,102 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ *
+ */
+public class JobSummaryIndexTest {
+
+    private JobSummaryIndex index;
+
+    @Before
+    public void setUp() {
+        index = new JobSummaryIndex();
+    }
+
+    private JobSummary summary(String trackingId, String user, String partition, long start, long end, String status) {
+        JobSummary summary = new JobSummary(JobSummary.JobInfo.newBuilder()
+                                                .withTrackingId(trackingId).withUser(user).withPartitionName(partition).build());
+        TaskEvent task = new TaskEvent();
+        task.setTaskJobId(trackingId + "-1");
+        task.setStartTimeStamp(start);
+        task.setEndTimeStamp(end);
+        task.setStatus(status);
+        summary.addTask(task);
+        index.update(summary);
+        return summary;
+    }
+
+    private static List<String> ids(Master.JobSummaryPage page) {
+        return page.content.stream().map(s -> s.getJobInfo().trackingId).collect(Collectors.toList());
+    }
+
+    private static Master.JobSummaryQuery query(String status, String user, long from, long to, String sort, boolean descending, int page, int size) {
+        return new Master.JobSummaryQuery(null, status, user, null, from, to, sort, descending, page, size);
+    }
+
+    @Test
+    public void testPagesAreSortedAndCounted() {
+        summary("a", "joe", "p1", 100, 400, JobState.JobStatusString.COMPLETED);
+        summary("b", "ann", "p1", 200, 300, JobState.JobStatusString.FAILED);
+        summary("c", "joe", "p2", 300, 0, JobState.JobStatusString.STARTED);
+        summary("d", "joe", "p1", 400, 500, JobState.JobStatusString.COMPLETED);
+
+        Master.JobSummaryPage finished = index.query(query(Master.JobSummaryQuery.FINISHED, null, 0, Long.MAX_VALUE,
+                                                           Master.JobSummaryQuery.START_TIME, true, 0, 2));
+        Assert.assertEquals(3, finished.total);
+        Assert.assertEquals(Arrays.asList("d", "b"), ids(finished));
+
+        Master.JobSummaryPage second = index.query(query(Master.JobSummaryQuery.FINISHED, null, 0, Long.MAX_VALUE,
+                                                         Master.JobSummaryQuery.START_TIME, true, 1, 2));
+        Assert.assertEquals(Arrays.asList("a"), ids(second));
+
+        Master.JobSummaryPage byEnd = index.query(query(null, "joe", 0, Long.MAX_VALUE, Master.JobSummaryQuery.END_TIME, false, 0, 10));
+        Assert.assertEquals(Arrays.asList("c", "a", "d"), ids(byEnd));
+
+        Master.JobSummaryPage window = index.query(query(JobState.JobStatusString.COMPLETED, null, 150, 500, Master.JobSummaryQuery.START_TIME, false, 0, 10));
+        Assert.assertEquals(Arrays.asList("d"), ids(window));
+
+        Master.JobSummaryPage inverted = index.query(query(null, null, 500, 150, Master.JobSummaryQuery.START_TIME, true, 0, 10));
+        Assert.assertEquals(0, inverted.total);
+        Assert.assertTrue(inverted.content.isEmpty());
+    }
+
+    @Test
+    public void testStatusChangesAreIndexedAgain() {
+        JobSummary summary = summary("a", "joe", "p1", 100, 0, JobState.JobStatusString.STARTED);
+        Assert.assertEquals(1, index.query(query(Master.JobSummaryQuery.RUNNING, null, 0, Long.MAX_VALUE, Master.JobSummaryQuery.START_TIME, true, 0, 10)).total);
+
+        summary.getTaskInfoList().get(0).setStatus(JobState.JobStatusString.COMPLETED);
+        index.update(summary);
+
+        Assert.assertEquals(0, index.query(query(Master.JobSummaryQuery.RUNNING, null, 0, Long.MAX_VALUE, Master.JobSummaryQuery.START_TIME, true, 0, 10)).total);
+        Assert.assertEquals(1, index.query(query(Master.JobSummaryQuery.FINISHED, null, 0, Long.MAX_VALUE, Master.JobSummaryQuery.START_TIME, true, 0, 10)).total);
+        Assert.assertEquals(1, index.size());
+        Assert.assertEquals(summary, index.query(Master.JobSummaryQuery.byTrackingId("A")).content.get(0));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.alh.gatling.commons;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ *
+ */
+public class LiveMetricsTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("results").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    private static String request(String name, long start, long end, String status) {
+        return "REQUEST\tscenario\t1\t\t" + name + "\t" + start + "\t" + end + "\t" + status + "\t \n";
+    }
+
+    @Test
+    public void testTailerOnlyConsumesCompleteLines() throws Exception {
+        SimulationLogTailer tailer = new SimulationLogTailer(dir);
+        Assert.assertNull(tailer.poll());
+
+        File log = new File(dir, "basicsimulation-1/simulation.log");
+        FileUtils.writeStringToFile(log, "RUN\tBasicSimulation\tbasicsimulation\t1000\t \t2.0\n"
+                                         + request("home", 1000_000, 1000_100, "OK")
+                                         + request("home", 1000_500, 1000_700, "KO")
+                                         + "REQUEST\tscenario\t1\t\thome\t1001", StandardCharsets.UTF_8);
+        MetricsDelta delta = tailer.poll();
+        Assert.assertEquals(1, delta.seconds.size());
+        Assert.assertEquals(1, delta.seconds.get(0).ok);
+        Assert.assertEquals(1, delta.seconds.get(0).ko);
+        Assert.assertNull(tailer.poll());
+
+        FileUtils.writeStringToFile(log, "000\t1001100\tOK\t \n", StandardCharsets.UTF_8, true);
+        delta = tailer.poll();
+        Assert.assertEquals(1001, delta.seconds.get(0).epochSecond);
+        Assert.assertEquals(1, delta.seconds.get(0).ok);
+    }
+
+    @Test
+    public void testDeltasOfSeveralWorkersAreMerged() throws Exception {
+        LiveMetrics metrics = new LiveMetrics("tracking");
+        for (int worker = 0; worker < 2; worker++) {
+            MetricsDelta.Builder builder = new MetricsDelta.Builder();
+            SimulationLog.Request request = new SimulationLog.Request();
+            for (int i = 1; i <= 100; i++) {
+                Assert.assertTrue(SimulationLog.parseRequest(request("home", 2000_000, 2000_000 + i, i % 10 == 0 ? "KO" : "OK").trim(), request));
+                builder.record(request);
+            }
+            metrics.merge(builder.build());
+        }
+        LiveMetrics.View view = metrics.view();
+        Assert.assertEquals(200, view.getRequests());
+        Assert.assertEquals(20, view.getKo());
+        Assert.assertEquals(0.1, view.getErrorRate(), 0.0001);
+        Assert.assertEquals(50, view.getP50(), 1);
+        Assert.assertEquals(99, view.getP99(), 1);
+        Assert.assertEquals(100, view.getMax(), 1);
+        Assert.assertEquals(0, LiveMetrics.View.empty("other").getRequests());
+    }
+}
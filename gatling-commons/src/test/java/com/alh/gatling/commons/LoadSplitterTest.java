@@ -0,0 +1,55 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ *
+ */
+public class LoadSplitterTest {
+
+    @Test
+    public void testEvenSplitAddsUpToTheTotal() {
+        Assert.assertArrayEquals(new long[]{34, 33, 33}, LoadSplitter.split(100, 3, null, null));
+        Assert.assertArrayEquals(new long[]{1, 1, 0, 0}, LoadSplitter.split(2, 4, LoadSplitter.EVEN, null));
+    }
+
+    @Test
+    public void testWeightedSplitFollowsSlotCapacity() {
+        long[] shares = LoadSplitter.split(1000, 3, LoadSplitter.WEIGHTED, "4, 2, 1");
+        Assert.assertArrayEquals(new long[]{571, 286, 143}, shares);
+        Assert.assertEquals(1000, Arrays.stream(shares).sum());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWeightsMustMatchTheTaskCount() {
+        LoadSplitter.split(10, 3, LoadSplitter.WEIGHTED, "1,1");
+    }
+
+    @Test
+    public void testTaskParameters() {
+        long[] users = LoadSplitter.split(10, 2, null, null);
+        Assert.assertEquals(Arrays.asList("-DtaskIndex=1", "-DtaskCount=2", "-Dusers=5"), LoadSplitter.taskParameters(1, 2, users, null));
+        Assert.assertTrue(LoadSplitter.taskParameters(0, 2, null, null).isEmpty());
+    }
+}
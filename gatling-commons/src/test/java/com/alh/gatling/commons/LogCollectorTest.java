@@ -0,0 +1,127 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.alh.gatling.commons;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ *
+ */
+public class LogCollectorTest {
+
+    private File dir;
+    private HttpServer server;
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private final Map<String, AtomicInteger> runningPerHost = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> maxPerHost = new ConcurrentHashMap<>();
+    private final AtomicInteger gzipped = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("collect").toFile();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/log", exchange -> {
+            String host = exchange.getRequestHeaders().getFirst("Host").split(":")[0];
+            AtomicInteger hostRunning = runningPerHost.computeIfAbsent(host, h -> new AtomicInteger());
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            maxPerHost.computeIfAbsent(host, h -> new AtomicInteger()).accumulateAndGet(hostRunning.incrementAndGet(), Math::max);
+            try {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(100);
+                } finally {
+                    //released before the response is sent, the client may start its next download as soon as it has it
+                    hostRunning.decrementAndGet();
+                    running.decrementAndGet();
+                }
+                byte[] content = ("REQUEST\t\t" + exchange.getRequestURI().getQuery() + "\n").getBytes(StandardCharsets.UTF_8);
+                String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                if (accept != null && accept.contains("gzip")) {
+                    gzipped.incrementAndGet();
+                    exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                    exchange.sendResponseHeaders(200, 0);
+                    try (OutputStream body = new GZIPOutputStream(exchange.getResponseBody())) {
+                        body.write(content);
+                    }
+                } else {
+                    exchange.sendResponseHeaders(200, content.length);
+                    try (OutputStream body = exchange.getResponseBody()) {
+                        body.write(content);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        FileUtils.deleteQuietly(dir);
+    }
+
+    @Test
+    public void testDownloadsAreCappedPerHostAndOverall() throws Exception {
+        int port = server.getAddress().getPort();
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            urls.add("http://" + (i % 2 == 0 ? "127.0.0.1" : "localhost") + ":" + port + "/log?task" + i);
+        }
+        LogCollector collector = new LogCollector(3, 2);
+        AtomicInteger progress = new AtomicInteger();
+        try {
+            List<File> files = collector.collect(urls, dir, (done, total, bytes) -> progress.incrementAndGet()).get(30, TimeUnit.SECONDS);
+            Assert.assertEquals(8, files.size());
+            for (int i = 0; i < files.size(); i++) {
+                Assert.assertEquals(new File(dir, (i + 1) + ".log"), files.get(i));
+                Assert.assertEquals("REQUEST\t\ttask" + i + "\n", FileUtils.readFileToString(files.get(i), StandardCharsets.UTF_8));
+            }
+        } finally {
+            collector.shutdown();
+        }
+        Assert.assertEquals(8, progress.get());
+        Assert.assertEquals(8, gzipped.get());
+        Assert.assertTrue("overall " + maxRunning, maxRunning.get() <= 3);
+        maxPerHost.values().forEach(max -> Assert.assertTrue("per host " + max, max.get() <= 2));
+    }
+}
@@ -70,12 +70,18 @@ public class MasterTest  {
     }
     @BeforeClass
     public static void setupActorSystem() throws Exception {
+        setupActorSystem(new AgentConfig());
+    }
 
+    /**
+     * Starts the master with the given settings, the log server ones are filled in
+     */
+    protected static void setupActorSystem(AgentConfig config) throws Exception {
         FileUtils.deleteDirectory(new File("journal"));
         FileUtils.deleteDirectory(new File("shared-journal"));
         FileUtils.deleteDirectory(new File("snapshots"));
         //file.isDirectory()
-        agentConfig = new AgentConfig();
+        agentConfig = config;
         AgentConfig.LogServer log = new AgentConfig.LogServer();
         log.setHostName("127.0.0.1");
         log.setPort(8080);
@@ -0,0 +1,115 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ *
+ */
+public class ReportCacheTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("reports").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    private static Worker.Result result(String metrics) {
+        return new Worker.Result(0, null, null, metrics, null);
+    }
+
+    private void build(ReportCache cache, String trackingId, String key, int bytes) throws IOException {
+        cache.begin(trackingId);
+        FileUtils.writeByteArrayToFile(new File(cache.getDirectory(trackingId), "index.html"), new byte[bytes]);
+        cache.put(trackingId, key);
+    }
+
+    @Test
+    public void testKeyIgnoresTheCompletionOrder() {
+        String key = ReportCache.key(Arrays.asList(result("a"), result("b")), ReportExecutor.NATIVE);
+        Assert.assertEquals(key, ReportCache.key(Arrays.asList(result("b"), result("a")), ReportExecutor.NATIVE));
+        Assert.assertNotEquals(key, ReportCache.key(Arrays.asList(result("a"), result("c")), ReportExecutor.NATIVE));
+        Assert.assertNotEquals(key, ReportCache.key(Arrays.asList(result("a"), result("b")), ReportExecutor.GATLING));
+    }
+
+    @Test
+    public void testReportIsOnlyServedForItsResultSet() throws Exception {
+        ReportCache cache = new ReportCache(dir, 1000);
+        Assert.assertFalse(cache.lookup("run", "k1"));
+        build(cache, "run", "k1", 10);
+        Assert.assertTrue(cache.lookup("run", "k1"));
+        Assert.assertFalse(cache.lookup("run", "k2"));
+
+        cache.begin("run");
+        cache.abort("run");
+        Assert.assertFalse(cache.lookup("run", "k1"));
+    }
+
+    @Test
+    public void testFailedBuildsCountTowardTheQuota() throws Exception {
+        ReportCache cache = new ReportCache(dir, 250);
+        cache.begin("first");
+        FileUtils.writeByteArrayToFile(new File(cache.getDirectory("first"), "index.html"), new byte[100]);
+        cache.abort("first");
+        Assert.assertFalse(cache.getDirectory("first").exists());
+        Assert.assertEquals(0, cache.getTotalBytes());
+
+        build(cache, "run", "k1", 100);
+        cache.begin("run");
+        FileUtils.writeByteArrayToFile(new File(cache.getDirectory("run"), "partial.html"), new byte[100]);
+        cache.abort("run");
+        Assert.assertEquals(200, cache.getTotalBytes());
+    }
+
+    @Test
+    public void testLeastRecentlyServedReportsAreEvicted() throws Exception {
+        ReportCache cache = new ReportCache(dir, 250);
+        build(cache, "a", "ka", 100);
+        build(cache, "b", "kb", 100);
+        Assert.assertTrue(cache.lookup("a", "ka"));
+        build(cache, "c", "kc", 100);
+
+        Assert.assertTrue(cache.lookup("a", "ka"));
+        Assert.assertFalse(cache.lookup("b", "kb"));
+        Assert.assertFalse(cache.getDirectory("b").exists());
+        Assert.assertTrue(cache.lookup("c", "kc"));
+
+        ReportCache reloaded = new ReportCache(dir, 250);
+        Assert.assertTrue(reloaded.lookup("a", "ka"));
+        Assert.assertEquals("kc", FileUtils.readFileToString(new File(reloaded.getDirectory("c"), ReportCache.KEY_FILE), StandardCharsets.UTF_8));
+        Assert.assertTrue(reloaded.getTotalBytes() > 200);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import akka.testkit.javadsl.TestKit;
+import org.apache.commons.io.FileUtils;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Collections;
+
+/**
+ *
+ */
+public class ReportJobTest extends MasterTest {
+
+    private static File logDirectory;
+
+    @BeforeClass
+    public static void setupActorSystem() throws Exception {
+        logDirectory = Files.createTempDirectory("reports").toFile();
+        AgentConfig config = new AgentConfig();
+        AgentConfig.Job job = new AgentConfig.Job();
+        job.setLogDirectory(logDirectory.getAbsolutePath() + "/");
+        config.setJob(job);
+        setupActorSystem(config);
+    }
+
+    @AfterClass
+    public static void deleteReports() {
+        FileUtils.deleteQuietly(logDirectory);
+    }
+
+    @Test
+    public void testReportJobIsQueuedThenCompleted() {
+        new TestKit(system) {
+            {
+                String trackingId = jobinfo.trackingId;
+                master.tell(new Master.SubmitReport(trackingId, taskEvent), getRef());
+                Master.ReportJob submitted = expectMsgClass(Master.ReportJob.class);
+                Assert.assertEquals(trackingId, submitted.trackingId);
+                Assert.assertFalse(submitted.isDone());
+                Assert.assertEquals(Master.ReportJob.QUEUED, submitted.status);
+
+                //polled until done, as the long poll of the rest api does
+                Master.ReportJob done = awaitDone(this, submitted.reportId);
+                Assert.assertEquals(Master.ReportJob.COMPLETED, done.status);
+                Assert.assertTrue(done.updated >= submitted.submitted);
+
+                //a finished job keeps its outcome
+                master.tell(new ReportExecutor.ReportProgress(submitted.reportId, Master.ReportJob.FAILED), getRef());
+                Assert.assertEquals(Master.ReportJob.COMPLETED, awaitDone(this, submitted.reportId).status);
+
+                master.tell(new Master.ReportJobInfo("unknown"), getRef());
+                Assert.assertEquals("unknown", expectMsgClass(Master.Ack.class).getWorkId());
+            }
+        };
+    }
+
+    @Test
+    public void testReportJobFailsWhenResultsCantBeCollected() {
+        new TestKit(system) {
+            {
+                ActorRef executor = system.actorOf(Props.create(ReportExecutor.class, agentConfig));
+                Master.Job job = getJob();
+                Worker.Result result = new Worker.Result(0, null, null, "not a url", job);
+                executor.tell(new Master.GenerateReport(new Master.Report(job.trackingId, taskEvent), Collections.singletonList(result), "report-1"), getRef());
+
+                //told every step until the outcome
+                ReportExecutor.ReportProgress progress;
+                do {
+                    progress = expectMsgClass(Duration.ofSeconds(30), ReportExecutor.ReportProgress.class);
+                    Assert.assertEquals("report-1", progress.reportId);
+                } while (!Master.ReportJob.FAILED.equals(progress.status) && !Master.ReportJob.COMPLETED.equals(progress.status));
+                Assert.assertEquals(Master.ReportJob.FAILED, progress.status);
+                system.stop(executor);
+            }
+        };
+    }
+
+    private static Master.ReportJob awaitDone(TestKit probe, String reportId) {
+        return probe.awaitAssert(Duration.ofSeconds(30), () -> {
+            master.tell(new Master.ReportJobInfo(reportId), probe.getRef());
+            Master.ReportJob job = probe.expectMsgClass(Master.ReportJob.class);
+            Assert.assertTrue(job.status, job.isDone());
+            return job;
+        });
+    }
+}
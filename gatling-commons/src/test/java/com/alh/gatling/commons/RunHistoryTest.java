@@ -0,0 +1,123 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ */
+public class RunHistoryTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("history").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    private static ReportStats run(String simulation, long start, long... homeTimes) {
+        ReportStats stats = new ReportStats();
+        stats.run(simulation, start);
+        for (long time : homeTimes) {
+            stats.record(stats.request("home"), start, start + time, true, null);
+        }
+        stats.record(stats.request("search"), start, start + 10, false, "oops");
+        return stats;
+    }
+
+    @Test
+    public void testRunsAreQueriedPerRequestName() throws Exception {
+        RunHistory history = new RunHistory(dir);
+        history.record("run-2", run("Basic", 2000, 300, 400));
+        history.record("run-1", run("Basic", 1000, 100, 200));
+        history.record("run-3", run("Other", 3000, 500));
+
+        RunHistory.Result home = history.query("home", "Basic", 0, Long.MAX_VALUE, 0, 0);
+        Assert.assertEquals(2, home.points.size());
+        Assert.assertEquals("run-1", home.points.get(0).trackingId);
+        Assert.assertEquals(2, home.points.get(0).count);
+        Assert.assertEquals(400, home.points.get(1).max, 1);
+
+        RunHistory.Result global = history.query(null, null, 1500, Long.MAX_VALUE, 1, 0);
+        Assert.assertEquals(ReportStats.GLOBAL, global.request);
+        Assert.assertEquals(1, global.points.size());
+        Assert.assertEquals("run-3", global.points.get(0).trackingId);
+        Assert.assertEquals(1, global.points.get(0).ko);
+    }
+
+    @Test
+    public void testNewerReportOfARunSupersedesTheOlderOne() throws Exception {
+        RunHistory history = new RunHistory(dir);
+        history.record("run-1", run("Basic", 1000, 100));
+        history.record("run-1", run("Basic", 1000, 100, 100, 100));
+
+        RunHistory.Result home = history.query("home", null, 0, Long.MAX_VALUE, 0, 0);
+        Assert.assertEquals(1, home.points.size());
+        Assert.assertEquals(3, home.points.get(0).count);
+    }
+
+    @Test
+    public void testBucketsMergeTheHistograms() throws Exception {
+        RunHistory history = new RunHistory(dir);
+        long hour = TimeUnit.HOURS.toMillis(1);
+        history.record("run-1", run("Basic", hour, 100, 100, 100));
+        history.record("run-2", run("Basic", hour + 1000, 1000));
+        history.record("run-3", run("Basic", 2 * hour, 50));
+
+        RunHistory.Result home = history.query("home", null, 0, Long.MAX_VALUE, 0, hour);
+        Assert.assertEquals(2, home.points.size());
+        Assert.assertEquals(hour, home.points.get(0).start);
+        Assert.assertEquals(4, home.points.get(0).count);
+        Assert.assertEquals(100, home.points.get(0).p50, 1);
+        Assert.assertEquals(1000, home.points.get(0).max, 10);
+        Assert.assertEquals(1, home.points.get(1).count);
+    }
+
+    @Test
+    public void testIncompleteBlockIsTruncatedOnLoad() throws Exception {
+        RunHistory history = new RunHistory(dir);
+        history.record("run-1", run("Basic", 1000, 100));
+        File data = new File(dir, RunHistory.DATA_FILE);
+        long length = data.length();
+        try (FileOutputStream output = new FileOutputStream(data, true)) {
+            output.write(new byte[]{0, 5, 'r', 'u'});
+        }
+
+        RunHistory reloaded = new RunHistory(dir);
+        Assert.assertEquals(length, data.length());
+        reloaded.record("run-2", run("Basic", 2000, 200));
+        Assert.assertEquals(2, new RunHistory(dir).query("home", null, 0, Long.MAX_VALUE, 0, 0).points.size());
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.alh.gatling.commons;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ *
+ */
+public class SimulationLogParserTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("report").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    private File log(String name, String content) throws IOException {
+        File file = new File(dir, name);
+        FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    @Test
+    public void testLogsOfSeveralTasksAreAggregated() throws Exception {
+        //gatling 3 layout on the first task, gatling 2 layout and a missing trailing line end on the second
+        File first = log("1.log", "RUN\tcomputerdatabase.BasicSimulation\tbasicsimulation\t1000000\t \t3.0\n"
+                                  + "USER\tscenario\tSTART\t1000000\t1000000\n"
+                                  + "REQUEST\t\thome\t1000000\t1000100\tOK\t \n"
+                                  + "REQUEST\t\thome\t1001000\t1001900\tKO\tstatus.find.is(200), but actually found 500\n"
+                                  + "REQUEST\t\tsearch\t1001000\t1002500\tOK\t \n");
+        File second = log("2.log", "RUN\tcomputerdatabase.BasicSimulation\tbasicsimulation\t999000\t \t2.0\r\n"
+                                   + "USER\tscenario\t1\tSTART\t999000\t0\r\n"
+                                   + "REQUEST\tscenario\t1\t\thome\t1000200\t1000400\tOK\t \r\n"
+                                   + "REQUEST\tscenario\t1\t\thome\t1000300\t1001300\tKO\tstatus.find.is(200), but actually found 500");
+
+        ReportStats stats = SimulationLogParser.parse(Arrays.asList(first, second));
+
+        Assert.assertEquals("computerdatabase.BasicSimulation", stats.getSimulation());
+        Assert.assertEquals(999000, stats.getStart());
+        Assert.assertEquals(1002500, stats.getEnd());
+        Assert.assertEquals(2, stats.getUsers());
+        Assert.assertEquals(5, stats.getGlobal().getCount());
+        Assert.assertEquals(2, stats.getGlobal().getKoCount());
+        Assert.assertEquals(Long.valueOf(2), stats.getErrors().get("status.find.is(200), but actually found 500"));
+        ReportStats.RequestStats home = stats.getRequests().iterator().next();
+        Assert.assertEquals("home", home.getName());
+        Assert.assertEquals(4, home.getCount());
+        Assert.assertEquals(200, home.getOk().getMaxValue(), 1);
+        Assert.assertArrayEquals(new long[]{2, 0, 0, 2}, home.getGroups());
+        Assert.assertArrayEquals(new long[]{0, 2, 1900, 1000}, stats.getSeconds().get(1001L));
+    }
+
+    @Test
+    public void testLinesSpanningMappedWindows() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            content.append("REQUEST\t\trequest").append(i % 7).append("\t1000000\t").append(1000000 + i).append("\tOK\t \n");
+        }
+        ReportStats stats = new ReportStats();
+        new SimulationLogParser(stats, 61).parse(log("simulation.log", content.toString()));
+        Assert.assertEquals(1000, stats.getGlobal().getCount());
+        Assert.assertEquals(7, stats.getRequests().size());
+        Assert.assertEquals(999, stats.getGlobal().getAll().getMaxValue(), 10);
+    }
+
+    @Test
+    public void testReportIsWritten() throws Exception {
+        ReportStats stats = SimulationLogParser.parse(Arrays.asList(log("1.log", "REQUEST\t\t<home>\t1000000\t1000100\tOK\t \n")));
+        File report = new File(dir, "report");
+        ReportWriter.write(stats, report);
+
+        JsonNode json = new ObjectMapper().readTree(new File(report, ReportWriter.STATS));
+        Assert.assertEquals(1, json.get("stats").get("numberOfRequests").get("total").asLong());
+        Assert.assertEquals("<home>", json.get("requests").get(0).get("name").asText());
+        String html = FileUtils.readFileToString(new File(report, ReportWriter.INDEX), StandardCharsets.UTF_8);
+        Assert.assertTrue(html.contains("&lt;home&gt;"));
+    }
+
+    @Test
+    public void testPreAggregatedStatsMergeLikeRawLogs() throws Exception {
+        File first = log("1.log", "REQUEST\t\thome\t1000000\t1000100\tOK\t \nREQUEST\t\thome\t1000000\t1000900\tKO\tboom\n");
+        File second = log("2.log", "USER\tscenario\tSTART\t1000000\t1000000\nREQUEST\t\tsearch\t1001000\t1002000\tOK\t \n");
+        File stats = new File(dir, ReportStats.FILE_NAME);
+        SimulationLogParser.parse(Arrays.asList(first)).write(stats);
+        Assert.assertTrue(ReportStats.isStats(stats));
+        Assert.assertFalse(ReportStats.isStats(second));
+
+        ReportStats merged = ReportStats.read(stats);
+        new SimulationLogParser(merged).parse(second);
+        ReportStats raw = SimulationLogParser.parse(Arrays.asList(first, second));
+
+        Assert.assertEquals(raw.getGlobal().getAll(), merged.getGlobal().getAll());
+        Assert.assertEquals(raw.getGlobal().getOk(), merged.getGlobal().getOk());
+        Assert.assertEquals(raw.getErrors(), merged.getErrors());
+        Assert.assertEquals(raw.getUsers(), merged.getUsers());
+        Assert.assertEquals(raw.getStart(), merged.getStart());
+        Assert.assertEquals(raw.getEnd(), merged.getEnd());
+        Assert.assertEquals(raw.getRequests().size(), merged.getRequests().size());
+        Assert.assertArrayEquals(raw.getSeconds().get(1000L), merged.getSeconds().get(1000L));
+    }
+}
@@ -72,6 +72,72 @@ public class WorkerMasterTest extends MasterTest {
         };
     }
 
+    @Test
+    public void testDashboardCountsFollowTheWorkers() {
+        new TestKit(system) {
+            {
+                master.tell(new Master.DashboardInfo(), getRef());
+                Master.Dashboard before = expectMsgClass(Master.Dashboard.class);
+
+                master.tell(new MasterWorkerProtocol.RegisterWorker("worker-dashboard", "dashboard"), getRef());
+                master.tell(new Master.DashboardInfo(), getRef());
+                Master.Dashboard after = (Master.Dashboard) fishForMessage(duration("3 seconds"), "dashboard", m -> m instanceof Master.Dashboard);
+                Assert.assertEquals(Long.valueOf(1), after.partition.get("dashboard"));
+                Assert.assertNotEquals(before.getTag(), after.getTag());
+
+                //registering again only refreshes the worker, the counts and their version stay
+                master.tell(new MasterWorkerProtocol.RegisterWorker("worker-dashboard", "dashboard"), getRef());
+                master.tell(new Master.DashboardInfo(), getRef());
+                Master.Dashboard again = (Master.Dashboard) fishForMessage(duration("3 seconds"), "dashboard", m -> m instanceof Master.Dashboard);
+                Assert.assertEquals(after.getTag(), again.getTag());
+            }
+        };
+    }
+
+    @Test
+    public void testSubscribersReceiveTheTaskTransitions() {
+        new TestKit(system) {
+            {
+                Master.Job job = getJob();
+                TestKit subscriber = new TestKit(system);
+                master.tell(new Master.Subscribe(job.trackingId), subscriber.getRef());
+                subscriber.expectNoMsg(duration("300 millis"));//nothing tracked yet
+
+                master.tell(job, getRef());
+                expectMsgClass(Master.Ack.class);
+                Master.TaskDelta delta = subscriber.expectMsgClass(Master.TaskDelta.class);
+                Assert.assertEquals(job.jobId, delta.taskJobId);
+                Assert.assertEquals(JobState.JobStatusString.PENDING, delta.status);
+
+                //a late subscriber starts from the current state, the dashboard one from the current counts
+                TestKit late = new TestKit(system);
+                master.tell(new Master.Subscribe(job.trackingId), late.getRef());
+                Assert.assertEquals(job.jobId, late.expectMsgClass(Master.TaskDelta.class).taskJobId);
+                master.tell(new Master.Subscribe(null), late.getRef());
+                late.expectMsgClass(Master.Dashboard.class);
+                //renewing a subscription does not replay the state
+                master.tell(new Master.Subscribe(job.trackingId), late.getRef());
+                master.tell(new Master.Subscribe(null), late.getRef());
+                late.expectNoMsg(duration("300 millis"));
+
+                master.tell(new Master.Unsubscribe(job.trackingId), subscriber.getRef());
+                master.tell(new MasterWorkerProtocol.RegisterWorker("worker-events"), getRef());
+                expectMsgEquals(MasterWorkerProtocol.WorkIsReady.getInstance());
+                master.tell(new MasterWorkerProtocol.WorkerRequestsWork("worker-events", PROJECT_NAME), getRef());
+                expectMsgClass(Master.Job.class);
+                Master.TaskDelta started = (Master.TaskDelta) late.fishForMessage(duration("3 seconds"), "started", m -> m instanceof Master.TaskDelta);
+                Assert.assertEquals(JobState.JobStatusString.STARTED, started.status);
+                Assert.assertEquals("worker-events", started.workerId);
+
+                master.tell(new MasterWorkerProtocol.WorkIsDone("worker-events", job.jobId, new Worker.Result(0, "", "", null, job)), getRef());
+                expectMsgClass(Master.Ack.class);
+                Master.TaskDelta completed = (Master.TaskDelta) late.fishForMessage(duration("3 seconds"), "completed", m -> m instanceof Master.TaskDelta);
+                Assert.assertEquals(JobState.JobStatusString.COMPLETED, completed.status);
+                subscriber.expectNoMsg(duration("300 millis"));//unsubscribed before the transitions
+            }
+        };
+    }
+
     @Test
     public void testWorkerRequestsWork() {
         new TestKit(system) {
@@ -0,0 +1,82 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.commons;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ *
+ */
+public class ZipStreamExtractorTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("extract").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    private static byte[] zip(String... namesAndContents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                zip.putNextEntry(new ZipEntry(namesAndContents[i]));
+                zip.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void testOnlyChangedEntriesAreRewritten() throws Exception {
+        File target = new File(dir, "feeds");
+        int written = ZipStreamExtractor.extract(new ByteArrayInputStream(zip("data/users.csv", "id\n1\n", "bodies/a.json", "{}", "old.txt", "x")), target, true);
+        Assert.assertEquals(3, written);
+
+        written = ZipStreamExtractor.extract(new ByteArrayInputStream(zip("data/users.csv", "id\n1\n2\n", "bodies/a.json", "{}")), target, true);
+        Assert.assertEquals(1, written);
+        Assert.assertEquals("id\n1\n2\n", FileUtils.readFileToString(new File(target, "data/users.csv"), StandardCharsets.UTF_8));
+        Assert.assertEquals("{}", FileUtils.readFileToString(new File(target, "bodies/a.json"), StandardCharsets.UTF_8));
+        Assert.assertFalse(new File(target, "old.txt").exists());
+    }
+
+    @Test(expected = IOException.class)
+    public void testEntriesOutsideTheTargetAreRejected() throws Exception {
+        ZipStreamExtractor.extract(new ByteArrayInputStream(zip("../escape.txt", "x")), new File(dir, "feeds"), false);
+    }
+}
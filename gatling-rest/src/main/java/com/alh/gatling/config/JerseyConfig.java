@@ -18,7 +18,9 @@
 
 package com.alh.gatling.config;
 
+import com.alh.gatling.commons.Constants;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
 import com.codahale.metrics.jersey2.InstrumentedResourceMethodApplicationListener;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.slf4j.Logger;
@@ -44,7 +46,7 @@ import javax.ws.rs.ApplicationPath;
 public class JerseyConfig extends ResourceConfig {
 	private static final Logger logger = LoggerFactory.getLogger(JerseyConfig.class);
 	
-	private final MetricRegistry registry = new MetricRegistry();
+	private final MetricRegistry registry = SharedMetricRegistries.getOrCreate(Constants.MetricRegistryName);
 	
 	/**
 	 * If we built it, then Spring will use our MetricRegistry instead of creating its own.
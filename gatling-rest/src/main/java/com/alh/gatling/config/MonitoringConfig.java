@@ -18,7 +18,9 @@
 
 package com.alh.gatling.config;
 
+import com.codahale.metrics.CachedGauge;
 import com.codahale.metrics.ConsoleReporter;
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricFilter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.graphite.Graphite;
@@ -26,6 +28,8 @@ import com.codahale.metrics.graphite.GraphiteReporter;
 import com.codahale.metrics.jvm.MemoryUsageGaugeSet;
 import com.codahale.metrics.jvm.ThreadStatesGaugeSet;
 import com.alh.gatling.commons.HostUtils;
+import com.alh.gatling.commons.Master;
+import com.alh.gatling.service.ServerRepository;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -88,4 +92,22 @@ public class MonitoringConfig {
         registry.register("threads", threadStatesGaugeSet);
         return threadStatesGaugeSet;
     }
-}
\ No newline at end of file
+
+    /**
+     * Depth of the report queue of the master, refreshed at most every 10 seconds
+     */
+    @Bean
+    public CachedGauge<Master.ReportQueue> reportQueueGauge(MetricRegistry registry, ServerRepository serverRepository) {
+        CachedGauge<Master.ReportQueue> reportQueue = new CachedGauge<Master.ReportQueue>(10, TimeUnit.SECONDS) {
+            @Override
+            protected Master.ReportQueue loadValue() {
+                // metrics reporter thread, never a request thread
+                return serverRepository.getReportQueue().toCompletableFuture().join();
+            }
+        };
+        registry.register("reports.collecting", (Gauge<Integer>) () -> reportQueue.getValue().collecting);
+        registry.register("reports.queued", (Gauge<Integer>) () -> reportQueue.getValue().queued);
+        registry.register("reports.generating", (Gauge<Integer>) () -> reportQueue.getValue().generating);
+        return reportQueue;
+    }
+}
@@ -20,8 +20,8 @@ package com.alh.gatling.config;
 
 import com.alh.gatling.init.ClusterFactory;
 import com.alh.gatling.commons.AgentConfig;
+import com.alh.gatling.commons.ArtifactStore;
 import com.alh.gatling.commons.HostUtils;
-import com.alh.gatling.commons.MasterClientActor;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -30,8 +30,11 @@ import org.springframework.core.env.Environment;
 
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
-import akka.actor.Props;
-import akka.routing.RoundRobinPool;
+import akka.cluster.singleton.ClusterSingletonProxy;
+import akka.cluster.singleton.ClusterSingletonProxySettings;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
 
 /**
  * . A spring configuration object to create beans
@@ -76,6 +79,14 @@ public class SystemConfig {
         jobInfo.setCommand(env.getProperty("job.command"));
         jobInfo.setPath(env.getProperty("job.path"));
         jobInfo.setLogDirectory(env.getProperty("job.logDirectory"));
+        jobInfo.setReportEngine(env.getProperty("job.reportEngine"));
+        jobInfo.setCollectConcurrency(env.getProperty("job.collectConcurrency", Integer.class, jobInfo.getCollectConcurrency()));
+        jobInfo.setCollectPerHost(env.getProperty("job.collectPerHost", Integer.class, jobInfo.getCollectPerHost()));
+        jobInfo.setReportConcurrency(env.getProperty("job.reportConcurrency", Integer.class, 0));
+        jobInfo.setPartialReportInterval(env.getProperty("job.partialReportInterval", Integer.class, jobInfo.getPartialReportInterval()));
+        jobInfo.setReportCacheMaxBytes(env.getProperty("job.reportCacheMaxBytes", Long.class, jobInfo.getReportCacheMaxBytes()));
+        jobInfo.setPeerSeeds(env.getProperty("job.peerSeeds", Integer.class, jobInfo.getPeerSeeds()));
+        jobInfo.setPeerFanOut(env.getProperty("job.peerFanOut", Integer.class, jobInfo.getPeerFanOut()));
         jobInfo.setExitValues(new int[]{0,2});
         agentConfig.setJob(jobInfo);
 
@@ -83,6 +94,7 @@ public class SystemConfig {
         logServer.setHostName(HostUtils.lookupIp());
         logServer.setPort(clientPort);
         agentConfig.setLogServer(logServer);
+        agentConfig.setSchedulingPolicy(env.getProperty("master.schedulingPolicy"));
 
         return agentConfig;
     }
@@ -108,17 +120,30 @@ public class SystemConfig {
 
 
     /**
-     * bean factory to create pool of the master client actors, the pool is used in a round robin manner
+     * bean factory to create the proxy of the master singleton, shared by every request to the master
      * @param system
-     * @param pool
      * @param masterName
      * @return
      */
     @Bean
-    public ActorRef createRouter(ActorSystem system,
-                                 @Value("${master.client.pool}") int pool,
-                                 @Value("${master.name}") String masterName){
-        ActorRef router1 = system.actorOf(new RoundRobinPool(pool).props(Props.create(MasterClientActor.class,system,masterName)), "router");
-        return router1;
+    public ActorRef createMasterProxy(ActorSystem system,
+                                      @Value("${master.name}") String masterName){
+        ClusterSingletonProxySettings proxySettings =
+                ClusterSingletonProxySettings.create(system).withRole(masterName);
+        return system.actorOf(ClusterSingletonProxy.props("/user/master", proxySettings), "masterProxy");
+    }
+
+    /**
+     * bean factory to create the content addressed store of the uploaded artifacts
+     * @param repository
+     * @param maxBytes
+     * @param minIdleMinutes
+     * @return
+     */
+    @Bean
+    public ArtifactStore createArtifactStore(@Value("${file.repository}") String repository,
+                                             @Value("${file.store.maxBytes:10737418240}") long maxBytes,
+                                             @Value("${file.store.minIdleMinutes:60}") long minIdleMinutes){
+        return new ArtifactStore(new File(repository, "sha256"), maxBytes, TimeUnit.MINUTES.toMillis(minIdleMinutes));
     }
 }
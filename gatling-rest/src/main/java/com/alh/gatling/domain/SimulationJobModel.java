@@ -39,5 +39,13 @@ public class SimulationJobModel implements Serializable {
     private short count;
     private String fileFullName;
     private String parameterString;
+    private boolean partitionFeeds; // split csv/json feeds so each task gets a disjoint slice
+    private Long totalUsers; // aggregate users, split across the tasks and passed as -Dusers
+    private Long totalRps; // aggregate requests per second, split across the tasks and passed as -Drps
+    private String splitStrategy; // even (default) or weighted
+    private String taskWeights; // comma separated slot capacity of each task for the weighted strategy
+    private boolean synchronizedStart; // gang schedule the tasks and release them at the same instant
+    private Double taskCpus; // cores needed by each task, used by the capacity aware scheduling
+    private Long taskMemoryMb; // memory needed by each task
 
 }
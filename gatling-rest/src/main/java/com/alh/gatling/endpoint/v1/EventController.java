@@ -0,0 +1,74 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.endpoint.v1;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import com.alh.gatling.service.EventRelay;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spring mvc controller which pushes the tracking and dashboard changes as server-sent events,
+ * so that the ui doesn't have to poll /server/track/{trackingId} and /server/dashboard.
+ * Every stream starts with the current state, then only carries the changes.
+ */
+@org.springframework.web.bind.annotation.RestController
+public class EventController {
+    private final ActorSystem system;
+    private final ActorRef masterProxy;
+
+    @Value("${events.timeoutMinutes:30}")
+    private long timeoutMinutes;
+
+    @Autowired
+    public EventController(ActorSystem system, ActorRef masterProxy) {
+        this.system = system;
+        this.masterProxy = masterProxy;
+    }
+
+    /**
+     * "task" events, one per task transition or new live log url of the simulation
+     */
+    @RequestMapping(method = RequestMethod.GET, value = "/events/track/{trackingId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter track(@PathVariable("trackingId") String trackingId) {
+        return stream(trackingId);
+    }
+
+    /**
+     * "dashboard" events, the worker counts whenever one of them changes
+     */
+    @RequestMapping(method = RequestMethod.GET, value = "/events/dashboard", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter dashboard() {
+        return stream(null);
+    }
+
+    private SseEmitter stream(String trackingId) {
+        SseEmitter emitter = new SseEmitter(TimeUnit.MINUTES.toMillis(timeoutMinutes));
+        system.actorOf(EventRelay.props(masterProxy, trackingId, emitter));
+        return emitter;
+    }
+}
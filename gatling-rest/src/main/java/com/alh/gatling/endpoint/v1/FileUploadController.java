@@ -18,6 +18,7 @@
 
 package com.alh.gatling.endpoint.v1;
 
+import com.alh.gatling.commons.ArtifactStore;
 import com.alh.gatling.domain.SimulationJobModel;
 import com.alh.gatling.domain.SubmitResult;
 import com.alh.gatling.service.ServerRepository;
@@ -26,23 +27,29 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.ui.Model;
 import org.springframework.util.FileCopyUtils;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.multipart.MultipartHttpServletRequest;
 
+import javax.servlet.http.HttpServletRequest;
+
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Map;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.stream.Collectors;
 
 /**
@@ -54,13 +61,15 @@ import java.util.stream.Collectors;
 public class FileUploadController {
     private final Logger log = LoggerFactory.getLogger(FileUploadController.class);
     private ServerRepository serverRepository;
+    private ArtifactStore artifactStore;
 
     @Value("${file.repository}")
     private String tempFileDir;
 
     @Autowired
-    public FileUploadController(ServerRepository serverRepository) {
+    public FileUploadController(ServerRepository serverRepository, ArtifactStore artifactStore) {
         this.serverRepository = serverRepository;
+        this.artifactStore = artifactStore;
     }
 
     @RequestMapping(method = RequestMethod.GET, value = "/upload")
@@ -84,41 +93,61 @@ public class FileUploadController {
     @RequestMapping(method = RequestMethod.POST, value = "/uploadFile")
     public String uploadFile(MultipartHttpServletRequest request, @RequestParam("file") MultipartFile file) {
         if (!file.isEmpty()) {
-            String filePath = tempFileDir + "/" + UUID.randomUUID().toString() + "/" + file.getOriginalFilename();
-            try {
-                FileUtils.touch(new File(filePath));
-
-                BufferedOutputStream stream = new BufferedOutputStream(
-                        new FileOutputStream(new File(filePath)));
-                FileCopyUtils.copy(file.getInputStream(), stream);
-                stream.close();
-                return filePath;
-            } catch (IOException e) {
+            try (InputStream input = file.getInputStream()) {
+                return artifactStore.store(file.getOriginalFilename(), input).getPath();
+            } catch (IOException | IllegalArgumentException e) {
                 log.error("Error uploading file {}", e);
             }
         }
         return "";
     }
 
+    /**
+     * State of a chunked upload, complete with the path to submit when the content is already stored
+     */
+    @RequestMapping(method = RequestMethod.GET, value = "/uploads/{sha256}")
+    public ResponseEntity<ArtifactStore.Upload> getUpload(@PathVariable("sha256") String sha256, @RequestParam("name") String name) throws IOException {
+        try {
+            return ResponseEntity.ok(artifactStore.status(sha256, name));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Appends the request body to the upload, streamed to disk as it arrives.
+     * A chunk that doesn't start where the upload stands is refused with a 409 holding the current state to resume from.
+     */
+    @RequestMapping(method = RequestMethod.PUT, value = "/uploads/{sha256}")
+    public ResponseEntity<ArtifactStore.Upload> putUpload(@PathVariable("sha256") String sha256, @RequestParam("name") String name,
+                                                          @RequestParam("size") long size, @RequestParam(value = "offset", defaultValue = "0") long offset,
+                                                          HttpServletRequest request) throws IOException {
+        try {
+            ArtifactStore.Upload upload = artifactStore.append(sha256, name, size, offset, request.getInputStream());
+            log.debug("Upload {}", upload);
+            return ResponseEntity.ok(upload);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(artifactStore.status(sha256, name));
+        }
+    }
+
     @RequestMapping(method = RequestMethod.POST, value = "/upload")
-    public SubmitResult uploadAndRunSimulation(MultipartHttpServletRequest request, @RequestParam("simulationFile") MultipartFile simulationFile) {
+    public CompletionStage<SubmitResult> uploadAndRunSimulation(MultipartHttpServletRequest request, @RequestParam("simulationFile") MultipartFile simulationFile) {
         MultipartFile resourcesFile = request.getFile("resourcesFile");
         Map<String, String[]> paramMap = request.getParameterMap();
         String packageName = getValue(paramMap, "packageName"), partitionName = getValue(paramMap, "partitionName");
         String fileName = packageName.replace('.', '/') + ".scala";
-        String trackingId = "";
         SimulationJobModel job = new SimulationJobModel();
         String dataFilePath = "";//should be empty by default
         String resourcesFilePath = "";//should be empty by default
         if (!simulationFile.isEmpty()) {
             try {
                 if (resourcesFile != null && !resourcesFile.isEmpty()) {
-                    resourcesFilePath = tempFileDir + "/" + resourcesFile.getOriginalFilename();
-                    FileUtils.touch(new File(resourcesFilePath));
-                    BufferedOutputStream stream = new BufferedOutputStream(
-                            new FileOutputStream(new File(resourcesFilePath)));
-                    FileCopyUtils.copy(resourcesFile.getInputStream(), stream);
-                    stream.close();
+                    try (InputStream input = resourcesFile.getInputStream()) {
+                        resourcesFilePath = artifactStore.store(resourcesFile.getOriginalFilename(), input).getPath();
+                    }
                 }
 
                 String simulationFilePath = tempFileDir + "/" + fileName;
@@ -138,17 +167,21 @@ public class FileUploadController {
                 job.setFileFullName(packageName);
                 job.setParameterString(getValue(paramMap, "parameter"));
                 log.info("Submitting job: {}", job);
-                Optional<String> tId = serverRepository.submitSimulationJob(job);
-                trackingId = tId.get();
+                SimulationJobModel submitted = job;
+                // the request is released while the tasks are posted to the master
+                return serverRepository.submitSimulationJob(job)
+                        .thenApply(tId -> new SubmitResult(true, tId.get(), submitted))
+                        .exceptionally(e -> {
+                            log.error("Error uploading simulation {}", e);
+                            return new SubmitResult(false, "", submitted);
+                        });
             } catch (Exception e) {
                 log.error("Error uploading simulation {}", e);
-                return new SubmitResult(false, "", job);
+                return CompletableFuture.completedFuture(new SubmitResult(false, "", job));
             }
         } else {
-            return new SubmitResult(false, "", job);
+            return CompletableFuture.completedFuture(new SubmitResult(false, "", job));
         }
-
-        return new SubmitResult(true, trackingId, job);
     }
 
     private String getValue(Map<String, String[]> paramMap, String key) {
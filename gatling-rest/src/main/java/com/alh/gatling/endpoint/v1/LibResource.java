@@ -19,18 +19,25 @@
 package com.alh.gatling.endpoint.v1;
 
 
+import com.alh.gatling.commons.ArtifactStore;
+import com.alh.gatling.commons.FileTransfer;
+import com.alh.gatling.commons.HttpRange;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
 
-import javax.inject.Inject;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
@@ -39,35 +46,75 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Date;
 
 /**
  *
  * This jersey controller exposes http end points for workers ,
  * workers pull new artifacts and other resources using either the streaming end point or the file end point
+ * Artifacts of the artifact store never change under their path, they are served with their hash as strong entity tag
+ * and may be cached forever by the agents and any proxy in between
  */
+@Component
 @Path("/lib/")
 @Produces(MediaType.APPLICATION_JSON)
 @Consumes(MediaType.APPLICATION_JSON)
 public class LibResource {
     private final Logger log = LoggerFactory.getLogger(LibResource.class);
 
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+
     @Context
     UriInfo uriInfo;
 
-    @Inject
-    public LibResource(){
+    private final ArtifactStore artifactStore;
 
+    @Autowired
+    public LibResource(ArtifactStore artifactStore){
+        this.artifactStore = artifactStore;
     }
 
     @GET
     @Path("file")
     @Produces(MediaType.APPLICATION_OCTET_STREAM)
-    public Response getFile(@QueryParam("filePath") String filePath) {
+    public Response getFile(@QueryParam("filePath") String filePath, @HeaderParam("Range") String rangeHeader, @Context Request request) {
 
         try {
             File logFile = new File(filePath);
-            return Response.ok(logFile, MediaType.APPLICATION_OCTET_STREAM)
-                    .header("Content-Disposition", "attachment; filename=\"" + logFile.getName() + "\"" ) //optional
+            if (!logFile.isFile()) {
+                return Response.status(Response.Status.NOT_FOUND).build();
+            }
+            String hash = artifactStore.hashOf(logFile);
+            EntityTag tag = hash == null ? null : new EntityTag(hash);
+            if (tag != null) {
+                artifactStore.touch(hash);
+                Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+                if (notModified != null) {
+                    return notModified.header("Cache-Control", IMMUTABLE).build();
+                }
+            }
+            //agents fetch large artifacts as parallel chunks and resume interrupted downloads with ranges
+            HttpRange range = HttpRange.parse(rangeHeader, logFile.length());
+            if (range == null) {
+                return Response.ok(logFile, MediaType.APPLICATION_OCTET_STREAM)
+                        .header("Content-Disposition", "attachment; filename=\"" + logFile.getName() + "\"" ) //optional
+                        .header("Accept-Ranges", "bytes")
+                        .lastModified(new Date(logFile.lastModified()))
+                        .tag(tag)
+                        .header("Cache-Control", tag == null ? null : IMMUTABLE)
+                        .build();
+            }
+            if (!range.isSatisfiable()) {
+                return Response.status(416).header("Content-Range", "bytes */" + logFile.length()).build();
+            }
+            StreamingOutput stream = output -> FileTransfer.transfer(logFile, range.start, range.end, output);
+            return Response.status(206).entity(stream).type(MediaType.APPLICATION_OCTET_STREAM)
+                    .header("Content-Range", range.toContentRange())
+                    .header("Content-Length", range.length())
+                    .header("Accept-Ranges", "bytes")
+                    .lastModified(new Date(logFile.lastModified()))
+                    .tag(tag)
+                    .header("Cache-Control", tag == null ? null : IMMUTABLE)
                     .build();
         } catch (Exception e) {
             return Response.status(Response.Status.NOT_FOUND).build();
@@ -21,15 +21,16 @@ package com.alh.gatling.endpoint.v1;
 import com.codahale.metrics.annotation.Timed;
 import com.google.common.collect.ImmutableMap;
 import com.alh.gatling.commons.AgentConfig;
+import com.alh.gatling.commons.IncrementalReport;
 import com.alh.gatling.commons.JobSummary;
 import com.alh.gatling.commons.Master;
-import com.alh.gatling.commons.ReportExecutor;
+import com.alh.gatling.commons.ReportWriter;
 import com.alh.gatling.commons.TaskEvent;
-import com.alh.gatling.commons.TrackingResult;
 import com.alh.gatling.domain.DashboardModel;
 import com.alh.gatling.domain.SimulationJobModel;
 import com.alh.gatling.domain.WorkerModel;
 import com.alh.gatling.service.PageUtils;
+import com.alh.gatling.service.RemoteLog;
 import com.alh.gatling.service.ServerRepository;
 import com.alh.gatling.service.exception.NotFoundException;
 import com.alh.gatling.service.exception.UnknownResourceException;
@@ -45,14 +46,22 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 
@@ -60,21 +69,33 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.net.URI;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
- *
+ * Every end point talking to the master is asynchronous, the request thread is released as soon as the
+ * master is asked and the response is resumed when the answer arrives
  */
 @Component
 @Path("/server")
 public class RestController {
     private final Logger log = LoggerFactory.getLogger(RestController.class);
+    private static final int MAX_REPORT_WAIT_SECONDS = 30;
+    private static final long REPORT_POLL_MILLIS = 500;
+    // followers hold their thread for minutes, these are left for the short range and tail requests
+    private static final int LOG_REQUEST_THREADS = 8;
     private ServerRepository serverRepository;
+    // logs are streamed from the agents with blocking io, never on the threads of the actor system
+    private final ThreadPoolExecutor logStreams;
 
     @Autowired
     private AgentConfig agentConfig;
@@ -82,6 +103,19 @@ public class RestController {
     @Autowired
     public RestController(ServerRepository serverRepository) {
     	this.serverRepository = serverRepository;
+    	int threads = RemoteLog.MAX_FOLLOWERS + LOG_REQUEST_THREADS;
+    	AtomicInteger count = new AtomicInteger();
+    	this.logStreams = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+    		Thread thread = new Thread(runnable, "log-stream-" + count.incrementAndGet());
+    		thread.setDaemon(true);
+    		return thread;
+    	});
+    	this.logStreams.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+    	logStreams.shutdownNow();
     }
 
 
@@ -93,164 +127,232 @@ public class RestController {
     @Path("/info")
     @Produces("application/json")
     @Timed
-    public Response getServerInfo() {
-        List<WorkerModel> workers = getWorkersInfo();
-        return Response.status(Response.Status.OK).entity(workers).build();
+    public void getServerInfo(@Suspended AsyncResponse response) {
+        resume(response, getWorkersInfo().thenApply(workers -> Response.status(Response.Status.OK).entity(workers).build()),
+               "Error fetching cluster status.");
     }
 
     @GET
     @Path("/workers/host")
     @Produces("application/json")
     @Timed
-    public Response getWorkerHostInfo() {
-        List<WorkerModel> workers = getWorkersInfo();
-        Map<String, Long> result = workers.stream()
-                .collect(Collectors.groupingBy(WorkerModel::getHost, Collectors.counting()));
-        return Response.status(Response.Status.OK).entity(result).build();
+    public void getWorkerHostInfo(@Context Request request, @Suspended AsyncResponse response) {
+        resumeCounts(request, response, dashboard -> dashboard.host);
     }
 
     @GET
     @Path("/workers/partition")
     @Produces("application/json")
     @Timed
-    public Response getWorkerPartitionInfo() {
-        List<WorkerModel> workers = getWorkersInfo();
-        Map<String, Long> result = workers.stream()
-                .collect(Collectors.groupingBy(WorkerModel::getRole, Collectors.counting()));
-        return Response.status(Response.Status.OK).entity(result).build();
+    public void getWorkerPartitionInfo(@Context Request request, @Suspended AsyncResponse response) {
+        resumeCounts(request, response, dashboard -> dashboard.partition);
     }
 
     @GET
     @Path("/workers/status")
     @Produces("application/json")
     @Timed
-    public Response getWorkerStatusInfo() {
-        List<WorkerModel> workers = getWorkersInfo();
-        Map<String, Long> result = workers.stream()
-                .collect(Collectors.groupingBy(WorkerModel::getStatus, Collectors.counting()));
-        return Response.status(Response.Status.OK).entity(result).build();
+    public void getWorkerStatusInfo(@Context Request request, @Suspended AsyncResponse response) {
+        resumeCounts(request, response, dashboard -> dashboard.status);
     }
 
     @GET
     @Path("/dashboard")
     @Timed
-    public Response getDashboardInfo() {
-        DashboardModel dashboard = new DashboardModel();
-        List<WorkerModel> workers = getWorkersInfo();
-
-        Map<String, Long> status = workers.stream()
-                .collect(Collectors.groupingBy(WorkerModel::getStatus, Collectors.counting()));
-        dashboard.setStatus(status);
-
-        Map<String, Long> partition = workers.stream()
-                .collect(Collectors.groupingBy(WorkerModel::getRole, Collectors.counting()));
-        dashboard.setPartition(partition);
-
-        Map<String, Long> host = workers.stream()
-                .collect(Collectors.groupingBy(WorkerModel::getHost, Collectors.counting()));
-        dashboard.setHost(host);
-
-        Map<String, Long> partitionStatus = workers.stream()
-                .collect(Collectors.groupingBy(p->p.getRole() + ":" + p.getStatus(), Collectors.counting()));
-        dashboard.setPartitionStatus(partitionStatus);
-
-        return Response.status(Response.Status.OK).entity(dashboard).build();
+    public void getDashboardInfo(@Context Request request, @Suspended AsyncResponse response) {
+        resumeCounts(request, response, counts -> {
+            DashboardModel dashboard = new DashboardModel();
+            dashboard.setStatus(counts.status);
+            dashboard.setPartition(counts.partition);
+            dashboard.setHost(counts.host);
+            dashboard.setPartitionStatus(counts.partitionStatus);
+            return dashboard;
+        });
     }
 
     @GET
     @Path("/workers/partition/status")
     @Produces("application/json")
     @Timed
-    public Response getWorkerPartitionStatusInfo() {
-        List<WorkerModel> workers = getWorkersInfo();
-        Map<String, Long> result = workers.stream()
-                .collect(Collectors.groupingBy(p->p.getRole() + ":" + p.getStatus(), Collectors.counting()));
-        return Response.status(Response.Status.OK).entity(result).build();
+    public void getWorkerPartitionStatusInfo(@Context Request request, @Suspended AsyncResponse response) {
+        resumeCounts(request, response, dashboard -> dashboard.partitionStatus);
+    }
+
+    /**
+     * Answers with the worker counts maintained by the master, or with 304 when the client already has their version
+     */
+    private void resumeCounts(Request request, AsyncResponse response, Function<Master.Dashboard, Object> entity) {
+        resume(response, serverRepository.getDashboard().thenApply(dashboard -> {
+            if (dashboard.epoch == 0) {
+                // the master did not answer, nothing worth caching
+                return Response.status(Response.Status.OK).entity(entity.apply(dashboard)).build();
+            }
+            EntityTag tag = new EntityTag(dashboard.getTag());
+            CacheControl revalidate = new CacheControl();
+            revalidate.setNoCache(true);
+            Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+            if (notModified != null) {
+                return notModified.cacheControl(revalidate).build();
+            }
+            return Response.status(Response.Status.OK).entity(entity.apply(dashboard)).tag(tag).cacheControl(revalidate).build();
+        }), "Error fetching cluster status.");
     }
 
-    private List<WorkerModel> getWorkersInfo() {
-        Master.ServerInfo info = serverRepository.getServerStatus(new Master.ServerInfo());
-        log.info("Processing  get cluster status request: {}", info);
-        return info.getWorkers().entrySet().stream().map(stateEntry ->
-                new WorkerModel(stateEntry.getValue().status.toString(),
-                        stateEntry.getValue().ref.path().name().toString(),
-                        stateEntry.getKey())).collect(Collectors.toList());
+    private CompletionStage<List<WorkerModel>> getWorkersInfo() {
+        return serverRepository.getServerStatus(new Master.ServerInfo()).thenApply(info -> {
+            log.info("Processing  get cluster status request: {}", info);
+            return info.getWorkers().entrySet().stream().map(stateEntry ->
+                    new WorkerModel(stateEntry.getValue().status.toString(),
+                            stateEntry.getValue().ref.path().name().toString(),
+                            stateEntry.getKey())).collect(Collectors.toList());
+        });
     }
 
+    /**
+     * Resumes the suspended request once the stage completes, a failed stage answers 503 with the given error
+     */
+    private void resume(AsyncResponse response, CompletionStage<Response> stage, String error) {
+        stage.whenComplete((result, failure) -> {
+            if (failure == null) {
+                response.resume(result);
+            } else {
+                log.error("{} {}", error, ServerRepository.causeOf(failure).toString());
+                response.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE).entity(error).build());
+            }
+        });
+    }
+
+    /**
+     * Running jobs, most recent first
+     * @param size page size
+     * @param page one based page number
+     * @param user only the jobs of this user
+     * @param partition only the jobs of this partition
+     * @param from earliest start time in epoch seconds
+     * @param to latest start time in epoch seconds, exclusive
+     * @param sort startTime or endTime
+     * @param order desc or asc
+     * @return
+     */
     @GET
     @Path("/running/summary")
     @Produces("application/json")
     @Timed
-    public Response getRunningSummary(@QueryParam("size") int size,@QueryParam("page") int page) {
-        PageRequest  pageRequest = PageUtils.getPageRequest(size, page, null);
-        List<JobSummary> summaries = serverRepository.getJobSummary().stream().filter(s -> s.runningJob()).collect(Collectors.toList());
-        List<JobSummary> pagedResult = summaries.stream()
-                .filter(p->p.runningJob())
-                .sorted((o1, o2) -> Long.valueOf(o2.getStartTime()).compareTo(Long.valueOf(o1.getStartTime())))
-                .skip(pageRequest.getOffset())
-                .limit(pageRequest.getPageSize())
-                .collect(Collectors.toList());
-
-        Page<JobSummary> result = new PageImpl<>(pagedResult, pageRequest, summaries.size());
-        log.info("Processing  get cluster job summary request.");
-        return Response.status(Response.Status.OK).entity(result).build();
+    public void getRunningSummary(@QueryParam("size") int size,@QueryParam("page") int page,
+                                  @QueryParam("user") String user, @QueryParam("partition") String partition,
+                                  @QueryParam("from") @DefaultValue("0") long from, @QueryParam("to") @DefaultValue("" + Long.MAX_VALUE) long to,
+                                  @QueryParam("sort") @DefaultValue(Master.JobSummaryQuery.START_TIME) String sort,
+                                  @QueryParam("order") @DefaultValue("desc") String order, @Suspended AsyncResponse response) {
+        getSummaryPage(Master.JobSummaryQuery.RUNNING, size, page, user, partition, from, to, sort, order, response);
     }
 
 
+    /**
+     * Finished jobs, most recent first
+     * @param status only the jobs in this status, any finished job by default
+     * @see #getRunningSummary
+     */
     @GET
     @Path("/completed/summary")
     @Produces("application/json")
     @Timed
-    public Response getCompletedJobSummary(@QueryParam("size") int size,@QueryParam("page") int page ) {
-        PageRequest  pageRequest = PageUtils.getPageRequest(size, page,null);
-        List<JobSummary> summaries = serverRepository.getJobSummary();
-        List<JobSummary> pagedResult = summaries.stream()
-                .filter(p->!p.runningJob())
-                .sorted((o1, o2) -> Long.valueOf(o2.getStartTime()).compareTo(Long.valueOf(o1.getStartTime())))
-                .skip(pageRequest.getOffset())
-                .limit(pageRequest.getPageSize())
-                .collect(Collectors.toList());
-        Page<JobSummary> result = new PageImpl<>(pagedResult, pageRequest, summaries.size());
-        log.info("Processing  get cluster job summary request.");
-        return Response.status(Response.Status.OK).entity(result).build();
+    public void getCompletedJobSummary(@QueryParam("size") int size,@QueryParam("page") int page,
+                                       @QueryParam("status") @DefaultValue(Master.JobSummaryQuery.FINISHED) String status,
+                                       @QueryParam("user") String user, @QueryParam("partition") String partition,
+                                       @QueryParam("from") @DefaultValue("0") long from, @QueryParam("to") @DefaultValue("" + Long.MAX_VALUE) long to,
+                                       @QueryParam("sort") @DefaultValue(Master.JobSummaryQuery.START_TIME) String sort,
+                                       @QueryParam("order") @DefaultValue("desc") String order, @Suspended AsyncResponse response) {
+        getSummaryPage(status, size, page, user, partition, from, to, sort, order, response);
+    }
+
+    private void getSummaryPage(String status, int size, int page, String user, String partition, long from, long to,
+                                String sort, String order, AsyncResponse response) {
+        if (from > to) {
+            response.resume(Response.status(Response.Status.BAD_REQUEST).entity("from must not be after to").build());
+            return;
+        }
+        PageRequest  pageRequest = PageUtils.getPageRequest(size, page, null);
+        Master.JobSummaryQuery query = new Master.JobSummaryQuery(null, status, StringUtils.trimToNull(user), StringUtils.trimToNull(partition),
+                                                                  from, to, sort, !"asc".equalsIgnoreCase(order),
+                                                                  pageRequest.getPageNumber(), pageRequest.getPageSize());
+        resume(response, serverRepository.getJobSummary(query).thenApply(summaries -> {
+            Page<JobSummary> result = new PageImpl<>(summaries.content, pageRequest, summaries.total);
+            log.info("Processing  get cluster job summary request.");
+            return Response.status(Response.Status.OK).entity(result).build();
+        }), "Error fetching job summary.");
     }
 
     @GET
     @Path("/detail/{trackingId}")
     @Produces("application/json")
     @Timed
-    public Response getJobDetail(@PathParam("trackingId") String trackingId ) {
-        List<JobSummary> summaries = serverRepository.getJobSummary();
-        Optional<JobSummary> summary = summaries.stream().filter(p -> p.getJobInfo().trackingId.equalsIgnoreCase(trackingId)).findFirst();
-        log.info("Processing  get job detail.");
-        if(summary.isPresent())
-            return Response.status(Response.Status.OK).entity(summary.get()).build();
-        else
-            return Response.status(Response.Status.BAD_REQUEST).entity("The Specified tracking id is not available.").build();
+    public void getJobDetail(@PathParam("trackingId") String trackingId, @Suspended AsyncResponse response) {
+        resume(response, serverRepository.getJobSummary(Master.JobSummaryQuery.byTrackingId(trackingId)).thenApply(summaries -> {
+            log.info("Processing  get job detail.");
+            if(!summaries.content.isEmpty())
+                return Response.status(Response.Status.OK).entity(summaries.content.get(0)).build();
+            else
+                return Response.status(Response.Status.BAD_REQUEST).entity("The Specified tracking id is not available.").build();
+        }), "Error fetching job detail.");
     }
 
     @GET
     @Path("/getlog/{trackingId}/{taskJobId}/{logType}")
     @Produces("application/json")
     @Timed
-    public Response getLog(@PathParam("trackingId") String trackingId, @PathParam("taskJobId") String taskJobId,  @PathParam("logType") String logType) {
-    	try {
-    		String resultString = serverRepository.getLogResult(trackingId, taskJobId, logType);
-    		return Response.ok(resultString, MediaType.TEXT_PLAIN).build();
-    	} catch(NotFoundException e) {
-    		return Response.status(Response.Status.NOT_FOUND).build();
-    	} catch(UnknownResourceException e) {
-    		return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
-    	}
+    public void getLog(@PathParam("trackingId") String trackingId, @PathParam("taskJobId") String taskJobId,  @PathParam("logType") String logType,
+                       @Suspended AsyncResponse response) {
+    	getTaskLog(trackingId, taskJobId, logType, null, null, null, false, null, response);
     }
-        
+
+    /**
+     * Streams the std or error log of a task from its agent, the log is never held in memory here
+     * @param offset first byte to return
+     * @param length number of bytes to return from offset
+     * @param tail number of lines to return from the end of the log, X-Log-Offset and X-Log-Length tell where they start
+     * @param follow keep streaming what the task appends from offset, until the log stays quiet for a while
+     * @return
+     */
+    @GET
+    @Path("/log/{trackingId}/{taskJobId}/{logType}")
+    @Produces(MediaType.TEXT_PLAIN)
+    @Timed
+    public void getTaskLog(@PathParam("trackingId") String trackingId, @PathParam("taskJobId") String taskJobId, @PathParam("logType") String logType,
+                           @QueryParam("offset") Long offset, @QueryParam("length") Long length, @QueryParam("tail") Integer tail,
+                           @QueryParam("follow") boolean follow, @HeaderParam("Accept-Encoding") String acceptEncoding,
+                           @Suspended AsyncResponse response) {
+    	serverRepository.getLogUrl(trackingId, taskJobId, logType).whenCompleteAsync((url, failure) -> {
+    		if (failure != null) {
+    			Throwable cause = ServerRepository.causeOf(failure);
+    			if (cause instanceof UnknownResourceException) {
+    				response.resume(Response.status(Response.Status.BAD_REQUEST).entity(cause.getMessage()).build());
+    			} else {
+    				response.resume(Response.status(Response.Status.NOT_FOUND).build());
+    			}
+    			return;
+    		}
+    		try {
+    			if (tail != null) {
+    				response.resume(RemoteLog.tail(url, tail));
+    			} else if (follow) {
+    				response.resume(RemoteLog.follow(url, offset == null ? 0 : offset));
+    			} else {
+    				response.resume(RemoteLog.range(url, offset, length, acceptEncoding));
+    			}
+    		} catch(IOException e) {
+    			log.error("Error fetching log of task: {}, {}", taskJobId, e);
+    			response.resume(Response.status(Response.Status.BAD_GATEWAY).entity("Error fetching log from the agent.").build());
+    		}
+    	}, logStreams);
+    }
+
     @GET
     @Path("/upload/{id}")
     @Produces("application/json")
     @Timed
-    public Response getUploadInfo(@PathParam("id") String trackingId) {
-        Optional<Master.UploadInfo> info = serverRepository.getUploadStatus(new Master.UploadInfo(trackingId));
-        return Response.status(Response.Status.ACCEPTED).entity(info).build();
+    public void getUploadInfo(@PathParam("id") String trackingId, @Suspended AsyncResponse response) {
+        resume(response, serverRepository.getUploadStatus(new Master.UploadInfo(trackingId))
+                .thenApply(info -> Response.status(Response.Status.ACCEPTED).entity(info).build()), "Error fetching upload status.");
     }
 
     /**
@@ -264,15 +366,18 @@ public class RestController {
     @Path("/job")
     @Produces("application/json")
     @Timed
-    public Response runSimulationJob(SimulationJobModel simulationJobModel) {
-        Optional<String> result;
+    public void runSimulationJob(SimulationJobModel simulationJobModel, @Suspended AsyncResponse response) {
         try {
-            result = serverRepository.submitSimulationJob(simulationJobModel);
-            String path = "#/tracker/" + result.get();
-            return Response.status(Response.Status.ACCEPTED).entity( ImmutableMap.of("trackingPath",path)).build();
+            resume(response, serverRepository.submitSimulationJob(simulationJobModel).thenApply(result -> {
+                String path = "#/tracker/" + result.get();
+                return Response.status(Response.Status.ACCEPTED).entity( ImmutableMap.of("trackingPath",path)).build();
+            }), "Could not submit the job to the cluster master.");
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid user job {}, {}", simulationJobModel, e.getMessage());
+            response.resume(Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build());
         } catch (Exception e) {
             log.error("Error while submitting user job {}, {}", simulationJobModel,e);
-            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("Could not submit the job to the cluster master.").build();
+            response.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("Could not submit the job to the cluster master.").build());
         }
 
     }
@@ -288,16 +393,26 @@ public class RestController {
     @Path("/track/{id}")
     @Produces("application/json")
     @Timed
-    public Response getTrack(@Context UriInfo uriInfo, @PathParam("id") String trackingId) {
-        TrackingResult result;
-        try {
-            result = serverRepository.getTrackingInfo(trackingId);
-            return Response.status(Response.Status.ACCEPTED).entity(ImmutableMap.of("trackingInfo", result)).build();
-        } catch (Exception e) {
-            log.error("Error fetching tracking info for: {}, {}", trackingId, e);
-            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("Error fetching tracking info.").build();
-        }
+    public void getTrack(@Context UriInfo uriInfo, @PathParam("id") String trackingId, @Suspended AsyncResponse response) {
+        resume(response, serverRepository.getTrackingInfo(trackingId)
+                .thenApply(result -> Response.status(Response.Status.ACCEPTED).entity(ImmutableMap.of("trackingInfo", result)).build()),
+               "Error fetching tracking info.");
+    }
 
+    /**
+     * Given a tracking id returns the latency percentiles and throughput aggregated across the workers while the simulation runs
+     * @param uriInfo
+     * @param trackingId
+     * @return
+     */
+    @GET
+    @Path("/metrics/{id}")
+    @Produces("application/json")
+    @Timed
+    public void getLiveMetrics(@Context UriInfo uriInfo, @PathParam("id") String trackingId, @Suspended AsyncResponse response) {
+        resume(response, serverRepository.getLiveMetrics(trackingId)
+                .thenApply(result -> Response.status(Response.Status.OK).entity(ImmutableMap.of("metrics", result)).build()),
+               "Error fetching live metrics.");
     }
 
     /**
@@ -311,16 +426,102 @@ public class RestController {
     @Path("/report/{id}")
     @Produces("application/json")
     @Timed
-    public Response postReport(@Context UriInfo uriInfo,@PathParam("id") String trackingId) {
-        try {
-            Optional<ReportExecutor.ReportResult> res =  serverRepository.generateReport(trackingId);
-            log.info("report result: {}",res);
-            return Response.status(Response.Status.ACCEPTED).entity(ImmutableMap.of("report", res.get().result.toString() )).build();
-        } catch (Exception e) {
-            log.error("Error while submitting user report request for: {}, {}",trackingId,e);
-            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("Error while submitting user report request.").build();
+    public void postReport(@Context UriInfo uriInfo,@PathParam("id") String trackingId, @Suspended AsyncResponse response) {
+        resume(response, serverRepository.submitReport(trackingId).thenApply(job -> {
+            log.info("report job: {}",job);
+            if (!job.isPresent()) {
+                return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("Error while submitting user report request.").build();
+            }
+            URI status = uriInfo.getBaseUriBuilder().path(RestController.class).path(RestController.class, "getReportJob").build(job.get().reportId);
+            return Response.status(Response.Status.ACCEPTED).location(status).entity(job.get()).build();
+        }), "Error while submitting user report request.");
+    }
+
+    /**
+     * Status of an asynchronous report job, the report location is valid once the job is COMPLETED.
+     * With wait the request is held until the job is done or the wait (at most 30 seconds) elapses.
+     * @param reportId
+     * @param wait seconds to wait for the job to be done
+     * @return
+     */
+    @GET
+    @Path("/report/job/{reportId}")
+    @Produces("application/json")
+    @Timed
+    public void getReportJob(@PathParam("reportId") String reportId, @QueryParam("wait") @DefaultValue("0") int wait,
+                             @Suspended AsyncResponse response) {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(Math.max(0, Math.min(wait, MAX_REPORT_WAIT_SECONDS)));
+        resume(response, serverRepository.awaitReportJob(reportId, deadline, REPORT_POLL_MILLIS)
+                .thenApply(job -> Response.ok(job).build())
+                .exceptionally(failure -> {
+                    Throwable cause = ServerRepository.causeOf(failure);
+                    if (cause instanceof NotFoundException) {
+                        return Response.status(Response.Status.NOT_FOUND).build();
+                    }
+                    return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity(cause.getMessage()).build();
+                }), "Error fetching report job.");
+    }
+
+    /**
+     * Location of the partial report of a simulation, refreshed while it runs
+     * @param trackingId
+     * @return
+     */
+    @GET
+    @Path("/report/partial/{id}")
+    @Produces("application/json")
+    @Timed
+    public Response getPartialReport(@PathParam("id") String trackingId) {
+        File index = new File(agentConfig.getJob().getLogDirectory() + "reports/" + trackingId + "/" + IncrementalReport.DIRECTORY, ReportWriter.INDEX);
+        if (!index.isFile()) {
+            return Response.status(Response.Status.NOT_FOUND).build();
         }
+        return Response.ok(ImmutableMap.of("report", IncrementalReport.getHtml(trackingId), "updated", index.lastModified())).build();
+    }
+
+    /**
+     * Stats of the whole runs across the latest reported runs
+     * @param simulation only the runs of this simulation
+     * @param from earliest run start in epoch millis
+     * @param to latest run start in epoch millis, exclusive
+     * @param limit maximum number of runs, the most recent ones are kept
+     * @return
+     */
+    @GET
+    @Path("/history/runs")
+    @Produces("application/json")
+    @Timed
+    public void getRunHistory(@QueryParam("simulation") String simulation, @QueryParam("from") @DefaultValue("0") long from,
+                              @QueryParam("to") @DefaultValue("" + Long.MAX_VALUE) long to, @QueryParam("limit") @DefaultValue("50") int limit,
+                              @Suspended AsyncResponse response) {
+        resume(response, serverRepository.getHistory(new Master.HistoryQuery(null, simulation, from, to, limit, 0))
+                .thenApply(result -> Response.ok(result).build()), "Error fetching run history.");
+    }
 
+    /**
+     * Trend of one request name, one point per run or, with bucket, one point per time bucket with exact percentiles
+     * @param name request name
+     * @param simulation only the runs of this simulation
+     * @param from earliest run start in epoch millis
+     * @param to latest run start in epoch millis, exclusive
+     * @param limit maximum number of points, the most recent ones are kept
+     * @param bucket width of the time buckets in minutes, 0 for one point per run
+     * @return
+     */
+    @GET
+    @Path("/history/requests")
+    @Produces("application/json")
+    @Timed
+    public void getRequestHistory(@QueryParam("name") String name, @QueryParam("simulation") String simulation,
+                                  @QueryParam("from") @DefaultValue("0") long from, @QueryParam("to") @DefaultValue("" + Long.MAX_VALUE) long to,
+                                  @QueryParam("limit") @DefaultValue("50") int limit, @QueryParam("bucket") @DefaultValue("0") long bucket,
+                                  @Suspended AsyncResponse response) {
+        if (StringUtils.isEmpty(name)) {
+            response.resume(Response.status(Response.Status.BAD_REQUEST).entity("The request name is required").build());
+            return;
+        }
+        resume(response, serverRepository.getHistory(new Master.HistoryQuery(name, simulation, from, to, limit, TimeUnit.MINUTES.toMillis(bucket)))
+                .thenApply(result -> Response.ok(result).build()), "Error fetching run history.");
     }
 
     /**
@@ -334,16 +535,11 @@ public class RestController {
     @Path("/abort/{id}")
     @Produces("application/json")
     @Timed
-    public Response postCancel(@Context UriInfo uriInfo,@PathParam("id") String trackingId) {
-        try {
-            boolean res = serverRepository.abortJob(trackingId);
+    public void postCancel(@Context UriInfo uriInfo,@PathParam("id") String trackingId, @Suspended AsyncResponse response) {
+        resume(response, serverRepository.abortJob(trackingId).thenApply(res -> {
             log.info("Cancel result: {}",res);
             return Response.status(Response.Status.CREATED).entity(ImmutableMap.of("cancelled", res)).build();
-        } catch (Exception e) {
-            log.error("Error while submitting cancel job request for: {}, {}",trackingId,e);
-            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("Error while submitting cancel job request.").build();
-        }
-
+        }), "Error while submitting cancel job request.");
     }
 
     /**
@@ -359,16 +555,10 @@ public class RestController {
     @Path("/abort")
     @Produces("application/json")
     @Timed
-    public Response getAbortStatus(@Context UriInfo uriInfo,@QueryParam("trackingId") String trackingId) {
-        boolean result;
-        try {
-            result = serverRepository.getTrackingInfo(trackingId).isCancelled();
-            return Response.status(Response.Status.ACCEPTED).entity( result).build();
-        } catch (Exception e) {
-            log.error("Error while submitting abort status request for: {}, {}",trackingId,e);
-            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("Error while submitting abort status request.").build();
-        }
-
+    public void getAbortStatus(@Context UriInfo uriInfo,@QueryParam("trackingId") String trackingId, @Suspended AsyncResponse response) {
+        resume(response, serverRepository.getTrackingInfo(trackingId)
+                .thenApply(result -> Response.status(Response.Status.ACCEPTED).entity( result.isCancelled()).build()),
+               "Error while submitting abort status request.");
     }
 
 
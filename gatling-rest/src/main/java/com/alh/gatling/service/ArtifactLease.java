@@ -0,0 +1,104 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.service;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.Props;
+import com.alh.gatling.commons.ArtifactStore;
+import com.alh.gatling.commons.JobState;
+import com.alh.gatling.commons.Master;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the artifacts of a simulation in the artifact store while it runs.
+ * The lease follows the tasks through the master and releases the artifacts once every task completed or failed,
+ * or after a day, should the master forget the subscription.
+ */
+public class ArtifactLease extends AbstractActor {
+    private static final Logger log = LoggerFactory.getLogger(ArtifactLease.class);
+    private static final FiniteDuration MAX_LEASE = FiniteDuration.create(1, TimeUnit.DAYS);
+    private static final Object Expired = new Object() {
+        @Override
+        public String toString() {
+            return "Expired";
+        }
+    };
+    private final ActorRef master;
+    private final String trackingId;
+    private final int tasks;
+    private final ArtifactStore store;
+    private final List<String> hashes;
+    private final Set<String> finished = new HashSet<>();
+    private Cancellable expiry;
+
+    /**
+     * @param hashes artifacts retained for the simulation, released when the lease ends
+     */
+    public ArtifactLease(ActorRef master, String trackingId, int tasks, ArtifactStore store, List<String> hashes) {
+        this.master = master;
+        this.trackingId = trackingId;
+        this.tasks = tasks;
+        this.store = store;
+        this.hashes = hashes;
+    }
+
+    public static Props props(ActorRef master, String trackingId, int tasks, ArtifactStore store, List<String> hashes) {
+        return Props.create(ArtifactLease.class, master, trackingId, tasks, store, hashes);
+    }
+
+    @Override
+    public void preStart() {
+        master.tell(new Master.Subscribe(trackingId), getSelf());
+        expiry = getContext().system().scheduler().scheduleOnce(MAX_LEASE, getSelf(), Expired, getContext().dispatcher(), getSelf());
+    }
+
+    @Override
+    public void postStop() {
+        expiry.cancel();
+        master.tell(new Master.Unsubscribe(trackingId), getSelf());
+        hashes.forEach(store::release);
+        log.debug("Released the artifacts {} of {}", hashes, trackingId);
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+            .match(Master.TaskDelta.class, delta -> {
+                if (JobState.JobStatusString.COMPLETED.equals(delta.status) || JobState.JobStatusString.FAILED.equals(delta.status)) {
+                    finished.add(delta.taskJobId);
+                } else {
+                    finished.remove(delta.taskJobId);
+                }
+                if (finished.size() >= tasks) {
+                    getContext().stop(getSelf());
+                }
+            })
+            .matchEquals(Expired, tick -> getContext().stop(getSelf()))
+            .build();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.service;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.PoisonPill;
+import akka.actor.Props;
+import com.alh.gatling.commons.Master;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Relays the changes pushed by the master for one tracking id, or for the dashboard, to one server-sent event stream.
+ * The relay lives as long as the connection: it stops when the client goes away or the stream times out,
+ * and the master drops the subscription when it stops. The subscription is renewed with every heartbeat, since it only
+ * lives in the memory of the master singleton and is lost when another node takes the singleton over.
+ */
+public class EventRelay extends AbstractActor {
+    private static final Logger log = LoggerFactory.getLogger(EventRelay.class);
+    public static final String TASK_EVENT = "task";
+    public static final String DASHBOARD_EVENT = "dashboard";
+    private static final FiniteDuration HEARTBEAT_INTERVAL = FiniteDuration.create(15, TimeUnit.SECONDS);
+    private static final Object Heartbeat = new Object() {
+        @Override
+        public String toString() {
+            return "Heartbeat";
+        }
+    };
+    private final ActorRef master;
+    private final String trackingId;
+    private final SseEmitter emitter;
+    private Cancellable heartbeat;
+
+    /**
+     * @param master proxy of the master singleton
+     * @param trackingId tracking id to follow, null for the dashboard counts
+     */
+    public EventRelay(ActorRef master, String trackingId, SseEmitter emitter) {
+        this.master = master;
+        this.trackingId = trackingId;
+        this.emitter = emitter;
+    }
+
+    public static Props props(ActorRef master, String trackingId, SseEmitter emitter) {
+        return Props.create(EventRelay.class, master, trackingId, emitter);
+    }
+
+    @Override
+    public void preStart() {
+        ActorRef self = getSelf();
+        emitter.onCompletion(() -> self.tell(PoisonPill.getInstance(), ActorRef.noSender()));
+        emitter.onTimeout(() -> self.tell(PoisonPill.getInstance(), ActorRef.noSender()));
+        master.tell(new Master.Subscribe(trackingId), self);
+        // comments keep idle proxies from closing the stream and reveal the clients that went away
+        heartbeat = getContext().system().scheduler().schedule(HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL, self, Heartbeat, getContext().dispatcher(), self);
+    }
+
+    @Override
+    public void postStop() {
+        heartbeat.cancel();
+        master.tell(new Master.Unsubscribe(trackingId), getSelf());
+        emitter.complete();
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+            .match(Master.TaskDelta.class, delta -> send(SseEmitter.event().name(TASK_EVENT).id(delta.taskJobId + "-" + delta.timestamp).data(delta)))
+            .match(Master.Dashboard.class, counts -> send(SseEmitter.event().name(DASHBOARD_EVENT).id(counts.getTag()).data(counts)))
+            .matchEquals(Heartbeat, tick -> {
+                master.tell(new Master.Subscribe(trackingId), getSelf());
+                send(SseEmitter.event().comment("heartbeat"));
+            })
+            .build();
+    }
+
+    private void send(SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Event stream of {} closed: {}", trackingId == null ? DASHBOARD_EVENT : trackingId, e.getMessage());
+            getContext().stop(getSelf());
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.alh.gatling.service;
+
+import com.alh.gatling.commons.HttpRange;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Relays task logs from the agents to the api clients without holding them in memory:
+ * byte ranges and whole files are streamed through a fixed buffer, tails only fetch the end of the file
+ * and follow mode polls the agent for the bytes appended since the last read.
+ */
+public class RemoteLog {
+    private static final Logger log = LoggerFactory.getLogger(RemoteLog.class);
+    public static final String OFFSET_HEADER = "X-Log-Offset";
+    public static final String LENGTH_HEADER = "X-Log-Length";
+    public static final int MAX_TAIL_LINES = 10000;
+    public static final int MAX_FOLLOWERS = 32;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long TAIL_BLOCK = 64 * 1024;
+    private static final long MAX_TAIL_BYTES = 8L * 1024 * 1024;
+    private static final long FOLLOW_POLL_MILLIS = 1000;
+    private static final long FOLLOW_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final int CONNECTION_TIMEOUT = 1000 * 5;
+    private static final int READ_TIMEOUT = 1000 * 60;
+    private static final String[] RELAYED_HEADERS = {"Content-Range", "Content-Length", "Content-Encoding", "ETag", "Last-Modified", "Accept-Ranges", "Vary"};
+    private static final Semaphore followers = new Semaphore(MAX_FOLLOWERS);
+
+    /**
+     * Streams the log, or a range of it, from the agent to the client
+     * @param offset first byte, null for the start of the file
+     * @param length number of bytes, null for the rest of the file
+     * @param acceptEncoding encodings accepted by the client, the agent may then gzip whole files
+     */
+    public static Response range(String url, Long offset, Long length, String acceptEncoding) throws IOException {
+        HttpURLConnection connection = open(url);
+        if (offset != null || length != null) {
+            long start = offset == null ? 0 : Math.max(0, offset);
+            connection.setRequestProperty("Range", "bytes=" + start + "-" + (length == null ? "" : String.valueOf(start + Math.max(1, length) - 1)));
+        }
+        if (acceptEncoding != null) {
+            connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+        }
+        int status = connection.getResponseCode();
+        if (status >= 400) {
+            Response.ResponseBuilder error = Response.status(status).header("Content-Range", connection.getHeaderField("Content-Range"));
+            connection.disconnect();
+            return error.build();
+        }
+        Response.ResponseBuilder response = Response.status(status).type(MediaType.TEXT_PLAIN_TYPE).entity((StreamingOutput) output -> {
+            try (InputStream input = connection.getInputStream()) {
+                IOUtils.copyLarge(input, output, new byte[BUFFER_SIZE]);
+            } finally {
+                connection.disconnect();
+            }
+        });
+        for (String header : RELAYED_HEADERS) {
+            response.header(header, connection.getHeaderField(header));
+        }
+        return response.build();
+    }
+
+    /**
+     * Last lines of the log, fetched from the end of the file in growing blocks up to a fixed byte budget.
+     * The response tells where the returned bytes start and how long the file was, to follow from there.
+     */
+    public static Response tail(String url, int lines) throws IOException {
+        int wanted = Math.max(1, Math.min(lines, MAX_TAIL_LINES));
+        for (long block = TAIL_BLOCK; ; block = Math.min(block * 4, MAX_TAIL_BYTES)) {
+            HttpURLConnection connection = open(url);
+            try {
+                connection.setRequestProperty("Range", "bytes=-" + block);
+                int status = connection.getResponseCode();
+                if (status == 416) {
+                    //empty file
+                    return Response.ok(new byte[0], MediaType.TEXT_PLAIN_TYPE).header(OFFSET_HEADER, 0).header(LENGTH_HEADER, 0).build();
+                }
+                if (status >= 400) {
+                    return Response.status(status).build();
+                }
+                HttpRange range = HttpRange.fromContentRange(connection.getHeaderField("Content-Range"));
+                if (status != HttpURLConnection.HTTP_PARTIAL || range == null) {
+                    //the agent ignored the range and sends the whole log, only its end is kept
+                    try (InputStream input = connection.getInputStream()) {
+                        return tailOfWholeLog(input, wanted);
+                    }
+                }
+                byte[] bytes;
+                try (InputStream input = new BoundedInputStream(connection.getInputStream(), block)) {
+                    bytes = IOUtils.toByteArray(input);
+                }
+                int from = lastLines(bytes, wanted);
+                boolean complete = from > 0 || range.start == 0;
+                if (complete || block >= MAX_TAIL_BYTES) {
+                    return lines(bytes, complete ? from : -1, range.start, range.total);
+                }
+            } finally {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Last lines of a log read from its start, keeping no more than the byte budget of its end in memory
+     */
+    static Response tailOfWholeLog(InputStream input, int lines) throws IOException {
+        Deque<byte[]> chunks = new ArrayDeque<>();
+        long kept = 0;
+        long total = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = input.read(buffer)) > -1) {
+            chunks.addLast(Arrays.copyOf(buffer, n));
+            kept += n;
+            total += n;
+            while (kept - chunks.peekFirst().length >= MAX_TAIL_BYTES) {
+                kept -= chunks.removeFirst().length;
+            }
+        }
+        byte[] bytes = new byte[(int) kept];
+        int position = 0;
+        for (byte[] chunk : chunks) {
+            System.arraycopy(chunk, 0, bytes, position, chunk.length);
+            position += chunk.length;
+        }
+        long start = total - kept;
+        int from = lastLines(bytes, Math.max(1, Math.min(lines, MAX_TAIL_LINES)));
+        return lines(bytes, from > 0 || start == 0 ? from : -1, start, total);
+    }
+
+    /**
+     * @param from index of the first byte to return, -1 when the budget was exhausted before the wanted lines
+     * @param start position of the bytes in the log
+     * @param total length of the log
+     */
+    private static Response lines(byte[] bytes, int from, long start, long total) {
+        if (from < 0) {
+            //budget exhausted, drop the partial first line
+            from = Math.min(bytes.length, indexAfterNewline(bytes));
+        }
+        return Response.ok(Arrays.copyOfRange(bytes, from, bytes.length), MediaType.TEXT_PLAIN_TYPE)
+                .header(OFFSET_HEADER, start + from)
+                .header(LENGTH_HEADER, total)
+                .build();
+    }
+
+    /**
+     * Streams the log from offset then keeps sending what the task appends, until the client goes away
+     * or nothing was appended for a while. Clients resume with the number of bytes received as offset.
+     */
+    public static Response follow(String url, long offset) {
+        if (!followers.tryAcquire()) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).header("Retry-After", 5).build();
+        }
+        StreamingOutput stream = output -> {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long position = Math.max(0, offset);
+            long lastData = System.currentTimeMillis();
+            try {
+                while (System.currentTimeMillis() - lastData < FOLLOW_IDLE_MILLIS) {
+                    long read = append(url, position, output, buffer);
+                    if (read < 0) {
+                        break;
+                    }
+                    if (read > 0) {
+                        position += read;
+                        lastData = System.currentTimeMillis();
+                        output.flush();
+                    }
+                    TimeUnit.MILLISECONDS.sleep(FOLLOW_POLL_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                followers.release();
+                log.debug("Stopped following {} at {}", url, position);
+            }
+        };
+        return Response.ok(stream, MediaType.TEXT_PLAIN_TYPE).header(OFFSET_HEADER, Math.max(0, offset)).build();
+    }
+
+    /**
+     * @return bytes copied from position, -1 when the log is gone
+     */
+    private static long append(String url, long position, OutputStream output, byte[] buffer) throws IOException {
+        HttpURLConnection connection = open(url);
+        try {
+            connection.setRequestProperty("Range", "bytes=" + position + "-");
+            int status = connection.getResponseCode();
+            if (status == 416) {
+                return 0;
+            }
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                return -1;
+            }
+            if (status != HttpURLConnection.HTTP_PARTIAL) {
+                throw new IOException("Unexpected status " + status + " while following " + url);
+            }
+            try (InputStream input = connection.getInputStream()) {
+                return IOUtils.copyLarge(input, output, buffer);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * @return index of the first byte of the last lines, 0 if the block holds fewer lines
+     */
+    static int lastLines(byte[] bytes, int lines) {
+        int end = bytes.length;
+        if (end > 0 && bytes[end - 1] == '\n') {
+            end--;
+        }
+        int found = 0;
+        for (int i = end - 1; i >= 0; i--) {
+            if (bytes[i] == '\n' && ++found == lines) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static int indexAfterNewline(byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return bytes.length;
+    }
+
+    private static HttpURLConnection open(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECTION_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        return connection;
+    }
+}
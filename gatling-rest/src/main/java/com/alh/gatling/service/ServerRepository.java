@@ -19,84 +19,124 @@
 package com.alh.gatling.service;
 
 import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.pattern.CircuitBreaker;
 import akka.util.Timeout;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.alh.gatling.commons.AgentConfig;
+import com.alh.gatling.commons.ArtifactCache;
+import com.alh.gatling.commons.ArtifactStore;
+import com.alh.gatling.commons.FeedPartitioner;
 import com.alh.gatling.commons.JobSummary;
+import com.alh.gatling.commons.LiveMetrics;
+import com.alh.gatling.commons.LoadSplitter;
 import com.alh.gatling.commons.Master;
-import com.alh.gatling.commons.MasterClientActor;
-import com.alh.gatling.commons.ReportExecutor;
+import com.alh.gatling.commons.RunHistory;
 import com.alh.gatling.commons.TaskEvent;
 import com.alh.gatling.commons.TrackingResult;
 import com.alh.gatling.domain.SimulationJobModel;
 import com.alh.gatling.service.exception.NotFoundException;
 import com.alh.gatling.service.exception.UnknownResourceException;
 
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import scala.concurrent.Await;
-import scala.concurrent.Future;
+import scala.concurrent.duration.Duration;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
-import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.Response;
-
-import static akka.pattern.Patterns.ask;
+import static akka.pattern.PatternsCS.after;
+import static akka.pattern.PatternsCS.ask;
 
 /**
- *
+ * Asynchronous gateway to the master, every call completes from an actor system thread and
+ * never blocks the calling request thread. The master is asked directly through the shared singleton proxy
+ * and guarded by a circuit breaker, once it stops answering calls fail fast until the breaker lets a trial call through.
  */
 @Component
 public class ServerRepository {
 
   private final Logger log = LoggerFactory.getLogger(ServerRepository.class);
 
-  private ActorRef router;
+  private ActorRef masterProxy;
   private AgentConfig agentConfig;
-  private ConcurrentHashMap<String, ReportExecutor.ReportResult> reportCache;
+  private ActorSystem system;
+  private CircuitBreaker breaker;
+  private ArtifactStore artifactStore;
+  private Counter inFlight;
+  private Timer asks;
+  private Meter failures;
 
   @Autowired
-  public ServerRepository(ActorRef router, AgentConfig agentConfig) {
-    this.router = router;
+  public ServerRepository(ActorRef masterProxy, AgentConfig agentConfig, ActorSystem system, MetricRegistry registry, ArtifactStore artifactStore,
+                          @Value("${master.breaker.maxFailures:5}") int maxFailures,
+                          @Value("${master.breaker.callTimeout:70}") int callTimeout,
+                          @Value("${master.breaker.resetTimeout:30}") int resetTimeout) {
+    this.masterProxy = masterProxy;
     this.agentConfig = agentConfig;
-    this.reportCache = new ConcurrentHashMap<>();
+    this.system = system;
+    this.artifactStore = artifactStore;
+    this.breaker = new CircuitBreaker(system.dispatcher(), system.scheduler(), maxFailures,
+                                      Duration.create(callTimeout, TimeUnit.SECONDS), Duration.create(resetTimeout, TimeUnit.SECONDS))
+        .addOnOpenListener(() -> log.warn("The master stopped answering, failing fast for {} seconds", resetTimeout))
+        .addOnCloseListener(() -> log.info("The master answers again"));
+    this.inFlight = registry.counter("master.asks.inflight");
+    this.asks = registry.timer("master.asks");
+    this.failures = registry.meter("master.asks.failures");
   }
 
   /**
-   * Sends the message to the master and waits for response using ask pattern
+   * Sends the message to the master using the ask pattern, through the circuit breaker
    *
    * @param message
    * @param timeoutInSeconds
-   * @return
+   * @return the answer of the master, null when it did not answer
    */
-  private Object sendToMaster(Object message, int timeoutInSeconds) {
+  private CompletionStage<Object> sendToMaster(Object message, int timeoutInSeconds) {
     Timeout timeout = new Timeout(timeoutInSeconds, TimeUnit.SECONDS);
-    Future<Object> future = ask(router, message, timeout);
-    try {
-      Object info = Await.result(future, timeout.duration());
-      if (info instanceof MasterClientActor.Ok) {
-        MasterClientActor.Ok ok = (MasterClientActor.Ok) info;
-        log.debug("Ok Message from server just got here: {}", info);
-        return ok.getMsg();
+    Timer.Context latency = asks.time();
+    inFlight.inc();
+    return breaker.callWithCircuitBreakerCS(() -> ask(masterProxy, message, timeout)).handle((info, e) -> {
+      inFlight.dec();
+      latency.stop();
+      if (e != null) {
+        failures.mark();
+        log.error("Error fetching status from server {}", e.toString());
+        return null;
       }
-    } catch (Exception e) {
-      log.error("Error fetching status from server {}", e);
-    }
-    return null;
+      log.debug("Message from server just got here: {}", info);
+      return info;
+    });
+  }
+
+  /**
+   * Sends the message to the master and casts the answer to the type the master replies with
+   *
+   * @param message
+   * @param timeoutInSeconds
+   * @param replyType
+   * @param fallback answer when the master did not answer or answered with another type
+   * @return
+   */
+  private <T> CompletionStage<T> sendToMaster(Object message, int timeoutInSeconds, Class<T> replyType, T fallback) {
+    return sendToMaster(message, timeoutInSeconds).thenApply(result -> replyType.isInstance(result) ? replyType.cast(result) : fallback);
   }
 
   /**
@@ -106,13 +146,17 @@ public class ServerRepository {
    * @param message
    * @return
    */
-  public Master.ServerInfo getServerStatus(Master.ServerInfo message) {
-    Object result = sendToMaster(message, 6);
-    if (result != null && result instanceof Master.ServerInfo) {
-      Master.ServerInfo info = (Master.ServerInfo) result;
-      return info;
-    }
-    return new Master.ServerInfo();
+  public CompletionStage<Master.ServerInfo> getServerStatus(Master.ServerInfo message) {
+    return sendToMaster(message, 6, Master.ServerInfo.class, new Master.ServerInfo());
+  }
+
+  /**
+   * Worker counts maintained by the master, with the version that identifies them
+   *
+   * @return the counts, empty and unversioned if the master did not answer
+   */
+  public CompletionStage<Master.Dashboard> getDashboard() {
+    return sendToMaster(new Master.DashboardInfo(), 6, Master.Dashboard.class, Master.Dashboard.empty());
   }
 
   /**
@@ -121,9 +165,9 @@ public class ServerRepository {
    *
    * @param simulationJobModel
    * @return
-   * @throws Exception
+   * @throws Exception if the job is invalid or its resources can't be prepared, nothing is sent to the master then
    */
-  public Optional<String> submitSimulationJob(SimulationJobModel simulationJobModel) throws Exception {
+  public CompletionStage<Optional<String>> submitSimulationJob(SimulationJobModel simulationJobModel) throws Exception {
     String trackingId = UUID.randomUUID().toString();
     List<String> parameters = Arrays.asList( );//"-nr",  "-m", "-s",  simulationJobModel.getFileFullName());
     boolean hasResourcesFeed = !(simulationJobModel.getResourcesFile() == null || simulationJobModel.getResourcesFile().isEmpty());
@@ -138,32 +182,96 @@ public class ServerRepository {
         .withParameterString(simulationJobModel.getParameterString())
         .withFileFullName(simulationJobModel.getFileFullName())
         .withResourcesFileName(getResourcesFileName(simulationJobModel, hasResourcesFeed))
+        .withPartitionFeeds(hasResourcesFeed && simulationJobModel.isPartitionFeeds())
+        .withTotalUsers(simulationJobModel.getTotalUsers())
+        .withTotalRps(simulationJobModel.getTotalRps())
+        .withSplitStrategy(simulationJobModel.getSplitStrategy())
+        .withSynchronizedStart(simulationJobModel.isSynchronizedStart())
+        .withTaskCpus(simulationJobModel.getTaskCpus())
+        .withTaskMemoryMb(simulationJobModel.getTaskMemoryMb())
         .build();
-    Timeout timeout = new Timeout(6, TimeUnit.SECONDS);
-    int success = 0;
+    // validated before anything is sent to the master, an invalid profile rejects the whole submission
+    long[] users = split(simulationJobModel.getTotalUsers(), simulationJobModel);
+    long[] rps = split(simulationJobModel.getTotalRps(), simulationJobModel);
+    // hashed once per submission, agents use them as cache keys and to verify their downloads
+    String jobFileHash = hashOf(simulationJobModel.getSimulation());
+    List<String> resourcesFiles = getResourcesFiles(simulationJobModel, jobinfo);
+    List<String> resourcesFileHashes = resourcesFiles.stream()
+        .map(path -> hasResourcesFeed ? hashOf(path) : null)
+        .collect(Collectors.toList());
+    // stored artifacts are kept until the run is over
+    List<String> retained = new ArrayList<>();
+    for (String path : Arrays.asList(simulationJobModel.getSimulation(), simulationJobModel.getResourcesFile())) {
+      String hash = artifactStore.retain(path);
+      if (hash != null) {
+        retained.add(hash);
+      }
+    }
+    // the tasks are posted one after the other, in task order, each once the previous one was acknowledged
+    CompletionStage<Integer> success = CompletableFuture.completedFuture(0);
     for (int i = 0; i < simulationJobModel.getCount(); i++) {
       TaskEvent taskEvent = new TaskEvent();
       taskEvent.setJobName("gatling"); //the gatling.sh script is the gateway for simulation files
       taskEvent.setJobInfo(jobinfo);
       taskEvent.setParameters(new ArrayList<>(parameters));
-      Future<Object> future = ask(router, new Master.Job(simulationJobModel.getRoleId(), taskEvent, trackingId,
-                                                         agentConfig.getAbortUrl(),
-                                                         agentConfig.getJobFileUrl(simulationJobModel.getSimulation()),
-                                                         agentConfig.getJobFileUrl(simulationJobModel.getResourcesFile()),
-                                                         false,simulationJobModel.getCount()),
-                                  timeout);
-      Object result = Await.result(future, timeout.duration());
-      if (result instanceof MasterClientActor.Ok) {
-        success++;
-        log.debug("Ok message from server just got here, this indicates the job was successfully posted to the master: {}", result);
+      taskEvent.setTaskIndex(i);
+      taskEvent.setTaskParameters(LoadSplitter.taskParameters(i, simulationJobModel.getCount(), users, rps));
+      Master.Job job = new Master.Job(simulationJobModel.getRoleId(), taskEvent, trackingId,
+                                      agentConfig.getAbortUrl(),
+                                      agentConfig.getJobFileUrl(simulationJobModel.getSimulation()),
+                                      agentConfig.getJobFileUrl(resourcesFiles.get(i % resourcesFiles.size())),
+                                      false,simulationJobModel.getCount());
+      job.jobFileHash = jobFileHash;
+      job.resourcesFileHash = resourcesFileHashes.get(i % resourcesFileHashes.size());
+      success = success.thenCompose(posted -> sendToMaster(job, 6).thenApply(result -> {
+        if (result != null) {
+          log.debug("Ok message from server just got here, this indicates the job was successfully posted to the master: {}", result);
+          return posted + 1;
+        }
+        return posted;
+      }));
+    }
+
+    return success.thenApply(posted -> {
+      if (posted > 0) {
+        system.actorOf(ArtifactLease.props(masterProxy, trackingId, posted, artifactStore, retained));
+      } else {
+        retained.forEach(artifactStore::release);
+      }
+      if (posted == simulationJobModel.getCount()) {
+        log.debug("Job Successfully submitted to master");
+        return Optional.of(trackingId);
       }
+      return Optional.empty();
+    });
+  }
+
+  /**
+   * Hash of an artifact, read from its location when it comes from the artifact store
+   */
+  private String hashOf(String path) {
+    String hash = path == null || path.isEmpty() ? null : artifactStore.hashOf(new File(path));
+    return hash != null ? hash : ArtifactCache.hashOf(path);
+  }
+
+  private long[] split(Long total, SimulationJobModel simulationJobModel) {
+    if (total == null) {
+      return null;
     }
+    return LoadSplitter.split(total, simulationJobModel.getCount(), simulationJobModel.getSplitStrategy(), simulationJobModel.getTaskWeights());
+  }
 
-    if (success == simulationJobModel.getCount()) {
-      log.debug("Job Successfully submitted to master");
-      return Optional.of(trackingId);
+  /**
+   * The resources feed of every task, one slice per task when feed partitioning was requested
+   */
+  private List<String> getResourcesFiles(SimulationJobModel simulationJobModel, JobSummary.JobInfo jobinfo) throws IOException {
+    if (!jobinfo.partitionFeeds) {
+      return Collections.singletonList(simulationJobModel.getResourcesFile());
     }
-    return Optional.empty();
+    List<File> slices = FeedPartitioner.partition(new File(simulationJobModel.getResourcesFile()), simulationJobModel.getCount());
+    // the slices are kept next to the feed in the store, they count toward its quota
+    artifactStore.derived(slices);
+    return slices.stream().map(File::getAbsolutePath).collect(Collectors.toList());
   }
 
   private String getResourcesFileName(SimulationJobModel simulationJobModel, boolean hasBodiesFeed) {
@@ -175,40 +283,81 @@ public class ServerRepository {
     return "";
   }
 
-  public TrackingResult getTrackingInfo(String trackingId) {
-    Object result = sendToMaster(new Master.TrackingInfo(trackingId), 60);
-    if (result != null && result instanceof TrackingResult) {
-      TrackingResult info = (TrackingResult) result;
-      return info;
-    }
-    return new TrackingResult(0, 0);
+  public CompletionStage<TrackingResult> getTrackingInfo(String trackingId) {
+    return sendToMaster(new Master.TrackingInfo(trackingId), 60, TrackingResult.class, new TrackingResult(0, 0));
   }
 
-  public boolean abortJob(String trackingId) {
-    Object result = sendToMaster(new Master.TrackingInfo(trackingId, true), 60);
-    if (result != null && result instanceof TrackingResult) {
-      TrackingResult info = (TrackingResult) result;
-      return info.isCancelled();
-    }
-    return false;
+  public CompletionStage<LiveMetrics.View> getLiveMetrics(String trackingId) {
+    return sendToMaster(new Master.LiveMetricsInfo(trackingId), 10, LiveMetrics.View.class, LiveMetrics.View.empty(trackingId));
   }
 
+  public CompletionStage<Boolean> abortJob(String trackingId) {
+    return sendToMaster(new Master.TrackingInfo(trackingId, true), 60, TrackingResult.class, new TrackingResult(0, 0))
+        .thenApply(TrackingResult::isCancelled);
+  }
 
-  public Optional<ReportExecutor.ReportResult> generateReport(String trackingId) {
 
+  /**
+   * Queues the report of a run, the job only has to be acknowledged by the master
+   *
+   * @param trackingId
+   * @return the queued report job, empty if the master did not answer
+   */
+  public CompletionStage<Optional<Master.ReportJob>> submitReport(String trackingId) {
     TaskEvent taskEvent = new TaskEvent();
     taskEvent.setJobName("gatling");
     taskEvent.setParameters(new ArrayList<>(Arrays.asList("-ro")));
-    Object result = sendToMaster(new Master.Report(trackingId, taskEvent), 180);
+    return sendToMaster(new Master.SubmitReport(trackingId, taskEvent), 10).thenApply(result -> {
+      log.info("Report submitted {}", result);
+      if (result instanceof Master.ReportJob) {
+        return Optional.of((Master.ReportJob) result);
+      }
+      return Optional.empty();
+    });
+  }
 
-    log.info("Report generated {}", result);
-    if (result != null && result instanceof ReportExecutor.ReportResult) {
-      log.info("Report generated accurately {}", result);
-      return Optional.of((ReportExecutor.ReportResult) result);
-    }
-    return Optional.empty();
+  /**
+   * @param reportId
+   * @return the report job, failed with NotFoundException if the master does not know the report job
+   * or with UnknownResourceException if the master did not answer
+   */
+  public CompletionStage<Master.ReportJob> getReportJob(String reportId) {
+    return sendToMaster(new Master.ReportJobInfo(reportId), 10).thenApply(result -> {
+      if (result instanceof Master.ReportJob) {
+        return (Master.ReportJob) result;
+      }
+      if (result instanceof Master.Ack) {
+        throw new CompletionException(new NotFoundException());
+      }
+      throw new CompletionException(new UnknownResourceException("No answer for report job " + reportId));
+    });
   }
 
+  /**
+   * Polls the report job on the scheduler of the actor system until it is done or the deadline passes
+   *
+   * @param reportId
+   * @param deadline epoch millis after which the job is returned as is
+   * @param pollMillis delay between two polls
+   * @return
+   */
+  public CompletionStage<Master.ReportJob> awaitReportJob(String reportId, long deadline, long pollMillis) {
+    return getReportJob(reportId).thenCompose(job -> {
+      if (job.isDone() || System.currentTimeMillis() >= deadline) {
+        return CompletableFuture.completedFuture(job);
+      }
+      return after(Duration.create(pollMillis, TimeUnit.MILLISECONDS), system.scheduler(), system.dispatcher(),
+                   () -> awaitReportJob(reportId, deadline, pollMillis));
+    });
+  }
+
+  public CompletionStage<RunHistory.Result> getHistory(Master.HistoryQuery query) {
+    return sendToMaster(query, 10, RunHistory.Result.class, new RunHistory.Result(query.request, Collections.emptyList()));
+  }
+
+  public CompletionStage<Master.ReportQueue> getReportQueue() {
+    return sendToMaster(new Master.ReportQueueInfo(), 2, Master.ReportQueue.class, new Master.ReportQueue(0, 0, 0));
+  }
 
   /**
    * Given the path from the staging area the master instructs workers to pull new files supplied by users
@@ -219,15 +368,16 @@ public class ServerRepository {
    * @param type
    * @return
    */
-  public Optional<String> uploadFile(String path, String name, String role, String type) {
+  public CompletionStage<Optional<String>> uploadFile(String path, String name, String role, String type) {
     String trackingId = UUID.randomUUID().toString();
     Master.UploadFile uploadFileRequest = new Master.UploadFile(trackingId, path, name, role, type);
-    Object result = sendToMaster(uploadFileRequest, 5);
-    log.info("UploadFile request sent {}", result);
-    if (result != null && result instanceof Master.Ack) {
-      return Optional.of(((Master.Ack) result).getWorkId());
-    }
-    return Optional.empty();
+    return sendToMaster(uploadFileRequest, 5).thenApply(result -> {
+      log.info("UploadFile request sent {}", result);
+      if (result instanceof Master.Ack) {
+        return Optional.of(((Master.Ack) result).getWorkId());
+      }
+      return Optional.empty();
+    });
   }
 
   /**
@@ -236,67 +386,54 @@ public class ServerRepository {
    * @param uploadInfo
    * @return
    */
-  public Optional<Master.UploadInfo> getUploadStatus(Master.UploadInfo uploadInfo) {
-    Object result = sendToMaster(uploadInfo, 5);
-    if (result != null && result instanceof Master.UploadInfo) {
-      return Optional.of((Master.UploadInfo) result);
-    }
-    return Optional.empty();
+  public CompletionStage<Optional<Master.UploadInfo>> getUploadStatus(Master.UploadInfo uploadInfo) {
+    return sendToMaster(uploadInfo, 5).thenApply(result -> {
+      if (result instanceof Master.UploadInfo) {
+        return Optional.of((Master.UploadInfo) result);
+      }
+      return Optional.empty();
+    });
   }
 
 
-  public List<JobSummary> getJobSummary() {
-    Object result = sendToMaster(new Master.JobSummaryInfo(), 60);
-
-    List<JobSummary> summaries = (List<JobSummary>) result;
-    return summaries;
-
+  /**
+   * One page of the job summaries, the master filters, sorts and pages them
+   *
+   * @param query
+   * @return the page, empty if the master did not answer
+   */
+  public CompletionStage<Master.JobSummaryPage> getJobSummary(Master.JobSummaryQuery query) {
+    return sendToMaster(query, 10, Master.JobSummaryPage.class,
+                        new Master.JobSummaryPage(Collections.emptyList(), 0, query.page, query.size));
   }
 
-  public String getLogResult(String trackingId, String taskJobId, String logType) throws NotFoundException, UnknownResourceException{
-    List<JobSummary> summaries = getJobSummary();
-    Optional<JobSummary> summary = summaries.stream().filter(p -> p.getJobInfo().trackingId.equalsIgnoreCase(trackingId)).findFirst();
-    log.info("Processing  get job detail.");
-
-    if(summary.isPresent()) {
-      Optional<TaskEvent> taskEvent = summary.get().getTaskInfoList().stream().filter(p -> p.getTaskJobId().equalsIgnoreCase(taskJobId)).findFirst();
-      if (taskEvent.isPresent()) {
-
-        String logPath = taskEvent.get().getErrorLogPath();
-        if ("std".equalsIgnoreCase(logType)) {
-          logPath = taskEvent.get().getStdLogPath();
-        }
-        return loadLogFromPath(logPath);
+  /**
+   * Url of the std or error log of one task on its agent, failed with NotFoundException or UnknownResourceException
+   */
+  public CompletionStage<String> getLogUrl(String trackingId, String taskJobId, String logType) {
+    return sendToMaster(new Master.TaskInfo(trackingId, taskJobId), 10).thenApply(result -> {
+      if (result == null) {
+        throw new CompletionException(new NotFoundException());
       }
-      else
-        throw new UnknownResourceException("The Specified taskJobId id is not available.");
-    }
-    else
-      throw new UnknownResourceException("The Specified tracking id id is not available.");
-  }
-
-  private String loadLogFromPath(String logPath) throws NotFoundException {
-    URL url = null;
-    try {
-      url = new URL(logPath);
-    } catch (MalformedURLException e) {
-      log.error("Error on URL for receiving abort status: {}",e);
-      e.printStackTrace();
-      throw new NotFoundException();
-    }
-    try (InputStream input = url.openStream()) {
-
-      try {
-        String resultString = IOUtils.toString(input, StandardCharsets.UTF_8.toString());
-        return resultString;
-      } catch (Exception e) {
-        throw new NotFoundException();
+      if (!(result instanceof TaskEvent)) {
+        throw new CompletionException(new UnknownResourceException("The Specified taskJobId id is not available."));
+      }
+      TaskEvent taskEvent = (TaskEvent) result;
+      String logPath = "std".equalsIgnoreCase(logType) ? taskEvent.getStdLogPath() : taskEvent.getErrorLogPath();
+      if (logPath == null) {
+        throw new CompletionException(new NotFoundException());
       }
+      return logPath;
+    });
+  }
 
-    } catch (IOException e) {
-      log.error("Error receiving abort status: {}",e);
-      e.printStackTrace();
-      throw new NotFoundException();
+  /**
+   * Cause of the failure of a stage, without the CompletionException wrapper
+   */
+  public static Throwable causeOf(Throwable failure) {
+    while (failure instanceof CompletionException && failure.getCause() != null) {
+      failure = failure.getCause();
     }
+    return failure;
   }
 }
@@ -0,0 +1,73 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.service;
+
+import org.junit.Test;
+
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class RemoteLogTest {
+
+    private static String tail(String content, int lines) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return new String(bytes, RemoteLog.lastLines(bytes, lines), bytes.length - RemoteLog.lastLines(bytes, lines), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testLastLines() {
+        assertEquals("c\nd\n", tail("a\nb\nc\nd\n", 2));
+        assertEquals("c\nd", tail("a\nb\nc\nd", 2));
+        assertEquals("a\nb\n", tail("a\nb\n", 5));
+        assertEquals("", tail("", 1));
+    }
+
+    @Test
+    public void testTailOfALogSentWhole() throws Exception {
+        byte[] log = "a\nb\nc\n".getBytes(StandardCharsets.UTF_8);
+        Response response = RemoteLog.tailOfWholeLog(new ByteArrayInputStream(log), 2);
+        assertEquals("b\nc\n", new String((byte[]) response.getEntity(), StandardCharsets.UTF_8));
+        assertEquals("2", response.getHeaderString(RemoteLog.OFFSET_HEADER));
+        assertEquals("6", response.getHeaderString(RemoteLog.LENGTH_HEADER));
+    }
+
+    @Test
+    public void testTailOfALogSentWholeKeepsItsEnd() throws Exception {
+        int lineLength = 1024 * 1024;
+        byte[] log = new byte[12 * lineLength];
+        Arrays.fill(log, (byte) 'x');
+        for (int i = lineLength - 1; i < log.length; i += lineLength) {
+            log[i] = '\n';
+        }
+        Response response = RemoteLog.tailOfWholeLog(new ByteArrayInputStream(log), 100);
+        long offset = Long.parseLong(response.getHeaderString(RemoteLog.OFFSET_HEADER));
+        //the budget only holds the last lines, the first one kept starts on a line boundary
+        assertTrue(offset > 0);
+        assertEquals(0, offset % lineLength);
+        assertEquals(log.length - offset, ((byte[]) response.getEntity()).length);
+        assertEquals(String.valueOf(log.length), response.getHeaderString(RemoteLog.LENGTH_HEADER));
+    }
+}
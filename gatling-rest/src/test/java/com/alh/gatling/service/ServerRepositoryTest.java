@@ -0,0 +1,95 @@
+/*
+ *
+ *   Copyright 2016 alh Technology
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.alh.gatling.service;
+
+import akka.actor.ActorSystem;
+import akka.testkit.javadsl.TestKit;
+import com.alh.gatling.commons.AgentConfig;
+import com.alh.gatling.commons.Master;
+import com.codahale.metrics.MetricRegistry;
+import com.typesafe.config.ConfigFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class ServerRepositoryTest {
+
+    private ActorSystem system;
+    private TestKit master;
+    private ServerRepository serverRepository;
+
+    @Before
+    public void setUp() {
+        system = ActorSystem.create("ServerRepositoryTest", ConfigFactory.parseString("akka.actor.provider=local"));
+        master = new TestKit(system);
+        // one unanswered call opens the breaker, which then stays open for the rest of the test
+        serverRepository = new ServerRepository(master.getRef(), new AgentConfig(), system, new MetricRegistry(), null, 1, 1, 30);
+    }
+
+    @After
+    public void tearDown() {
+        TestKit.shutdownActorSystem(system);
+    }
+
+    private Master.ReportQueue reportQueue(Object answer) {
+        CompletableFuture<Master.ReportQueue> queue = serverRepository.getReportQueue().toCompletableFuture();
+        master.expectMsgClass(Master.ReportQueueInfo.class);
+        if (answer != null) {
+            master.reply(answer);
+        }
+        return queue.join();
+    }
+
+    @Test
+    public void testAnswerOfTheMaster() {
+        Master.ReportQueue queue = reportQueue(new Master.ReportQueue(1, 2, 3));
+        assertEquals(1, queue.collecting);
+        assertEquals(2, queue.queued);
+        assertEquals(3, queue.generating);
+    }
+
+    @Test
+    public void testFallbackWhenTheMasterAnswersAnotherType() {
+        Master.ReportQueue queue = reportQueue("unexpected");
+        assertEquals(0, queue.collecting);
+        assertEquals(0, queue.queued);
+        assertEquals(0, queue.generating);
+        // a wrong answer is still an answer, the breaker stays closed
+        assertEquals(3, reportQueue(new Master.ReportQueue(1, 2, 3)).generating);
+    }
+
+    @Test
+    public void testBreakerFailsFastOnceTheMasterStopsAnswering() {
+        assertEquals(0, reportQueue(null).queued);
+
+        long start = System.currentTimeMillis();
+        Master.ReportQueue queue = serverRepository.getReportQueue().toCompletableFuture().join();
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertEquals(0, queue.queued);
+        master.expectNoMessage(Duration.ofMillis(300));
+    }
+}